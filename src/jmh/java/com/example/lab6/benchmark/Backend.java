@@ -0,0 +1,162 @@
+package com.example.lab6.benchmark;
+
+import com.example.lab6.model.Friendship;
+import com.example.lab6.model.Group;
+import com.example.lab6.model.MessageDTO;
+import com.example.lab6.model.Post;
+import com.example.lab6.model.Tuple;
+import com.example.lab6.model.User;
+import com.example.lab6.model.validators.FriendshipValidator;
+import com.example.lab6.model.validators.PostValidator;
+import com.example.lab6.model.validators.UserValidator;
+import com.example.lab6.repository.FriendshipRepository;
+import com.example.lab6.repository.GroupRepository;
+import com.example.lab6.repository.MessageRepository;
+import com.example.lab6.repository.PostRepository;
+import com.example.lab6.repository.UserRepository;
+import com.example.lab6.repository.db.ConnectionPool;
+import com.example.lab6.repository.db.FriendshipDbRepository;
+import com.example.lab6.repository.db.GroupDbRepository;
+import com.example.lab6.repository.db.MessageDbRepository;
+import com.example.lab6.repository.db.PostDbRepository;
+import com.example.lab6.repository.db.UserDbRepository;
+import com.example.lab6.repository.file.FileStorage;
+import com.example.lab6.repository.file.MessageLog;
+import com.example.lab6.repository.file.MessageLogRepository;
+import com.example.lab6.repository.memory.InMemoryFriendshipRepository;
+import com.example.lab6.repository.memory.InMemoryGroupRepository;
+import com.example.lab6.repository.memory.InMemoryMessageRepository;
+import com.example.lab6.repository.memory.InMemoryPostRepository;
+import com.example.lab6.repository.memory.InMemoryUserRepository;
+import com.example.lab6.service.MessageService;
+import com.example.lab6.service.PostService;
+import com.example.lab6.service.UserService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * The repositories and services of one storage backend, loaded with a Dataset:
+ * "memory" keeps everything in the InMemory*Repository classes,
+ * "file" uses the embedded FileStorage in a temporary directory,
+ * "messagelog" is "memory" with the messages in a MessageLog in a temporary directory,
+ * "postgres" uses the *DbRepository classes on a PostgreSQL stand-in
+ */
+final class Backend implements AutoCloseable {
+    final UserRepository<Long, User> users;
+    final FriendshipRepository<Tuple<Long, Long>, Friendship> friendships;
+    final MessageRepository<Long, MessageDTO> messages;
+    final PostRepository<Long, Post> posts;
+
+    final UserService userService;
+    final MessageService messageService;
+    final PostService postService;
+
+    private final PostgresStandIn database;
+    private final ConnectionPool pool;
+    private FileStorage fileStorage;
+    private MessageLog messageLog;
+    private Path directory;
+
+    private Backend(UserRepository<Long, User> users, FriendshipRepository<Tuple<Long, Long>, Friendship> friendships,
+                    MessageRepository<Long, MessageDTO> messages, PostRepository<Long, Post> posts,
+                    GroupRepository<Long, Group> groups, PostgresStandIn database, ConnectionPool pool) {
+        this.users = users;
+        this.friendships = friendships;
+        this.messages = messages;
+        this.posts = posts;
+        this.database = database;
+        this.pool = pool;
+        this.userService = new UserService(users, friendships, new UserValidator());
+        this.messageService = new MessageService(messages, users, friendships, groups);
+        this.postService = new PostService(posts, users, new PostValidator());
+    }
+
+    static Backend open(String kind, Dataset dataset) throws Exception {
+        switch (kind) {
+            case "memory":
+                return memory(dataset);
+            case "file":
+                return file(dataset);
+            case "messagelog":
+                return messageLog(dataset);
+            case "postgres":
+                return postgres(dataset);
+            default:
+                throw new IllegalArgumentException("Unknown backend " + kind);
+        }
+    }
+
+    private static Backend memory(Dataset dataset) {
+        InMemoryFriendshipRepository friendships = new InMemoryFriendshipRepository(new FriendshipValidator());
+        InMemoryUserRepository users = new InMemoryUserRepository(new UserValidator(), friendships);
+        InMemoryMessageRepository messages = new InMemoryMessageRepository();
+        InMemoryPostRepository posts = new InMemoryPostRepository();
+        dataset.users.forEach(users::save);
+        dataset.friendships.forEach(friendships::save);
+        dataset.messages.forEach(messages::save);
+        dataset.posts.forEach(posts::save);
+        return new Backend(users, friendships, messages, posts, new InMemoryGroupRepository(), null, null);
+    }
+
+    /**
+     * The dataset is saved through the storage, so it is in the log and the snapshots like the data of the app
+     */
+    private static Backend file(Dataset dataset) throws Exception {
+        Path directory = Files.createTempDirectory("besocial-storage");
+        FileStorage storage = FileStorage.open(directory, 10000, false);
+        dataset.users.forEach(storage.getUserRepository()::save);
+        dataset.friendships.forEach(storage.getFriendshipRepository()::save);
+        dataset.messages.forEach(storage.getMessageRepository()::save);
+        dataset.posts.forEach(storage.getPostRepository()::save);
+        Backend backend = new Backend(storage.getUserRepository(), storage.getFriendshipRepository(),
+                storage.getMessageRepository(), storage.getPostRepository(), storage.getGroupRepository(), null, null);
+        backend.fileStorage = storage;
+        backend.directory = directory;
+        return backend;
+    }
+
+    private static Backend messageLog(Dataset dataset) throws Exception {
+        InMemoryFriendshipRepository friendships = new InMemoryFriendshipRepository(new FriendshipValidator());
+        InMemoryUserRepository users = new InMemoryUserRepository(new UserValidator(), friendships);
+        Path directory = Files.createTempDirectory("besocial-messages");
+        MessageLog log = MessageLog.open(directory, 4 << 20, false);
+        MessageLogRepository messages = new MessageLogRepository(log);
+        InMemoryPostRepository posts = new InMemoryPostRepository();
+        dataset.users.forEach(users::save);
+        dataset.friendships.forEach(friendships::save);
+        messages.saveAll(dataset.messages);
+        dataset.posts.forEach(posts::save);
+        Backend backend = new Backend(users, friendships, messages, posts, new InMemoryGroupRepository(), null, null);
+        backend.messageLog = log;
+        backend.directory = directory;
+        return backend;
+    }
+
+    private static Backend postgres(Dataset dataset) throws Exception {
+        PostgresStandIn database = PostgresStandIn.start();
+        ConnectionPool pool = database.load(dataset);
+        return new Backend(new UserDbRepository(pool, new UserValidator()),
+                new FriendshipDbRepository(pool, new FriendshipValidator()),
+                new MessageDbRepository(pool), new PostDbRepository(pool), new GroupDbRepository(pool), database, pool);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (pool != null)
+            pool.close();
+        if (database != null)
+            database.close();
+        if (fileStorage != null)
+            fileStorage.close();
+        if (messageLog != null)
+            messageLog.close();
+        if (directory != null) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(x -> x.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.lab6.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A backend loaded with a generated dataset, shared by all the threads of a benchmark.
+ * Every combination of the parameters gets its own data, generated from the same seed.
+ */
+@State(Scope.Benchmark)
+public class BackendState {
+    @Param({"memory", "file", "messagelog", "postgres"})
+    public String backend;
+
+    @Param({"1000", "10000"})
+    public int users;
+
+    @Param({"uniform", "powerlaw"})
+    public String degreeDistribution;
+
+    @Param({"5"})
+    public int friendsPerUser;
+
+    @Param({"20"})
+    public int messagesPerUser;
+
+    Dataset dataset;
+    Backend storage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataset = Dataset.generate(users, degreeDistribution, friendsPerUser, messagesPerUser, 42);
+        storage = Backend.open(backend, dataset);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        storage.close();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.lab6.benchmark;
+
+import com.example.lab6.model.Friendship;
+import com.example.lab6.model.MessageDTO;
+import com.example.lab6.model.Post;
+import com.example.lab6.model.User;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rows loaded in a backend, plus the users the benchmarks query:
+ * the most popular user and the two users who exchanged the most messages
+ */
+final class Dataset {
+    final List<User> users;
+    final List<Friendship> friendships;
+    final List<MessageDTO> messages;
+    final List<Post> posts;
+    final long popularUser;
+    final long chattyUser;
+    final long chattyPartner;
+
+    private Dataset(List<User> users, List<Friendship> friendships, List<MessageDTO> messages, List<Post> posts) {
+        this.users = users;
+        this.friendships = friendships;
+        this.messages = messages;
+        this.posts = posts;
+
+        Map<Long, Integer> degree = new HashMap<>();
+        for (Friendship friendship : friendships) {
+            degree.merge(friendship.getE1(), 1, Integer::sum);
+            degree.merge(friendship.getE2(), 1, Integer::sum);
+        }
+        popularUser = degree.entrySet().stream().max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElse(1L);
+
+        Map<Long, Integer> conversations = new HashMap<>();
+        long n = users.size() + 1;
+        for (MessageDTO message : messages) {
+            long to = message.getTo().get(0);
+            conversations.merge(Math.min(message.getFrom(), to) * n + Math.max(message.getFrom(), to), 1, Integer::sum);
+        }
+        long busiest = conversations.entrySet().stream().max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElse(n + 2);
+        chattyUser = busiest / n;
+        chattyPartner = busiest % n;
+    }
+
+    /**
+     * @param users           number of users
+     * @param distribution    degree distribution, see Generators.friendships
+     * @param friendsPerUser  friendships made by every user, half the average degree
+     * @param messagesPerUser messages sent by every user
+     */
+    static Dataset generate(int users, String distribution, int friendsPerUser, int messagesPerUser, long seed) {
+        List<Friendship> friendships = Generators.friendships(distribution, users, friendsPerUser, seed);
+        return new Dataset(Generators.users(users, seed), friendships,
+                Generators.messages(friendships, users, messagesPerUser, seed), Generators.posts(users, 2, seed));
+    }
+}
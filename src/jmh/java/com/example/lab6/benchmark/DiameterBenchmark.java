@@ -0,0 +1,70 @@
+package com.example.lab6.benchmark;
+
+import com.example.lab6.model.CommunityDiameter;
+import com.example.lab6.model.Diameters;
+import com.example.lab6.model.Graph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How the diameter computation scales with the number of users, on a graph grown by
+ * preferential attachment (a few popular users, many with a handful of friends),
+ * split in communities of at most 50000 users.
+ * Run with: gradlew jmh -Pjmh.includes=DiameterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DiameterBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int users;
+
+    @Param({"3"})
+    public int friendsPerUser;
+
+    private Graph graph;
+    private ForkJoinPool singleThread;
+
+    @Setup
+    public void setUp() {
+        graph = Graph.of(Generators.preferentialAttachment(users, friendsPerUser, 50_000, 42));
+        graph.compact();
+        singleThread = new ForkJoinPool(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        singleThread.shutdown();
+    }
+
+    @Benchmark
+    public List<CommunityDiameter> exact() {
+        return new Diameters(graph).compute();
+    }
+
+    @Benchmark
+    public List<CommunityDiameter> exactSequential() {
+        return new Diameters(graph, 0, Integer.MAX_VALUE, singleThread).compute();
+    }
+
+    @Benchmark
+    public List<CommunityDiameter> approximate() {
+        return new Diameters(graph, 0, 0, ForkJoinPool.commonPool()).compute();
+    }
+
+    @Benchmark
+    public List<CommunityDiameter> budget100ms() {
+        return new Diameters(graph, 100, Integer.MAX_VALUE, ForkJoinPool.commonPool()).compute();
+    }
+}
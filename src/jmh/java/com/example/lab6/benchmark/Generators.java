@@ -0,0 +1,170 @@
+package com.example.lab6.benchmark;
+
+import com.example.lab6.model.Friendship;
+import com.example.lab6.model.MessageDTO;
+import com.example.lab6.model.Post;
+import com.example.lab6.model.Tuple;
+import com.example.lab6.model.User;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic data for the benchmarks, the same for the same seed.
+ * The ids start at 1 and the dates at START, so every backend gets identical rows.
+ */
+final class Generators {
+    static final LocalDateTime START = LocalDateTime.of(2021, 1, 1, 0, 0);
+
+    private static final String[] FIRST_NAMES = {
+            "Andrei", "Ana", "Alexandru", "Andreea", "Bogdan", "Bianca", "Cristian", "Carmen",
+            "Daniel", "Diana", "Elena", "Florin", "Gabriel", "Ioana", "Ion", "Maria",
+            "Mihai", "Paula", "Radu", "Raluca", "Stefan", "Simona", "Tudor", "Vlad"
+    };
+    private static final String[] LAST_NAMES = {
+            "Popescu", "Ionescu", "Popa", "Pop", "Radu", "Dumitru", "Stan", "Stoica",
+            "Gheorghe", "Matei", "Ciobanu", "Rusu", "Munteanu", "Moldovan", "Lazar", "Marin"
+    };
+
+    private Generators() {
+    }
+
+    /**
+     * Users 1..users with names drawn from common first and last names
+     */
+    static List<User> users(int users, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<User> result = new ArrayList<>(users);
+        for (long id = 1; id <= users; id++) {
+            User user = new User(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+                    LAST_NAMES[random.nextInt(LAST_NAMES.length)], "user" + id + "@bench.local", "password");
+            user.setId(id);
+            result.add(user);
+        }
+        return result;
+    }
+
+    /**
+     * @param distribution "uniform": every friend is chosen at random, so the degrees stay close to the average;
+     *                     "powerlaw": preferential attachment, a few users have most of the friendships
+     */
+    static List<Friendship> friendships(String distribution, int users, int friendsPerUser, long seed) {
+        switch (distribution) {
+            case "uniform":
+                return uniform(users, friendsPerUser, seed);
+            case "powerlaw":
+                return preferentialAttachment(users, friendsPerUser, users, seed);
+            default:
+                throw new IllegalArgumentException("Unknown degree distribution " + distribution);
+        }
+    }
+
+    /**
+     * Every user befriends friendsPerUser users chosen uniformly at random
+     */
+    static List<Friendship> uniform(int users, int friendsPerUser, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Set<Long> seen = new HashSet<>();
+        List<Friendship> friendships = new ArrayList<>(users * friendsPerUser);
+        for (long user = 1; user <= users; user++) {
+            for (int k = 0; k < friendsPerUser; k++) {
+                long friend = 1 + random.nextInt(users);
+                long first = Math.min(user, friend), second = Math.max(user, friend);
+                if (first != second && seen.add(first * (users + 1) + second))
+                    friendships.add(friendship(first, second, friendships.size()));
+            }
+        }
+        return friendships;
+    }
+
+    /**
+     * Users 1..users, each new user befriending friendsPerUser earlier users of its
+     * community, chosen with a probability proportional to their number of friends
+     *
+     * @param communitySize a new community starts every communitySize users
+     */
+    static List<Friendship> preferentialAttachment(int users, int friendsPerUser, int communitySize, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Set<Long> seen = new HashSet<>();
+        List<Friendship> friendships = new ArrayList<>(users * friendsPerUser);
+        long[] endpoints = new long[2 * Math.min(users, communitySize) * friendsPerUser];
+        int count = 0;
+        for (long user = 1; user <= users; user++) {
+            if ((user - 1) % communitySize == 0) {
+                count = 0;
+                continue;
+            }
+            for (int k = 0; k < friendsPerUser; k++) {
+                long friend = count == 0 ? user - 1 : endpoints[random.nextInt(count)];
+                if (friend == user || !seen.add(friend * (users + 1) + user))
+                    continue;
+                friendships.add(friendship(friend, user, friendships.size()));
+                endpoints[count++] = friend;
+                endpoints[count++] = user;
+            }
+        }
+        return friendships;
+    }
+
+    private static Friendship friendship(long first, long second, int index) {
+        Friendship friendship = new Friendship(new Tuple<>(first, second));
+        friendship.setDate(START.plusMinutes(index));
+        return friendship;
+    }
+
+    /**
+     * Every user sends messagesPerUser messages, each to one of its friends; a third of
+     * the messages answer the previous message of the same conversation
+     */
+    static List<MessageDTO> messages(List<Friendship> friendships, int users, int messagesPerUser, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Map<Long, List<Long>> friends = new HashMap<>();
+        for (Friendship friendship : friendships) {
+            friends.computeIfAbsent(friendship.getE1(), x -> new ArrayList<>()).add(friendship.getE2());
+            friends.computeIfAbsent(friendship.getE2(), x -> new ArrayList<>()).add(friendship.getE1());
+        }
+        Map<Long, Long> lastInConversation = new HashMap<>();
+        List<MessageDTO> messages = new ArrayList<>(users * messagesPerUser);
+        long total = (long) users * messagesPerUser;
+        for (long i = 0; i < total; i++) {
+            long from = 1 + random.nextInt(users);
+            List<Long> candidates = friends.get(from);
+            if (candidates == null)
+                continue;
+            long to = candidates.get(random.nextInt(candidates.size()));
+            long conversation = Math.min(from, to) * (users + 1) + Math.max(from, to);
+            Long previous = lastInConversation.get(conversation);
+            Long reply = previous != null && random.nextInt(3) == 0 ? previous : null;
+
+            List<Long> recipients = new ArrayList<>();
+            recipients.add(to);
+            MessageDTO message = new MessageDTO(from, recipients, "Message " + (messages.size() + 1),
+                    START.plusSeconds(messages.size()), reply);
+            message.setId((long) messages.size() + 1);
+            messages.add(message);
+            lastInConversation.put(conversation, message.getId());
+        }
+        return messages;
+    }
+
+    /**
+     * Every user publishes postsPerUser posts
+     */
+    static List<Post> posts(int users, int postsPerUser, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Post> posts = new ArrayList<>(users * postsPerUser);
+        for (long i = 0; i < (long) users * postsPerUser; i++) {
+            Post post = new Post(1L + random.nextInt(users), "/images/post" + random.nextInt(100) + ".png",
+                    "Post " + (i + 1), START.plusSeconds(i * 7));
+            post.setId(i + 1);
+            posts.add(post);
+        }
+        return posts;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.lab6.benchmark;
+
+import com.example.lab6.model.Graph;
+import com.example.lab6.model.SocialNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the friendship graph from a backend and counting its communities
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GraphBenchmark {
+    private Graph graph;
+
+    @Setup(Level.Trial)
+    public void setUp(BackendState state) {
+        graph = new Graph(state.storage.friendships);
+        graph.createGraph();
+    }
+
+    @Benchmark
+    public Graph createGraph(BackendState state) {
+        Graph graph = new Graph(state.storage.friendships);
+        graph.createGraph();
+        return graph;
+    }
+
+    @Benchmark
+    public int nrCommunities() {
+        return new SocialNetwork(graph).nrCommunities();
+    }
+}
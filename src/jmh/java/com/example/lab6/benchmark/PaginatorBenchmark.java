@@ -0,0 +1,51 @@
+package com.example.lab6.benchmark;
+
+import com.example.lab6.model.Post;
+import com.example.lab6.repository.paging.Page;
+import com.example.lab6.repository.paging.PageableImplementation;
+import com.example.lab6.repository.paging.Paginator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Paging an in-memory list with Paginator: the first, a middle and the last page
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PaginatorBenchmark {
+    @Param({"1000", "100000"})
+    public int elements;
+
+    @Param({"20"})
+    public int pageSize;
+
+    @Param({"first", "middle", "last"})
+    public String page;
+
+    private List<Post> posts;
+    private int pageNumber;
+
+    @Setup
+    public void setUp() {
+        posts = Generators.posts(elements, 1, 42);
+        int pages = (elements + pageSize - 1) / pageSize;
+        pageNumber = page.equals("first") ? 0 : page.equals("middle") ? pages / 2 : pages - 1;
+    }
+
+    @Benchmark
+    public List<Post> paginate() {
+        Page<Post> result = new Paginator<>(new PageableImplementation(pageNumber, pageSize), posts).paginate();
+        return result.getContent().collect(Collectors.toList());
+    }
+}
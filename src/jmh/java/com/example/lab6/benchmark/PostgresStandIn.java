@@ -0,0 +1,182 @@
+package com.example.lab6.benchmark;
+
+import com.example.lab6.model.Friendship;
+import com.example.lab6.model.MessageDTO;
+import com.example.lab6.model.Post;
+import com.example.lab6.model.User;
+import com.example.lab6.repository.db.ConnectionPool;
+import com.example.lab6.repository.db.SchemaMigrations;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+/**
+ * The PostgreSQL database of the "postgres" backend. A local server is used when
+ * -Dbench.db.url (with -Dbench.db.user and -Dbench.db.password) is given; its tables
+ * are dropped and created again, so point it at a scratch database. Otherwise an
+ * embedded server is started in a temporary directory for the benchmark run.
+ */
+final class PostgresStandIn implements AutoCloseable {
+    private static final int BATCH_SIZE = 1000;
+
+    private final EmbeddedPostgres embedded;
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private PostgresStandIn(EmbeddedPostgres embedded, String url, String user, String password) {
+        this.embedded = embedded;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    static PostgresStandIn start() throws IOException {
+        String url = System.getProperty("bench.db.url");
+        if (url != null)
+            return new PostgresStandIn(null, url, System.getProperty("bench.db.user", "postgres"),
+                    System.getProperty("bench.db.password", ""));
+        EmbeddedPostgres embedded = EmbeddedPostgres.start();
+        return new PostgresStandIn(embedded, embedded.getJdbcUrl("postgres", "postgres"), "postgres", "postgres");
+    }
+
+    /**
+     * Creates the tables, inserts the dataset in batches and applies the migrations
+     * @return a pool of connections to the loaded database
+     */
+    ConnectionPool load(Dataset dataset) throws SQLException, IOException {
+        ConnectionPool pool = new ConnectionPool(url, user, password, 1, 4, 5000, 60000);
+        try (Connection connection = pool.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : read("/benchmark-schema.sql").split(";"))
+                    if (!sql.isBlank())
+                        statement.execute(sql);
+            }
+            connection.setAutoCommit(false);
+            insertUsers(connection, dataset);
+            insertFriendships(connection, dataset);
+            insertMessages(connection, dataset);
+            insertPosts(connection, dataset);
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+        SchemaMigrations.apply(pool);
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE");
+        }
+        return pool;
+    }
+
+    private static void insertUsers(Connection connection, Dataset dataset) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO users (id, first_name, last_name, email, password) VALUES (?, ?, ?, ?, ?)")) {
+            int count = 0;
+            for (User user : dataset.users) {
+                statement.setLong(1, user.getId());
+                statement.setString(2, user.getFirstName());
+                statement.setString(3, user.getLastName());
+                statement.setString(4, user.getEmail());
+                statement.setString(5, user.getPassword());
+                addBatch(statement, ++count);
+            }
+            statement.executeBatch();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SELECT setval('users_id_seq', (SELECT max(id) FROM users))");
+        }
+    }
+
+    private static void insertFriendships(Connection connection, Dataset dataset) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO friendships (first_friend, second_friend, date) VALUES (?, ?, ?)")) {
+            int count = 0;
+            for (Friendship friendship : dataset.friendships) {
+                statement.setLong(1, friendship.getE1());
+                statement.setLong(2, friendship.getE2());
+                statement.setTimestamp(3, Timestamp.valueOf(friendship.getDate()));
+                addBatch(statement, ++count);
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static void insertMessages(Connection connection, Dataset dataset) throws SQLException {
+        try (PreparedStatement messages = connection.prepareStatement(
+                "INSERT INTO messages (id, date, message_text, \"from\", original_message) VALUES (?, ?, ?, ?, ?)");
+             PreparedStatement recipients = connection.prepareStatement(
+                     "INSERT INTO message_recipients (message, recipient) VALUES (?, ?)")) {
+            int count = 0;
+            for (MessageDTO message : dataset.messages) {
+                messages.setLong(1, message.getId());
+                messages.setTimestamp(2, Timestamp.valueOf(message.getDate()));
+                messages.setString(3, message.getMessage());
+                messages.setLong(4, message.getFrom());
+                if (message.getReply() != null)
+                    messages.setLong(5, message.getReply());
+                else
+                    messages.setNull(5, Types.BIGINT);
+                addBatch(messages, ++count);
+                for (Long recipient : message.getTo()) {
+                    recipients.setLong(1, message.getId());
+                    recipients.setLong(2, recipient);
+                    recipients.addBatch();
+                }
+                if (count % BATCH_SIZE == 0)
+                    recipients.executeBatch();
+            }
+            messages.executeBatch();
+            recipients.executeBatch();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SELECT setval('messages_id_seq', (SELECT coalesce(max(id), 1) FROM messages))");
+        }
+    }
+
+    private static void insertPosts(Connection connection, Dataset dataset) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO posts (id, \"user\", photo, description, date) VALUES (?, ?, ?, ?, ?)")) {
+            int count = 0;
+            for (Post post : dataset.posts) {
+                statement.setLong(1, post.getId());
+                statement.setLong(2, post.getAdmin());
+                statement.setString(3, post.getUrl());
+                statement.setString(4, post.getDescription());
+                statement.setTimestamp(5, Timestamp.valueOf(post.getDate()));
+                addBatch(statement, ++count);
+            }
+            statement.executeBatch();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SELECT setval('posts_id_seq', (SELECT coalesce(max(id), 1) FROM posts))");
+        }
+    }
+
+    private static void addBatch(PreparedStatement statement, int count) throws SQLException {
+        statement.addBatch();
+        if (count % BATCH_SIZE == 0)
+            statement.executeBatch();
+    }
+
+    private static String read(String resource) throws IOException {
+        try (InputStream inputStream = PostgresStandIn.class.getResourceAsStream(resource)) {
+            if (inputStream == null)
+                throw new IOException("Missing resource " + resource);
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (embedded != null)
+            embedded.close();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.lab6.benchmark;
+
+import com.example.lab6.model.FriendshipDTO;
+import com.example.lab6.model.Message;
+import com.example.lab6.model.MessageDTO;
+import com.example.lab6.model.Post;
+import com.example.lab6.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The service calls behind the home page, on every backend:
+ * the longest conversation, the search of users and the posts of the friends of the most popular user
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ServiceBenchmark {
+    @Param({"an"})
+    public String searchPrefix;
+
+    private List<MessageDTO> conversation;
+    private List<FriendshipDTO> friends;
+
+    @Setup(Level.Trial)
+    public void setUp(BackendState state) {
+        Dataset dataset = state.dataset;
+        conversation = state.storage.messages.findConversation(dataset.chattyUser, dataset.chattyPartner, 0, Integer.MAX_VALUE);
+        friends = state.storage.users.findFriends(dataset.popularUser).stream()
+                .map(x -> new FriendshipDTO(x, Generators.START))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Message> getConversation(BackendState state) {
+        return state.storage.messageService.getConversation(state.dataset.chattyUser, state.dataset.chattyPartner);
+    }
+
+    @Benchmark
+    public List<Message> convertMessages(BackendState state) {
+        return state.storage.messageService.convertMessages(conversation);
+    }
+
+    @Benchmark
+    public List<User> filter1(BackendState state) {
+        return state.storage.userService.filter1(state.dataset.popularUser, searchPrefix);
+    }
+
+    @Benchmark
+    public List<Post> getFriendsPosts(BackendState state) {
+        return state.storage.postService.getFriendsPosts(friends);
+    }
+}
@@ -0,0 +1,89 @@
+-- tables read by the benchmarks, created from scratch on every run
+DROP TABLE IF EXISTS schema_version, feed_entries, feed_pull_authors, friend_requests,
+    events_subscribers, events, messages_groups, groups_users, "groups",
+    message_recipients, messages, posts, friendships, users_profile_pictures, users CASCADE;
+
+CREATE TABLE users (
+    id         BIGSERIAL PRIMARY KEY,
+    first_name VARCHAR(100) NOT NULL,
+    last_name  VARCHAR(100) NOT NULL,
+    email      VARCHAR(200) NOT NULL UNIQUE,
+    password   VARCHAR(200) NOT NULL
+);
+
+CREATE TABLE users_profile_pictures (
+    email VARCHAR(200) PRIMARY KEY,
+    url   VARCHAR(500)
+);
+
+CREATE TABLE friendships (
+    first_friend  BIGINT NOT NULL,
+    second_friend BIGINT NOT NULL,
+    date          TIMESTAMP NOT NULL,
+    PRIMARY KEY (first_friend, second_friend)
+);
+
+CREATE TABLE messages (
+    id               BIGSERIAL PRIMARY KEY,
+    date             TIMESTAMP NOT NULL,
+    message_text     TEXT,
+    "from"           BIGINT NOT NULL,
+    original_message BIGINT
+);
+
+CREATE TABLE message_recipients (
+    message   BIGINT NOT NULL,
+    recipient BIGINT NOT NULL
+);
+
+CREATE TABLE posts (
+    id          BIGSERIAL PRIMARY KEY,
+    "user"      BIGINT NOT NULL,
+    photo       VARCHAR(500),
+    description TEXT,
+    date        TIMESTAMP NOT NULL
+);
+
+-- not read by the benchmarks, but indexed by the migrations
+CREATE TABLE "groups" (
+    id   BIGSERIAL PRIMARY KEY,
+    name VARCHAR(100)
+);
+
+CREATE TABLE groups_users (
+    "user"  BIGINT NOT NULL,
+    "group" BIGINT NOT NULL
+);
+
+CREATE TABLE messages_groups (
+    id               BIGSERIAL PRIMARY KEY,
+    date             TIMESTAMP NOT NULL,
+    "from"           BIGINT NOT NULL,
+    message          TEXT,
+    original_message BIGINT,
+    recipient_group  BIGINT NOT NULL
+);
+
+CREATE TABLE events (
+    id            BIGSERIAL PRIMARY KEY,
+    title         VARCHAR(200) NOT NULL,
+    start_date    TIMESTAMP NOT NULL,
+    end_date      TIMESTAMP NOT NULL,
+    description   TEXT,
+    location      VARCHAR(200),
+    admin         BIGINT NOT NULL,
+    creation_date TIMESTAMP NOT NULL
+);
+
+CREATE TABLE events_subscribers (
+    "eventID"              BIGINT NOT NULL,
+    "userID"               BIGINT NOT NULL,
+    last_notification_date TIMESTAMP
+);
+
+CREATE TABLE friend_requests (
+    "from"           BIGINT NOT NULL,
+    "to"             BIGINT NOT NULL,
+    status           VARCHAR(20) NOT NULL,
+    last_update_date TIMESTAMP NOT NULL
+);
@@ -6,10 +6,20 @@ import com.example.lab6.model.validators.EventValidator;
 import com.example.lab6.model.validators.FriendshipValidator;
 import com.example.lab6.model.validators.PostValidator;
 import com.example.lab6.model.validators.UserValidator;
-import com.example.lab6.repository.Repository;
+import com.example.lab6.repository.EventRepository;
+import com.example.lab6.repository.FeedRepository;
+import com.example.lab6.repository.FriendRequestRepository;
+import com.example.lab6.repository.FriendshipRepository;
+import com.example.lab6.repository.GroupRepository;
+import com.example.lab6.repository.MessageRepository;
+import com.example.lab6.repository.PostRepository;
 import com.example.lab6.repository.UserRepository;
+import com.example.lab6.repository.cache.CachingMessageRepository;
+import com.example.lab6.repository.cache.CachingUserRepository;
+import com.example.lab6.repository.cache.FriendIdCache;
 import com.example.lab6.repository.db.*;
-import com.example.lab6.repository.paging.PagingRepository;
+import com.example.lab6.repository.file.FileStorage;
+import com.example.lab6.repository.file.MessageLog;
 import com.example.lab6.service.*;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
@@ -17,40 +27,88 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.nio.file.Path;
 
+/**
+ * The storage is chosen with the system property storage: "postgres" (the default) or "file",
+ * the embedded FileStorage in storage.dir (default ~/.besocial), with a snapshot every
+ * storage.snapshotEvery changes (default 10000) and, if storage.sync is true, every change
+ * forced to the disk. If messages.log names a directory, the conversations are kept in a
+ * MessageLog there, with segments of up to messages.segmentSize bytes (default 4 MiB), in
+ * front of the message repository of either storage. The append only MessageLogRepository
+ * is not used as the message store: it cannot remove or update a message.
+ */
 public class Main extends Application {
+    ConnectionPool pool;
+    FileStorage storage;
+    MessageLog messageLog;
     UserRepository<Long, User> repoDb;
-    PagingRepository<Tuple<Long, Long>, Friendship> repoDbf;
-    PagingRepository<Long, MessageDTO> messageDb;
-    Repository<Tuple<Long, Long>, FriendRequest> frRequestDb;
-    Repository<Long, Group> repoDbGroup;
-    PagingRepository<Long, Post> repoPost;
+    FriendshipRepository<Tuple<Long, Long>, Friendship> repoDbf;
+    MessageRepository<Long, MessageDTO> messageDb;
+    FriendRequestRepository<Tuple<Long, Long>, FriendRequest> frRequestDb;
+    GroupRepository<Long, Group> repoDbGroup;
+    PostRepository<Long, Post> repoPost;
 
     UserService userService;
     FriendshipService friendshipService;
     MessageService messageService;
     FriendRequestService friendRequestService;
-    EventDbRepository repoEvents;
+    EventRepository<Long, Event> repoEvents;
     EventService eventService;
     PostService postService;
+    AsyncServices asyncServices;
 
     @Override
     public void start(Stage stage) throws IOException {
 
-        repoDb = new UserDbRepository("jdbc:postgresql://localhost:5432/socialnetworkapp", "postgres", "paula123", new UserValidator());
-        repoDbf = new FriendshipDbRepository("jdbc:postgresql://localhost:5432/socialnetworkapp", "postgres","paula123", new FriendshipValidator());
-        messageDb = new MessageDbRepository("jdbc:postgresql://localhost:5432/socialnetworkapp", "postgres", "paula123");
-        frRequestDb = new FriendRequestDbRepository("jdbc:postgresql://localhost:5432/socialnetworkapp", "postgres", "paula123");
-        repoDbGroup = new GroupDbRepository("jdbc:postgresql://localhost:5432/socialnetworkapp", "postgres", "paula123");
-        repoEvents = new EventDbRepository("jdbc:postgresql://localhost:5432/socialnetworkapp", "postgres", "paula123");
-        repoPost = new PostDbRepository("jdbc:postgresql://localhost:5432/socialnetworkapp", "postgres", "paula123");
+        String messageLogDirectory = System.getProperty("messages.log");
+        if (messageLogDirectory != null)
+            messageLog = MessageLog.open(Path.of(messageLogDirectory), Integer.getInteger("messages.segmentSize", 4 << 20),
+                    Boolean.getBoolean("storage.sync"));
+
+        FeedRepository feed;
+        if (System.getProperty("storage", "postgres").equals("file")) {
+            Path directory = Path.of(System.getProperty("storage.dir", System.getProperty("user.home") + "/.besocial"));
+            storage = FileStorage.open(directory, Integer.getInteger("storage.snapshotEvery", 10000),
+                    Boolean.getBoolean("storage.sync"));
+
+            repoDb = storage.getUserRepository();
+            repoDbf = storage.getFriendshipRepository();
+            messageDb = storage.getMessageRepository();
+            frRequestDb = storage.getFriendRequestRepository();
+            repoDbGroup = storage.getGroupRepository();
+            repoEvents = storage.getEventRepository();
+            repoPost = storage.getPostRepository();
+            feed = storage.getFeedRepository();
+        } else {
+            pool = new ConnectionPool("jdbc:postgresql://localhost:5432/socialnetworkapp", "postgres", "paula123", 2, 10, 5000, 60000);
+
+            SchemaMigrations.apply(pool);
+
+            repoDb = new CachingUserRepository(new UserDbRepository(pool, new UserValidator()), 1000, 5 * 60 * 1000);
+            repoDbf = new FriendshipDbRepository(pool, new FriendshipValidator());
+            messageDb = new MessageDbRepository(pool);
+            frRequestDb = new FriendRequestDbRepository(pool);
+            repoDbGroup = new GroupDbRepository(pool);
+            repoEvents = new EventDbRepository(pool);
+            repoPost = new PostDbRepository(pool);
+            feed = new FeedDbRepository(pool);
+        }
+        if (messageLog != null)
+            messageDb = new CachingMessageRepository(messageDb, messageLog);
 
         eventService = new EventService(repoEvents, repoDb, new EventValidator());
         userService = new UserService(repoDb, repoDbf, new UserValidator());
         friendshipService = new FriendshipService(repoDb, repoDbf);
-        messageService = new MessageService(messageDb, repoDb, repoDbf, repoDbGroup);
+        FriendIdCache friendIds = new FriendIdCache(repoDb, 1000);
+        friendshipService.addFriendshipObserver(friendIds);
+        friendshipService.addFriendshipObserver(userService);
+        messageService = new MessageService(messageDb, repoDb, repoDbf, repoDbGroup, friendIds);
         friendRequestService = new FriendRequestService(frRequestDb, repoDb, repoDbf);
-        postService = new PostService(repoPost, repoDb, new PostValidator());
+        friendRequestService.addObserver(friendshipService);
+        postService = new PostService(repoPost, repoDb, feed, new PostValidator());
+        friendshipService.addFriendshipObserver(postService);
+        asyncServices = new AsyncServices(userService, friendshipService, messageService, friendRequestService, eventService, postService, 4, 64);
 
         FXMLLoader fxmlLoader = new FXMLLoader(Main.class.getResource("/views/splash-screen.fxml"));
         Scene scene = new Scene(fxmlLoader.load());
@@ -59,11 +117,30 @@ public class Main extends Application {
 
         SplashScreenController splashScreenController = fxmlLoader.getController();
         stage.setMaximized(true);
-        splashScreenController.setServices(userService, friendshipService, messageService, friendRequestService, eventService, postService, stage);
+        splashScreenController.setServices(userService, friendshipService, messageService, friendRequestService, eventService, postService, asyncServices, stage);
         stage.show();
         splashScreenController.run();
     }
 
+    @Override
+    public void stop() {
+        if (eventService != null)
+            eventService.stopReminders();
+        if (asyncServices != null)
+            asyncServices.shutdown();
+        if (pool != null)
+            pool.close();
+        if (messageLog != null)
+            messageLog.close();
+        if (storage != null) {
+            try {
+                storage.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     public static void main(String[] args) {
         launch();
     }
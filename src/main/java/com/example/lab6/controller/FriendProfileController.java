@@ -1,9 +1,11 @@
 package com.example.lab6.controller;
 
+import com.example.lab6.model.FriendRequest;
 import com.example.lab6.model.Post;
 import com.example.lab6.model.Tuple;
 import com.example.lab6.model.User;
 import com.example.lab6.service.*;
+import com.example.lab6.utils.ImageCache;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.geometry.Pos;
@@ -11,7 +13,6 @@ import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextArea;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.AnchorPane;
@@ -39,6 +40,8 @@ public class FriendProfileController {
     private FriendshipService friendshipService;
     private FriendRequestService friendRequestService;
     private PostService postService;
+    private AsyncServices asyncServices;
+    private final PageLoader postLoader = new PageLoader();
     private int numberOfPost;
     private int leftLimitPosts = 0;
     private int postOnPage = 2;
@@ -50,6 +53,8 @@ public class FriendProfileController {
     private String email_friend;
     private Long friendID;
     private Long myID;
+    private String friendName;
+    private String friendPhoto;
 
     @FXML
     public void initialize() {
@@ -63,98 +68,97 @@ public class FriendProfileController {
 
   }
 
-    public void setServices(UserService userService, FriendshipService friendshipService, FriendRequestService friendRequestService,PostService postService, Stage stage, String email, String email_friend) {
+    public void setServices(UserService userService, FriendshipService friendshipService, FriendRequestService friendRequestService, PostService postService, AsyncServices asyncServices, Stage stage, String email, String email_friend) {
         this.userService = userService;
         this.friendshipService = friendshipService;
         this.friendRequestService = friendRequestService;
         this.postService = postService;
+        this.asyncServices = asyncServices;
         this.stage = stage;
         this.email = email;
         this.email_friend = email_friend;
-        this.friendID = userService.exists(email_friend).getId();
+        User friend = userService.exists(email_friend);
+        this.friendID = friend.getId();
         this.myID = userService.exists(email).getId();
 
-        if(userService.findPhoto(email_friend) != null)
-            profilePhoto.setImage(new Image(userService.findPhoto(email_friend)));
-        else
-            profilePhoto.setImage(new Image("/images/profile.png"));
+        profilePhoto.setImage(ImageCache.getInstance().getProfilePhoto(null, 110));
         profilePhoto.setFitHeight(110);
         profilePhoto.setFitWidth(110);
 
-        nameLabel.setText(userService.exists(email_friend).getFirstName() + " " + userService.exists(email_friend).getLastName() + "!");
+        this.friendName = friend.getFirstName() + " " + friend.getLastName();
+        nameLabel.setText(friendName + "!");
         setProfilePicture();
 
-        if(friendshipService.exists(myID, friendID) != null)
-            removeButton.setVisible(true);
-        else {
-            if(friendRequestService.existsFriendRequests(myID, friendID) != null)
-            {
-                if(friendRequestService.existsFriendRequests(myID, friendID).getFrom().equals(myID))
-                    sentButton.setVisible(true);
-                else
-                    acceptButton.setVisible(true);
-            }
-            else
-                addButton.setVisible(true);
-
-        }
-        List<Post> posts = this.postService.getFriendPosts(friendID);
-        if(posts.size() == 0) {
-            nopostAnchor.setVisible(true);
-        }
-        else{
-            scroller.setVisible(true);
-            initializePost();
-        }
-
-
+        PageLoader.whenLoaded(asyncServices.supply(() -> {
+            if (friendshipService.exists(myID, friendID) != null)
+                return removeButton;
+            FriendRequest request = friendRequestService.existsFriendRequests(myID, friendID);
+            if (request == null)
+                return addButton;
+            return request.getFrom().equals(myID) ? sentButton : acceptButton;
+        }), button -> button.setVisible(true));
     }
 
+    /**
+     * The default picture is shown until the one of the friend is looked up;
+     * the posts are loaded after it, since they show it too
+     */
     private void setProfilePicture() {
-        if(userService.findPhoto(email_friend) != null)
-            profilePhoto.setImage(new Image(userService.findPhoto(email_friend)));
-
+        PageLoader.whenLoaded(asyncServices.findPhoto(email_friend), url -> {
+            friendPhoto = url;
+            profilePhoto.setImage(ImageCache.getInstance().getProfilePhoto(url, 110));
+            initializePost();
+        });
     }
     public void onAddButton(ActionEvent actionEvent) {
-        friendRequestService.sendFriendRequest(userService.exists(email).getId(), userService.exists(email_friend).getId());
-        addButton.setVisible(false);
-        sentButton.setVisible(true);
+        PageLoader.whenLoaded(asyncServices.run(() -> friendRequestService.sendFriendRequest(myID, friendID)), done -> {
+            addButton.setVisible(false);
+            sentButton.setVisible(true);
+        }, error -> MessageAlert.showErrorMessage(stage, error.getMessage()));
     }
 
     public void onRemoveButton(ActionEvent actionEvent) {
-        friendshipService.removeFriendship(myID, friendID);
-        removeButton.setVisible(false);
-        addButton.setVisible(true);
+        PageLoader.whenLoaded(asyncServices.run(() -> friendshipService.removeFriendship(myID, friendID)), done -> {
+            removeButton.setVisible(false);
+            addButton.setVisible(true);
+        }, error -> MessageAlert.showErrorMessage(stage, error.getMessage()));
     }
 
     private void initializePost(){
-        vboxPosts.getChildren().clear();
-
-        numberOfPost = postService.getFriendPosts(friendID).size();
+        int offset = leftLimitPosts;
+        postLoader.load(asyncServices.supply(() -> new Tuple<>(postService.countMyPosts(friendID),
+                postService.getMyPostsOnPage(offset, postOnPage, friendID))), this::showPosts);
+    }
 
-        int nr = leftLimitPosts+postOnPage;
-        if(nr > numberOfPost)
-            nr = numberOfPost;
-        List<Post> postList = postService.getMyPostsOnPage(leftLimitPosts, nr-leftLimitPosts, friendID);
+    /**
+     * The posts are all of the friend, so the name and the picture of the friend are shown on each
+     */
+    private void showPosts(Tuple<Integer, List<Post>> page) {
+        numberOfPost = page.getE1();
+        if (numberOfPost == 0) {
+            scroller.setVisible(false);
+            nopostAnchor.setVisible(true);
+            return;
+        }
+        nopostAnchor.setVisible(false);
+        scroller.setVisible(true);
+        vboxPosts.getChildren().clear();
 
-        postList.forEach(x->{
+        page.getE2().forEach(x->{
             VBox box = new VBox();
             box.getStyleClass().add("vbox-post");
             HBox hbox = new HBox();
             box.setPrefWidth(380);
             box.setFillWidth(true);
             ImageView profile = new ImageView();
-            if (userService.findPhoto(userService.getUserByID(x.getAdmin()).getEmail()) == null)
-                profile.setImage(new Image("/images/profile.png"));
-            else
-                profile.setImage(new Image(userService.findPhoto(userService.getUserByID(x.getAdmin()).getEmail())));
+            profile.setImage(ImageCache.getInstance().getProfilePhoto(friendPhoto, 50));
 
             profile.setFitHeight(50);
             profile.setFitWidth(50);
 
             VBox data = new VBox();
             Label name = new Label();
-            name.setText(userService.getUserByID(x.getAdmin()).getFirstName() + " " + userService.getUserByID(x.getAdmin()).getLastName());
+            name.setText(friendName);
             name.getStyleClass().add("label-name-post");
             data.getChildren().add(name);
             Label date = new Label("Posted on " + x.getDate().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
@@ -177,7 +181,7 @@ public class FriendProfileController {
             }
             if(x.getUrl() != null){
                 ImageView img = new ImageView();
-                img.setImage(new Image(x.getUrl()));
+                img.setImage(ImageCache.getInstance().get(x.getUrl(), 160, 160));
                 HBox rowImage = new HBox();
                 img.setFitWidth(160);
                 img.setFitHeight(160);
@@ -217,8 +221,9 @@ public class FriendProfileController {
 
 
     public void onAcceptButton(ActionEvent actionEvent) {
-        friendRequestService.acceptFriendRequest(friendID, myID);
-        removeButton.setVisible(true);
-        acceptButton.setVisible(false);
+        PageLoader.whenLoaded(asyncServices.run(() -> friendRequestService.acceptFriendRequest(friendID, myID)), done -> {
+            removeButton.setVisible(true);
+            acceptButton.setVisible(false);
+        }, error -> MessageAlert.showErrorMessage(stage, error.getMessage()));
     }
 }
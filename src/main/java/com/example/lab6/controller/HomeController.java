@@ -3,7 +3,10 @@ package com.example.lab6.controller;
 import com.example.lab6.model.*;
 import com.example.lab6.service.*;
 import com.example.lab6.utils.EventListType;
+import com.example.lab6.utils.ImageCache;
 import com.example.lab6.utils.NotificationType;
+import com.example.lab6.utils.events.ChangeEventType;
+import com.example.lab6.utils.events.EventChangeEvent;
 import com.example.lab6.utils.events.MessageChangeEvent;
 import com.example.lab6.utils.observer.Observer;
 import javafx.application.Platform;
@@ -17,7 +20,6 @@ import javafx.geometry.Rectangle2D;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
@@ -31,13 +33,12 @@ import javafx.util.Duration;
 import org.controlsfx.control.Notifications;
 
 import java.io.IOException;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static java.lang.Math.ceil;
 
@@ -75,9 +76,20 @@ public class HomeController implements Observer<MessageChangeEvent> {
     private MessageService messageService;
     private EventService eventService;
     private PostService postService;
+    private AsyncServices asyncServices;
 
+    private final PageLoader pageLoader = new PageLoader();
+    private final PageLoader countLoader = new PageLoader();
+    private final PageLoader searchPageLoader = new PageLoader();
+    private final PageLoader searchCountLoader = new PageLoader();
+    private final PageLoader conversationLoader = new PageLoader();
+    private final PageLoader eventsLoader = new PageLoader();
+    private final PageLoader postsLoader = new PageLoader();
+    private final PageLoader postsCountLoader = new PageLoader();
 
     private EventListType eventListType = EventListType.AllEvents;
+    private static final int EVENTS_PAGE_SIZE = 20;
+    private int eventsShown = EVENTS_PAGE_SIZE;
 
     Stage stage;
     private Long myId;
@@ -94,7 +106,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
     @FXML
     public void initialize() {
 
-        imageName.setImage(new Image("/images/bsocial.png"));
+        imageName.setImage(ImageCache.getInstance().get("/images/bsocial.png"));
         imageName.setFitHeight(60);
         imageName.setFitWidth(180);
         searchField.setVisible(false);
@@ -141,7 +153,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
         notifications.show();
     }
 
-    public void setServices(UserService userService, FriendshipService friendshipService, FriendRequestService friendRequestService, MessageService messageService, EventService eventService, PostService postService, Stage stage, String email, PageDTO page) {
+    public void setServices(UserService userService, FriendshipService friendshipService, FriendRequestService friendRequestService, MessageService messageService, EventService eventService, PostService postService, AsyncServices asyncServices, Stage stage, String email, PageDTO page) {
         this.userService = userService;
         this.friendshipService = friendshipService;
         this.friendRequestService = friendRequestService;
@@ -150,63 +162,31 @@ public class HomeController implements Observer<MessageChangeEvent> {
         this.eventService = eventService;
         this.messageService = messageService;
         this.postService = postService;
-        this.myId = userService.exists(email).getId();
+        this.asyncServices = asyncServices;
         this.pageDTO = page;
+        this.myId = pageDTO.getAdmin().getId();
 
         welcomeText.setText("Welcome, " + pageDTO.getAdmin().getFirstName() + " " + pageDTO.getAdmin().getLastName() + "!");
         listofFriends();
-        welcomeText.setText("Welcome, " + userService.exists(email).getFirstName() + " " + userService.exists(email).getLastName() + "!");
         //setFriendsList();
-        messageService.addObserver(this);
+        messageService.getEventBus().subscribeWeak(this, Platform::runLater, 16, true);
         initializePost();
         // start();
         //anchorPagination.getChildren().add(pagination);
 
-        Thread thread = new Thread("Notification Thread") {
-            public void run() {
-                System.out.println("run by: " + getName());
-                Iterable<Event> eventsList = eventService.getMyEvents(myId);
-                LocalDate today = LocalDateTime.now().toLocalDate();
-
-                eventsList.forEach(x -> {
-                    LocalDateTime notificationDate = eventService.getLastNotificationDate(myId, x.getId());
-                    LocalDateTime eventDateStart = x.getStart();
-
-                    LocalDate dateEvent = eventDateStart.toLocalDate();
-                    LocalDate lastNotificationDate;
-
-                    if (notificationDate == null)
-                        lastNotificationDate = LocalDate.now();
-                    else
-                        lastNotificationDate = notificationDate.toLocalDate();
-
-                    long noOfDaysBetween = ChronoUnit.DAYS.between(today, dateEvent);
-                    System.out.println(ChronoUnit.DAYS.between(lastNotificationDate, today));
-
-                    //lastNotificationDate != today.minusDays(7)
-                    if (noOfDaysBetween == 7 && ((ChronoUnit.DAYS.between(lastNotificationDate, today) > 0) || notificationDate == null)) {
-                        showNotification(NotificationType.AWeekBefore, x);
-                        eventService.saveNotificationDate(myId, x.getId());
-                    } else if (noOfDaysBetween == 1 && lastNotificationDate != today.minusDays(1) && (((ChronoUnit.DAYS.between(lastNotificationDate, today) > 0) || notificationDate == null))) {
-                        showNotification(NotificationType.ADayBefore, x);
-                        eventService.saveNotificationDate(myId, x.getId());
-                    } else if (noOfDaysBetween == 0 && ((ChronoUnit.DAYS.between(lastNotificationDate, today) > 0) || notificationDate == null)) {
-                        showNotification(NotificationType.Today, x);
-                        eventService.saveNotificationDate(myId, x.getId());
-                    }
-                });
-            }
-        };
-
-        Platform.runLater(new Runnable() {
-            @Override
-            public void run() {
-                thread.run();
-                System.out.println(thread.getName());
-            }
-        });
+        eventService.getEventBus().subscribeWeak(reminderObserver, Platform::runLater, 64, false);
+        eventService.watchReminders(myId);
     }
 
+    /**
+     * Shows the reminders of the logged user sent by the reminder scheduler of EventService,
+     * on the JavaFX thread
+     */
+    private final Observer<EventChangeEvent> reminderObserver = event -> {
+        if (event.getType() == ChangeEventType.REMINDER && event.getUser().equals(myId))
+            showNotification(event.getNotificationType(), event.getData());
+    };
+
     public int itemsPerPage() {
         return 10;
     }
@@ -227,14 +207,15 @@ public class HomeController implements Observer<MessageChangeEvent> {
             }
         });
 
-        int nr_friends = friendshipService.getFriendships(myId).size();
-        if (nr_friends == 0)
-            pagination.setPageCount(1);
-        else {
-            double nr = (double) (nr_friends) / (double) itemsPerPage();
+        countLoader.load(asyncServices.countFriends(myId), nr_friends -> {
+            if (nr_friends == 0)
+                pagination.setPageCount(1);
+            else {
+                double nr = (double) (nr_friends) / (double) itemsPerPage();
 
-            pagination.setPageCount((int) ceil(nr));
-        }
+                pagination.setPageCount((int) ceil(nr));
+            }
+        });
     }
 
     public VBox createPageForListOfFriends(int pageIndex) {
@@ -247,44 +228,28 @@ public class HomeController implements Observer<MessageChangeEvent> {
         box.setLayoutX(t);
         box.setLayoutY(y);
         box.setAlignment(Pos.CENTER);
-        int page = pageIndex * itemsPerPage();
-
-        List<FriendshipDTO> friendshipDTOS = new ArrayList<>();
-        friendshipDTOS.addAll(friendshipService.getMyFriendsOnPage((pageIndex) * itemsPerPage(), itemsPerPage(), myId));
-        // friendshipDTOS.addAll(messageService.getMyConversationPage((pageIndex) * itemsPerPage(), itemsPerPage(), userService.exists(email).getId()));
-        List<UserDTO> users = new ArrayList<>();
-        friendshipDTOS.forEach(x -> {
-            if (userService.findPhoto(x.getUser().getEmail()) == null) {
-                UserDTO userDto = new UserDTO(x.getUser());
-                userDto.setUrlPhoto("/images/profile.png");
-                userDto.setEmailDTO(x.getUser().getEmail());
-                users.add(userDto);
-            } else {
-                UserDTO userDto = new UserDTO(x.getUser());
-                userDto.setUrlPhoto(userService.findPhoto(x.getUser().getEmail()));
-                userDto.setEmailDTO(x.getUser().getEmail());
-                users.add(userDto);
-            }
-        });
 
-        int nr = 0;
-        for (int i = page; i < page + friendshipDTOS.size(); i++) {
-            VBox row = new VBox();
-            int index = nr;
+        pageLoader.load(asyncServices.getFriendsOnPage(myId, pageIndex * itemsPerPage(), itemsPerPage()),
+                users -> fillListOfFriends(box, users));
+        return box;
+    }
+
+    private void fillListOfFriends(VBox box, List<UserDTO> users) {
+        for (UserDTO user : users) {
             ImageView imageView = new ImageView();
             Button button = new Button();
             Label label = new Label();
 
-            imageView.setImage(new Image(users.get(index).getUrlPhoto()));
+            imageView.setImage(ImageCache.getInstance().getProfilePhoto(user.getUrlPhoto(), 40));
             imageView.setFitHeight(40);
             imageView.setFitWidth(40);
-            ImageView img = new ImageView(new Image("/images/seeProfile.png"));
+            ImageView img = new ImageView(ImageCache.getInstance().get("/images/seeProfile.png"));
             img.setFitWidth(20);
             img.setFitHeight(20);
 
             button.setGraphic(img);
             button.setStyle("-fx-background-color: transparent");
-            label.setText("  " + users.get(index).getNume());
+            label.setText("  " + user.getNume());
             label.setPrefWidth(160);
 
 
@@ -296,10 +261,10 @@ public class HomeController implements Observer<MessageChangeEvent> {
 
             box.getChildren().add(pane);
             label.setOnMouseClicked(event -> {
-                conversationLabel.setText(users.get(index).getNume());
+                conversationLabel.setText(user.getNume());
                 conversationLabel.setVisible(true);
                 conversation.setVisible(true);
-                to = users.get(index).getIdUser();
+                to = user.getIdUser();
                 setConversation(to);
             });
             button.setOnAction(event -> {
@@ -317,7 +282,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
                     dialogStage.setScene(scene);
 
                     FriendProfileController friendProfileController = loader.getController();
-                    friendProfileController.setServices(userService, friendshipService, friendRequestService, postService, dialogStage, email, users.get(index).getEmailDTO());
+                    friendProfileController.setServices(userService, friendshipService, friendRequestService, postService, asyncServices, dialogStage, email, user.getEmailDTO());
 
                     dialogStage.show();
 
@@ -325,9 +290,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
                     e.printStackTrace();
                 }
             });
-            nr++;
         }
-        return box;
     }
 
     public void listofGroups() {
@@ -346,33 +309,32 @@ public class HomeController implements Observer<MessageChangeEvent> {
             }
         });
 
-        int nr_groups = messageService.myGroups(myId).size();
-        double nr = (double) (nr_groups) / (double) itemsPerPage();
+        countLoader.load(asyncServices.countGroups(myId), nr_groups -> {
+            double nr = (double) (nr_groups) / (double) itemsPerPage();
 
-        pagination.setPageCount((int) ceil(nr));
+            pagination.setPageCount((int) ceil(nr));
+        });
 
     }
 
     public VBox createPageForListOfGroups(int pageIndex) {
         VBox box = new VBox();
 
-        int page = pageIndex * itemsPerPage();
-
-        List<Group> groups = new ArrayList<>();
-        groups.addAll(messageService.getGroupsOnPage((pageIndex) * itemsPerPage(), itemsPerPage(), myId));
-
-        int nr = 0;
-        for (int i = page; i < page + groups.size(); i++) {
+        pageLoader.load(asyncServices.getGroupsOnPage(myId, pageIndex * itemsPerPage(), itemsPerPage()),
+                groups -> fillListOfGroups(box, groups));
+        return box;
+    }
 
-            int index = nr;
+    private void fillListOfGroups(VBox box, List<Group> groups) {
+        for (Group group : groups) {
             ImageView imageView = new ImageView();
             Button button = new Button();
             Label label = new Label();
-            imageView.setImage(new Image("/images/people.png"));
+            imageView.setImage(ImageCache.getInstance().get("/images/people.png"));
             imageView.setFitHeight(40);
             imageView.setFitWidth(40);
 
-            label.setText("  " + groups.get(index).getName());
+            label.setText("  " + group.getName());
             label.setPrefWidth(160);
             HBox row = new HBox();
             row.getChildren().add(imageView);
@@ -383,18 +345,15 @@ public class HomeController implements Observer<MessageChangeEvent> {
             label.setOnMouseClicked(event -> {
 
                 conversation.setVisible(true);
-                conversationLabel.setText(groups.get(index).getName());
+                conversationLabel.setText(group.getName());
                 conversationLabel.setVisible(true);
 
-                groupFinal.setId(groups.get(index).getId());
-                groupFinal.setMembers(groups.get(index).getMembers());
-                groupFinal.setMessages(groups.get(index).getMessages());
+                groupFinal.setId(group.getId());
+                groupFinal.setMembers(group.getMembers());
+                groupFinal.setMessages(group.getMessages());
                 setConversationGroup(groupFinal);
             });
-
-            nr++;
         }
-        return box;
     }
 
     public void listofSearching() {
@@ -413,10 +372,11 @@ public class HomeController implements Observer<MessageChangeEvent> {
             }
         });
 
-        int nr_searchs = userService.filter1(myId, searchField.getText()).size();
-        double nr = (double) (nr_searchs) / (double) itemsPerPage();
+        searchCountLoader.load(asyncServices.countSearch(myId, searchField.getText()), nr_searchs -> {
+            double nr = (double) (nr_searchs) / (double) itemsPerPage();
 
-        paginationSearch.setPageCount((int) ceil(nr));
+            paginationSearch.setPageCount((int) ceil(nr));
+        });
     }
 
     public VBox createPageForListOfSearching(int pageIndex) {
@@ -428,38 +388,23 @@ public class HomeController implements Observer<MessageChangeEvent> {
         box.setLayoutX(t);
         box.setLayoutY(y);
         box.setAlignment(Pos.CENTER);
-        int page = pageIndex * itemsPerPage();
-
-        List<User> userList = userService.getSearchOnPage((pageIndex) * itemsPerPage(), itemsPerPage(), myId, searchField.getText().toString());
 
-        List<UserDTO> users = new ArrayList<>();
-        userList.forEach(x -> {
-            if (userService.findPhoto(x.getEmail()) == null) {
-                UserDTO userDto = new UserDTO(x);
-                userDto.setUrlPhoto("/images/profile.png");
-                userDto.setEmailDTO(x.getEmail());
-                users.add(userDto);
-            } else {
-                UserDTO userDto = new UserDTO(x);
-                userDto.setUrlPhoto(userService.findPhoto(x.getEmail()));
-                userDto.setEmailDTO(x.getEmail());
-                users.add(userDto);
-            }
+        searchPageLoader.load(asyncServices.getSearchOnPage(myId, searchField.getText(), pageIndex * itemsPerPage(), itemsPerPage()),
+                userList -> fillListOfSearching(box, userList));
+        return box;
+    }
 
-        });
-        int nr = 0;
-        for (int i = page; i < page + userList.size(); i++) {
-            VBox row = new VBox();
-            int index = nr;
+    private void fillListOfSearching(VBox box, List<User> userList) {
+        for (User user : userList) {
 
             Label label = new Label();
             ImageView imageView = new ImageView();
 
-            imageView.setImage(new Image(users.get(index).getUrlPhoto()));
+            imageView.setImage(ImageCache.getInstance().getProfilePhoto(userService.findPhoto(user.getEmail()), 40));
             imageView.setFitHeight(40);
             imageView.setFitWidth(40);
 
-            label.setText("  " + userList.get(index).getLastName() + " " + userList.get(index).getFirstName());
+            label.setText("  " + user.getLastName() + " " + user.getFirstName());
             label.setPrefWidth(160);
 
             GridPane pane = new GridPane();
@@ -483,7 +428,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
                     dialogStage.setScene(scene);
 
                     FriendProfileController friendProfileController = loader.getController();
-                    friendProfileController.setServices(userService, friendshipService, friendRequestService, postService, dialogStage, email, userList.get(index).getEmail());
+                    friendProfileController.setServices(userService, friendshipService, friendRequestService, postService, asyncServices, dialogStage, email, user.getEmail());
 
                     dialogStage.show();
 
@@ -491,10 +436,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
                     e.printStackTrace();
                 }
             });
-
-            nr++;
         }
-        return box;
     }
 
     public void onHandleBack(ActionEvent actionEvent) {
@@ -516,25 +458,24 @@ public class HomeController implements Observer<MessageChangeEvent> {
     }
 
     private void setConversation(Long friendId) {
+        conversationLoader.load(asyncServices.getConversation(myId, friendId), this::showConversation);
+    }
+
+    private void showConversation(List<Message> messages) {
 
         conversationList.getChildren().clear();
 
         conversationList.setFillWidth(true);
-        List<Message> messages = messageService.getConversation(myId, friendId);
-        Collections.reverse(messages);
         messages.forEach(x -> {
             HBox row = new HBox();
             ImageView profilePhoto = new ImageView();
             Label text = new Label();
 
 
-            if (userService.findPhoto(x.getFrom().getEmail()) != null)
-                profilePhoto.setImage(new Image(userService.findPhoto(x.getFrom().getEmail())));
-            else
-                profilePhoto.setImage(new Image("/images/profile.png"));
+            profilePhoto.setImage(ImageCache.getInstance().getProfilePhoto(userService.findPhoto(x.getFrom().getEmail()), 30));
 
             ImageView replyImg = new ImageView();
-            replyImg.setImage(new Image("/images/reply.png"));
+            replyImg.setImage(ImageCache.getInstance().get("/images/reply.png"));
             replyImg.setFitWidth(15);
             replyImg.setFitHeight(15);
 
@@ -606,9 +547,11 @@ public class HomeController implements Observer<MessageChangeEvent> {
     }
 
     private void setConversationGroup(Group groupFinal) {
-        conversationList.getChildren().clear();
+        conversationLoader.load(asyncServices.getConversationGroup(groupFinal.getId()), this::showConversationGroup);
+    }
 
-        List<Message> messages = messageService.convertMessages(groupFinal.getMessages());
+    private void showConversationGroup(List<Message> messages) {
+        conversationList.getChildren().clear();
 
        // Collections.reverse(messages);
         messages.forEach(x -> {
@@ -617,15 +560,12 @@ public class HomeController implements Observer<MessageChangeEvent> {
             ImageView profilePhoto = new ImageView();
             Label text = new Label();
             row.setSpacing(2);
-            if (userService.findPhoto(x.getFrom().getEmail()) != null)
-                profilePhoto.setImage(new Image(userService.findPhoto(x.getFrom().getEmail())));
-            else
-                profilePhoto.setImage(new Image("/images/profile.png"));
+            profilePhoto.setImage(ImageCache.getInstance().getProfilePhoto(userService.findPhoto(x.getFrom().getEmail()), 45));
             profilePhoto.setFitWidth(45);
             profilePhoto.setFitHeight(45);
 
             ImageView replyImg = new ImageView();
-            replyImg.setImage(new Image("/images/reply.png"));
+            replyImg.setImage(ImageCache.getInstance().get("/images/reply.png"));
             replyImg.setFitWidth(20);
             replyImg.setFitHeight(20);
 
@@ -692,23 +632,31 @@ public class HomeController implements Observer<MessageChangeEvent> {
     }
 
 
+    /**
+     * The message is sent in the background; the conversation is refreshed by the event of MessageService
+     */
     public void onSendMessage(MouseEvent actionEvent) {
         String message = writeMessageField.getText();
+        CompletableFuture<Void> sent;
         if (friendsGroupsCheckBox.isSelected()) {
             List<Long> recipients = new ArrayList<>();
             groupFinal.getMembers().forEach(x -> {
-                if (!x.equals(userService.exists(email).getId()))
+                if (!x.equals(myId))
                     recipients.add(x);
             });
             MessageDTO messageDTO = new MessageDTO(myId, recipients, message, LocalDateTime.now(), null);
-            messageService.sendMessageGroup(groupFinal, messageDTO);
-            writeMessageField.setText("");
+            // a copy without the messages, so the background call does not change the shown group
+            Group group = new Group();
+            group.setId(groupFinal.getId());
+            group.setMembers(groupFinal.getMembers());
+            sent = asyncServices.run(() -> messageService.sendMessageGroup(group, messageDTO));
         } else {
             List<Long> tos = new ArrayList<>();
             tos.add(to);
-            messageService.sendMessage(myId, tos, message);
-            writeMessageField.setText("");
+            sent = asyncServices.run(() -> messageService.sendMessage(myId, tos, message));
         }
+        PageLoader.whenLoaded(sent, done -> writeMessageField.setText(""),
+                error -> MessageAlert.showErrorMessage(stage, error.getMessage()));
     }
 
     public void onXClicked(MouseEvent mouseEvent) {
@@ -735,7 +683,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
             dialogStage.setMaximized(true);
 
             MyProfileController userProfileController = loader.getController();
-            userProfileController.setServices(userService, friendshipService, friendRequestService, messageService, postService, dialogStage, email);
+            userProfileController.setServices(userService, friendshipService, friendRequestService, messageService, postService, asyncServices, dialogStage, email);
 
             dialogStage.show();
 
@@ -782,7 +730,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
             dialogStage.setScene(scene);
 
             MessagesController messagesController = loader.getController();
-            messagesController.setServices(messageService, friendshipService, friendRequestService, userService,postService, dialogStage, email);
+            messagesController.setServices(messageService, friendshipService, friendRequestService, userService, postService, asyncServices, dialogStage, email);
 
             dialogStage.show();
 
@@ -806,7 +754,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
             dialogStage.setScene(scene);
 
             AddEventController addEventController = loader.getController();
-            addEventController.setServices(eventService, dialogStage, userService.exists(email).getId());
+            addEventController.setServices(eventService, dialogStage, myId);
 
             dialogStage.show();
 
@@ -817,23 +765,20 @@ public class HomeController implements Observer<MessageChangeEvent> {
 
     public void refreshList() {
         eventListType = EventListType.CreatedByMeEvents;
+        eventsShown = EVENTS_PAGE_SIZE;
         openEvents();
     }
 
     public void logout(MouseEvent mouseEvent) {
+        messageService.removeObserver(this);
+        eventService.removeObserver(reminderObserver);
+        eventService.unwatchReminders(myId);
         stage.close();
     }
 
     public void openEvents() {
 
         scrollerPosts.setVisible(false);
-        List<Event> events = new ArrayList<>();
-
-        switch (eventListType) {
-            case AllEvents -> events = eventService.getAllEvents(userService.exists(email).getId());
-            case MyEvents -> events = eventService.getMyEvents(userService.exists(email).getId());
-            case CreatedByMeEvents -> events = eventService.getCreatedByMeEvents(userService.exists(email).getId());
-        }
         eventsBox.getStyleClass().add("vbox-event");
         eventsBox.setVisible(true);
         scroller.setVisible(true);
@@ -862,6 +807,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
             @Override
             public void handle(MouseEvent event) {
                 eventListType = EventListType.MyEvents;
+                eventsShown = EVENTS_PAGE_SIZE;
                 stackpane.setVisible(false);
                 openEvents();
             }
@@ -871,6 +817,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
             @Override
             public void handle(MouseEvent event) {
                 eventListType = EventListType.AllEvents;
+                eventsShown = EVENTS_PAGE_SIZE;
                 stackpane.setVisible(false);
                 openEvents();
             }
@@ -880,6 +827,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
             @Override
             public void handle(MouseEvent event) {
                 eventListType = EventListType.CreatedByMeEvents;
+                eventsShown = EVENTS_PAGE_SIZE;
                 ImageView imageView = new ImageView();
                 imageView.getStyleClass().add("image-add-event");
                 imageView.setFitWidth(55);
@@ -900,7 +848,14 @@ public class HomeController implements Observer<MessageChangeEvent> {
         });
 
         eventsBox.setSpacing(20);
-        events.forEach(x -> {
+        eventsLoader.load(asyncServices.getEventsOnPage(eventListType, myId, 0, eventsShown), this::showEvents);
+    }
+
+    /**
+     * @param events the shown events, each with its number of subscribers
+     */
+    private void showEvents(Map<Event, Integer> events) {
+        events.forEach((x, subscribersCount) -> {
             HBox row = new HBox();
             VBox elem = new VBox();
             VBox removeImageBox = new VBox();
@@ -954,7 +909,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
             location.setWrapText(true);
             location.setMaxWidth(250);
 
-            eventImage.setImage(new Image("/images/event-image.png"));
+            eventImage.setImage(ImageCache.getInstance().get("/images/event-image.png"));
             eventImage.getStyleClass().add("event-image");
             row.getStyleClass().add("events-background");
 
@@ -971,6 +926,8 @@ public class HomeController implements Observer<MessageChangeEvent> {
             elem.getChildren().add(description);
             elem.getChildren().add(dateBox);
             elem.getChildren().add(locationBox);
+            Label subscribersLabel = new Label(subscribersCount + (subscribersCount == 1 ? " subscriber" : " subscribers"));
+            elem.getChildren().add(subscribersLabel);
             //  elem.getChildren().add(endDate);
 
             //list of subs
@@ -979,7 +936,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
 
             switch (eventListType) {
                 case AllEvents -> {
-                    removeImage.setImage(new Image("/images/subs-v2.png"));
+                    removeImage.setImage(ImageCache.getInstance().get("/images/subs-v2.png"));
                     removeImage.getStyleClass().add("image-ripple");
                     removeImage.setFitHeight(60);
                     removeImage.setFitWidth(60);
@@ -987,14 +944,14 @@ public class HomeController implements Observer<MessageChangeEvent> {
 //                    is_open_subs = false;
                 }
                 case MyEvents -> {
-                    removeImage.setImage(new Image("/images/uns-v1.png"));
+                    removeImage.setImage(ImageCache.getInstance().get("/images/uns-v1.png"));
                     removeImage.setFitHeight(65);
                     removeImage.setFitWidth(65);
 //                    scrollerSubs.setVisible(false);
 //                    is_open_subs = false;
                 }
                 case CreatedByMeEvents -> {
-                    removeImage.setImage(new Image("/images/remove.png"));
+                    removeImage.setImage(ImageCache.getInstance().get("/images/remove.png"));
                     removeImage.setFitHeight(35);
                     removeImage.setFitWidth(35);
 //                    scrollerSubs.setVisible(false);
@@ -1026,8 +983,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
                                 titleBox.getChildren().add(titleEv);
                                 rowSubs.getChildren().add(titleBox);
 
-                                List<Long> subscribers = x.getSubscribers();
-                                if(subscribers.size() == 0) {
+                                if(subscribersCount == 0) {
                                     HBox sub = new HBox();
                                     Label name = new Label();
                                     name.setText("No subscribers yet!");
@@ -1035,13 +991,14 @@ public class HomeController implements Observer<MessageChangeEvent> {
                                     rowSubs.getChildren().add(sub);
                                 }
                                 else {
-                                    subscribers.forEach(k -> {
-                                        HBox sub = new HBox();
-                                        Label name = new Label();
-                                        name.setText(userService.getUserByID(k).getFirstName() + " " + userService.getUserByID(k).getLastName());
-                                        sub.getChildren().add(name);
-                                        rowSubs.getChildren().add(sub);
-                                    });
+                                    PageLoader.whenLoaded(asyncServices.getUsers(x.getSubscribers()), subscribers ->
+                                            subscribers.forEach(k -> {
+                                                HBox sub = new HBox();
+                                                Label name = new Label();
+                                                name.setText(k.getNume());
+                                                sub.getChildren().add(name);
+                                                rowSubs.getChildren().add(sub);
+                                            }));
                                 }
 
                                 scrollerSubs.setContent(rowSubs);
@@ -1057,30 +1014,13 @@ public class HomeController implements Observer<MessageChangeEvent> {
             removeImageBox.getChildren().add(imageMore);
 
             removeImage.setOnMouseClicked(y -> {
-
-                switch (eventListType) {
-                    case AllEvents -> {
-                        eventService.subscribe(x.getId(), myId);
-                        if (ChronoUnit.DAYS.between(x.getStart().toLocalDate(), LocalDateTime.now().toLocalDate()) == 0) {
-                            showNotification(NotificationType.Today, x);
-                            eventService.saveNotificationDate(myId, x.getId());
-                        }
-                        eventListType = EventListType.AllEvents;
-                        openEvents();
-                    }
-
-                    case MyEvents -> {
-                        eventService.unsubscribe(x.getId(), myId);
-                        eventListType = EventListType.MyEvents;
-                        openEvents();
-                    }
-
-                    case CreatedByMeEvents -> {
-                        eventService.removeEvent(x.getId());
-                        eventListType = EventListType.CreatedByMeEvents;
-                        openEvents();
-                    }
-                }
+                CompletableFuture<Void> changed = switch (eventListType) {
+                    case AllEvents -> asyncServices.run(() -> eventService.subscribe(x.getId(), myId));
+                    case MyEvents -> asyncServices.run(() -> eventService.unsubscribe(x.getId(), myId));
+                    case CreatedByMeEvents -> asyncServices.run(() -> eventService.removeEvent(x.getId()));
+                };
+                PageLoader.whenLoaded(changed, done -> openEvents(),
+                        error -> MessageAlert.showErrorMessage(stage, error.getMessage()));
             });
 
             title.setAlignment(Pos.CENTER);
@@ -1093,6 +1033,16 @@ public class HomeController implements Observer<MessageChangeEvent> {
             eventsBox.getChildren().add(row);
         });
 
+        if (events.size() == eventsShown) {
+            Label showMore = new Label("Show more events");
+            showMore.getStyleClass().add("background-event-category");
+            showMore.setOnMouseClicked(event -> {
+                eventsShown += EVENTS_PAGE_SIZE;
+                openEvents();
+            });
+            eventsBox.getChildren().add(showMore);
+        }
+
         scroller.setContent(eventsBox);
         scroller.setHbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
         scroller.setVbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
@@ -1116,36 +1066,36 @@ public class HomeController implements Observer<MessageChangeEvent> {
         conversationLabel.setVisible(false);
     }
 
+    /**
+     * Loads the page of the home feed, with the authors of the posts, and the number of posts in the background
+     */
     public void initializePost() {
+        postsCountLoader.load(asyncServices.countHomePosts(myId), count -> numberOfPost = count);
+        postsLoader.load(asyncServices.getHomePostsOnPage(myId, leftLimitPosts, postOnPage), this::showPosts);
+    }
+
+    /**
+     * @param posts the posts of the page, each with its author
+     */
+    private void showPosts(Map<Post, UserDTO> posts) {
         vBoxPosts.getChildren().clear();
         vBoxPosts.setStyle("-fx-border-radius: 20");
-        numberOfPost = postService.getAllPosts().size();
-
-        int nr = leftLimitPosts + postOnPage;
-        if (nr > numberOfPost)
-            nr = numberOfPost;
-
-        List<FriendshipDTO> friendshipDTOS = friendshipService.getFriendships(myId);
-        List<Post> postList = postService.getHomePostsOnPage(leftLimitPosts, nr-leftLimitPosts, friendshipDTOS);
 
-        postList.forEach(x -> {
+        posts.forEach((x, author) -> {
             VBox box = new VBox();
             box.getStyleClass().add("vbox-post");
             HBox hbox = new HBox();
             box.setPrefWidth(400);
             box.setFillWidth(true);
             ImageView profile = new ImageView();
-            if (userService.findPhoto(userService.getUserByID(x.getAdmin()).getEmail()) == null)
-                profile.setImage(new Image("/images/profile.png"));
-            else
-                profile.setImage(new Image(userService.findPhoto(userService.getUserByID(x.getAdmin()).getEmail())));
+            profile.setImage(ImageCache.getInstance().getProfilePhoto(author.getUrlPhoto(), 50));
 
             profile.setFitHeight(50);
             profile.setFitWidth(50);
 
             VBox data = new VBox();
             Label name = new Label();
-            name.setText(userService.getUserByID(x.getAdmin()).getFirstName() + " " + userService.getUserByID(x.getAdmin()).getLastName());
+            name.setText(author.getNume());
             name.getStyleClass().add("label-name-post");
             data.getChildren().add(name);
             Label date = new Label("Posted on " + x.getDate().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
@@ -1169,7 +1119,7 @@ public class HomeController implements Observer<MessageChangeEvent> {
 
             if(x.getUrl() != null){
                 ImageView img = new ImageView();
-                img.setImage(new Image(x.getUrl()));
+                img.setImage(ImageCache.getInstance().get(x.getUrl(), 160, 160));
                 HBox rowImage = new HBox();
                 img.setFitWidth(160);
                 img.setFitHeight(160);
@@ -41,13 +41,14 @@ public class LoginController {
     FriendRequestService friendRequestService;
     EventService eventService;
     PostService postService;
+    AsyncServices asyncServices;
 
     private String email;
 
     @FXML
     private TextField loginField;
 
-    public void setServices(UserService service, FriendshipService fservice, MessageService messageService, FriendRequestService friendRequestService, EventService eventService, PostService postService, Stage stage) {
+    public void setServices(UserService service, FriendshipService fservice, MessageService messageService, FriendRequestService friendRequestService, EventService eventService, PostService postService, AsyncServices asyncServices, Stage stage) {
 
         this.userService = service;
         this.friendshipService = fservice;
@@ -56,6 +57,7 @@ public class LoginController {
         this.stage = stage;
         this.eventService = eventService;
         this.postService = postService;
+        this.asyncServices = asyncServices;
     }
 
     public void initialize() {
@@ -85,7 +87,7 @@ public class LoginController {
             PageDTO page = new PageDTO(userService.exists(email), userService.exists(email).getFriendsList());
 
             HomeController userViewController = loader.getController();
-            userViewController.setServices(userService, friendshipService, friendRequestService, messageService, eventService, postService, dialogStage, email, page);
+            userViewController.setServices(userService, friendshipService, friendRequestService, messageService, eventService, postService, asyncServices, dialogStage, email, page);
 
             dialogStage.show();
         } catch (IOException e) {
@@ -2,8 +2,10 @@ package com.example.lab6.controller;
 
 import com.example.lab6.model.*;
 import com.example.lab6.service.*;
+import com.example.lab6.utils.ImageCache;
 import com.example.lab6.utils.events.MessageChangeEvent;
 import com.example.lab6.utils.observer.Observer;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXMLLoader;
 import javafx.geometry.Pos;
@@ -11,7 +13,6 @@ import javafx.geometry.Rectangle2D;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
@@ -31,7 +32,9 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import static java.lang.Math.ceil;
 
@@ -66,6 +69,13 @@ public class MessagesController implements Observer<MessageChangeEvent> {
     private UserService userService;
     private FriendRequestService friendRequestService;
     private PostService postService;
+    private AsyncServices asyncServices;
+    private final PageLoader pageLoader = new PageLoader();
+    private final PageLoader countLoader = new PageLoader();
+    private final PageLoader conversationLoader = new PageLoader();
+    private final PageLoader conversationCountLoader = new PageLoader();
+    private final PageLoader membersLoader = new PageLoader();
+    private static final int REPLY_THREAD_LIMIT = 20;
     Stage stage;
     private String email;
     private Long myId;
@@ -95,7 +105,7 @@ public class MessagesController implements Observer<MessageChangeEvent> {
 
     }
 
-    public void setServices(MessageService messageService, FriendshipService friendshipService, FriendRequestService friendRequestService, UserService userService, PostService postService, Stage dialogStage, String email) {
+    public void setServices(MessageService messageService, FriendshipService friendshipService, FriendRequestService friendRequestService, UserService userService, PostService postService, AsyncServices asyncServices, Stage dialogStage, String email) {
         this.messageService = messageService;
         this.stage = dialogStage;
         this.email = email;
@@ -103,9 +113,10 @@ public class MessagesController implements Observer<MessageChangeEvent> {
         this.friendRequestService = friendRequestService;
         this.userService = userService;
         this.postService = postService;
-        messageService.addObserver(this);
-        friendsChat();
+        this.asyncServices = asyncServices;
         this.myId = this.userService.exists(email).getId();
+        messageService.getEventBus().subscribeWeak(this, Platform::runLater, 16, true);
+        friendsChat();
         friendsBool.set(true);
     }
 
@@ -144,17 +155,14 @@ public class MessagesController implements Observer<MessageChangeEvent> {
             }
         });
 
-        int nr_friends = messageService.getMyFriendsWithMessages(userService.exists(email).getId()).size();
-
-
-        if (nr_friends == 0)
-            pagination.setPageCount(1);
-        else {
-            double nr = (double) (nr_friends) / (double) itemsPerPage();
-            pagination.setPageCount((int) ceil(nr));
-        }
-
-
+        countLoader.load(asyncServices.countConversationPartners(myId), nr_friends -> {
+            if (nr_friends == 0)
+                pagination.setPageCount(1);
+            else {
+                double nr = (double) (nr_friends) / (double) itemsPerPage();
+                pagination.setPageCount((int) ceil(nr));
+            }
+        });
     }
 
     public VBox createPageForFriendsChat(int pageIndex) {
@@ -166,38 +174,25 @@ public class MessagesController implements Observer<MessageChangeEvent> {
         box.setLayoutX(t);
         box.setLayoutY(y);
         box.setAlignment(Pos.CENTER);
-        int page = pageIndex * itemsPerPage();
-
-        List<FriendshipDTO> friendshipDTOS = new ArrayList<>();
-        friendshipDTOS.addAll(messageService.getMyConversationPage((pageIndex) * itemsPerPage(), itemsPerPage(), userService.exists(email).getId()));
-        List<UserDTO> users = new ArrayList<>();
-        friendshipDTOS.forEach(x -> {
-            if (userService.findPhoto(x.getUser().getEmail()) == null) {
-                UserDTO userDto = new UserDTO(x.getUser());
-                userDto.setUrlPhoto("/images/profile.png");
-                userDto.setEmailDTO(x.getUser().getEmail());
-                users.add(userDto);
-            } else {
-                UserDTO userDto = new UserDTO(x.getUser());
-                userDto.setUrlPhoto(userService.findPhoto(x.getUser().getEmail()));
-                userDto.setEmailDTO(x.getUser().getEmail());
-                users.add(userDto);
-            }
 
-        });
+        pageLoader.load(asyncServices.getConversationPartnersOnPage(myId, pageIndex * itemsPerPage(), itemsPerPage()),
+                users -> fillFriendsChat(box, users));
+        return box;
+    }
 
+    private void fillFriendsChat(VBox box, List<UserDTO> users) {
         int nr = 0;
-        for (int i = page; i < page + friendshipDTOS.size(); i++) {
+        for (int i = 0; i < users.size(); i++) {
             VBox row = new VBox();
             int index = nr;
             ImageView imageView = new ImageView();
             Button button = new Button();
             Label label = new Label();
 
-            imageView.setImage(new Image(users.get(index).getUrlPhoto()));
+            imageView.setImage(ImageCache.getInstance().getProfilePhoto(users.get(index).getUrlPhoto(), 40));
             imageView.setFitHeight(40);
             imageView.setFitWidth(40);
-            ImageView img = new ImageView(new Image("/images/seeProfile.png"));
+            ImageView img = new ImageView(ImageCache.getInstance().get("/images/seeProfile.png"));
             img.setFitWidth(20);
             img.setFitHeight(20);
 
@@ -215,18 +210,14 @@ public class MessagesController implements Observer<MessageChangeEvent> {
             box.getChildren().add(pane);
             label.setOnMouseClicked(event -> {
                 userImage.setVisible(true);
-                if (users.get(index).getUrlPhoto() != null)
-                    userImage.setImage(new Image(users.get(index).getUrlPhoto()));
-                else
-                    userImage.setImage(new Image("/images/profile.png"));
+                userImage.setImage(ImageCache.getInstance().getProfilePhoto(users.get(index).getUrlPhoto(), 88));
                 userName.setVisible(true);
                 userName.setText(users.get(index).getNume());
 
 
                 friendId = users.get(index).getIdUser();
-                numberOfMessages = messageService.getConversation(myId, friendId).size();
-                setConversation(friendId);
                 leftLimit = 0;
+                setConversation(friendId);
 
             });
             button.setOnAction(event -> {
@@ -244,7 +235,7 @@ public class MessagesController implements Observer<MessageChangeEvent> {
                     dialogStage.setScene(scene);
 
                     FriendProfileController friendProfileController = loader.getController();
-                    friendProfileController.setServices(userService, friendshipService, friendRequestService, postService, dialogStage, email, users.get(index).getEmailDTO());
+                    friendProfileController.setServices(userService, friendshipService, friendRequestService, postService, asyncServices, dialogStage, email, users.get(index).getEmailDTO());
 
                     dialogStage.show();
 
@@ -256,35 +247,33 @@ public class MessagesController implements Observer<MessageChangeEvent> {
 
             nr++;
         }
-        return box;
     }
 
 
+    /**
+     * Loads the number of messages, for scrolling, and the page of messages from leftLimit
+     */
     private void setConversation(Long friendId) {
+        conversationCountLoader.load(asyncServices.countConversation(myId, friendId), count -> numberOfMessages = count);
+        conversationLoader.load(asyncServices.getConversationOnPage(myId, friendId, leftLimit, messagesPerPage()),
+                this::showConversation);
+    }
 
-        chat.getChildren().clear();
-        numberOfMessages = messageService.getConversation(myId, friendId).size();
+    private void showConversation(List<Message> messages) {
 
-        int nr = leftLimit + messagesPerPage();
-        if (nr > numberOfMessages)
-            nr = numberOfMessages;
+        chat.getChildren().clear();
 
         chat.setFillWidth(true);
-        List<Message> messages = messageService.getMyMessagesOnPage(leftLimit, nr - leftLimit, myId, friendId);
-        Collections.reverse(messages);
         messages.forEach(x -> {
             HBox row = new HBox();
             ImageView profilePhoto = new ImageView();
             Label text = new Label();
 
 
-            if (userService.findPhoto(x.getFrom().getEmail()) != null)
-                profilePhoto.setImage(new Image(userService.findPhoto(x.getFrom().getEmail())));
-            else
-                profilePhoto.setImage(new Image("/images/profile.png"));
+            profilePhoto.setImage(ImageCache.getInstance().getProfilePhoto(userService.findPhoto(x.getFrom().getEmail()), 45));
 
             ImageView replyImg = new ImageView();
-            replyImg.setImage(new Image("/images/reply.png"));
+            replyImg.setImage(ImageCache.getInstance().get("/images/reply.png"));
             replyImg.setFitWidth(20);
             replyImg.setFitHeight(20);
 
@@ -311,7 +300,7 @@ public class MessagesController implements Observer<MessageChangeEvent> {
                 reply_date.getChildren().add(date_sent);
 
                 row.getChildren().add(reply_date);
-                row.getChildren().add(text);
+                row.getChildren().add(withReply(x, text));
                 row.getChildren().add(profilePhoto);
                 row.setAlignment(Pos.CENTER_RIGHT);
                 row.setPrefHeight(100);
@@ -327,7 +316,7 @@ public class MessagesController implements Observer<MessageChangeEvent> {
                 reply_date.getChildren().add(date_sent);
 
                 row.getChildren().add(profilePhoto);
-                row.getChildren().add(text);
+                row.getChildren().add(withReply(x, text));
                 row.getChildren().add(reply_date);
                 row.setAlignment(Pos.CENTER_LEFT);
                 row.setPrefHeight(100);
@@ -372,14 +361,15 @@ public class MessagesController implements Observer<MessageChangeEvent> {
         });
 
 
-        int nr_groups = messageService.myGroups(myId).size();
-        if (nr_groups == 0)
-            pagination.setPageCount(1);
-        else {
-            double nr = (double) (nr_groups) / (double) itemsPerPage();
+        countLoader.load(asyncServices.countGroups(myId), nr_groups -> {
+            if (nr_groups == 0)
+                pagination.setPageCount(1);
+            else {
+                double nr = (double) (nr_groups) / (double) itemsPerPage();
 
-            pagination.setPageCount((int) ceil(nr));
-        }
+                pagination.setPageCount((int) ceil(nr));
+            }
+        });
     }
 
     public VBox createPageForGroupsChat(int pageIndex) {
@@ -392,21 +382,21 @@ public class MessagesController implements Observer<MessageChangeEvent> {
         box.setLayoutY(y);
 
         box.setAlignment(Pos.CENTER);
-        int page = pageIndex * itemsPerPage();
-
-
-        List<Group> groups = new ArrayList<>();
-        groups.addAll(messageService.getGroupsOnPage((pageIndex) * itemsPerPage(), itemsPerPage(), userService.exists(email).getId()));
 
+        pageLoader.load(asyncServices.getGroupsOnPage(myId, pageIndex * itemsPerPage(), itemsPerPage()),
+                groups -> fillGroupsChat(box, groups));
+        return box;
+    }
 
+    private void fillGroupsChat(VBox box, List<Group> groups) {
         int nr = 0;
-        for (int i = page; i < page + groups.size(); i++) {
+        for (int i = 0; i < groups.size(); i++) {
             VBox row = new VBox();
             int index = nr;
             ImageView imageView = new ImageView();
             Button button = new Button();
             Label label = new Label();
-            imageView.setImage(new Image("/images/people.png"));
+            imageView.setImage(ImageCache.getInstance().get("/images/people.png"));
             imageView.setFitHeight(40);
             imageView.setFitWidth(40);
 
@@ -419,7 +409,7 @@ public class MessagesController implements Observer<MessageChangeEvent> {
             box.getChildren().add(pane);
             label.setOnMouseClicked(event -> {
                 userImage.setVisible(true);
-                userImage.setImage(new Image("/images/people.png"));
+                userImage.setImage(ImageCache.getInstance().get("/images/people.png"));
                 userName.setText("   " + groups.get(index).getName());
                 menuImage.setVisible(true);
                 groupFinal.setId(groups.get(index).getId());
@@ -431,37 +421,33 @@ public class MessagesController implements Observer<MessageChangeEvent> {
 
             nr++;
         }
-        return box;
     }
 
 
+    /**
+     * Loads the number of messages, for scrolling, and the page of messages from leftLimit
+     */
     private void setConversationGroup(Group groupFinal) {
-        chat.getChildren().clear();
-        numberOfMessages = messageService.convertMessages(messageService.find_group(groupFinal.getId()).getMessages()).size();
-        List<Message> messagesList = messageService.convertMessages(messageService.find_group(groupFinal.getId()).getMessages());
-
-        int nr = leftLimit + messagesPerPage();
-        if (nr > numberOfMessages)
-            nr = numberOfMessages;
+        conversationCountLoader.load(asyncServices.countGroupMessages(groupFinal.getId()), count -> numberOfMessages = count);
+        conversationLoader.load(asyncServices.getConversationGroupOnPage(groupFinal.getId(), leftLimit, messagesPerPage()),
+                this::showConversationGroup);
+    }
 
-        List<Message> messages = messageService.getGroupMessagesOnPage(leftLimit, nr - leftLimit, messagesList);
+    private void showConversationGroup(List<Message> messages) {
+        chat.getChildren().clear();
 
-        Collections.reverse(messages);
         messages.forEach(x -> {
             HBox row = new HBox();
             row.setPrefHeight(100);
             ImageView profilePhoto = new ImageView();
             Label text = new Label();
             row.setSpacing(2);
-            if (userService.findPhoto(x.getFrom().getEmail()) != null)
-                profilePhoto.setImage(new Image(userService.findPhoto(x.getFrom().getEmail())));
-            else
-                profilePhoto.setImage(new Image("/images/profile.png"));
+            profilePhoto.setImage(ImageCache.getInstance().getProfilePhoto(userService.findPhoto(x.getFrom().getEmail()), 45));
             profilePhoto.setFitWidth(45);
             profilePhoto.setFitHeight(45);
 
             ImageView replyImg = new ImageView();
-            replyImg.setImage(new Image("/images/reply.png"));
+            replyImg.setImage(ImageCache.getInstance().get("/images/reply.png"));
             replyImg.setFitWidth(20);
             replyImg.setFitHeight(20);
 
@@ -486,7 +472,7 @@ public class MessagesController implements Observer<MessageChangeEvent> {
                 reply_date.getChildren().add(date_sent);
 
                 row.getChildren().add(reply_date);
-                row.getChildren().add(text);
+                row.getChildren().add(withReply(x, text));
                 row.getChildren().add(profilePhoto);
                 row.setAlignment(Pos.CENTER_RIGHT);
 
@@ -500,7 +486,7 @@ public class MessagesController implements Observer<MessageChangeEvent> {
                 reply_date.getChildren().add(date_sent);
 
                 row.getChildren().add(profilePhoto);
-                row.getChildren().add(text);
+                row.getChildren().add(withReply(x, text));
                 row.getChildren().add(reply_date);
                 row.setAlignment(Pos.CENTER_LEFT);
 
@@ -527,6 +513,37 @@ public class MessagesController implements Observer<MessageChangeEvent> {
         scroller.setHvalue(0.5);
     }
 
+    /**
+     * @return the text of the message, under the message it replies to if it is a reply;
+     * clicking the reply shows the thread it belongs to
+     */
+    private Node withReply(Message message, Label text) {
+        if (message.getReply() == null)
+            return text;
+        Label replied = new Label("Replied to:  " + message.getReply().getMessage());
+        replied.getStyleClass().add("date_message");
+        replied.setWrapText(true);
+        replied.setMaxWidth(300);
+        replied.setOnMouseClicked(event -> PageLoader.whenLoaded(
+                asyncServices.getReplyThread(message.getReply().getId(), REPLY_THREAD_LIMIT), this::showReplyThread));
+        VBox box = new VBox(replied, text);
+        box.setSpacing(2);
+        box.setAlignment(text.getAlignment());
+        return box;
+    }
+
+    /**
+     * @param thread a message and the messages it replies to, newest first
+     */
+    private void showReplyThread(List<Message> thread) {
+        List<Message> oldestFirst = new ArrayList<>(thread);
+        Collections.reverse(oldestFirst);
+        String text = oldestFirst.stream()
+                .map(x -> x.getFrom().getFirstName() + " " + x.getFrom().getLastName() + ": " + x.getMessage())
+                .collect(Collectors.joining("\n"));
+        MessageAlert.showMessage(stage, Alert.AlertType.INFORMATION, "Reply thread", text);
+    }
+
     public void onCreateGroup(ActionEvent actionEvent) {
         addMembersToGroupLabel.setVisible(true);
         groupsChat();
@@ -550,10 +567,11 @@ public class MessagesController implements Observer<MessageChangeEvent> {
             }
         });
 
-        int nr_groups = userService.friends(myId, searchField.getText()).size();
-        double nr = (double) (nr_groups) / (double) itemsPerPage();
+        countLoader.load(asyncServices.countFriendsMatching(myId, searchField.getText()), nr_groups -> {
+            double nr = (double) (nr_groups) / (double) itemsPerPage();
 
-        pagination.setPageCount((int) ceil(nr));
+            pagination.setPageCount((int) ceil(nr));
+        });
     }
 
     public VBox createPageForFriendsForGroupChat(int pageIndex) {
@@ -565,29 +583,15 @@ public class MessagesController implements Observer<MessageChangeEvent> {
         box.setLayoutX(t);
         box.setLayoutY(y);
         box.setAlignment(Pos.CENTER);
-        int page = pageIndex * itemsPerPage();
-
-        List<User> users = new ArrayList<>();
-        users.addAll(userService.searchingFriends((pageIndex) * itemsPerPage(), itemsPerPage(), myId, searchField.getText()));
-
-        List<UserDTO> usersDTO = new ArrayList<>();
-        users.forEach(x -> {
-            if (userService.findPhoto(x.getEmail()) == null) {
-                UserDTO userDto = new UserDTO(x);
-                userDto.setUrlPhoto("/images/profile.png");
-                userDto.setEmailDTO(x.getEmail());
-                usersDTO.add(userDto);
-            } else {
-                UserDTO userDto = new UserDTO(x);
-                userDto.setUrlPhoto(userService.findPhoto(x.getEmail()));
-                userDto.setEmailDTO(x.getEmail());
-                usersDTO.add(userDto);
-            }
 
-        });
+        pageLoader.load(asyncServices.getFriendsMatchingOnPage(myId, searchField.getText(), pageIndex * itemsPerPage(), itemsPerPage()),
+                usersDTO -> fillFriendsForGroupChat(box, usersDTO));
+        return box;
+    }
 
+    private void fillFriendsForGroupChat(VBox box, List<UserDTO> usersDTO) {
         int nr = 0;
-        for (int i = page; i < page + users.size(); i++) {
+        for (int i = 0; i < usersDTO.size(); i++) {
             VBox row = new VBox();
             int index = nr;
             ImageView imageView = new ImageView();
@@ -595,12 +599,12 @@ public class MessagesController implements Observer<MessageChangeEvent> {
             Button buttonPlus = new Button();
             Label label = new Label();
 
-            imageView.setImage(new Image(usersDTO.get(index).getUrlPhoto()));
+            imageView.setImage(ImageCache.getInstance().getProfilePhoto(usersDTO.get(index).getUrlPhoto(), 40));
             imageView.setFitHeight(40);
             imageView.setFitWidth(40);
 
 
-            ImageView img = new ImageView(new Image("/images/seeProfile.png"));
+            ImageView img = new ImageView(ImageCache.getInstance().get("/images/seeProfile.png"));
             img.setFitWidth(20);
             img.setFitHeight(20);
             button.setGraphic(img);
@@ -608,7 +612,7 @@ public class MessagesController implements Observer<MessageChangeEvent> {
 
             label.setText("  " + usersDTO.get(index).getNume());
             label.setPrefWidth(160);
-            ImageView img1 = new ImageView(new Image("/images/plus.png"));
+            ImageView img1 = new ImageView(ImageCache.getInstance().get("/images/plus.png"));
             img1.setFitWidth(20);
             img1.setFitHeight(20);
             buttonPlus.setGraphic(img1);
@@ -623,10 +627,7 @@ public class MessagesController implements Observer<MessageChangeEvent> {
             box.getChildren().add(pane);
             label.setOnMouseClicked(event -> {
                 userImage.setVisible(true);
-                if (usersDTO.get(index).getUrlPhoto() != null)
-                    userImage.setImage(new Image(usersDTO.get(index).getUrlPhoto()));
-                else
-                    userImage.setImage(new Image("/images/profile.png"));
+                userImage.setImage(ImageCache.getInstance().getProfilePhoto(usersDTO.get(index).getUrlPhoto(), 88));
                 userName.setVisible(true);
                 userName.setText("Your conversation with " + usersDTO.get(index).getNume());
                 friendId = usersDTO.get(index).getIdUser();
@@ -640,7 +641,6 @@ public class MessagesController implements Observer<MessageChangeEvent> {
             });
             nr++;
         }
-        return box;
     }
 
 
@@ -690,10 +690,11 @@ public class MessagesController implements Observer<MessageChangeEvent> {
             }
         });
 
-        int friends = messageService.getMyFriendsWithMessages(myId).size();
-        double nr = (double) (friends) / (double) itemsPerPage();
+        countLoader.load(asyncServices.countFriendsMatching(myId, searchField.getText()), friends -> {
+            double nr = (double) (friends) / (double) itemsPerPage();
 
-        pagination.setPageCount((int) ceil(nr));
+            pagination.setPageCount((int) ceil(nr));
+        });
     }
 
 
@@ -706,39 +707,25 @@ public class MessagesController implements Observer<MessageChangeEvent> {
         box.setLayoutX(t);
         box.setLayoutY(y);
         box.setAlignment(Pos.CENTER);
-        int page = pageIndex * itemsPerPage();
-
-        List<User> users = new ArrayList<>();
-        users.addAll(userService.searchingFriends((pageIndex) * itemsPerPage(), itemsPerPage(), myId, searchField.getText()));
-
-        List<UserDTO> usersDTO = new ArrayList<>();
-        users.forEach(x -> {
-            if (userService.findPhoto(x.getEmail()) == null) {
-                UserDTO userDto = new UserDTO(x);
-                userDto.setUrlPhoto("/images/profile.png");
-                userDto.setEmailDTO(x.getEmail());
-                usersDTO.add(userDto);
-            } else {
-                UserDTO userDto = new UserDTO(x);
-                userDto.setUrlPhoto(userService.findPhoto(x.getEmail()));
-                userDto.setEmailDTO(x.getEmail());
-                usersDTO.add(userDto);
-            }
 
-        });
+        pageLoader.load(asyncServices.getFriendsMatchingOnPage(myId, searchField.getText(), pageIndex * itemsPerPage(), itemsPerPage()),
+                usersDTO -> fillSearchingFriends(box, usersDTO));
+        return box;
+    }
 
+    private void fillSearchingFriends(VBox box, List<UserDTO> usersDTO) {
         int nr = 0;
-        for (int i = page; i < page + users.size(); i++) {
+        for (int i = 0; i < usersDTO.size(); i++) {
             VBox row = new VBox();
             int index = nr;
             ImageView imageView = new ImageView();
             Button button = new Button();
             Label label = new Label();
 
-            imageView.setImage(new Image(usersDTO.get(index).getUrlPhoto()));
+            imageView.setImage(ImageCache.getInstance().getProfilePhoto(usersDTO.get(index).getUrlPhoto(), 40));
             imageView.setFitHeight(40);
             imageView.setFitWidth(40);
-            ImageView img = new ImageView(new Image("/images/seeProfile.png"));
+            ImageView img = new ImageView(ImageCache.getInstance().get("/images/seeProfile.png"));
             img.setFitWidth(20);
             img.setFitHeight(20);
 
@@ -756,10 +743,7 @@ public class MessagesController implements Observer<MessageChangeEvent> {
             box.getChildren().add(pane);
             label.setOnMouseClicked(event -> {
                 userImage.setVisible(true);
-                if (usersDTO.get(index).getUrlPhoto() != null)
-                    userImage.setImage(new Image(usersDTO.get(index).getUrlPhoto()));
-                else
-                    userImage.setImage(new Image("/images/profile.png"));
+                userImage.setImage(ImageCache.getInstance().getProfilePhoto(usersDTO.get(index).getUrlPhoto(), 88));
                 userName.setVisible(true);
                 userName.setText("Your conversation with " + usersDTO.get(index).getNume());
                 friendId = usersDTO.get(index).getIdUser();
@@ -781,7 +765,7 @@ public class MessagesController implements Observer<MessageChangeEvent> {
                     dialogStage.setScene(scene);
 
                     FriendProfileController friendProfileController = loader.getController();
-                    friendProfileController.setServices(userService, friendshipService, friendRequestService, postService, dialogStage, email, usersDTO.get(index).getEmailDTO());
+                    friendProfileController.setServices(userService, friendshipService, friendRequestService, postService, asyncServices, dialogStage, email, usersDTO.get(index).getEmailDTO());
 
                     dialogStage.show();
 
@@ -792,7 +776,6 @@ public class MessagesController implements Observer<MessageChangeEvent> {
             });
             nr++;
         }
-        return box;
     }
 
     public void searchGroups() {
@@ -809,10 +792,11 @@ public class MessagesController implements Observer<MessageChangeEvent> {
             }
         });
 
-        int nr_friends = friendshipService.getFriendships(userService.exists(email).getId()).size();
-        double nr = (double) (nr_friends) / (double) itemsPerPage();
+        countLoader.load(asyncServices.countGroupsMatching(myId, searchField.getText()), nr_groups -> {
+            double nr = (double) (nr_groups) / (double) itemsPerPage();
 
-        pagination.setPageCount((int) ceil(nr));
+            pagination.setPageCount(Math.max(1, (int) ceil(nr)));
+        });
     }
 
     public VBox createPageForSearchingGroups(int pageIndex) {
@@ -824,21 +808,20 @@ public class MessagesController implements Observer<MessageChangeEvent> {
         box.setLayoutX(t);
         box.setLayoutY(y);
 
-        int page = pageIndex * itemsPerPage();
-
-
-        List<Group> groups = new ArrayList<>();
-        groups.addAll(messageService.getSearchingGroupsOnPage((pageIndex) * itemsPerPage(), itemsPerPage(), userService.exists(email).getId(), searchField.getText()));
-
+        pageLoader.load(asyncServices.getGroupsMatchingOnPage(myId, searchField.getText(), pageIndex * itemsPerPage(), itemsPerPage()),
+                groups -> fillSearchingGroups(box, groups));
+        return box;
+    }
 
+    private void fillSearchingGroups(VBox box, List<Group> groups) {
         int nr = 0;
-        for (int i = page; i < page + groups.size(); i++) {
+        for (int i = 0; i < groups.size(); i++) {
             VBox row = new VBox();
             int index = nr;
             ImageView imageView = new ImageView();
             Button button = new Button();
             Label label = new Label();
-            imageView.setImage(new Image("/images/people.png"));
+            imageView.setImage(ImageCache.getInstance().get("/images/people.png"));
             imageView.setFitHeight(40);
             imageView.setFitWidth(40);
 
@@ -851,7 +834,7 @@ public class MessagesController implements Observer<MessageChangeEvent> {
             box.getChildren().add(pane);
             label.setOnMouseClicked(event -> {
                 userImage.setVisible(true);
-                userImage.setImage(new Image("/images/people.png"));
+                userImage.setImage(ImageCache.getInstance().get("/images/people.png"));
                 userName.setText("Your conversation with " + groups.get(index).getName());
                 groupFinal.setId(groups.get(index).getId());
                 groupFinal.setMembers(groups.get(index).getMembers());
@@ -862,30 +845,35 @@ public class MessagesController implements Observer<MessageChangeEvent> {
 
             nr++;
         }
-        return box;
     }
 
 
+    /**
+     * The message is sent in the background; the conversation is refreshed by the event of MessageService
+     */
     public void onSend(MouseEvent mouseEvent) {
         String message = conversationField1.getText();
+        CompletableFuture<Void> sent;
         if (friendsBool.get()) {
             List<Long> tos = new ArrayList<>();
             tos.add(friendId);
-            messageService.sendMessage(userService.exists(email).getId(), tos, message);
-            conversationField1.setText("");
-
+            sent = asyncServices.run(() -> messageService.sendMessage(myId, tos, message));
         } else {
             List<Long> recipients = new ArrayList<>();
             groupFinal.getMembers().forEach(x -> {
-                if (!x.equals(userService.exists(email).getId()))
+                if (!x.equals(myId))
                     recipients.add(x);
             });
 
-            MessageDTO messageDTO = new MessageDTO(userService.exists(email).getId(), recipients, message, LocalDateTime.now(), null);
-            messageService.sendMessageGroup(groupFinal, messageDTO);
-            conversationField1.setText("");
-
+            MessageDTO messageDTO = new MessageDTO(myId, recipients, message, LocalDateTime.now(), null);
+            // a copy without the messages, so the background call does not change the shown group
+            Group group = new Group();
+            group.setId(groupFinal.getId());
+            group.setMembers(groupFinal.getMembers());
+            sent = asyncServices.run(() -> messageService.sendMessageGroup(group, messageDTO));
         }
+        PageLoader.whenLoaded(sent, done -> conversationField1.setText(""),
+                error -> MessageAlert.showErrorMessage(stage, error.getMessage()));
     }
 
 
@@ -896,8 +884,8 @@ public class MessagesController implements Observer<MessageChangeEvent> {
             groupFinal.setId(gr.getId());
             groupFinal.setMembers(gr.getMembers());
             groupFinal.setMessages(gr.getMessages());
-            messageService.saveGroup(gr);
-            groupsChat();
+            PageLoader.whenLoaded(asyncServices.run(() -> messageService.saveGroup(gr)), done -> groupsChat(),
+                    error -> MessageAlert.showErrorMessage(stage, error.getMessage()));
             plusGroupImage.setVisible(false);
             createGroupButton.setVisible(true);
             nameGroupField.setVisible(false);
@@ -911,58 +899,53 @@ public class MessagesController implements Observer<MessageChangeEvent> {
         else {
             scrollerMembers.setVisible(true);
             members.getChildren().clear();
-            List<Long> membersIds = new ArrayList<>();
-            membersIds.addAll(groupFinal.getMembers());
-            List<User> membersList = new ArrayList<>();
-            membersIds.forEach(x -> membersList.add(userService.getUserByID(x)));
-
-            membersList.forEach(x -> {
-                VBox row = new VBox();
-                ImageView imageView = new ImageView();
-                Label label = new Label();
-                if (userService.findPhoto(x.getEmail()) == null)
-                    imageView.setImage(new Image("/images/profile.png"));
-                else
-                    imageView.setImage(new Image(userService.findPhoto(x.getEmail())));
-                imageView.setFitHeight(40);
-                imageView.setFitWidth(40);
-
-                label.setText("  " + x.getFirstName() + " " + x.getLastName());
-                GridPane pane = new GridPane();
-                pane.getStyleClass().add("gridpane");
-                pane.add(imageView, 0, 0);
-                pane.add(label, 1, 0);
-                members.getChildren().add(pane);
-                label.setOnMouseClicked(event -> {
-                    try {
-                        FXMLLoader loader = new FXMLLoader();
-                        loader.setLocation(getClass().getResource("/views/friendProfile.fxml"));
-                        AnchorPane root = loader.load();
-                        Stage dialogStage = new Stage();
-                        dialogStage.setTitle("My profile");
-                        dialogStage.initModality(Modality.WINDOW_MODAL);
-
-                        Scene scene = new Scene(root);
-                        dialogStage.setScene(scene);
-
-                        FriendProfileController friendProfileController = loader.getController();
-                        friendProfileController.setServices(userService, friendshipService, friendRequestService,postService, dialogStage, email, x.getEmail());
-
-                        dialogStage.show();
-
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                });
+            membersLoader.load(asyncServices.getUsers(new ArrayList<>(groupFinal.getMembers())), this::showMembers);
+        }
+    }
+
+    private void showMembers(List<UserDTO> membersList) {
+        membersList.forEach(x -> {
+            VBox row = new VBox();
+            ImageView imageView = new ImageView();
+            Label label = new Label();
+            imageView.setImage(ImageCache.getInstance().getProfilePhoto(x.getUrlPhoto(), 40));
+            imageView.setFitHeight(40);
+            imageView.setFitWidth(40);
+
+            label.setText("  " + x.getNume());
+            GridPane pane = new GridPane();
+            pane.getStyleClass().add("gridpane");
+            pane.add(imageView, 0, 0);
+            pane.add(label, 1, 0);
+            members.getChildren().add(pane);
+            label.setOnMouseClicked(event -> {
+                try {
+                    FXMLLoader loader = new FXMLLoader();
+                    loader.setLocation(getClass().getResource("/views/friendProfile.fxml"));
+                    AnchorPane root = loader.load();
+                    Stage dialogStage = new Stage();
+                    dialogStage.setTitle("My profile");
+                    dialogStage.initModality(Modality.WINDOW_MODAL);
+
+                    Scene scene = new Scene(root);
+                    dialogStage.setScene(scene);
 
+                    FriendProfileController friendProfileController = loader.getController();
+                    friendProfileController.setServices(userService, friendshipService, friendRequestService, postService, asyncServices, dialogStage, email, x.getEmailDTO());
+
+                    dialogStage.show();
+
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
             });
 
-            scroller.setContent(chat);
-            scroller.setFitToWidth(chat.isFillWidth());
-            scroller.setVvalue(0.5);
-            scroller.setHvalue(0.5);
+        });
 
-        }
+        scroller.setContent(chat);
+        scroller.setFitToWidth(chat.isFillWidth());
+        scroller.setVvalue(0.5);
+        scroller.setHvalue(0.5);
     }
 
     public void handleScroll(ScrollEvent scrollEvent) {
@@ -2,8 +2,10 @@ package com.example.lab6.controller;
 
 import com.example.lab6.model.*;
 import com.example.lab6.service.*;
+import com.example.lab6.utils.ImageCache;
 import com.example.lab6.utils.events.FriendRequestChangeEvent;
 import com.example.lab6.utils.observer.Observer;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -34,11 +36,12 @@ import org.apache.pdfbox.pdmodel.font.PDType1Font;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static java.lang.Math.ceil;
 
@@ -88,6 +91,12 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
     private FriendRequestService friendRequestService;
     private MessageService messageService;
     private PostService postService;
+    private AsyncServices asyncServices;
+    private final PageLoader pageLoader = new PageLoader();
+    private final PageLoader countLoader = new PageLoader();
+    private final PageLoader searchPageLoader = new PageLoader();
+    private final PageLoader searchCountLoader = new PageLoader();
+    private final PageLoader postLoader = new PageLoader();
     private Long to;
     private Long from;
     private Long fromUser;
@@ -95,12 +104,14 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
     Stage stage;
     private String email;
     private Long myId;
+    private String myName;
+    private String myPhoto;
 
 
     @FXML
     public void initialize() {
 
-        profilePhoto.setImage(new Image("/images/profile.png"));
+        profilePhoto.setImage(ImageCache.getInstance().getProfilePhoto(null, 175));
         profilePhoto.setFitWidth(175);
         profilePhoto.setFitHeight(175);
 
@@ -116,20 +127,22 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
         anchorFriendRequest.setVisible(false);
     }
 
-    public void setServices(UserService userService, FriendshipService friendshipService, FriendRequestService friendRequestService, MessageService messageService, PostService postService, Stage stage, String email) {
+    public void setServices(UserService userService, FriendshipService friendshipService, FriendRequestService friendRequestService, MessageService messageService, PostService postService, AsyncServices asyncServices, Stage stage, String email) {
         this.userService = userService;
         this.friendshipService = friendshipService;
         this.friendRequestService = friendRequestService;
         this.messageService = messageService;
         this.postService = postService;
+        this.asyncServices = asyncServices;
         this.stage = stage;
         this.email = email;
-        this.myId = userService.exists(email).getId();
-        nameLabel.setText(userService.exists(email).getFirstName() + " " + userService.exists(email).getLastName());
+        User me = userService.exists(email);
+        this.myId = me.getId();
+        this.myName = me.getFirstName() + " " + me.getLastName();
+        nameLabel.setText(myName);
         setProfilePicture();
-        this.from = userService.exists(email).getId();
-        friendRequestService.addObserver(this);
-        initializePost();
+        this.from = myId;
+        friendRequestService.getEventBus().subscribeWeak(this, Platform::runLater, 16, true);
         labelFriendRequest.setText("There are no friends requests!");
     }
 
@@ -139,8 +152,10 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
     }
 
     public void listofFriendRequests() {
-        int nr_friends = friendRequestService.getFriendRequest(myId).size();
+        countLoader.load(asyncServices.countFriendRequests(myId), this::showFriendRequestsCount);
+    }
 
+    private void showFriendRequestsCount(int nr_friends) {
         if (nr_friends == 0) {
             pagination.setVisible(false);
             anchorFriendRequest.setVisible(true);
@@ -173,13 +188,14 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
     public VBox createPageForListOfFriendRequests(int pageIndex) {
         VBox box = new VBox();
 
-        int page = pageIndex * itemsPerPage();
-
-        List<FriendRequestDTO> friendRequestDTOS = friendRequestService.getFriendRequestsOnPage((pageIndex) * itemsPerPage(), itemsPerPage(), myId);
-
+        pageLoader.load(asyncServices.getFriendRequestsOnPage(myId, pageIndex * itemsPerPage(), itemsPerPage()),
+                friendRequestDTOS -> fillListOfFriendRequests(box, friendRequestDTOS));
+        return box;
+    }
 
+    private void fillListOfFriendRequests(VBox box, List<FriendRequestDTO> friendRequestDTOS) {
         int nr = 0;
-        for (int i = page; i < page + friendRequestDTOS.size(); i++) {
+        for (int i = 0; i < friendRequestDTOS.size(); i++) {
 
             int index = nr;
             Button acceptBtn = new Button("Accept");
@@ -210,23 +226,20 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
             box.getChildren().add(row);
 
 
-            acceptBtn.setOnAction(event -> {
-                friendRequestService.acceptFriendRequest(friendRequestDTOS.get(index).getUserFrom().getId(), myId);
-            });
+            Long requestFrom = friendRequestDTOS.get(index).getUserFrom().getId();
+            acceptBtn.setOnAction(event -> change(asyncServices.run(() -> friendRequestService.acceptFriendRequest(requestFrom, myId))));
 
-            rejectBtn.setOnAction(event -> {
-                friendRequestService.rejectFriendRequest(friendRequestDTOS.get(index).getUserFrom().getId(), myId);
-            });
+            rejectBtn.setOnAction(event -> change(asyncServices.run(() -> friendRequestService.rejectFriendRequest(requestFrom, myId))));
 
             nr++;
         }
-
-        return box;
     }
 
     public void listofFriendRequestsByMe() {
+        countLoader.load(asyncServices.countSentFriendRequests(myId), this::showFriendRequestsByMeCount);
+    }
 
-        int nr_friends = friendRequestService.getMyFriendsRequestes(myId).size();
+    private void showFriendRequestsByMeCount(int nr_friends) {
         if (nr_friends == 0) {
             anchorFriendRequest.setVisible(true);
             labelFriendRequest.setText("There are no friends requests!");
@@ -263,13 +276,15 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
         box.setLayoutX(t);
         box.setLayoutY(y);
         box.setAlignment(Pos.CENTER);
-        int page = pageIndex * itemsPerPage();
-
-        List<FriendRequestDTO> friendRequestDTOS = friendRequestService.getFriendRequestsByMeOnPage((pageIndex) * itemsPerPage(), itemsPerPage(), myId);
 
+        pageLoader.load(asyncServices.getSentFriendRequestsOnPage(myId, pageIndex * itemsPerPage(), itemsPerPage()),
+                friendRequestDTOS -> fillListOfFriendRequestsByMe(box, friendRequestDTOS));
+        return box;
+    }
 
+    private void fillListOfFriendRequestsByMe(VBox box, List<FriendRequestDTO> friendRequestDTOS) {
         int nr = 0;
-        for (int i = page; i < page + friendRequestDTOS.size(); i++) {
+        for (int i = 0; i < friendRequestDTOS.size(); i++) {
 
             int index = nr;
             Button deleteBtn = new Button("Delete");
@@ -293,19 +308,32 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
             box.getChildren().add(row);
 
 
-            deleteBtn.setOnAction(event -> {
-                friendRequestService.deleteFriendRequest(myId, friendRequestDTOS.get(index).getUserTo().getId());
-            });
+            Long requestTo = friendRequestDTOS.get(index).getUserTo().getId();
+            deleteBtn.setOnAction(event -> change(asyncServices.run(() -> friendRequestService.deleteFriendRequest(myId, requestTo))));
 
             nr++;
         }
-        return box;
     }
 
 
+    /**
+     * Shows the failure of a change made in the background; the lists are refreshed by the events of the services
+     */
+    private void change(CompletableFuture<Void> changed) {
+        PageLoader.whenLoaded(changed, done -> {
+        }, error -> MessageAlert.showErrorMessage(stage, error.getMessage()));
+    }
+
+    /**
+     * The default picture is shown until the one of the user is looked up;
+     * the posts are loaded after it, since they show it too
+     */
     private void setProfilePicture() {
-        if (userService.findPhoto(email) != null)
-            profilePhoto.setImage(new Image(userService.findPhoto(email)));
+        PageLoader.whenLoaded(asyncServices.findPhoto(email), url -> {
+            myPhoto = url;
+            profilePhoto.setImage(ImageCache.getInstance().getProfilePhoto(url, 175));
+            initializePost();
+        });
     }
 
     public void onEditLabelClicked(MouseEvent mouseEvent) {
@@ -319,11 +347,16 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
         fileChooser.setInitialDirectory(userD);
         File path = fileChooser.showOpenDialog(stage);
 
-        profilePhoto.setImage(new Image(path.toURI().toString()));
-        if (userService.findPhoto(email) != null)
-            userService.updatePicture(email, path.toURI().toString());
-        else
-            userService.savePicture(email, path.toURI().toString());
+        String url = path.toURI().toString();
+        ImageCache.getInstance().invalidate(url);
+        profilePhoto.setImage(ImageCache.getInstance().getProfilePhoto(url, 175));
+        myPhoto = url;
+        asyncServices.run(() -> {
+            if (userService.findPhoto(email) != null)
+                userService.updatePicture(email, url);
+            else
+                userService.savePicture(email, url);
+        });
     }
 
     public void onMenuButton(ActionEvent actionEvent) {
@@ -389,15 +422,15 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
     }
 
 
-    private void activityReport() throws IOException {
-        List<FriendshipDTO> friendships = userService.getFriendshipsByDate(start, end, userService.exists(email).getId());
-
+    /**
+     * Writes the activity report; runs on a background thread, with the data loaded by AsyncServices.getActivity
+     */
+    private void activityReport(LocalDateTime start, LocalDateTime end, List<FriendshipDTO> friendships,
+                                List<MessageDTO> messages) throws IOException {
         friendships.forEach(x -> {
             System.out.println(x.getFirstName() + " " + x.getLastName() + " " + x.getDate());
         });
 
-        List<MessageDTO> messages = messageService.getMessagesByDate(start, end, userService.exists(email).getId());
-
         messages.forEach(x -> {
             System.out.println(x.getMessage() + " " + x.getDate());
         });
@@ -459,8 +492,10 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
         document.close();
     }
 
-    private void messagesReport() throws IOException {
-        List<MessageDTO> messages = messageService.getMessagesFromAFriend(start, end, userService.exists(email).getId(), fromUser);
+    /**
+     * Writes the messages report; runs on a background thread, with the data loaded by AsyncServices.getMessagesFromFriend
+     */
+    private void messagesReport(LocalDateTime start, LocalDateTime end, User friend, List<MessageDTO> messages) throws IOException {
 
         messages.forEach(x -> {
             System.out.println(x.getMessage() + " " + x.getDate());
@@ -487,7 +522,7 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
         contentStream.setLeading(14.5f);
 
         //The content
-        contentStream.showText("The messages between " + start.toLocalDate() + " " + end.toLocalDate() + " from " + userService.getUserByID(fromUser).getFirstName() + " " + userService.getUserByID(fromUser).getLastName());
+        contentStream.showText("The messages between " + start.toLocalDate() + " " + end.toLocalDate() + " from " + friend.getFirstName() + " " + friend.getLastName());
         contentStream.newLine();
         messages.forEach(x -> {
             try {
@@ -513,9 +548,12 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
 
 
     public void listofSearching() {
+        String text = searchField.getText();
+        searchCountLoader.load(asyncServices.countFriendsMatching(myId, text), nr_searchs -> showSearchingCount(nr_searchs, text));
+    }
 
-        int nr_searchs = userService.friends(myId, searchField.getText()).size();
-        if (nr_searchs == 0 || searchField.getText().isEmpty()) {
+    private void showSearchingCount(int nr_searchs, String text) {
+        if (nr_searchs == 0 || text.isEmpty()) {
             paginationSearch.setVisible(false);
             generateMessageRaport.setVisible(false);
 
@@ -536,7 +574,7 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
 
                 @Override
                 public Node call(Integer pageIndex) {
-                    return createPageForListOfSearching(pageIndex);
+                    return createPageForListOfSearching(pageIndex, text);
                 }
             });
         }
@@ -548,7 +586,7 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
         return 2;
     }
 
-    public VBox createPageForListOfSearching(int pageIndex) {
+    public VBox createPageForListOfSearching(int pageIndex, String text) {
         VBox box = new VBox();
         Rectangle2D bounds = Screen.getPrimary().getVisualBounds();
         double t = bounds.getMinX() + (bounds.getWidth() - stage.getWidth()) * 0.3;
@@ -557,37 +595,25 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
         box.setLayoutX(t);
         box.setLayoutY(y);
         box.setAlignment(Pos.CENTER);
-        int page = pageIndex * itemsPerPage();
 
-        List<User> userList = userService.searchingFriends((pageIndex) * itemsPerPageForRaport(), itemsPerPageForRaport(), myId, searchField.getText().toString());
-
-        List<UserDTO> users = new ArrayList<>();
-        userList.forEach(x -> {
-            if (userService.findPhoto(x.getEmail()) == null) {
-                UserDTO userDto = new UserDTO(x);
-                userDto.setUrlPhoto("/images/profile.png");
-                userDto.setEmailDTO(x.getEmail());
-                users.add(userDto);
-            } else {
-                UserDTO userDto = new UserDTO(x);
-                userDto.setUrlPhoto(userService.findPhoto(x.getEmail()));
-                userDto.setEmailDTO(x.getEmail());
-                users.add(userDto);
-            }
+        searchPageLoader.load(asyncServices.getFriendsMatchingOnPage(myId, text, pageIndex * itemsPerPageForRaport(), itemsPerPageForRaport()),
+                users -> fillListOfSearching(box, users));
+        return box;
+    }
 
-        });
+    private void fillListOfSearching(VBox box, List<UserDTO> users) {
         int nr = 0;
-        for (int i = page; i < page + userList.size(); i++) {
+        for (int i = 0; i < users.size(); i++) {
             VBox row = new VBox();
             int index = nr;
             ImageView imageView = new ImageView();
             Button button = new Button();
             Label label = new Label();
 
-            imageView.setImage(new Image(users.get(index).getUrlPhoto()));
+            imageView.setImage(ImageCache.getInstance().getProfilePhoto(users.get(index).getUrlPhoto(), 40));
             imageView.setFitHeight(40);
             imageView.setFitWidth(40);
-            ImageView img = new ImageView(new Image("/images/seeProfile.png"));
+            ImageView img = new ImageView(ImageCache.getInstance().get("/images/seeProfile.png"));
             img.setFitWidth(20);
             img.setFitHeight(20);
 
@@ -605,8 +631,8 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
             box.getChildren().add(pane);
             label.setOnMouseClicked(event -> {
 
-                fromUser = userList.get(index).getId();
-                searchField.setText(userList.get(index).getFirstName() + " " + userList.get(index).getLastName());
+                fromUser = users.get(index).getIdUser();
+                searchField.setText(users.get(index).getNume());
 
             });
             button.setOnAction(event -> {
@@ -624,7 +650,7 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
                     dialogStage.setScene(scene);
 
                     FriendProfileController friendProfileController = loader.getController();
-                    friendProfileController.setServices(userService, friendshipService, friendRequestService, postService, dialogStage, email, users.get(index).getEmailDTO());
+                    friendProfileController.setServices(userService, friendshipService, friendRequestService, postService, asyncServices, dialogStage, email, users.get(index).getEmailDTO());
 
                     dialogStage.show();
 
@@ -636,8 +662,6 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
 
             nr++;
         }
-
-        return box;
     }
 
 
@@ -661,9 +685,19 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
             if (startDatePicker.getValue().isBefore(endDatePicker.getValue())) {
                 start = startDatePicker.getValue().atStartOfDay();
                 end = endDatePicker.getValue().atTime(LocalTime.MAX);
-                activityReport();
+                LocalDateTime reportStart = start;
+                LocalDateTime reportEnd = end;
                 activityRaportLabel.setVisible(true);
-                activityRaportLabel.setText("The PDF was generated");
+                activityRaportLabel.setText("The PDF is being generated...");
+                PageLoader.whenLoaded(asyncServices.getActivity(myId, reportStart, reportEnd)
+                        .thenCompose(activity -> asyncServices.run(() -> {
+                            try {
+                                activityReport(reportStart, reportEnd, activity.getE1(), activity.getE2());
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        })), done -> activityRaportLabel.setText("The PDF was generated"),
+                        error -> activityRaportLabel.setText("The PDF could not be generated"));
                 startDatePicker.getEditor().clear();
                 endDatePicker.getEditor().clear();
             } else {
@@ -688,9 +722,20 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
             if (startDatePicker1.getValue().isBefore(endDatePicker1.getValue())) {
                 start = startDatePicker1.getValue().atStartOfDay();
                 end = endDatePicker1.getValue().atTime(LocalTime.MAX);
-                messagesReport();
+                LocalDateTime reportStart = start;
+                LocalDateTime reportEnd = end;
+                Long friend = fromUser;
                 activityRaportLabel1.setVisible(true);
-                activityRaportLabel1.setText("The PDF was generated");
+                activityRaportLabel1.setText("The PDF is being generated...");
+                PageLoader.whenLoaded(asyncServices.getMessagesFromFriend(myId, friend, reportStart, reportEnd)
+                        .thenCompose(report -> asyncServices.run(() -> {
+                            try {
+                                messagesReport(reportStart, reportEnd, report.getE1(), report.getE2());
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        })), done -> activityRaportLabel1.setText("The PDF was generated"),
+                        error -> activityRaportLabel1.setText("The PDF could not be generated"));
                 startDatePicker1.getEditor().clear();
                 endDatePicker1.getEditor().clear();
             } else {
@@ -716,11 +761,12 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
     public void onPostButton(ActionEvent actionEvent) {
         if (!postField.getText().isEmpty() || !toUploadImageURL.isEmpty()) {
             Post post = new Post(myId, toUploadImageURL, postField.getText(), LocalDateTime.now());
-            postService.addPost(post);
-            toUploadImage.setVisible(false);
-            postField.clear();
-            toUploadImageURL = null;
-            initializePost();
+            PageLoader.whenLoaded(asyncServices.run(() -> postService.addPost(post)), done -> {
+                toUploadImage.setVisible(false);
+                postField.clear();
+                toUploadImageURL = null;
+                initializePost();
+            }, error -> MessageAlert.showErrorMessage(stage, error.getMessage()));
         }
     }
 
@@ -741,26 +787,27 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
     }
 
     private void initializePost() {
+        int offset = leftLimitPosts;
+        postLoader.load(asyncServices.supply(() -> new Tuple<>(postService.countMyPosts(myId),
+                postService.getMyPostsOnPage(offset, postOnPage, myId))), this::showPosts);
+    }
+
+    /**
+     * The posts are all of the user, so the name and the picture of the user are shown on each
+     */
+    private void showPosts(Tuple<Integer, List<Post>> page) {
         vBoxPost.getChildren().clear();
         vBoxPost.setStyle("-fx-background-color: transparent");
-        numberOfPost = postService.getMyPosts(myId).size();
+        numberOfPost = page.getE1();
 
-        int nr = leftLimitPosts + postOnPage;
-        if (nr > numberOfPost)
-            nr = numberOfPost;
-        List<Post> postList = postService.getMyPostsOnPage(leftLimitPosts, nr - leftLimitPosts, myId);
-
-        postList.forEach(x -> {
+        page.getE2().forEach(x -> {
             VBox box = new VBox();
             box.getStyleClass().add("vbox-post");
             HBox hbox = new HBox();
             box.setPrefWidth(400);
             box.setFillWidth(true);
             ImageView profile = new ImageView();
-            if (userService.findPhoto(userService.getUserByID(x.getAdmin()).getEmail()) == null)
-                profile.setImage(new Image("/images/profile.png"));
-            else
-                profile.setImage(new Image(userService.findPhoto(userService.getUserByID(x.getAdmin()).getEmail())));
+            profile.setImage(ImageCache.getInstance().getProfilePhoto(myPhoto, 50));
 
             profile.setFitHeight(50);
             profile.setFitWidth(50);
@@ -769,12 +816,12 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
             Label name = new Label();
 
             ImageView trash = new ImageView();
-            trash.setImage(new Image("/images/remove.png"));
+            trash.setImage(ImageCache.getInstance().get("/images/remove.png"));
             trash.setFitHeight(30);
             trash.setFitWidth(30);
             Label space = new Label();
             space.setPrefWidth(50);
-            name.setText(userService.getUserByID(x.getAdmin()).getFirstName() + " " + userService.getUserByID(x.getAdmin()).getLastName());
+            name.setText(myName);
             name.getStyleClass().add("label-name-post");
             data.getChildren().add(name);
             Label date = new Label("Posted on " + x.getDate().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
@@ -800,7 +847,7 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
 
             if (x.getUrl() != null) {
                 ImageView img = new ImageView();
-                img.setImage(new Image(x.getUrl()));
+                img.setImage(ImageCache.getInstance().get(x.getUrl(), 160, 160));
                 HBox rowImage = new HBox();
                 img.setFitWidth(160);
                 img.setFitHeight(160);
@@ -812,11 +859,10 @@ public class MyProfileController implements Observer<FriendRequestChangeEvent> {
             box.setSpacing(10);
             box.getStyleClass().add("vbox-post");
             vBoxPost.getChildren().add(box);
-            trash.setOnMouseClicked(t -> {
-                postService.deletePost(x);
-                initializePost();
+            trash.setOnMouseClicked(t -> PageLoader.whenLoaded(asyncServices.run(() -> postService.deletePost(x)), done -> {
                 leftLimitPosts = 0;
-            });
+                initializePost();
+            }, error -> MessageAlert.showErrorMessage(stage, error.getMessage())));
 
         });
 
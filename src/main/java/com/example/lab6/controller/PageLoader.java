@@ -0,0 +1,68 @@
+package com.example.lab6.controller;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Shows the result of a background service call on the JavaFX application thread.
+ * One loader belongs to one pagination (or view): starting a new load cancels the
+ * previous one, so only the page the user is looking at gets rendered.
+ */
+class PageLoader {
+    private CompletableFuture<?> current;
+
+    /**
+     * @param load   the background call, e.g. one of the AsyncServices methods
+     * @param render fills the view with the result, runs on the JavaFX application thread
+     */
+    <T> void load(CompletableFuture<T> load, Consumer<T> render) {
+        cancel();
+        current = load;
+        load.thenAcceptAsync(result -> {
+            if (current == load)
+                render.accept(result);
+        }, Platform::runLater).exceptionally(PageLoader::report);
+    }
+
+    void cancel() {
+        if (current != null)
+            current.cancel(true);
+        current = null;
+    }
+
+    /**
+     * Shows the result of a call that is not tied to a page and cannot be cancelled by other loads
+     */
+    static <T> void whenLoaded(CompletableFuture<T> load, Consumer<T> render) {
+        load.thenAcceptAsync(render, Platform::runLater).exceptionally(PageLoader::report);
+    }
+
+    /**
+     * Like whenLoaded, for a change made in the background: its failure, e.g. a ValidationException,
+     * is given to failed on the JavaFX application thread instead of being only printed
+     */
+    static <T> void whenLoaded(CompletableFuture<T> load, Consumer<T> render, Consumer<Throwable> failed) {
+        load.handleAsync((result, error) -> {
+            if (error == null)
+                render.accept(result);
+            else if (!(unwrap(error) instanceof CancellationException))
+                failed.accept(unwrap(error));
+            return null;
+        }, Platform::runLater).exceptionally(PageLoader::report);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static Void report(Throwable error) {
+        Throwable cause = unwrap(error);
+        if (!(cause instanceof CancellationException))
+            cause.printStackTrace();
+        return null;
+    }
+}
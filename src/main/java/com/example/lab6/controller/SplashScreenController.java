@@ -22,6 +22,7 @@ public class SplashScreenController extends Thread {
     FriendRequestService friendRequestService;
     EventService eventService;
     PostService postService;
+    AsyncServices asyncServices;
 
     public void initialize() {
         logoImage.setVisible(true);
@@ -29,7 +30,7 @@ public class SplashScreenController extends Thread {
     }
 
 
-    public void setServices(UserService userService, FriendshipService friendshipService, MessageService messageService, FriendRequestService friendRequestService, EventService eventService, PostService postService, Stage stage) {
+    public void setServices(UserService userService, FriendshipService friendshipService, MessageService messageService, FriendRequestService friendRequestService, EventService eventService, PostService postService, AsyncServices asyncServices, Stage stage) {
         this.userService = userService;
         this.friendshipService = friendshipService;
         this.messageService = messageService;
@@ -37,6 +38,7 @@ public class SplashScreenController extends Thread {
         this.stage = stage;
         this.eventService = eventService;
         this.postService = postService;
+        this.asyncServices = asyncServices;
     }
 
     @Override
@@ -60,7 +62,7 @@ public class SplashScreenController extends Thread {
                 dialogStage.setScene(scene);
 
                 LoginController loginController = loader.getController();
-                loginController.setServices(userService, friendshipService, messageService, friendRequestService, eventService, postService, dialogStage);
+                loginController.setServices(userService, friendshipService, messageService, friendRequestService, eventService, postService, asyncServices, dialogStage);
 
                 dialogStage.show();
             } catch (IOException e) {
@@ -0,0 +1,307 @@
+package com.example.lab6.model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The communities (connected components) of the friendship graph, kept in a union-find.
+ * The build splits the vertices in batches over a ForkJoinPool; the batches link the
+ * roots with compare-and-set and shorten the paths while searching, without locks.
+ * A community is a group of at least two users, a user without friends is not counted.
+ * After the build the communities follow the friendships added or removed through
+ * addFriendship and removeFriendship.
+ */
+public class Communities {
+    private static final int BATCH_SIZE = 4096;
+
+    private final Graph graph;
+    private AtomicIntegerArray parent;
+    private int[] size;
+    private int count;
+
+    private int[] mark;
+    private int epoch;
+
+    /**
+     * Builds the communities on the common ForkJoinPool
+     */
+    public Communities(Graph graph) {
+        this(graph, ForkJoinPool.commonPool());
+    }
+
+    public Communities(Graph graph, ForkJoinPool pool) {
+        this.graph = graph;
+        graph.compact();
+        int n = graph.size();
+        parent = new AtomicIntegerArray(n);
+        for (int v = 0; v < n; v++)
+            parent.set(v, v);
+        pool.invoke(new UnionBatch(0, n));
+        countSizes();
+    }
+
+    /**
+     * @return the root of the set of the vertex, halving the path on the way
+     */
+    private int find(int v) {
+        while (true) {
+            int p = parent.get(v);
+            if (p == v)
+                return v;
+            int grandParent = parent.get(p);
+            if (p != grandParent)
+                parent.compareAndSet(v, p, grandParent);
+            v = grandParent;
+        }
+    }
+
+    /**
+     * Links the root with the higher index under the other one; a failed
+     * compare-and-set means another thread linked that root first, so retry
+     * @return false if the vertices already were in the same set
+     */
+    private boolean union(int u, int v) {
+        while (true) {
+            int ru = find(u), rv = find(v);
+            if (ru == rv)
+                return false;
+            int low = Math.min(ru, rv), high = Math.max(ru, rv);
+            if (parent.compareAndSet(high, high, low))
+                return true;
+        }
+    }
+
+    private void countSizes() {
+        int n = graph.size();
+        size = new int[n];
+        mark = new int[n];
+        count = 0;
+        for (int v = 0; v < n; v++)
+            size[find(v)]++;
+        for (int v = 0; v < n; v++)
+            if (parent.get(v) == v && size[v] > 1)
+                count++;
+    }
+
+    /**
+     * @return the graph the communities are kept for, changed by addFriendship and removeFriendship
+     */
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return the number of communities
+     */
+    public synchronized int count() {
+        return count;
+    }
+
+    /**
+     * @return the number of users of every community, largest first
+     */
+    public synchronized int[] sizes() {
+        int[] sizes = new int[count];
+        int i = 0;
+        for (int v = 0; v < graph.size(); v++)
+            if (parent.get(v) == v && size[v] > 1)
+                sizes[i++] = size[v];
+        Arrays.sort(sizes);
+        for (int left = 0, right = sizes.length - 1; left < right; left++, right--) {
+            int aux = sizes[left];
+            sizes[left] = sizes[right];
+            sizes[right] = aux;
+        }
+        return sizes;
+    }
+
+    /**
+     * @return the ids of the users of every community, largest community first
+     */
+    public synchronized long[][] members() {
+        int n = graph.size();
+        int[] label = new int[n];
+        Integer[] roots = new Integer[count];
+        int c = 0;
+        for (int v = 0; v < n; v++)
+            if (parent.get(v) == v && size[v] > 1)
+                roots[c++] = v;
+        Arrays.sort(roots, (a, b) -> Integer.compare(size[b], size[a]));
+
+        long[][] members = new long[count][];
+        Arrays.fill(label, -1);
+        for (int i = 0; i < count; i++) {
+            label[roots[i]] = i;
+            members[i] = new long[size[roots[i]]];
+        }
+        int[] filled = new int[count];
+        for (int v = 0; v < n; v++) {
+            int i = label[find(v)];
+            if (i >= 0)
+                members[i][filled[i]++] = graph.idOf(v);
+        }
+        return members;
+    }
+
+    /**
+     * @param id the id of a user
+     * @return the ids of the users in the community of the user, empty if the user has no friends
+     */
+    public synchronized long[] membersOf(long id) {
+        int v = graph.indexOf(id);
+        if (v < 0 || size[find(v)] < 2)
+            return new long[0];
+        int root = find(v);
+        long[] members = new long[size[root]];
+        int i = 0;
+        for (int u = 0; u < graph.size(); u++)
+            if (find(u) == root)
+                members[i++] = graph.idOf(u);
+        return members;
+    }
+
+    /**
+     * @return the number of users in the community of the user, 1 if the user has no friends
+     */
+    public synchronized int sizeOf(long id) {
+        int v = graph.indexOf(id);
+        return v < 0 ? 1 : size[find(v)];
+    }
+
+    /**
+     * @return true if the two users are connected through a chain of friendships
+     */
+    public synchronized boolean sameCommunity(long first, long second) {
+        int u = graph.indexOf(first), v = graph.indexOf(second);
+        if (u < 0 || v < 0)
+            return first == second;
+        return find(u) == find(v);
+    }
+
+    /**
+     * Adds the friendship to the graph and joins the two communities
+     */
+    public synchronized void addFriendship(long first, long second) {
+        if (!graph.addEdge(first, second))
+            return;
+        grow();
+        int ru = find(graph.indexOf(first)), rv = find(graph.indexOf(second));
+        if (ru == rv)
+            return;
+        if (size[ru] > 1)
+            count--;
+        if (size[rv] > 1)
+            count--;
+        union(ru, rv);
+        int root = find(ru);
+        size[root] = size[ru] + size[rv];
+        count++;
+    }
+
+    /**
+     * Removes the friendship from the graph; if the two users are no longer connected,
+     * their community is split in two by a breadth first search from each of them
+     */
+    public synchronized void removeFriendship(long first, long second) {
+        if (!graph.removeEdge(first, second))
+            return;
+        int u = graph.indexOf(first), v = graph.indexOf(second);
+        int[] sideOfU = reachable(u, v);
+        if (sideOfU == null)
+            return;
+        int[] sideOfV = reachable(v, -1);
+
+        count--;
+        relabel(sideOfU, u);
+        relabel(sideOfV, v);
+    }
+
+    private void relabel(int[] side, int root) {
+        for (int w : side)
+            parent.set(w, root);
+        size[root] = side.length;
+        if (side.length > 1)
+            count++;
+    }
+
+    /**
+     * @return the vertices reachable from the start, or null if the target is among them
+     */
+    private int[] reachable(int start, int target) {
+        if (++epoch == 0) {
+            Arrays.fill(mark, 0);
+            epoch = 1;
+        }
+        int[] found = new int[16];
+        int length = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        mark[start] = epoch;
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            int w = queue.poll();
+            if (w == target)
+                return null;
+            if (length == found.length)
+                found = Arrays.copyOf(found, length * 2);
+            found[length++] = w;
+            graph.forEachNeighbor(w, x -> {
+                if (mark[x] != epoch) {
+                    mark[x] = epoch;
+                    queue.add(x);
+                }
+            });
+        }
+        return Arrays.copyOf(found, length);
+    }
+
+    /**
+     * Makes room for the users added to the graph since the last change, each in its own set
+     */
+    private void grow() {
+        int n = graph.size();
+        int old = parent.length();
+        if (n == old)
+            return;
+        AtomicIntegerArray grown = new AtomicIntegerArray(n);
+        for (int v = 0; v < n; v++)
+            grown.set(v, v < old ? parent.get(v) : v);
+        parent = grown;
+        size = Arrays.copyOf(size, n);
+        for (int v = old; v < n; v++)
+            size[v] = 1;
+        mark = Arrays.copyOf(mark, n);
+    }
+
+    /**
+     * Unions the edges of a range of vertices, split in halves until the range is one batch
+     */
+    private class UnionBatch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        UnionBatch(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BATCH_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new UnionBatch(from, middle), new UnionBatch(middle, to));
+                return;
+            }
+            int[] offsets = graph.offsets;
+            int[] targets = graph.targets;
+            for (int v = from; v < to; v++)
+                for (int i = offsets[v]; i < offsets[v + 1]; i++)
+                    if (targets[i] > v)
+                        union(v, targets[i]);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.lab6.model;
+
+/**
+ * The diameter of one community: the greatest number of friendships that separate two of its users.
+ * When the computation ran out of time or was approximate, the diameter is only known
+ * to be between the two bounds and getPath is the longest path found.
+ */
+public class CommunityDiameter {
+    private final long[] members;
+    private final int lowerBound;
+    private final int upperBound;
+    private final long[] path;
+
+    public CommunityDiameter(long[] members, int lowerBound, int upperBound, long[] path) {
+        this.members = members;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.path = path;
+    }
+
+    /**
+     * @return the ids of the users of the community
+     */
+    public long[] getMembers() {
+        return members;
+    }
+
+    /**
+     * @return the diameter, or the longest distance found if it is not exact
+     */
+    public int getDiameter() {
+        return lowerBound;
+    }
+
+    public int getLowerBound() {
+        return lowerBound;
+    }
+
+    public int getUpperBound() {
+        return upperBound;
+    }
+
+    public boolean isExact() {
+        return lowerBound == upperBound;
+    }
+
+    /**
+     * @return the ids of the users on a shortest path of getDiameter() friendships, in order
+     */
+    public long[] getPath() {
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        return "CommunityDiameter{" +
+                "members=" + members.length +
+                ", diameter=" + (isExact() ? String.valueOf(lowerBound) : lowerBound + ".." + upperBound) +
+                '}';
+    }
+}
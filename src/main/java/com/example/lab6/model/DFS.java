@@ -1,26 +1,30 @@
 package com.example.lab6.model;
 
 import java.util.Arrays;
-import java.util.List;
 
 public abstract class DFS {
 
     public final Graph graph;
     public final boolean[] visited;
+    private final int[] stack;
+    private final int[] next;
 
 
     public DFS(Graph g) {
         this.graph = g;
+        graph.compact();
         this.visited = new boolean[g.size()];
+        this.stack = new int[g.size()];
+        this.next = new int[g.size()];
         init();
 
     }
 
 
     /**
-     * Initialize boolean[] discovered with false
+     * Initialize boolean[] discovered with false, so a traversal can start over
      */
-    private void init() {
+    protected void init() {
         Arrays.fill(visited, false);
     }
 
@@ -30,32 +34,45 @@ public abstract class DFS {
      * find a connected component
      */
     public void DFS1(int v) {
-        visited[v] = true;
-        for (int u : graph.getEdges(v)) {
-            if (!visited[u]) {
-                DFS1(u);
-            }
-        }
+        dfsUtil(v, null);
     }
 
     /**
-     * calculate the path of a connected component
-     * @param s
-     * @param previousLength
-     * @param path
+     * calculate the path of a connected component; the traversal keeps its own
+     * stack of vertex indexes, so deep components do not overflow the call stack
+     * @param s the index of the start vertex
+     * @param path receives the indexes in the order they are visited, may be null
+     * @return the number of vertices visited
      */
-    public void dfsUtil(int s, int previousLength, List<Integer> path) {
+    public int dfsUtil(int s, int[] path) {
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        int top = 0, count = 0;
         visited[s] = true;
-        path.add(s);
-        int currentLength = 0;
-            for (int u : graph.getEdges(s)) {
-                if (!visited[u]) {
-                    currentLength = previousLength + 1;
-                    dfsUtil(u, currentLength, path);
-                }
+        stack[top] = s;
+        next[top++] = offsets[s];
+        if (path != null)
+            path[count] = s;
+        count++;
+        while (top > 0) {
+            int v = stack[top - 1];
+            int i = next[top - 1];
+            if (i == offsets[v + 1]) {
+                top--;
+                continue;
+            }
+            next[top - 1] = i + 1;
+            int u = targets[i];
+            if (!visited[u]) {
+                visited[u] = true;
+                if (path != null)
+                    path[count] = u;
+                count++;
+                stack[top] = u;
+                next[top++] = offsets[u];
             }
-
         }
-
+        return count;
     }
 
+}
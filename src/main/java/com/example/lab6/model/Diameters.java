@@ -0,0 +1,251 @@
+package com.example.lab6.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the diameter of every community of the friendship graph, one community per task
+ * on a ForkJoinPool. Two double sweep breadth first searches give a lower bound and a start
+ * vertex close to the middle of the community; iFUB (iterative fringe upper bound) then searches
+ * from the vertices farthest from that start, level by level, until the bounds meet.
+ * Usually a handful of searches is enough instead of one search per user.
+ */
+public class Diameters {
+    private final Graph graph;
+    private final long timeBudget;
+    private final int approximateAbove;
+    private final ForkJoinPool pool;
+    private int[] local;
+
+    /**
+     * Exact diameters, without a time limit, on the common ForkJoinPool
+     */
+    public Diameters(Graph graph) {
+        this(graph, 0, Integer.MAX_VALUE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param timeBudget       milliseconds after which every community still running keeps the bounds
+     *                         it has, 0 for no limit
+     * @param approximateAbove the communities with more users get only the double sweep bounds
+     */
+    public Diameters(Graph graph, long timeBudget, int approximateAbove, ForkJoinPool pool) {
+        this.graph = graph;
+        this.timeBudget = timeBudget;
+        this.approximateAbove = approximateAbove;
+        this.pool = pool;
+    }
+
+    /**
+     * @return the diameter of every community, the greatest first
+     */
+    public List<CommunityDiameter> compute() {
+        graph.compact();
+        long deadline = System.nanoTime() + timeBudget * 1_000_000;
+        List<DiameterTask> tasks = new ArrayList<>();
+        for (int[] vertices : components())
+            tasks.add(new DiameterTask(vertices, deadline));
+
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        List<CommunityDiameter> diameters = new ArrayList<>();
+        for (DiameterTask task : tasks)
+            diameters.add(task.join());
+        diameters.sort(Comparator.comparingInt(CommunityDiameter::getDiameter)
+                .thenComparingInt(x -> x.getMembers().length).reversed());
+        return diameters;
+    }
+
+    /**
+     * @return the community with the greatest diameter, null if there are no friendships
+     */
+    public CommunityDiameter mostSociable() {
+        List<CommunityDiameter> diameters = compute();
+        return diameters.isEmpty() ? null : diameters.get(0);
+    }
+
+    /**
+     * Splits the vertices in communities of at least two users; local[v] becomes
+     * the position of v in its community
+     */
+    private List<int[]> components() {
+        int n = graph.size();
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        local = new int[n];
+        Arrays.fill(local, -1);
+        int[] queue = new int[n];
+        List<int[]> components = new ArrayList<>();
+        for (int s = 0; s < n; s++) {
+            if (local[s] >= 0 || offsets[s + 1] == offsets[s])
+                continue;
+            int head = 0, tail = 0;
+            local[s] = tail;
+            queue[tail++] = s;
+            while (head < tail) {
+                int v = queue[head++];
+                for (int i = offsets[v]; i < offsets[v + 1]; i++)
+                    if (local[targets[i]] < 0) {
+                        local[targets[i]] = tail;
+                        queue[tail++] = targets[i];
+                    }
+            }
+            components.add(Arrays.copyOf(queue, tail));
+        }
+        return components;
+    }
+
+    private class DiameterTask extends RecursiveTask<CommunityDiameter> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] vertices;
+        private final long deadline;
+        private int[] dist;
+        private int[] queue;
+        private int farthest;
+
+        DiameterTask(int[] vertices, long deadline) {
+            this.vertices = vertices;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected CommunityDiameter compute() {
+            int n = vertices.length;
+            dist = new int[n];
+            queue = new int[n];
+
+            int start = 0;
+            for (int x = 1; x < n; x++)
+                if (degree(x) > degree(start))
+                    start = x;
+            // four sweeps: two double sweeps, each giving a lower bound and the middle of a long path
+            int center = start;
+            int eccentricity = bfs(start);
+            int source = farthest;
+            int lowerBound = bfs(source);
+            int target = farthest;
+            for (int sweep = 0; sweep < 2; sweep++) {
+                int middle = farthest;
+                for (int step = 0; step < dist[farthest] / 2; step++)
+                    middle = closer(middle);
+                int e = bfs(middle);
+                if (e > lowerBound) {
+                    lowerBound = e;
+                    source = middle;
+                    target = farthest;
+                }
+                if (e < eccentricity) {
+                    center = middle;
+                    eccentricity = e;
+                }
+                if (sweep == 1)
+                    break;
+                int a = farthest;
+                int d = bfs(a);
+                if (d > lowerBound) {
+                    lowerBound = d;
+                    source = a;
+                    target = farthest;
+                }
+            }
+            // iFUB searches from the vertex with the smallest eccentricity found
+            if (center != queue[0])
+                bfs(center);
+            int upperBound = Math.min(2 * eccentricity, n - 1);
+
+            if (n <= approximateAbove) {
+                int[] order = queue.clone();
+                int[] level = dist.clone();
+                int position = n - 1;
+                int i = eccentricity;
+                while (upperBound > lowerBound && !outOfTime()) {
+                    while (position >= 0 && level[order[position]] == i && !outOfTime()) {
+                        int x = order[position--];
+                        int e = bfs(x);
+                        if (e > lowerBound) {
+                            lowerBound = e;
+                            source = x;
+                            target = farthest;
+                        }
+                    }
+                    if (position >= 0 && level[order[position]] == i)
+                        break;
+                    i--;
+                    upperBound = Math.max(lowerBound, Math.min(upperBound, 2 * i));
+                }
+            }
+
+            bfs(source);
+            long[] path = new long[lowerBound + 1];
+            int x = target;
+            for (int k = lowerBound; k > 0; k--) {
+                path[k] = graph.idOf(vertices[x]);
+                x = closer(x);
+            }
+            path[0] = graph.idOf(vertices[x]);
+            long[] members = new long[n];
+            for (int y = 0; y < n; y++)
+                members[y] = graph.idOf(vertices[y]);
+            return new CommunityDiameter(members, lowerBound, upperBound, path);
+        }
+
+        private boolean outOfTime() {
+            return timeBudget > 0 && System.nanoTime() - deadline > 0;
+        }
+
+        private int degree(int x) {
+            return graph.offsets[vertices[x] + 1] - graph.offsets[vertices[x]];
+        }
+
+        /**
+         * Breadth first search from x; dist holds the distances and queue the
+         * vertices in the order they were reached, so sorted by distance
+         * @return the eccentricity of x
+         */
+        private int bfs(int x) {
+            int[] offsets = graph.offsets;
+            int[] targets = graph.targets;
+            Arrays.fill(dist, -1);
+            int head = 0, tail = 0;
+            dist[x] = 0;
+            queue[tail++] = x;
+            while (head < tail) {
+                int y = queue[head++];
+                int v = vertices[y];
+                for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                    int z = local[targets[i]];
+                    if (dist[z] < 0) {
+                        dist[z] = dist[y] + 1;
+                        queue[tail++] = z;
+                    }
+                }
+            }
+            farthest = queue[tail - 1];
+            return dist[farthest];
+        }
+
+        /**
+         * @return a neighbour of x one step closer to the source of the last search
+         */
+        private int closer(int x) {
+            int v = vertices[x];
+            for (int i = graph.offsets[v]; i < graph.offsets[v + 1]; i++) {
+                int z = local[graph.targets[i]];
+                if (dist[z] == dist[x] - 1)
+                    return z;
+            }
+            return x;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.lab6.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * A user subscribed to an event, with the date of the last reminder the user got for it
+ */
+public class EventSubscription {
+    private Event event;
+    private Long user;
+    private LocalDateTime lastNotificationDate;
+
+    public EventSubscription(Event event, Long user, LocalDateTime lastNotificationDate) {
+        this.event = event;
+        this.user = user;
+        this.lastNotificationDate = lastNotificationDate;
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    public Long getUser() {
+        return user;
+    }
+
+    /**
+     * @return the date of the last reminder, null if the user got none
+     */
+    public LocalDateTime getLastNotificationDate() {
+        return lastNotificationDate;
+    }
+
+    public void setLastNotificationDate(LocalDateTime lastNotificationDate) {
+        this.lastNotificationDate = lastNotificationDate;
+    }
+}
@@ -53,6 +53,22 @@ public class Friendship extends Entity<Tuple<Long,Long>> implements List<String>
     }
 
 
+    /**
+     *
+     * @return the key of the friendship, the smaller id first, so it does not depend on the order of the users
+     */
+    public Tuple<Long, Long> getKey() {
+        return key(ship.getE1(), ship.getE2());
+    }
+
+    /**
+     *
+     * @return the key of the friendship of the two users
+     */
+    public static Tuple<Long, Long> key(Long first, Long second) {
+        return Tuple.ordered(first, second);
+    }
+
     public LocalDateTime getDate(){return date;}
 
     @Override
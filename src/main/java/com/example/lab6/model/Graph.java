@@ -1,69 +1,357 @@
 package com.example.lab6.model;
 
-import com.example.lab6.repository.Repository;
+import com.example.lab6.repository.FriendshipRepository;
+import com.example.lab6.utils.LongIntMap;
 
+import java.util.Arrays;
+import java.util.function.IntConsumer;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-
+/**
+ * Undirected friendship graph in compressed sparse row form.
+ * The user ids are remapped to dense indexes 0..size()-1; the neighbours of the
+ * vertex v are targets[offsets[v]] .. targets[offsets[v + 1] - 1], sorted.
+ * Edges added or removed after the build are kept in a delta buffer and merged
+ * into the arrays by compact(), which runs on its own once the buffer grows.
+ * Not thread safe.
+ */
 public class Graph {
+    private static final int MIN_COMPACTION_THRESHOLD = 1024;
+
+    private FriendshipRepository<Tuple<Long, Long>, Friendship> repoFriendship;
+
+    private final LongIntMap indexes = new LongIntMap();
+    private long[] ids = new long[16];
+    private int n;
+
+    int[] offsets = new int[1];
+    int[] targets = new int[0];
+    private int baseVertices;
 
-    Repository<Long, User> repoUser;
-    //Repository<Tuple<Long, Long>, Friendship> repoFriendship;
-    public int N;
-    public List<Integer>[] graph;
+    private int[][] added = new int[16][];
+    private int[] addedCount = new int[16];
+    private final LongIntMap removed = new LongIntMap(16, 0);
+    private int deltaSize;
+    private int edges;
 
-    public Graph(Repository<Long, User> repoUser) {
-        this.repoUser = repoUser;
+    public Graph(FriendshipRepository<Tuple<Long, Long>, Friendship> repoFriendship) {
+        this.repoFriendship = repoFriendship;
+    }
 
+    public Graph() {
     }
 
+    /**
+     * (Re)builds the graph from all the friendships, read in a single streaming pass
+     */
+    public void createGraph() {
+        clear();
+        EdgeList edgeList = new EdgeList();
+        repoFriendship.forEachFriendship((first, second) -> edgeList.add(index(first), index(second)));
+        build(edgeList);
+    }
 
+    /**
+     * @param friendships the friendships the graph is made of
+     * @return the graph of the friendships
+     */
+    public static Graph of(Iterable<Friendship> friendships) {
+        Graph graph = new Graph();
+        EdgeList edgeList = new EdgeList();
+        for (Friendship friendship : friendships)
+            edgeList.add(graph.index(friendship.getE1()), graph.index(friendship.getE2()));
+        graph.build(edgeList);
+        return graph;
+    }
 
-    public void createGraph(){
-        final Long[] maxim = {Long.valueOf(0)};
-        repoUser.findAll().forEach(x -> {
-            if (x.getId() > maxim[0])
-                maxim[0] = x.getId();
-        });
-        this.N = Math.toIntExact(maxim[0] + 1);
-        graph = new List[N];
-        for(int i = 1; i < N; ++i) {
-            graph[i] = new LinkedList<Integer>();
+    private void clear() {
+        indexes.clear();
+        n = 0;
+        offsets = new int[1];
+        targets = new int[0];
+        baseVertices = 0;
+        clearDelta();
+        edges = 0;
+    }
+
+    private void clearDelta() {
+        added = new int[Math.max(16, n)][];
+        addedCount = new int[added.length];
+        removed.clear();
+        deltaSize = 0;
+    }
+
+    private int index(long id) {
+        int index = indexes.get(id);
+        if (index >= 0)
+            return index;
+        if (n == ids.length)
+            ids = Arrays.copyOf(ids, n * 2);
+        ids[n] = id;
+        indexes.put(id, n);
+        return n++;
+    }
+
+    /**
+     * Counting sort of the edge list by source: one pass to count the degrees,
+     * one to place the targets, then every row is sorted and deduplicated
+     */
+    private void build(EdgeList edgeList) {
+        int[] degree = new int[n + 1];
+        for (int i = 0; i < edgeList.size; i++) {
+            int u = edgeList.first[i], v = edgeList.second[i];
+            if (u == v)
+                continue;
+            degree[u + 1]++;
+            degree[v + 1]++;
         }
-        for (User user : repoUser.findAll()) {
-            for (User user1 : user.getFriendsList()) {
-                graph[Math.toIntExact(user.getId())].add(Math.toIntExact(user1.getId()));
-            }
+        for (int v = 0; v < n; v++)
+            degree[v + 1] += degree[v];
+
+        int[] position = Arrays.copyOf(degree, n);
+        int[] all = new int[degree[n]];
+        for (int i = 0; i < edgeList.size; i++) {
+            int u = edgeList.first[i], v = edgeList.second[i];
+            if (u == v)
+                continue;
+            all[position[u]++] = v;
+            all[position[v]++] = u;
         }
-    }
 
+        offsets = new int[n + 1];
+        int size = 0;
+        for (int v = 0; v < n; v++) {
+            int from = degree[v], to = degree[v + 1];
+            Arrays.sort(all, from, to);
+            offsets[v] = size;
+            for (int i = from; i < to; i++)
+                if (i == from || all[i] != all[i - 1])
+                    all[size++] = all[i];
+        }
+        offsets[n] = size;
+        targets = size == all.length ? all : Arrays.copyOf(all, size);
+        baseVertices = n;
+        edges = size / 2;
+        clearDelta();
+    }
 
+    /**
+     * @return the number of vertices, the users that have or had at least one friend
+     */
     public int size() {
-        return this.N;
+        return n;
+    }
+
+    /**
+     * @return the number of friendships
+     */
+    public int edgeCount() {
+        return edges;
+    }
+
+    /**
+     * @param index the index of a vertex
+     * @return the id of the user
+     */
+    public long idOf(int index) {
+        return ids[index];
     }
 
+    /**
+     * @param id the id of a user
+     * @return the index of the user or -1 if the user is not in the graph
+     */
+    public int indexOf(long id) {
+        return indexes.get(id);
+    }
 
-    public List<Integer> getEdges(int s) {
-        List<Integer> list = new ArrayList<>();
-        if(graph[s] == null)
-            return null;
-        for(int i: graph[s])
-            list.add(i);
-        return list;
+    private static long key(int u, int v) {
+        return ((long) u << 32) | (v & 0xFFFFFFFFL);
     }
 
+    private boolean inBase(int u, int v) {
+        return u < baseVertices && v < baseVertices
+                && Arrays.binarySearch(targets, offsets[u], offsets[u + 1], v) >= 0;
+    }
 
-    public List<Integer> getVertices(){
-        List<Integer> list = new ArrayList<>();
-        for(int i = 0; i < size(); i ++){
-            if(graph[i] != null)
-                if(!graph[i].isEmpty())
-                    list.add(i);
+    private int findAdded(int u, int v) {
+        if (u >= added.length || added[u] == null)
+            return -1;
+        for (int i = 0; i < addedCount[u]; i++)
+            if (added[u][i] == v)
+                return i;
+        return -1;
+    }
 
+    public boolean hasEdge(long first, long second) {
+        int u = indexOf(first), v = indexOf(second);
+        if (u < 0 || v < 0)
+            return false;
+        if (inBase(u, v))
+            return !removed.containsKey(key(u, v));
+        return findAdded(u, v) >= 0;
+    }
+
+    /**
+     * Adds the friendship between the two users, adding the users if they are new
+     * @return false if the friendship already was in the graph
+     */
+    public boolean addEdge(long first, long second) {
+        if (first == second || hasEdge(first, second))
+            return false;
+        int u = index(first), v = index(second);
+        if (inBase(u, v)) {
+            removed.remove(key(u, v));
+            removed.remove(key(v, u));
+        } else {
+            append(u, v);
+            append(v, u);
+        }
+        edges++;
+        delta();
+        return true;
+    }
+
+    /**
+     * Removes the friendship between the two users
+     * @return false if the friendship was not in the graph
+     */
+    public boolean removeEdge(long first, long second) {
+        if (!hasEdge(first, second))
+            return false;
+        int u = indexOf(first), v = indexOf(second);
+        if (inBase(u, v)) {
+            removed.put(key(u, v), 1);
+            removed.put(key(v, u), 1);
+        } else {
+            unappend(u, v);
+            unappend(v, u);
+        }
+        edges--;
+        delta();
+        return true;
+    }
+
+    private void append(int u, int v) {
+        if (u >= added.length) {
+            int length = Math.max(u + 1, added.length * 2);
+            added = Arrays.copyOf(added, length);
+            addedCount = Arrays.copyOf(addedCount, length);
+        }
+        if (added[u] == null)
+            added[u] = new int[4];
+        else if (addedCount[u] == added[u].length)
+            added[u] = Arrays.copyOf(added[u], addedCount[u] * 2);
+        added[u][addedCount[u]++] = v;
+    }
+
+    private void unappend(int u, int v) {
+        int i = findAdded(u, v);
+        added[u][i] = added[u][--addedCount[u]];
+    }
+
+    private void delta() {
+        if (++deltaSize > Math.max(MIN_COMPACTION_THRESHOLD, edges / 8))
+            compact();
+    }
+
+    /**
+     * @return true if there are edge changes not merged into the arrays yet
+     */
+    public boolean hasDelta() {
+        return deltaSize > 0;
+    }
+
+    /**
+     * Merges the delta buffer into the compressed arrays
+     */
+    public void compact() {
+        if (deltaSize == 0 && baseVertices == n)
+            return;
+        int[] newOffsets = new int[n + 1];
+        int[] newTargets = new int[edges * 2];
+        int size = 0;
+        for (int v = 0; v < n; v++) {
+            newOffsets[v] = size;
+            if (v < baseVertices) {
+                for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                    int u = targets[i];
+                    if (removed.size() == 0 || !removed.containsKey(key(v, u)))
+                        newTargets[size++] = u;
+                }
+            }
+            if (v < added.length && addedCount[v] > 0) {
+                System.arraycopy(added[v], 0, newTargets, size, addedCount[v]);
+                size += addedCount[v];
+                Arrays.sort(newTargets, newOffsets[v], size);
+            }
+        }
+        newOffsets[n] = size;
+        offsets = newOffsets;
+        targets = newTargets;
+        baseVertices = n;
+        clearDelta();
+    }
+
+    /**
+     * @return the number of friends of the vertex
+     */
+    public int degree(int v) {
+        if (deltaSize == 0 && v < baseVertices)
+            return offsets[v + 1] - offsets[v];
+        int[] count = new int[1];
+        forEachNeighbor(v, u -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Calls the action for every neighbour of the vertex, including the pending changes
+     */
+    public void forEachNeighbor(int v, IntConsumer action) {
+        if (v < baseVertices) {
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                int u = targets[i];
+                if (removed.size() == 0 || !removed.containsKey(key(v, u)))
+                    action.accept(u);
+            }
+        }
+        if (v < added.length)
+            for (int i = 0; i < addedCount[v]; i++)
+                action.accept(added[v][i]);
+    }
+
+    /**
+     * @return the indexes of the vertices with at least one neighbour
+     */
+    public int[] getVertices() {
+        compact();
+        int count = 0;
+        for (int v = 0; v < n; v++)
+            if (offsets[v + 1] > offsets[v])
+                count++;
+        int[] vertices = new int[count];
+        count = 0;
+        for (int v = 0; v < n; v++)
+            if (offsets[v + 1] > offsets[v])
+                vertices[count++] = v;
+        return vertices;
+    }
+
+    /**
+     * Growable pair of int arrays holding the edges read during a build
+     */
+    private static class EdgeList {
+        private int[] first = new int[1024];
+        private int[] second = new int[1024];
+        private int size;
+
+        void add(int u, int v) {
+            if (size == first.length) {
+                first = Arrays.copyOf(first, size * 2);
+                second = Arrays.copyOf(second, size * 2);
+            }
+            first[size] = u;
+            second[size] = v;
+            size++;
         }
-        System.out.println();
-        return list;
     }
 }
@@ -1,7 +1,5 @@
 package com.example.lab6.model;
 
-import java.util.*;
-
 
 public class SocialNetwork extends DFS{
 
@@ -11,37 +9,30 @@ public class SocialNetwork extends DFS{
 
     /**
      *
-     * @return a List<Integer> with of User id that form the longest path
+     * @return the community whose two most distant users are the farthest apart,
+     * null if there are no friendships
+     * @see Diameters
      */
-    public List<Integer> findLongestPath(){
-        List<Integer> path = new ArrayList<Integer>();
-        List<Integer> path1 = new ArrayList<Integer>();
-        int length = 0, maxLength= -1;
+    public CommunityDiameter mostSociableCommunity(){
+        return new Diameters(graph).mostSociable();
+    }
 
-        for(int u: graph.getVertices())
-            if (!visited[u]) {
-                path.clear();
-                dfsUtil(u, 0, path);
-                if (length > maxLength) {
-                    maxLength = length;
-                    path1 = path;
-                }
-            }
-        return path1;
+    /**
+     *
+     * @return the ids of the users on the longest shortest path of the most sociable community
+     */
+    public long[] findLongestPath(){
+        CommunityDiameter community = mostSociableCommunity();
+        return community == null ? new long[0] : community.getPath();
     }
 
     /**
      *
      * @return number of connected components
+     * @see Communities
      */
     public int nrCommunities(){
-        int nr = 0;
-        for(int u: graph.getVertices())
-            if (!visited[u]) {
-                DFS1(u);
-                nr = nr + 1;
-            }
-        return nr;
+        return new Communities(graph).count();
     }
 
-}
\ No newline at end of file
+}
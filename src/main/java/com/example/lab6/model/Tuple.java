@@ -1,8 +1,11 @@
 package com.example.lab6.model;
 
+import java.io.Serializable;
 import java.util.Objects;
 
-public class Tuple<E1, E2> {
+public class Tuple<E1, E2> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private E1 e1;
     private E2 e2;
 
@@ -11,6 +14,14 @@ public class Tuple<E1, E2> {
         this.e2 = e2;
     }
 
+    /**
+     *
+     * @return the tuple of the two values in ascending order, the same for (a, b) and (b, a)
+     */
+    public static <T extends Comparable<T>> Tuple<T, T> ordered(T a, T b) {
+        return a.compareTo(b) <= 0 ? new Tuple<>(a, b) : new Tuple<>(b, a);
+    }
+
     /**
      *
      * @return the first element from tuple
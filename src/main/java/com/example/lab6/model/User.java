@@ -2,6 +2,7 @@ package com.example.lab6.model;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class User extends Entity<Long>{
     private String firstName;
@@ -9,14 +10,14 @@ public class User extends Entity<Long>{
     private String email;
     private String password;
     public ArrayList<User> friendsList;
+    private transient Supplier<List<User>> friendsLoader;
 
     public User(String firstName, String lastName, String email, String password) {
         this.firstName = firstName;
         this.lastName = lastName;
         this.email = email;
         this.password = password;
-        this.friendsList = new ArrayList<>() {
-        };
+        this.friendsList = new ArrayList<>();
     }
 
     public User(String firstName, String lastName) {
@@ -60,9 +61,26 @@ public class User extends Entity<Long>{
      * @return the list of friends of a user
      */
     public List<User> getFriendsList() {
+        loadFriends();
         return friendsList;
     }
 
+    /**
+     *
+     * @param friendsLoader loads the friends the first time the friend list is needed
+     */
+    public void setFriendsLoader(Supplier<List<User>> friendsLoader) {
+        this.friendsLoader = friendsLoader;
+    }
+
+    private void loadFriends() {
+        if (friendsLoader != null) {
+            Supplier<List<User>> loader = friendsLoader;
+            friendsLoader = null;
+            friendsList.addAll(loader.get());
+        }
+    }
+
     /**
      *
      * @param firstName
@@ -84,6 +102,7 @@ public class User extends Entity<Long>{
      * @param friend is added to the friendlist
      */
     public void addFriend(User friend){
+           loadFriends();
            this.friendsList.add(friend);
     }
 
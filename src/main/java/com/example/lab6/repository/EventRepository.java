@@ -1,11 +1,24 @@
 package com.example.lab6.repository;
 
 import com.example.lab6.model.Entity;
+import com.example.lab6.model.EventSubscription;
+import com.example.lab6.model.Tuple;
 import com.example.lab6.model.validators.ValidationException;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 
 public interface EventRepository<ID, E extends Entity<ID>> {
+
+    /**
+     * Receives the ids of an event and of one of its subscribers
+     */
+    @FunctionalInterface
+    interface SubscriptionConsumer {
+        void accept(long event, long user);
+    }
+
     E findOne(ID id);
 
     /**
@@ -44,8 +57,49 @@ public interface EventRepository<ID, E extends Entity<ID>> {
 
     E delete(E entity, Long userID);
 
-    E saveLastNotificationDate(Long event, Long user);
+    /**
+     * Marks the reminder of the event as sent to the user at the given date
+     */
+    E saveLastNotificationDate(Long event, Long user, LocalDateTime date);
 
     LocalDateTime getLastNotificationDate(Long eventID, Long userID);
 
+    /**
+     * @param user   the id of the user
+     * @param offset number of events to skip
+     * @param limit  maximum number of events returned
+     * @return the events the user subscribed to, with their subscribers, by start date
+     */
+    List<E> findSubscribed(Long user, int offset, int limit);
+
+    /**
+     * @return the events the user did not subscribe to, with their subscribers, by start date
+     */
+    List<E> findNotSubscribed(Long user, int offset, int limit);
+
+    /**
+     * @return the events created by the user, with their subscribers, by start date
+     */
+    List<E> findAdministered(Long user, int offset, int limit);
+
+    /**
+     * Streams every subscription to the consumer, without keeping them in memory
+     */
+    void forEachSubscription(SubscriptionConsumer consumer);
+
+    /**
+     * @param users the ids of the subscribers
+     * @param from  inclusive lower bound of the start date
+     * @param to    exclusive upper bound of the start date
+     * @return the subscriptions of the users to the events starting in the time range,
+     * the events without their subscribers
+     */
+    List<EventSubscription> findSubscriptions(Collection<Long> users, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Sets the date of the last reminder of several subscriptions at once
+     * @param subscriptions the ids of the event and of the subscriber of each subscription
+     */
+    void saveLastNotificationDates(Collection<Tuple<Long, Long>> subscriptions, LocalDateTime date);
+
 }
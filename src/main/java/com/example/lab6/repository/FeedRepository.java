@@ -0,0 +1,56 @@
+package com.example.lab6.repository;
+
+import com.example.lab6.model.Post;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The materialized home timelines: every post is copied to the timeline of each
+ * friend of its author when it is published (fan-out on write). The authors with
+ * too many friends are "pull authors", their posts are not copied but read from
+ * the posts of the friends of the reader when the timeline is queried.
+ */
+public interface FeedRepository {
+
+    /**
+     * Adds the post to the timelines of the given users
+     * @param post a saved post, with id
+     * @param owners the users whose timelines receive the post
+     */
+    void append(Post post, Collection<Long> owners);
+
+    /**
+     * Adds all the posts of the author to the timeline of the owner, used when they become friends
+     */
+    void copyPosts(Long owner, Long author);
+
+    /**
+     * Removes the posts of the author from the timeline of the owner, used when they are no longer friends
+     */
+    void removeAuthor(Long owner, Long author);
+
+    /**
+     * Removes a deleted post from every timeline
+     */
+    void removePost(Long post);
+
+    /**
+     * @param owner the reader
+     * @param pullAuthors the authors whose posts are not copied to the timelines
+     * @param offset number of posts skipped
+     * @param limit maximum number of posts returned
+     * @return the posts of the friends of the owner, newest first
+     */
+    List<Post> findTimeline(Long owner, Collection<Long> pullAuthors, int offset, int limit);
+
+    /**
+     * @return the number of posts on the timeline of the owner
+     */
+    int countTimeline(Long owner, Collection<Long> pullAuthors);
+
+    Set<Long> findPullAuthors();
+
+    void savePullAuthor(Long author);
+}
@@ -0,0 +1,58 @@
+package com.example.lab6.repository;
+
+import com.example.lab6.model.Entity;
+import com.example.lab6.model.Status;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Friend request repository with the inbox and outbox queries and the state
+ * transitions of a request, each one done with a single statement
+ * @param <ID> - type E must have an attribute of type ID
+ * @param <E> -  type of entities saved in repository
+ */
+public interface FriendRequestRepository<ID, E extends Entity<ID>> extends Repository<ID, E> {
+
+    /**
+     * @param user   the user who received the requests
+     * @param status the status of the requests
+     * @param offset number of requests to skip
+     * @param limit  maximum number of requests returned
+     * @return the requests received by the user, newest first
+     */
+    List<E> findReceived(Long user, Status status, int offset, int limit);
+
+    /**
+     * @return the number of requests with the status received by the user
+     */
+    int countReceived(Long user, Status status);
+
+    /**
+     * @param user   the user who sent the requests
+     * @param status the status of the requests
+     * @param offset number of requests to skip
+     * @param limit  maximum number of requests returned
+     * @return the requests sent by the user, newest first
+     */
+    List<E> findSent(Long user, Status status, int offset, int limit);
+
+    /**
+     * @return the number of requests with the status sent by the user
+     */
+    int countSent(Long user, Status status);
+
+    /**
+     * Removes the pending request and saves the friendship of the two users, both or none
+     * @param date the date of the friendship
+     * @return the accepted request, with the status APPROVED,
+     * or null if there was no pending request from the sender to the receiver
+     */
+    E accept(Long from, Long to, LocalDateTime date);
+
+    /**
+     * Removes the pending request
+     * @return the removed request, or null if there was no pending request from the sender to the receiver
+     */
+    E removePending(Long from, Long to);
+}
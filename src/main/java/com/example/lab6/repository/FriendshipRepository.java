@@ -0,0 +1,49 @@
+package com.example.lab6.repository;
+
+import com.example.lab6.model.Entity;
+import com.example.lab6.repository.paging.Page;
+import com.example.lab6.repository.paging.Pageable;
+import com.example.lab6.repository.paging.PagingRepository;
+
+import java.util.List;
+
+/**
+ * Friendship repository with the queries that do not need whole entities
+ * @param <ID> - type E must have an attribute of type ID
+ * @param <E> -  type of entities saved in repository
+ */
+public interface FriendshipRepository<ID, E extends Entity<ID>> extends PagingRepository<ID, E> {
+
+    /**
+     * Receives the ids of the two users of a friendship
+     */
+    @FunctionalInterface
+    interface EdgeConsumer {
+        void accept(long firstFriend, long secondFriend);
+    }
+
+    /**
+     * @param user the id of the user
+     * @return the friendships of the user, newest first, each one oriented from the user:
+     * the first id is the user and the second one the friend
+     */
+    List<E> friendsOf(Long user);
+
+    /**
+     * @param user     the id of the user
+     * @param pageable a KeysetPageable continues after its cursor, any other Pageable skips the previous pages
+     * @return a page of the friendships of the user, ordered and oriented like friendsOf
+     */
+    Page<E> friendsOf(Long user, Pageable pageable);
+
+    /**
+     * @return the number of friends of the user
+     */
+    int countFriends(Long user);
+
+    /**
+     * Streams every friendship to the consumer, without keeping them in memory
+     * @param consumer receives the two users of each friendship
+     */
+    void forEachFriendship(EdgeConsumer consumer);
+}
@@ -0,0 +1,54 @@
+package com.example.lab6.repository;
+
+import com.example.lab6.model.Entity;
+import com.example.lab6.model.MessageDTO;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Group repository; the groups are read with their members but without their messages,
+ * which are paged separately
+ * @param <ID> - type E must have an attribute of type ID
+ * @param <E> -  type of entities saved in repository
+ */
+public interface GroupRepository<ID, E extends Entity<ID>> extends Repository<ID, E> {
+
+    /**
+     * @param user   the id of a member
+     * @param name   if not empty, only the groups with a name containing it
+     * @param offset number of groups to skip
+     * @param limit  maximum number of groups returned
+     * @return the groups of the user, newest first
+     */
+    List<E> findByMember(Long user, String name, int offset, int limit);
+
+    /**
+     * @return the number of groups of the user with a name containing the given one
+     */
+    int countByMember(Long user, String name);
+
+    /**
+     * @param group  the id of the group
+     * @param offset number of messages to skip
+     * @param limit  maximum number of messages returned
+     * @return the messages sent in the group, newest first, addressed to the other members
+     */
+    List<MessageDTO> findMessages(ID group, int offset, int limit);
+
+    /**
+     * @return the number of messages sent in the group
+     */
+    int countMessages(ID group);
+
+    /**
+     * Saves a message sent in the group
+     * @param message the message, it gets its generated id
+     */
+    void saveMessage(ID group, MessageDTO message);
+
+    /**
+     * Streams every group to the consumer, without keeping them in memory
+     */
+    void forEachGroup(Consumer<E> consumer);
+}
@@ -0,0 +1,87 @@
+package com.example.lab6.repository;
+
+import com.example.lab6.model.Entity;
+import com.example.lab6.repository.paging.PagingRepository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Message repository with conversation queries; filtering, ordering and
+ * paging are done by the storage, not in the services
+ * @param <ID> - type E must have an attribute of type ID
+ * @param <E> -  type of entities saved in repository
+ */
+public interface MessageRepository<ID, E extends Entity<ID>> extends PagingRepository<ID, E> {
+
+    /**
+     * @param ids the ids of the messages
+     * @return the messages that exist, with their recipients, by id
+     */
+    Map<ID, E> findByIds(Collection<ID> ids);
+
+    /**
+     * @param message the id of the message
+     * @param limit   maximum number of messages returned
+     * @return the message followed by the message it replies to, the message that one replies to
+     * and so on up the reply chain
+     */
+    List<E> findThread(ID message, int limit);
+
+    /**
+     * @param user1  one participant
+     * @param user2  the other participant
+     * @param offset number of messages to skip
+     * @param limit  maximum number of messages returned
+     * @return the messages exchanged by the two users, newest first
+     */
+    List<E> findConversation(Long user1, Long user2, int offset, int limit);
+
+    /**
+     * @return the number of messages exchanged by the two users
+     */
+    int countConversation(Long user1, Long user2);
+
+    /**
+     * @param user    the logged user
+     * @param members the other members of the conversation
+     * @param offset  number of messages to skip
+     * @param limit   maximum number of messages returned
+     * @return the messages sent by user to all the members and the messages
+     * sent by any member to user, oldest first
+     */
+    List<E> findGroupConversation(Long user, List<Long> members, int offset, int limit);
+
+    /**
+     * @param recipient the user who received the messages
+     * @param start     exclusive lower bound of the date
+     * @param end       inclusive upper bound of the date
+     * @return the messages received in the time range, oldest first
+     */
+    List<E> findReceived(Long recipient, LocalDateTime start, LocalDateTime end, int offset, int limit);
+
+    /**
+     * @param sender    the user who sent the messages
+     * @param recipient if not null, only the messages received by this user
+     * @param start     exclusive lower bound of the date
+     * @param end       inclusive upper bound of the date
+     * @return the messages sent in the time range, oldest first
+     */
+    List<E> findSent(Long sender, Long recipient, LocalDateTime start, LocalDateTime end, int offset, int limit);
+
+    /**
+     * Saves the messages with their recipients, all of them or none
+     * @param entities the messages, they get their generated ids
+     * @return the given messages
+     */
+    List<E> saveAll(List<E> entities);
+
+    /**
+     * @param user the id of a user
+     * @return the ids of the users who exchanged at least one message with the user
+     */
+    Set<Long> findConversationPartners(Long user);
+}
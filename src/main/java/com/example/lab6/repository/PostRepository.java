@@ -0,0 +1,26 @@
+package com.example.lab6.repository;
+
+import com.example.lab6.model.Entity;
+import com.example.lab6.repository.paging.Page;
+import com.example.lab6.repository.paging.Pageable;
+import com.example.lab6.repository.paging.PagingRepository;
+
+/**
+ * Post repository with the posts of one author paged by the storage
+ * @param <ID> - type E must have an attribute of type ID
+ * @param <E> -  type of entities saved in repository
+ */
+public interface PostRepository<ID, E extends Entity<ID>> extends PagingRepository<ID, E> {
+
+    /**
+     * @param author   the id of the author
+     * @param pageable a KeysetPageable continues after its cursor, any other Pageable skips the previous pages
+     * @return a page of the posts of the author, newest first
+     */
+    Page<E> findByAuthor(Long author, Pageable pageable);
+
+    /**
+     * @return the number of posts of the author
+     */
+    int countByAuthor(Long author);
+}
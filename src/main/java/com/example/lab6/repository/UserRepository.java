@@ -4,6 +4,10 @@ import com.example.lab6.model.Entity;
 import com.example.lab6.model.User;
 import com.example.lab6.model.validators.ValidationException;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 public interface UserRepository<ID, E extends Entity<ID>> {
 
     /**
@@ -17,11 +21,36 @@ public interface UserRepository<ID, E extends Entity<ID>> {
 
     E findOneByEmail(String email);
 
+    /**
+     * @param ids the ids of the users
+     * @return the users that exist, by id
+     */
+    Map<ID, E> findByIds(Collection<ID> ids);
+
     /**
      * @return all entities
      */
     Iterable<E> findAll();
 
+    /**
+     * @return all entities, without loading their friends up front
+     */
+    Iterable<E> findAllLazy();
+
+    /**
+     * @param id the id of the user
+     * @return the friends of the user with the given id
+     */
+    List<E> findFriends(ID id);
+
+    /**
+     * @param id         the id of the user
+     * @param candidates the ids to check
+     * @return for every candidate that exists, true if it is a friend of the user and false otherwise;
+     * the candidates that do not exist are missing from the map
+     */
+    Map<ID, Boolean> findFriendStatus(ID id, Collection<ID> candidates);
+
     /**
      * @param entity entity must be not null
      * @return null- if the given entity is saved
@@ -37,6 +66,12 @@ public interface UserRepository<ID, E extends Entity<ID>> {
 
     String findPhoto(String email);
 
+    /**
+     * @param emails the emails of the users
+     * @return the profile picture url of every user that has one, by email
+     */
+    Map<String, String> findPhotos(Collection<String> emails);
+
     /**
      * @param entity entity must be not null
      * @return the entity the entity is removed
@@ -0,0 +1,203 @@
+package com.example.lab6.repository.cache;
+
+import com.example.lab6.model.MessageDTO;
+import com.example.lab6.repository.MessageRepository;
+import com.example.lab6.repository.file.MessageLog;
+import com.example.lab6.repository.paging.Page;
+import com.example.lab6.repository.paging.Pageable;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * MessageRepository decorator that keeps the conversations of two users in a MessageLog.
+ * The first time a conversation is opened it is read whole from the repository and
+ * appended to the log, oldest first; from then on its pages are read from the log and the
+ * messages saved through this decorator are appended to it. The log stays on the disk, so
+ * a conversation is read from the repository once, not after every restart: the messages
+ * must only be saved through this decorator. The other queries go to the repository.
+ * A conversation whose message is removed or changed, or could not be appended, is
+ * dropped from the log and read again from the repository the next time it is opened.
+ * Messages can reach the repository without this decorator, and a crash can cut the log,
+ * so the first time a conversation is opened in a run its count is checked against the
+ * repository and it is read again if they differ.
+ */
+public class CachingMessageRepository implements MessageRepository<Long, MessageDTO> {
+    private final MessageRepository<Long, MessageDTO> repository;
+    private final MessageLog log;
+    private final Set<String> checked = new HashSet<>();
+
+    /**
+     * @param repository the repository that owns the messages
+     * @param log        the log the conversations are kept in
+     */
+    public CachingMessageRepository(MessageRepository<Long, MessageDTO> repository, MessageLog log) {
+        this.repository = repository;
+        this.log = log;
+    }
+
+    /**
+     * @return the conversation of the two users, loaded into the log if it was not
+     */
+    private String load(Long user1, Long user2) throws IOException {
+        String conversation = MessageLog.pair(user1, user2);
+        if (log.isLoaded(conversation) && (checked.contains(conversation)
+                || log.count(conversation) == repository.countConversation(user1, user2))) {
+            checked.add(conversation);
+            return conversation;
+        }
+        log.clear(conversation);
+        List<MessageDTO> messages = new ArrayList<>(repository.findConversation(user1, user2, 0, Integer.MAX_VALUE));
+        messages.sort(Comparator.comparing(MessageDTO::getDate).thenComparing(MessageDTO::getId));
+        for (MessageDTO message : messages)
+            log.append(conversation, message);
+        log.setLoaded(conversation);
+        checked.add(conversation);
+        return conversation;
+    }
+
+    @Override
+    public synchronized List<MessageDTO> findConversation(Long user1, Long user2, int offset, int limit) {
+        try {
+            return log.findPage(load(user1, user2), true, offset, limit);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return repository.findConversation(user1, user2, offset, limit);
+    }
+
+    @Override
+    public synchronized int countConversation(Long user1, Long user2) {
+        try {
+            return log.count(load(user1, user2));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return repository.countConversation(user1, user2);
+    }
+
+    @Override
+    public MessageDTO save(MessageDTO entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        saveAll(List.of(entity));
+        return null;
+    }
+
+    /**
+     * Removes the conversations of the sender of the message with its recipients from the log
+     */
+    private void forget(MessageDTO message) {
+        if (message == null || message.getFrom() == null || message.getTo() == null)
+            return;
+        for (Long recipient : new LinkedHashSet<>(message.getTo()))
+            forget(MessageLog.pair(message.getFrom(), recipient));
+    }
+
+    private void forget(String conversation) {
+        try {
+            log.clear(conversation);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Saves the messages in the repository, then appends the saved ones
+     * to the conversations already in the log and checked in this run
+     */
+    @Override
+    public synchronized List<MessageDTO> saveAll(List<MessageDTO> entities) {
+        repository.saveAll(entities);
+        for (MessageDTO entity : entities) {
+            if (entity.getId() == null)
+                continue;
+            for (Long recipient : new LinkedHashSet<>(entity.getTo())) {
+                String conversation = MessageLog.pair(entity.getFrom(), recipient);
+                try {
+                    if (!checked.contains(conversation) || !log.isLoaded(conversation))
+                        continue;
+                    log.append(conversation, entity);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    forget(conversation);
+                }
+            }
+        }
+        return entities;
+    }
+
+    @Override
+    public MessageDTO findOne(Long id) {
+        return repository.findOne(id);
+    }
+
+    @Override
+    public Map<Long, MessageDTO> findByIds(Collection<Long> ids) {
+        return repository.findByIds(ids);
+    }
+
+    @Override
+    public List<MessageDTO> findThread(Long message, int limit) {
+        return repository.findThread(message, limit);
+    }
+
+    @Override
+    public Iterable<MessageDTO> findAll() {
+        return repository.findAll();
+    }
+
+    @Override
+    public Page<MessageDTO> findAll(Pageable pageable) {
+        return repository.findAll(pageable);
+    }
+
+    @Override
+    public List<MessageDTO> findGroupConversation(Long user, List<Long> members, int offset, int limit) {
+        return repository.findGroupConversation(user, members, offset, limit);
+    }
+
+    @Override
+    public List<MessageDTO> findReceived(Long recipient, LocalDateTime start, LocalDateTime end, int offset, int limit) {
+        return repository.findReceived(recipient, start, end, offset, limit);
+    }
+
+    @Override
+    public List<MessageDTO> findSent(Long sender, Long recipient, LocalDateTime start, LocalDateTime end, int offset, int limit) {
+        return repository.findSent(sender, recipient, start, end, offset, limit);
+    }
+
+    @Override
+    public Set<Long> findConversationPartners(Long user) {
+        return repository.findConversationPartners(user);
+    }
+
+    @Override
+    public synchronized MessageDTO remove(MessageDTO entity) {
+        MessageDTO removed = repository.remove(entity);
+        forget(removed != null ? removed : entity);
+        return removed;
+    }
+
+    /**
+     * The conversations the message was in before the change are dropped too
+     */
+    @Override
+    public synchronized MessageDTO update(MessageDTO entity) {
+        MessageDTO old = entity == null || entity.getId() == null ? null : repository.findOne(entity.getId());
+        MessageDTO result = repository.update(entity);
+        if (result == null) {
+            forget(old);
+            forget(entity);
+        }
+        return result;
+    }
+}
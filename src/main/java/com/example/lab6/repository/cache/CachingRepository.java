@@ -0,0 +1,64 @@
+package com.example.lab6.repository.cache;
+
+import com.example.lab6.model.Entity;
+import com.example.lab6.repository.Repository;
+
+/**
+ * Repository decorator that answers findOne from a bounded cache;
+ * every write goes to the wrapped repository and drops the cached entity
+ * @param <ID> - type E must have an attribute of type ID
+ * @param <E> -  type of entities saved in repository
+ */
+public class CachingRepository<ID, E extends Entity<ID>> implements Repository<ID, E> {
+    private final Repository<ID, E> repository;
+    private final EntityCache<ID, E> cache;
+
+    public CachingRepository(Repository<ID, E> repository, int maxSize, long ttlMillis) {
+        this.repository = repository;
+        this.cache = new EntityCache<>(maxSize, ttlMillis);
+    }
+
+    @Override
+    public E findOne(ID id) {
+        if (id == null)
+            throw new IllegalArgumentException("ID must not be null!");
+        E entity = cache.get(id);
+        if (entity == null) {
+            entity = repository.findOne(id);
+            cache.put(id, entity);
+        }
+        return entity;
+    }
+
+    @Override
+    public Iterable<E> findAll() {
+        return repository.findAll();
+    }
+
+    @Override
+    public E save(E entity) {
+        E result = repository.save(entity);
+        if (entity.getId() != null)
+            cache.invalidate(entity.getId());
+        return result;
+    }
+
+    @Override
+    public E remove(E entity) {
+        if (entity != null && entity.getId() != null)
+            cache.invalidate(entity.getId());
+        return repository.remove(entity);
+    }
+
+    @Override
+    public E update(E entity) {
+        E result = repository.update(entity);
+        if (entity.getId() != null)
+            cache.invalidate(entity.getId());
+        return result;
+    }
+
+    public EntityCache<ID, E> getCache() {
+        return cache;
+    }
+}
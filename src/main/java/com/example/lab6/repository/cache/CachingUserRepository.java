@@ -0,0 +1,205 @@
+package com.example.lab6.repository.cache;
+
+import com.example.lab6.model.User;
+import com.example.lab6.repository.UserRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * UserRepository decorator that keeps recently used users and profile picture urls
+ * in memory. Users are indexed by id and, through a secondary index, by email;
+ * the secondary index only points into the id cache, so it never holds users
+ * that were evicted or invalidated.
+ */
+public class CachingUserRepository implements UserRepository<Long, User> {
+    /**
+     * Cached for the users without a picture, so they are not looked up again
+     */
+    private static final String NO_PHOTO = "";
+
+    private final UserRepository<Long, User> repository;
+    private final EntityCache<Long, User> users;
+    private final EntityCache<String, String> photos;
+    private final Map<String, Long> idsByEmail = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param repository the repository that owns the data
+     * @param maxSize    maximum number of users (and of picture urls) kept in memory
+     * @param ttlMillis  cached entries older than this are reloaded
+     */
+    public CachingUserRepository(UserRepository<Long, User> repository, int maxSize, long ttlMillis) {
+        this.repository = repository;
+        this.users = new EntityCache<>(maxSize, ttlMillis);
+        this.photos = new EntityCache<>(maxSize, ttlMillis);
+        users.setRemovalListener((id, user) -> {
+            if (user.getEmail() != null)
+                idsByEmail.remove(user.getEmail(), id);
+        });
+    }
+
+    private void cache(User user) {
+        if (user == null || user.getId() == null)
+            return;
+        users.put(user.getId(), user);
+        if (user.getEmail() != null)
+            idsByEmail.put(user.getEmail(), user.getId());
+    }
+
+    @Override
+    public User findOne(Long id) {
+        if (id == null)
+            throw new IllegalArgumentException("ID must not be null!");
+        User user = users.get(id);
+        if (user == null) {
+            user = repository.findOne(id);
+            cache(user);
+        }
+        return user;
+    }
+
+    @Override
+    public User findOneByEmail(String email) {
+        Long id = idsByEmail.get(email);
+        User user = id == null ? null : users.get(id);
+        if (user == null || !email.equals(user.getEmail())) {
+            user = repository.findOneByEmail(email);
+            cache(user);
+        }
+        return user;
+    }
+
+    /**
+     * Answers the cached users from memory and loads the others with one batched lookup
+     */
+    @Override
+    public Map<Long, User> findByIds(Collection<Long> ids) {
+        Map<Long, User> result = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            User user = users.get(id);
+            if (user == null)
+                missing.add(id);
+            else
+                result.put(id, user);
+        }
+        if (!missing.isEmpty()) {
+            Map<Long, User> loaded = repository.findByIds(missing);
+            loaded.values().forEach(this::cache);
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    @Override
+    public Iterable<User> findAll() {
+        return repository.findAll();
+    }
+
+    @Override
+    public Iterable<User> findAllLazy() {
+        return repository.findAllLazy();
+    }
+
+    @Override
+    public List<User> findFriends(Long id) {
+        return repository.findFriends(id);
+    }
+
+    @Override
+    public Map<Long, Boolean> findFriendStatus(Long id, Collection<Long> candidates) {
+        return repository.findFriendStatus(id, candidates);
+    }
+
+    @Override
+    public User save(User entity) {
+        User result = repository.save(entity);
+        invalidate(entity);
+        return result;
+    }
+
+    @Override
+    public void savePicture(String email, String url) {
+        repository.savePicture(email, url);
+        photos.invalidate(email);
+    }
+
+    @Override
+    public void updatePicture(String email, String url) {
+        repository.updatePicture(email, url);
+        photos.invalidate(email);
+    }
+
+    @Override
+    public String findPhoto(String email) {
+        String url = photos.get(email);
+        if (url == null) {
+            url = repository.findPhoto(email);
+            photos.put(email, url == null ? NO_PHOTO : url);
+        }
+        return NO_PHOTO.equals(url) ? null : url;
+    }
+
+    /**
+     * Answers the cached urls from memory and loads the others with one batched lookup
+     */
+    @Override
+    public Map<String, String> findPhotos(Collection<String> emails) {
+        Map<String, String> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String email : emails) {
+            String url = photos.get(email);
+            if (url == null)
+                missing.add(email);
+            else if (!NO_PHOTO.equals(url))
+                result.put(email, url);
+        }
+        if (!missing.isEmpty()) {
+            Map<String, String> loaded = repository.findPhotos(missing);
+            for (String email : missing)
+                photos.put(email, loaded.getOrDefault(email, NO_PHOTO));
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    @Override
+    public User remove(User entity) {
+        invalidate(entity);
+        return repository.remove(entity);
+    }
+
+    @Override
+    public User update(User entity) {
+        User result = repository.update(entity);
+        invalidate(entity);
+        return result;
+    }
+
+    private void invalidate(User entity) {
+        if (entity == null)
+            return;
+        if (entity.getId() != null)
+            users.invalidate(entity.getId());
+        if (entity.getEmail() != null) {
+            Long id = idsByEmail.remove(entity.getEmail());
+            if (id != null)
+                users.invalidate(id);
+            photos.invalidate(entity.getEmail());
+        }
+    }
+
+    public EntityCache<Long, User> getUserCache() {
+        return users;
+    }
+
+    public EntityCache<String, String> getPhotoCache() {
+        return photos;
+    }
+}
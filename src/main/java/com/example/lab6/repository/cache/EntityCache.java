@@ -0,0 +1,155 @@
+package com.example.lab6.repository.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Bounded key-value cache with least recently used eviction and a time to live.
+ * The entries are kept in access order, so the least recently used one is dropped in
+ * constant time when a put goes over the size; an expired entry is dropped when it is read.
+ * Every entry that leaves the cache (evicted, expired or invalidated) is reported
+ * to the removal listener, so secondary indexes can be kept in sync.
+ * @param <K> - type of the keys
+ * @param <V> - type of the cached values
+ */
+public class EntityCache<K, V> {
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+    private BiConsumer<K, V> removalListener = (key, value) -> {
+    };
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructor
+     *
+     * @param maxSize   maximum number of entries kept
+     * @param ttlMillis entries older than this are reloaded, 0 means no expiration
+     */
+    public EntityCache(int maxSize, long ttlMillis) {
+        if (maxSize <= 0 || ttlMillis < 0)
+            throw new IllegalArgumentException("Invalid cache size or time to live!");
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() <= EntityCache.this.maxSize)
+                    return false;
+                evictions++;
+                removalListener.accept(eldest.getKey(), eldest.getValue().value);
+                return true;
+            }
+        };
+    }
+
+    public synchronized void setRemovalListener(BiConsumer<K, V> removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    /**
+     * @param key the key of the value
+     * @return the cached value or null if it is missing or expired
+     */
+    public synchronized V get(K key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry != null && isExpired(entry, System.nanoTime())) {
+            entries.remove(key);
+            removalListener.accept(key, entry.value);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Caches the value, evicting the least recently used entry if the cache is full;
+     * null values are not cached
+     */
+    public synchronized void put(K key, V value) {
+        if (key == null || value == null)
+            return;
+        CacheEntry<V> previous = entries.put(key, new CacheEntry<>(value, System.nanoTime()));
+        if (previous != null && previous.value != value)
+            removalListener.accept(key, previous.value);
+    }
+
+    /**
+     * Removes the value of the key from the cache
+     * @return the removed value or null if it was not cached
+     */
+    public synchronized V invalidate(K key) {
+        CacheEntry<V> entry = entries.remove(key);
+        if (entry == null)
+            return null;
+        removalListener.accept(key, entry.value);
+        return entry.value;
+    }
+
+    public synchronized void invalidateAll() {
+        for (Map.Entry<K, CacheEntry<V>> entry : entries.entrySet())
+            removalListener.accept(entry.getKey(), entry.getValue().value);
+        entries.clear();
+    }
+
+    private boolean isExpired(CacheEntry<V> entry, long now) {
+        return ttlNanos > 0 && now - entry.loadedAt > ttlNanos;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return the fraction of lookups answered from the cache
+     */
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "EntityCache{" +
+                "size=" + entries.size() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+
+    private static class CacheEntry<V> {
+        private final V value;
+        private final long loadedAt;
+
+        CacheEntry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.lab6.repository.cache;
+
+import com.example.lab6.model.Event;
+import com.example.lab6.repository.EventRepository;
+import com.example.lab6.utils.CompressedBitmap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The subscribers of every event, one CompressedBitmap of user ids per event,
+ * loaded from the repository on the first use and kept up to date by EventService
+ */
+public class EventSubscriberIndex {
+    private final EventRepository<Long, Event> repository;
+    private Map<Long, CompressedBitmap> subscribers;
+
+    /**
+     * @param repository the repository the subscriptions are loaded from
+     */
+    public EventSubscriberIndex(EventRepository<Long, Event> repository) {
+        this.repository = repository;
+    }
+
+    private Map<Long, CompressedBitmap> subscribers() {
+        if (subscribers == null) {
+            Map<Long, CompressedBitmap> loaded = new HashMap<>();
+            repository.forEachSubscription((event, user) ->
+                    loaded.computeIfAbsent(event, x -> new CompressedBitmap()).add(Math.toIntExact(user)));
+            subscribers = loaded;
+        }
+        return subscribers;
+    }
+
+    public synchronized boolean isSubscribed(Long event, Long user) {
+        CompressedBitmap bitmap = subscribers().get(event);
+        return bitmap != null && bitmap.contains(Math.toIntExact(user));
+    }
+
+    public synchronized int countSubscribers(Long event) {
+        CompressedBitmap bitmap = subscribers().get(event);
+        return bitmap == null ? 0 : bitmap.cardinality();
+    }
+
+    public synchronized void subscribe(Long event, Long user) {
+        subscribers().computeIfAbsent(event, x -> new CompressedBitmap()).add(Math.toIntExact(user));
+    }
+
+    public synchronized void unsubscribe(Long event, Long user) {
+        CompressedBitmap bitmap = subscribers().get(event);
+        if (bitmap != null && bitmap.remove(Math.toIntExact(user)) && bitmap.isEmpty())
+            subscribers.remove(event);
+    }
+
+    public synchronized void removeEvent(Long event) {
+        if (subscribers != null)
+            subscribers.remove(event);
+    }
+
+    /**
+     * Drops the loaded subscriptions, they are read again on the next use
+     */
+    public synchronized void invalidate() {
+        subscribers = null;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.lab6.repository.cache;
+
+import com.example.lab6.model.User;
+import com.example.lab6.repository.UserRepository;
+import com.example.lab6.utils.LongHashSet;
+import com.example.lab6.utils.events.ChangeEventType;
+import com.example.lab6.utils.events.FriendshipChangeEvent;
+import com.example.lab6.utils.observer.Observer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The ids of the friends of the recently active users, one LongHashSet per user,
+ * loaded with one query on the first use. Registered as a friendship observer of
+ * FriendshipService, which also reports the friendships made by accepted requests,
+ * the cached sets follow every friendship added or removed.
+ */
+public class FriendIdCache implements Observer<FriendshipChangeEvent> {
+    private final UserRepository<Long, User> repository;
+    private final EntityCache<Long, LongHashSet> friends;
+
+    /**
+     * @param repository the repository the friends are loaded from
+     * @param maxSize    maximum number of users whose friends are kept in memory
+     */
+    public FriendIdCache(UserRepository<Long, User> repository, int maxSize) {
+        this.repository = repository;
+        this.friends = new EntityCache<>(maxSize, 0);
+    }
+
+    private LongHashSet friendsOf(Long user) {
+        LongHashSet ids = friends.get(user);
+        if (ids == null) {
+            List<User> loaded = repository.findFriends(user);
+            ids = new LongHashSet(loaded.size());
+            for (User friend : loaded)
+                ids.add(friend.getId());
+            friends.put(user, ids);
+        }
+        return ids;
+    }
+
+    public synchronized boolean areFriends(Long user, Long other) {
+        return friendsOf(user).contains(other);
+    }
+
+    /**
+     * @return the candidates that are friends of the user, in the order of the candidates
+     */
+    public synchronized List<Long> friendsAmong(Long user, Collection<Long> candidates) {
+        LongHashSet ids = friendsOf(user);
+        List<Long> result = new ArrayList<>();
+        for (Long candidate : candidates)
+            if (ids.contains(candidate))
+                result.add(candidate);
+        return result;
+    }
+
+    @Override
+    public synchronized void update(FriendshipChangeEvent event) {
+        Long first = event.getData().getE1();
+        Long second = event.getData().getE2();
+        LongHashSet firstFriends = friends.get(first);
+        LongHashSet secondFriends = friends.get(second);
+        if (event.getType() == ChangeEventType.ADD) {
+            if (firstFriends != null)
+                firstFriends.add(second);
+            if (secondFriends != null)
+                secondFriends.add(first);
+        } else if (event.getType() == ChangeEventType.DELETE) {
+            if (firstFriends != null)
+                firstFriends.remove(second);
+            if (secondFriends != null)
+                secondFriends.remove(first);
+        }
+    }
+
+    public synchronized void invalidate(Long user) {
+        friends.invalidate(user);
+    }
+
+    public EntityCache<Long, LongHashSet> getCache() {
+        return friends;
+    }
+}
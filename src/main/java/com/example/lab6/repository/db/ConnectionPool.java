@@ -0,0 +1,312 @@
+package com.example.lab6.repository.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of JDBC connections shared by every *DbRepository.
+ * The connections handed out are proxies: calling close() on them gives the
+ * physical connection back to the pool instead of closing it, so the
+ * repositories keep using try-with-resources exactly as with DriverManager.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+    private final ScheduledExecutorService evictor;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param url                  jdbc url of the database
+     * @param username             database user
+     * @param password             database password
+     * @param minSize              connections kept open even when idle
+     * @param maxSize              maximum number of connections open at the same time
+     * @param acquireTimeoutMillis how long getConnection waits for a free connection
+     * @param idleTimeoutMillis    idle connections above minSize are closed after this time
+     */
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize, long acquireTimeoutMillis, long idleTimeoutMillis) {
+        if (minSize < 0 || maxSize <= 0 || minSize > maxSize)
+            throw new IllegalArgumentException("Invalid pool size!");
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        for (int i = 0; i < minSize; i++) {
+            try {
+                idle.offerFirst(new IdleConnection(openPhysical(), System.nanoTime()));
+            } catch (SQLException e) {
+                e.printStackTrace();
+                break;
+            }
+        }
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Connection Pool Evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public ConnectionPool(String url, String username, String password) {
+        this(url, username, password, 2, 10, 5000, 60000);
+    }
+
+    /**
+     * @return a pooled connection; closing it returns it to the pool
+     * @throws SQLException if no connection became free within the acquire timeout
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed.get())
+            throw new SQLException("The connection pool is closed!");
+
+        long start = System.nanoTime();
+        boolean permitted;
+        try {
+            permitted = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        long waited = System.nanoTime() - start;
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        if (!permitted) {
+            timeouts.incrementAndGet();
+            throw new SQLException("Timed out after " + acquireTimeoutMillis + " ms waiting for a connection");
+        }
+
+        try {
+            Connection physical = null;
+            IdleConnection candidate;
+            while (physical == null && (candidate = idle.pollFirst()) != null) {
+                if (!candidate.connection.isClosed())
+                    physical = candidate.connection;
+                else
+                    open.decrementAndGet();
+            }
+            if (physical == null)
+                physical = openPhysical();
+
+            active.incrementAndGet();
+            acquired.incrementAndGet();
+            return wrap(physical);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Connection openPhysical() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, username, password);
+        open.incrementAndGet();
+        return connection;
+    }
+
+    /**
+     * Wraps a physical connection; statements opened through the wrapper are
+     * remembered so that they are closed when the connection is released,
+     * even if the repository forgot to close them
+     */
+    private Connection wrap(Connection physical) {
+        AtomicBoolean released = new AtomicBoolean(false);
+        List<Statement> statements = new ArrayList<>();
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.equals("close")) {
+                if (released.compareAndSet(false, true))
+                    release(physical, statements);
+                return null;
+            }
+            if (name.equals("isClosed"))
+                return released.get() || physical.isClosed();
+            if (released.get())
+                throw new SQLException("Connection has already been returned to the pool");
+            try {
+                Object result = method.invoke(physical, args);
+                if (result instanceof Statement)
+                    statements.add((Statement) result);
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    private void release(Connection physical, List<Statement> statements) {
+        active.decrementAndGet();
+        try {
+            for (Statement statement : statements)
+                statement.close();
+            if (closed.get() || physical.isClosed()) {
+                closePhysical(physical);
+                return;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            idle.offerFirst(new IdleConnection(physical, System.nanoTime()));
+        } catch (SQLException e) {
+            closePhysical(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void closePhysical(Connection physical) {
+        open.decrementAndGet();
+        try {
+            physical.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes the connections that stayed idle longer than the idle timeout,
+     * keeping at least minSize of them open
+     */
+    private void evictIdle() {
+        long limit = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        Iterator<IdleConnection> iterator = idle.descendingIterator();
+        while (iterator.hasNext() && idle.size() > minSize) {
+            IdleConnection candidate = iterator.next();
+            if (candidate.since < limit && idle.removeLastOccurrence(candidate))
+                closePhysical(candidate.connection);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true))
+            return;
+        evictor.shutdownNow();
+        IdleConnection candidate;
+        while ((candidate = idle.pollFirst()) != null)
+            closePhysical(candidate.connection);
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of connections currently borrowed by repositories
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return the number of open connections waiting in the pool
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of physical connections currently open
+     */
+    public int getOpenCount() {
+        return open.get();
+    }
+
+    /**
+     * @return the number of threads blocked in getConnection
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    public long getAcquiredCount() {
+        return acquired.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    /**
+     * @return the average time spent waiting for a connection, in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        long requests = acquired.get() + timeouts.get();
+        if (requests == 0)
+            return 0;
+        return totalWaitNanos.get() / 1_000_000.0 / requests;
+    }
+
+    /**
+     * @return the longest time spent waiting for a connection, in milliseconds
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "active=" + getActiveCount() +
+                ", idle=" + getIdleCount() +
+                ", waiting=" + getWaitingCount() +
+                ", acquired=" + getAcquiredCount() +
+                ", timeouts=" + getTimeoutCount() +
+                ", avgWaitMs=" + getAverageWaitMillis() +
+                '}';
+    }
+
+    private static class IdleConnection {
+        private final Connection connection;
+        private final long since;
+
+        IdleConnection(Connection connection, long since) {
+            this.connection = connection;
+            this.since = since;
+        }
+    }
+}
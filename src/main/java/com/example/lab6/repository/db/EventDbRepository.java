@@ -1,6 +1,8 @@
 package com.example.lab6.repository.db;
 
 import com.example.lab6.model.Event;
+import com.example.lab6.model.EventSubscription;
+import com.example.lab6.model.Tuple;
 import com.example.lab6.repository.EventRepository;
 
 import java.sql.*;
@@ -8,96 +10,188 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.Month;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 public class EventDbRepository implements EventRepository<Long, Event> {
 
-    private String url;
-    private String username;
-    private String password;
+    private ConnectionPool pool;
 
-    public EventDbRepository(String url, String username, String password) {
-        this.url = url;
-        this.username = username;
-        this.password = password;
+    public EventDbRepository(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    private Event extractEvent(ResultSet resultSet) throws SQLException {
+        Long id = resultSet.getLong("id");
+        String title = resultSet.getString("title");
+        LocalDateTime startDate = resultSet.getTimestamp("start_date").toLocalDateTime();
+        LocalDateTime endDate = resultSet.getTimestamp("end_date").toLocalDateTime();
+        String description = resultSet.getString("description");
+        String location = resultSet.getString("location");
+        Long admin = resultSet.getLong("admin");
+        LocalDateTime creationDate = resultSet.getTimestamp("creation_date").toLocalDateTime();
+        Event event = new Event(title, creationDate, startDate, endDate, description, location, admin);
+        event.setId(id);
+        return event;
+    }
+
+    /**
+     * Fills the subscribers of all the given events with a single query
+     */
+    private void loadSubscribers(Connection connection, List<Event> events) throws SQLException {
+        if (events.isEmpty())
+            return;
+        Map<Long, List<Long>> subscribers = new HashMap<>();
+        Long[] ids = new Long[events.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = events.get(i).getId();
+            subscribers.put(ids[i], new ArrayList<>());
+        }
+        try (PreparedStatement statement = connection.prepareStatement("SELECT \"eventID\", \"userID\" FROM events_subscribers WHERE \"eventID\" = ANY(?)")) {
+            statement.setArray(1, connection.createArrayOf("bigint", ids));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    subscribers.get(resultSet.getLong("eventID")).add(resultSet.getLong("userID"));
+            }
+        }
+        events.forEach(x -> x.setSubscribers(subscribers.get(x.getId())));
+    }
+
+    /**
+     * Runs a query on events and returns the rows with their subscribers
+     * @param sql        the query, selecting columns of events
+     * @param parameters the values of the ? placeholders, in order
+     */
+    private List<Event> query(String sql, Object... parameters) {
+        List<Event> events = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            for (int i = 0; i < parameters.length; i++)
+                statement.setObject(i + 1, parameters[i]);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    events.add(extractEvent(resultSet));
+            }
+            loadSubscribers(connection, events);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return events;
     }
 
     @Override
     public Event findOne(Long aLong) {
+        List<Event> events = query("SELECT * FROM events WHERE id = ?", aLong);
+        if (events.isEmpty())
+            return null;
+        return events.get(0);
+    }
 
-        String sql = "SELECT * FROM events WHERE id = " + aLong;
-
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement statement = connection.prepareStatement(sql);
-             ResultSet resultSet = statement.executeQuery()) {
-
-            while (resultSet.next()) {
-                Long id = resultSet.getLong("id");
-                String title = resultSet.getString("title");
-                LocalDateTime startDate = resultSet.getTimestamp("start_date").toLocalDateTime();
-                LocalDateTime endDate = resultSet.getTimestamp("end_date").toLocalDateTime();
-                String description = resultSet.getString("description");
-                String location = resultSet.getString("location");
-                Long admin = resultSet.getLong("admin");
-                LocalDateTime creationDate = resultSet.getTimestamp("creation_date").toLocalDateTime();
-                Event event = new Event(title, creationDate, startDate, endDate, description, location, admin);
-                event.setId(id);
-
-                String sql2 = "SELECT * FROM events_subscribers WHERE \"eventID\" = " + aLong;
-                PreparedStatement statement2 = connection.prepareStatement(sql2);
-                ResultSet resultSet1 = statement2.executeQuery();
-                List<Long> subscribers = new ArrayList<>();
-                while (resultSet1.next()) {
-                    Long subscriber = resultSet1.getLong("userID");
-                    subscribers.add(subscriber);
-                }
-                event.setSubscribers(subscribers);
+    @Override
+    public Iterable<Event> findAll() {
+        return query("SELECT * FROM events");
+    }
 
-                return event;
+    @Override
+    public List<Event> findSubscribed(Long user, int offset, int limit) {
+        String sql = "SELECT e.* FROM events e JOIN events_subscribers s ON s.\"eventID\" = e.id " +
+                "WHERE s.\"userID\" = ? ORDER BY e.start_date, e.id LIMIT ? OFFSET ?";
+        return query(sql, user, limit, offset);
+    }
+
+    @Override
+    public List<Event> findNotSubscribed(Long user, int offset, int limit) {
+        String sql = "SELECT e.* FROM events e WHERE NOT EXISTS (SELECT 1 FROM events_subscribers s " +
+                "WHERE s.\"eventID\" = e.id AND s.\"userID\" = ?) ORDER BY e.start_date, e.id LIMIT ? OFFSET ?";
+        return query(sql, user, limit, offset);
+    }
+
+    @Override
+    public List<Event> findAdministered(Long user, int offset, int limit) {
+        return query("SELECT * FROM events WHERE admin = ? ORDER BY start_date, id LIMIT ? OFFSET ?", user, limit, offset);
+    }
+
+    /**
+     * Reads the subscriptions through a server side cursor, a batch of rows at a time
+     */
+    @Override
+    public void forEachSubscription(SubscriptionConsumer consumer) {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement("SELECT \"eventID\", \"userID\" FROM events_subscribers")) {
+                statement.setFetchSize(1000);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next())
+                        consumer.accept(resultSet.getLong(1), resultSet.getLong(2));
+                }
             }
+            connection.commit();
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return null;
     }
 
+    /**
+     * One query for all the users; the events are shared by their subscriptions
+     */
     @Override
-    public Iterable<Event> findAll() {
-        Set<Event> events = new HashSet<>();
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement statement = connection.prepareStatement("SELECT * from events");
-             ResultSet resultSet = statement.executeQuery()) {
-
-            while (resultSet.next()) {
-                Long id = resultSet.getLong("id");
-                String title = resultSet.getString("title");
-                LocalDateTime startDate = resultSet.getTimestamp("start_date").toLocalDateTime();
-                LocalDateTime endDate = resultSet.getTimestamp("end_date").toLocalDateTime();
-                String description = resultSet.getString("description");
-                String location = resultSet.getString("location");
-                Long admin = resultSet.getLong("admin");
-                LocalDateTime creationDate = resultSet.getTimestamp("creation_date").toLocalDateTime();
-                Event event = new Event(title, creationDate, startDate, endDate, description, location, admin);
-                event.setId(id);
-
-                String sql = "SELECT * FROM events_subscribers WHERE \"eventID\" = " + event.getId();
-                PreparedStatement statement1 = connection.prepareStatement(sql);
-                ResultSet resultSet1 = statement1.executeQuery();
-                List<Long> subscribers = new ArrayList<>();
-                while (resultSet1.next()) {
-                    Long subscriber = resultSet1.getLong("userID");
-                    subscribers.add(subscriber);
+    public List<EventSubscription> findSubscriptions(Collection<Long> users, LocalDateTime from, LocalDateTime to) {
+        List<EventSubscription> subscriptions = new ArrayList<>();
+        if (users.isEmpty())
+            return subscriptions;
+        String sql = "SELECT e.*, s.\"userID\", s.last_notification_date FROM events e " +
+                "JOIN events_subscribers s ON s.\"eventID\" = e.id " +
+                "WHERE s.\"userID\" = ANY(?) AND e.start_date >= ? AND e.start_date < ? ORDER BY e.start_date, e.id";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setArray(1, connection.createArrayOf("bigint", users.toArray()));
+            statement.setTimestamp(2, Timestamp.valueOf(from));
+            statement.setTimestamp(3, Timestamp.valueOf(to));
+            Map<Long, Event> events = new HashMap<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Event event = events.get(resultSet.getLong("id"));
+                    if (event == null) {
+                        event = extractEvent(resultSet);
+                        events.put(event.getId(), event);
+                    }
+                    Timestamp last = resultSet.getTimestamp("last_notification_date");
+                    subscriptions.add(new EventSubscription(event, resultSet.getLong("userID"),
+                            last == null ? null : last.toLocalDateTime()));
                 }
-                event.setSubscribers(subscribers);
-                events.add(event);
             }
-            return events;
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return events;
+        return subscriptions;
+    }
+
+    @Override
+    public void saveLastNotificationDates(Collection<Tuple<Long, Long>> subscriptions, LocalDateTime date) {
+        if (subscriptions.isEmpty())
+            return;
+        String sql = "UPDATE events_subscribers s SET last_notification_date = ? FROM unnest(?, ?) AS t(event, subscriber) " +
+                "WHERE s.\"eventID\" = t.event AND s.\"userID\" = t.subscriber";
+        List<Long> events = new ArrayList<>();
+        List<Long> users = new ArrayList<>();
+        subscriptions.forEach(x -> {
+            events.add(x.getE1());
+            users.add(x.getE2());
+        });
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setTimestamp(1, Timestamp.valueOf(date));
+            statement.setArray(2, connection.createArrayOf("bigint", events.toArray()));
+            statement.setArray(3, connection.createArrayOf("bigint", users.toArray()));
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
     }
 
     @Override
@@ -107,7 +201,7 @@ public class EventDbRepository implements EventRepository<Long, Event> {
 
         String sql = "insert into events (title, start_date, end_date, description, location, admin, creation_date ) values (?, ?, ?, ?,?,?,?)";
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection();
              PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             ps.setString(1, entity.getName());
@@ -136,7 +230,7 @@ public class EventDbRepository implements EventRepository<Long, Event> {
 
         String sql_subs = "insert into events_subscribers (\"eventID\", \"userID\") values (?,?)";
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection();
              PreparedStatement ps = connection.prepareStatement(sql_subs)) {
 
             subscribers.forEach(x -> {
@@ -156,8 +250,7 @@ public class EventDbRepository implements EventRepository<Long, Event> {
 
     @Override
     public Event remove(Event entity) {
-        try {
-            Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection()) {
             String sql = "DELETE FROM events WHERE id = ?";
 
             PreparedStatement statement = connection.prepareStatement(sql);
@@ -177,8 +270,7 @@ public class EventDbRepository implements EventRepository<Long, Event> {
     }
 
     public void removeSubscribers(Long id, List<Long> subs) {
-        try {
-            Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection()) {
             String sql = "DELETE FROM events_subscribers WHERE \"eventID\" = ?";
 
             PreparedStatement statement = connection.prepareStatement(sql);
@@ -204,7 +296,7 @@ public class EventDbRepository implements EventRepository<Long, Event> {
 
         String sql_subs = "insert into events_subscribers (\"eventID\", \"userID\") values (?,?)";
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection();
              PreparedStatement ps = connection.prepareStatement(sql_subs)) {
 
             entity.getSubscribers().forEach(x -> {
@@ -226,8 +318,7 @@ public class EventDbRepository implements EventRepository<Long, Event> {
     @Override
     public Event delete(Event entity, Long userID) {
 
-        try {
-            Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection()) {
             String sql = "DELETE FROM events_subscribers WHERE \"eventID\" = ? and \"userID\"= ?";
 
             PreparedStatement statement = connection.prepareStatement(sql);
@@ -247,15 +338,14 @@ public class EventDbRepository implements EventRepository<Long, Event> {
     }
 
     @Override
-    public Event saveLastNotificationDate(Long eventID, Long userID) {
-        try {
-            Connection connection = DriverManager.getConnection(url, username, password);
+    public Event saveLastNotificationDate(Long eventID, Long userID, LocalDateTime date) {
+        try (Connection connection = pool.getConnection()) {
             String sql = "update events_subscribers set last_notification_date=? WHERE \"eventID\" = ? and \"userID\"= ?";
 
             PreparedStatement statement = connection.prepareStatement(sql);
 
             try {
-                statement.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
+                statement.setTimestamp(1, Timestamp.valueOf(date));
                 statement.setInt(2, Math.toIntExact(eventID));
                 statement.setInt(3, Math.toIntExact(userID));
                 statement.executeUpdate();
@@ -273,8 +363,7 @@ public class EventDbRepository implements EventRepository<Long, Event> {
     public LocalDateTime getLastNotificationDate(Long eventID, Long userID) {
         String sql = "SELECT last_notification_date FROM events_subscribers WHERE \"eventID\" = ? and \"userID\"= ?";
 
-        try {
-            Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection()) {
             PreparedStatement statement = connection.prepareStatement(sql);
 
             statement.setInt(1, Math.toIntExact(eventID));
@@ -0,0 +1,181 @@
+package com.example.lab6.repository.db;
+
+import com.example.lab6.model.Post;
+import com.example.lab6.repository.FeedRepository;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Timelines stored in feed_entries (owner, post, author, date), indexed by owner and date,
+ * so a page of a timeline is read with one index range scan
+ */
+public class FeedDbRepository implements FeedRepository {
+    private static final int BATCH_SIZE = 1000;
+    private static final String FRIENDS_OF_OWNER = "SELECT second_friend FROM friendships WHERE first_friend = ? " +
+            "UNION ALL SELECT first_friend FROM friendships WHERE second_friend = ?";
+
+    private ConnectionPool pool;
+
+    public FeedDbRepository(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void append(Post post, Collection<Long> owners) {
+        if (owners.isEmpty())
+            return;
+        String sql = "INSERT INTO feed_entries (owner, post, author, date) VALUES (?, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            connection.setAutoCommit(false);
+            try {
+                int count = 0;
+                for (Long owner : owners) {
+                    statement.setLong(1, owner);
+                    statement.setLong(2, post.getId());
+                    statement.setLong(3, post.getAdmin());
+                    statement.setTimestamp(4, Timestamp.valueOf(post.getDate()));
+                    statement.addBatch();
+                    if (++count % BATCH_SIZE == 0)
+                        statement.executeBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void copyPosts(Long owner, Long author) {
+        execute("INSERT INTO feed_entries (owner, post, author, date) " +
+                "SELECT ?, id, \"user\", date FROM posts WHERE \"user\" = ? ON CONFLICT DO NOTHING", owner, author);
+    }
+
+    @Override
+    public void removeAuthor(Long owner, Long author) {
+        execute("DELETE FROM feed_entries WHERE owner = ? AND author = ?", owner, author);
+    }
+
+    @Override
+    public void removePost(Long post) {
+        execute("DELETE FROM feed_entries WHERE post = ?", post);
+    }
+
+    @Override
+    public List<Post> findTimeline(Long owner, Collection<Long> pullAuthors, int offset, int limit) {
+        List<Post> posts = new ArrayList<>();
+        String sql = timeline("*", pullAuthors) + " ORDER BY date DESC, id DESC LIMIT ? OFFSET ?";
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            int index = setTimeline(connection, statement, owner, pullAuthors);
+            statement.setInt(index, limit);
+            statement.setInt(index + 1, offset);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Long id = resultSet.getLong("id");
+                    Long user = resultSet.getLong("user");
+                    String url = resultSet.getString("photo");
+                    String description = resultSet.getString("description");
+                    LocalDateTime date = resultSet.getTimestamp("date").toLocalDateTime();
+
+                    Post post = new Post(user, url, description, date);
+                    post.setId(id);
+                    posts.add(post);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return posts;
+    }
+
+    @Override
+    public int countTimeline(Long owner, Collection<Long> pullAuthors) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(timeline("count(*)", pullAuthors))) {
+            setTimeline(connection, statement, owner, pullAuthors);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next())
+                    return resultSet.getInt(1);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return 0;
+    }
+
+    /**
+     * The copied posts of the owner, ordered by the date of feed_entries so its index gives the order,
+     * plus the posts of the pull authors who are friends of the owner
+     */
+    private static String timeline(String columns, Collection<Long> pullAuthors) {
+        String copied = "SELECT p.id, p.\"user\", p.photo, p.description, e.date " +
+                "FROM feed_entries e JOIN posts p ON p.id = e.post WHERE e.owner = ?";
+        if (pullAuthors.isEmpty())
+            return "SELECT " + columns + " FROM (" + copied + ") t";
+        return "SELECT " + columns + " FROM (" + copied + " AND e.author <> ALL(?) " +
+                "UNION ALL SELECT p.id, p.\"user\", p.photo, p.description, p.date FROM posts p " +
+                "WHERE p.\"user\" = ANY(?) AND p.\"user\" IN (" + FRIENDS_OF_OWNER + ")) t";
+    }
+
+    /**
+     * @return the index of the next parameter
+     */
+    private static int setTimeline(Connection connection, PreparedStatement statement, Long owner,
+                                   Collection<Long> pullAuthors) throws SQLException {
+        statement.setLong(1, owner);
+        if (pullAuthors.isEmpty())
+            return 2;
+        Array authors = connection.createArrayOf("bigint", pullAuthors.toArray());
+        statement.setArray(2, authors);
+        statement.setArray(3, authors);
+        statement.setLong(4, owner);
+        statement.setLong(5, owner);
+        return 6;
+    }
+
+    @Override
+    public Set<Long> findPullAuthors() {
+        Set<Long> authors = new HashSet<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT author FROM feed_pull_authors");
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next())
+                authors.add(resultSet.getLong("author"));
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return authors;
+    }
+
+    @Override
+    public void savePullAuthor(Long author) {
+        execute("INSERT INTO feed_pull_authors (author) VALUES (?) ON CONFLICT DO NOTHING", author);
+    }
+
+    private void execute(String sql, Long... parameters) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++)
+                statement.setLong(i + 1, parameters[i]);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
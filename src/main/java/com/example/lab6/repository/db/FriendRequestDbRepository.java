@@ -3,95 +3,137 @@ package com.example.lab6.repository.db;
 import com.example.lab6.model.FriendRequest;
 import com.example.lab6.model.Status;
 import com.example.lab6.model.Tuple;
-import com.example.lab6.repository.Repository;
+import com.example.lab6.repository.FriendRequestRepository;
 
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
-public class FriendRequestDbRepository implements Repository<Tuple<Long, Long>, FriendRequest> {
-    private String url;
-    private String username;
-    private String password;
+public class FriendRequestDbRepository implements FriendRequestRepository<Tuple<Long, Long>, FriendRequest> {
+    private ConnectionPool pool;
 
-    public FriendRequestDbRepository(String url, String username, String password) {
-        this.url = url;
-        this.username = username;
-        this.password = password;
+    public FriendRequestDbRepository(ConnectionPool pool) {
+        this.pool = pool;
     }
 
-    @Override
-    public FriendRequest findOne(Tuple<Long, Long> longLongTuple) {
-        try {
-            Connection connection = DriverManager.getConnection(url, username, password);
-            String sql = "SELECT * FROM friend_requests WHERE \"from\" = ? AND \"to\" = ?  or \"from\" = ? and \"to\" = ?";
+    private FriendRequest extractRequest(ResultSet resultSet) throws SQLException {
+        Long from = resultSet.getLong("from");
+        Long to = resultSet.getLong("to");
+        String status = resultSet.getString("status");
+        LocalDateTime dateTime = resultSet.getTimestamp("last_update_date").toLocalDateTime();
+        Status status1;
+        if(status.equals("APPROVED"))
+            status1 = Status.APPROVED;
+        else if(status.equals("PENDING"))
+            status1 = Status.PENDING;
+        else status1 = Status.REJECTED;
+
+        FriendRequest friendRequest = new FriendRequest(from, to, status1, dateTime);
+        friendRequest.setId(new Tuple<>(from, to));
+        return friendRequest;
+    }
 
-            PreparedStatement statement = connection.prepareStatement(sql);
+    private List<FriendRequest> query(String sql, Object... parameters) {
+        List<FriendRequest> friendRequests = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
 
-            statement.setInt(1, (int) (long) longLongTuple.getE1());
-            statement.setInt(2, (int) (long) longLongTuple.getE2());
-            statement.setInt(3, (int) (long) longLongTuple.getE2());
-            statement.setInt(4, (int) (long) longLongTuple.getE1());
-
-            ResultSet resultSet = statement.executeQuery();
-
-            if (resultSet.next()) {
-                Tuple<Long, Long> ship = new Tuple<>(longLongTuple.getE1(), longLongTuple.getE2());
-                Long from = resultSet.getLong("from");
-                Long to = resultSet.getLong("to");
-                String status = resultSet.getString("status");
-                LocalDateTime dateTime = resultSet.getTimestamp("last_update_date").toLocalDateTime();
-                Status status1;
-                if(status.equals("APPROVED"))
-                    status1 = Status.APPROVED;
-                else if(status.equals("PENDING"))
-                    status1 = Status.PENDING;
-                else status1 = Status.REJECTED;
-
-                FriendRequest friendRequest = new FriendRequest(from, to, status1, dateTime);
-                friendRequest.setId(ship);
-                return friendRequest;
+            for (int i = 0; i < parameters.length; i++)
+                statement.setObject(i + 1, parameters[i]);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    friendRequests.add(extractRequest(resultSet));
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return null;
+        return friendRequests;
     }
 
+    private int count(String sql, Long user, Status status) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
 
-    @Override
-    public Iterable<FriendRequest> findAll() {
-
-        Set<FriendRequest> friendRequests = new HashSet<>();
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement statement = connection.prepareStatement("SELECT * from friend_requests");
-             ResultSet resultSet = statement.executeQuery()) {
-            while (resultSet.next()) {
-
-                Long from = resultSet.getLong("from");
-                Long to = resultSet.getLong("to");
-                Tuple<Long, Long> ship = new Tuple<>(from, to);
-                String status = resultSet.getString("status");
-                LocalDateTime dateTime = resultSet.getTimestamp("last_update_date").toLocalDateTime();
-                Status status1;
-                if(status.equals("APPROVED"))
-                    status1 = Status.APPROVED;
-                else if(status.equals("PENDING"))
-                    status1 = Status.PENDING;
-                else status1 = Status.REJECTED;
-
-                FriendRequest friendRequest = new FriendRequest(from, to, status1, dateTime);
-                friendRequest.setId(ship);
-                friendRequests.add(friendRequest);
+            statement.setLong(1, user);
+            statement.setString(2, String.valueOf(status));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next())
+                    return resultSet.getInt(1);
             }
-
-            return friendRequests;
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return friendRequests;
+        return 0;
+    }
 
+    @Override
+    public FriendRequest findOne(Tuple<Long, Long> longLongTuple) {
+        String sql = "SELECT * FROM friend_requests WHERE \"from\" = ? AND \"to\" = ?  or \"from\" = ? and \"to\" = ?";
+        Long first = longLongTuple.getE1();
+        Long second = longLongTuple.getE2();
+        List<FriendRequest> friendRequests = query(sql, first, second, second, first);
+        if (friendRequests.isEmpty())
+            return null;
+        FriendRequest friendRequest = friendRequests.get(0);
+        friendRequest.setId(new Tuple<>(longLongTuple.getE1(), longLongTuple.getE2()));
+        return friendRequest;
+    }
+
+
+    @Override
+    public Iterable<FriendRequest> findAll() {
+        return new HashSet<>(query("SELECT * from friend_requests"));
+    }
+
+    @Override
+    public List<FriendRequest> findReceived(Long user, Status status, int offset, int limit) {
+        String sql = "SELECT * FROM friend_requests WHERE \"to\" = ? AND status = ? ORDER BY last_update_date DESC LIMIT ? OFFSET ?";
+        return query(sql, user, String.valueOf(status), limit, offset);
+    }
+
+    @Override
+    public int countReceived(Long user, Status status) {
+        return count("SELECT COUNT(*) FROM friend_requests WHERE \"to\" = ? AND status = ?", user, status);
+    }
+
+    @Override
+    public List<FriendRequest> findSent(Long user, Status status, int offset, int limit) {
+        String sql = "SELECT * FROM friend_requests WHERE \"from\" = ? AND status = ? ORDER BY last_update_date DESC LIMIT ? OFFSET ?";
+        return query(sql, user, String.valueOf(status), limit, offset);
+    }
+
+    @Override
+    public int countSent(Long user, Status status) {
+        return count("SELECT COUNT(*) FROM friend_requests WHERE \"from\" = ? AND status = ?", user, status);
+    }
+
+    /**
+     * The request is deleted and the friendship inserted by the same statement,
+     * so they are done together in one round-trip
+     */
+    @Override
+    public FriendRequest accept(Long from, Long to, LocalDateTime date) {
+        String sql = "WITH request AS (DELETE FROM friend_requests WHERE \"from\" = ? AND \"to\" = ? AND status = 'PENDING' " +
+                "RETURNING *), " +
+                "friendship AS (INSERT INTO friendships (first_friend, second_friend, date) " +
+                "SELECT LEAST(\"from\", \"to\"), GREATEST(\"from\", \"to\"), ? FROM request ON CONFLICT DO NOTHING) " +
+                "SELECT * FROM request";
+        List<FriendRequest> friendRequests = query(sql, from, to, Timestamp.valueOf(date));
+        if (friendRequests.isEmpty())
+            return null;
+        FriendRequest friendRequest = friendRequests.get(0);
+        friendRequest.setStatus(Status.APPROVED);
+        return friendRequest;
+    }
+
+    @Override
+    public FriendRequest removePending(Long from, Long to) {
+        String sql = "DELETE FROM friend_requests WHERE \"from\" = ? AND \"to\" = ? AND status = 'PENDING' RETURNING *";
+        List<FriendRequest> friendRequests = query(sql, from, to);
+        return friendRequests.isEmpty() ? null : friendRequests.get(0);
     }
 
     @Override
@@ -101,11 +143,11 @@ public class FriendRequestDbRepository implements Repository<Tuple<Long, Long>,
 
         String sql = "INSERT INTO friend_requests (\"from\", \"to\", status, last_update_date) VALUES (?, ?, ?, ?)";
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection();
              PreparedStatement ps = connection.prepareStatement(sql)) {
 
-            ps.setInt(1, Math.toIntExact(entity.getFrom()));
-            ps.setInt(2, Math.toIntExact(entity.getTo()));
+            ps.setLong(1, entity.getFrom());
+            ps.setLong(2, entity.getTo());
             ps.setString(3, String.valueOf(entity.getStatus()));
             ps.setTimestamp(4, Timestamp.valueOf(entity.getLastUpdatedDate()));
 
@@ -118,14 +160,13 @@ public class FriendRequestDbRepository implements Repository<Tuple<Long, Long>,
 
     @Override
     public FriendRequest remove(FriendRequest entity) {
-        try {
-            Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection()) {
             String sql = "DELETE FROM friend_requests WHERE \"from\" = ? AND \"to\" = ?";
 
             PreparedStatement statement = connection.prepareStatement(sql);
 
-            statement.setInt(1, (int) (long) entity.getId().getE1());
-            statement.setInt(2, (int) (long) entity.getId().getE2());
+            statement.setLong(1, entity.getId().getE1());
+            statement.setLong(2, entity.getId().getE2());
 
             statement.executeUpdate();
 
@@ -144,11 +185,11 @@ public class FriendRequestDbRepository implements Repository<Tuple<Long, Long>,
 
         String sql = "update friend_requests set (last_update_date, status) = (?, ?) where \"from\" = ? and \"to\" = ?";
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection();
              PreparedStatement ps = connection.prepareStatement(sql)) {
 
-            ps.setInt(3, Math.toIntExact(entity.getFrom()));
-            ps.setInt(4, Math.toIntExact(entity.getTo()));
+            ps.setLong(3, entity.getFrom());
+            ps.setLong(4, entity.getTo());
             ps.setString(2, String.valueOf(entity.getStatus()));
             ps.setTimestamp(1, Timestamp.valueOf(entity.getLastUpdatedDate()));
 
@@ -3,67 +3,165 @@ package com.example.lab6.repository.db;
 import com.example.lab6.model.Friendship;
 import com.example.lab6.model.Tuple;
 import com.example.lab6.model.validators.Validator;
-import com.example.lab6.repository.paging.Page;
-import com.example.lab6.repository.paging.Pageable;
-import com.example.lab6.repository.paging.Paginator;
-import com.example.lab6.repository.paging.PagingRepository;
+import com.example.lab6.repository.FriendshipRepository;
+import com.example.lab6.repository.paging.*;
 
 import java.sql.*;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
-public class FriendshipDbRepository implements PagingRepository<Tuple<Long, Long>, Friendship> {
+public class FriendshipDbRepository implements FriendshipRepository<Tuple<Long, Long>, Friendship> {
 
-    private String url;
-    private String username;
-    private String password;
+    private ConnectionPool pool;
     private Validator<Friendship> validator;
 
 
 
-    public FriendshipDbRepository(String url, String username, String password, Validator<Friendship> validator) {
-        this.url = url;
-        this.username = username;
-        this.password = password;
+    public FriendshipDbRepository(ConnectionPool pool, Validator<Friendship> validator) {
+        this.pool = pool;
         this.validator = validator;
     }
 
+    /**
+     * One probe of the unique (first_friend, second_friend) index, the users are stored in ascending order
+     */
     @Override
     public Friendship findOne(Tuple<Long, Long> friendshipTuple) {
-        try {
-            Connection connection = DriverManager.getConnection(url, username, password);
-            String sql = "SELECT * FROM friendships WHERE first_friend = ? AND second_friend = ? or first_friend = ? AND second_friend = ?";
+        String sql = "SELECT date FROM friendships WHERE first_friend = ? AND second_friend = ?";
+        Tuple<Long, Long> key = Friendship.key(friendshipTuple.getE1(), friendshipTuple.getE2());
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setLong(1, key.getE1());
+            statement.setLong(2, key.getE2());
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    Tuple<Long, Long> ship = new Tuple<>(friendshipTuple.getE1(), friendshipTuple.getE2());
+                    Friendship friendship = new Friendship(ship);
+                    friendship.setId(ship);
+                    LocalDateTime date = resultSet.getTimestamp("date").toLocalDateTime();
+                    friendship.setDate(date);
+                    return friendship;
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
 
-            PreparedStatement statement = connection.prepareStatement(sql);
+    /**
+     * Reads the friends in both columns through the two indexes of friendships
+     */
+    @Override
+    public List<Friendship> friendsOf(Long user) {
+        List<Friendship> friendships = new ArrayList<>();
+        String sql = "SELECT second_friend AS friend, date FROM friendships WHERE first_friend = ? " +
+                "UNION ALL SELECT first_friend, date FROM friendships WHERE second_friend = ? " +
+                "ORDER BY date DESC, friend DESC";
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setLong(1, user);
+            statement.setLong(2, user);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Tuple<Long, Long> ship = new Tuple<>(user, resultSet.getLong("friend"));
+                    Friendship friendship = new Friendship(ship);
+                    friendship.setId(ship);
+                    friendship.setDate(resultSet.getTimestamp("date").toLocalDateTime());
+                    friendships.add(friendship);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return friendships;
+    }
 
-            statement.setInt(1, (int) (long) friendshipTuple.getE1());
-            statement.setInt(2, (int) (long) friendshipTuple.getE2());
-            statement.setInt(3, (int) (long) friendshipTuple.getE2());
-            statement.setInt(4, (int) (long) friendshipTuple.getE1());
+    /**
+     * Pages the friends of both columns like friendsOf; a KeysetPageable continues after
+     * the date and the friend of its cursor
+     */
+    @Override
+    public Page<Friendship> friendsOf(Long user, Pageable pageable) {
+        int size = pageable.getPageSize();
+        List<Friendship> friendships = new ArrayList<>();
+        Cursor cursor = pageable instanceof KeysetPageable ? ((KeysetPageable) pageable).getCursor() : null;
+        String friends = "SELECT * FROM (SELECT second_friend AS friend, date FROM friendships WHERE first_friend = ? " +
+                "UNION ALL SELECT first_friend, date FROM friendships WHERE second_friend = ?) f ";
+        String sql;
+        if (cursor != null)
+            sql = friends + "WHERE (date, friend) < (?, ?) ORDER BY date DESC, friend DESC LIMIT ?";
+        else
+            sql = friends + "ORDER BY date DESC, friend DESC LIMIT ? OFFSET ?";
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setLong(1, user);
+            statement.setLong(2, user);
+            if (cursor != null) {
+                statement.setTimestamp(3, Timestamp.valueOf(cursor.getDate()));
+                statement.setLong(4, cursor.getSecondId());
+                statement.setInt(5, size + 1);
+            } else {
+                statement.setInt(3, size + 1);
+                statement.setLong(4, pageable instanceof KeysetPageable ? 0 : (long) pageable.getPageNumber() * size);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Tuple<Long, Long> ship = new Tuple<>(user, resultSet.getLong("friend"));
+                    Friendship friendship = new Friendship(ship);
+                    friendship.setId(ship);
+                    friendship.setDate(resultSet.getTimestamp("date").toLocalDateTime());
+                    friendships.add(friendship);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
 
-            ResultSet resultSet = statement.executeQuery();
+        boolean hasNext = friendships.size() > size;
+        if (hasNext)
+            friendships.remove(friendships.size() - 1);
+        Cursor next = null;
+        if (!friendships.isEmpty()) {
+            Friendship last = friendships.get(friendships.size() - 1);
+            next = new Cursor(last.getDate(), last.getE1(), last.getE2());
+        }
+        return new PageImplementation<>(pageable, friendships.stream(), hasNext, next);
+    }
 
-            if (resultSet.next()) {
-                Tuple<Long, Long> ship = new Tuple<>(friendshipTuple.getE1(), friendshipTuple.getE2());
-                Friendship friendship = new Friendship(ship);
-                friendship.setId(ship);
-                LocalDateTime date = resultSet.getTimestamp("date").toLocalDateTime();
-                friendship.setDate(date);
-                return friendship;
+    @Override
+    public int countFriends(Long user) {
+        String sql = "SELECT (SELECT COUNT(*) FROM friendships WHERE first_friend = ?) " +
+                "+ (SELECT COUNT(*) FROM friendships WHERE second_friend = ?)";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setLong(1, user);
+            statement.setLong(2, user);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next())
+                    return resultSet.getInt(1);
             }
-
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return null;
+        return 0;
     }
 
     @Override
     public Iterable<Friendship> findAll() {
         Set<Friendship> friendships = new HashSet<>();
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection();
              PreparedStatement statement = connection.prepareStatement("SELECT * FROM friendships");
              ResultSet resultSet = statement.executeQuery()) {
             while (resultSet.next()) {
@@ -84,39 +182,46 @@ public class FriendshipDbRepository implements PagingRepository<Tuple<Long, Long
         return friendships;
     }
 
-   @Override
-   public Friendship save(Friendship entity) {
-       if (entity == null)
-           throw new IllegalArgumentException("Entity must not be null!");
-
-       String sql = "INSERT INTO friendships (first_friend, second_friend, date) VALUES (?, ?, ?)";
-
-       try (Connection connection = DriverManager.getConnection(url, username, password);
-            PreparedStatement ps = connection.prepareStatement(sql)) {
-
-           ps.setInt(1, Integer.parseInt(String.valueOf(entity.getE1())));
-           ps.setInt(2, Math.toIntExact(entity.getE2()));
-           ps.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
-           ps.executeUpdate();
-       } catch (SQLException e) {
-           e.printStackTrace();
-       }
-       return null;
+    /**
+     * Saves the friendship with the smaller id first; keeps the date of the friendship if it has one
+     * @return null if saved, the entity if the two users are already friends
+     */
+    @Override
+    public Friendship save(Friendship entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+
+        String sql = "INSERT INTO friendships (first_friend, second_friend, date) VALUES (?, ?, ?) ON CONFLICT DO NOTHING";
+        Tuple<Long, Long> key = entity.getKey();
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+
+            if (entity.getDate() == null)
+                entity.setDate(LocalDateTime.now());
+            ps.setLong(1, key.getE1());
+            ps.setLong(2, key.getE2());
+            ps.setTimestamp(3, Timestamp.valueOf(entity.getDate()));
+            if (ps.executeUpdate() == 0)
+                return entity;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
     }
 
     @Override
     public Friendship remove(Friendship entity) {
-        try {
-            Connection connection = DriverManager.getConnection(url, username, password);
-            String sql = "DELETE FROM friendships WHERE first_friend = ? AND second_friend = ?";
+        String sql = "DELETE FROM friendships WHERE first_friend = ? AND second_friend = ?";
+        Tuple<Long, Long> key = entity.getKey();
 
-            PreparedStatement statement = connection.prepareStatement(sql);
-
-            statement.setInt(1, (int) (long) entity.getId().getE1());
-            statement.setInt(2, (int) (long) entity.getId().getE2());
-
-            statement.executeUpdate();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
 
+            statement.setLong(1, key.getE1());
+            statement.setLong(2, key.getE2());
+            if (statement.executeUpdate() > 0)
+                return entity;
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -127,7 +232,7 @@ public class FriendshipDbRepository implements PagingRepository<Tuple<Long, Long
   /* public Iterable<User> getFriends(User user){
        Set<User> friendships = new HashSet<>();
        String sql = "select * from friendships f where f.first_friend = " + String.valueOf(user.getId())+ " or f.second_friend = " + String.valueOf(user.getId());
-       try (Connection connection = DriverManager.getConnection(url, username, password);
+       try (Connection connection = pool.getConnection();
             PreparedStatement statement = connection.prepareStatement(sql);
             ResultSet resultSet = statement.executeQuery()) {
            while (resultSet.next()) {
@@ -150,34 +255,92 @@ public class FriendshipDbRepository implements PagingRepository<Tuple<Long, Long
 
     @Override
     public Friendship update(Friendship entity) {
-        String sql = "update from friendhsips set date = ? where first_friend = ? and second_friend = ?";
+        String sql = "UPDATE friendships SET date = ? WHERE first_friend = ? AND second_friend = ?";
+        Tuple<Long, Long> key = entity.getKey();
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement statement = connection.prepareStatement("SELECT * from users");
-             ResultSet resultSet = statement.executeQuery()) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
 
-            while (resultSet.next()) {
-                Long first = resultSet.getLong("first_friend");
-                Long second = resultSet.getLong("second_friend");
-                Tuple<Long, Long> ship = new Tuple<>(first, second);
-                if (ship.getE1() == entity.getE1() && ship.getE2() == entity.getE2()) {
-                    PreparedStatement statement1 = connection.prepareStatement(sql);
-                    statement1.setDate(3, Date.valueOf(LocalDate.now()));
-                    statement1.executeUpdate();
-                    return entity;
+            statement.setTimestamp(1, Timestamp.valueOf(entity.getDate()));
+            statement.setLong(2, key.getE1());
+            statement.setLong(3, key.getE2());
+            if (statement.executeUpdate() > 0)
+                return null;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return entity;
+    }
 
+    /**
+     * Friendships are paged newest first; a KeysetPageable continues after its cursor,
+     * any other Pageable is translated to LIMIT/OFFSET
+     */
+    @Override
+    public Page<Friendship> findAll(Pageable pageable) {
+        int size = pageable.getPageSize();
+        List<Friendship> friendships = new ArrayList<>();
+        Cursor cursor = pageable instanceof KeysetPageable ? ((KeysetPageable) pageable).getCursor() : null;
+        String sql;
+        if (cursor != null)
+            sql = "SELECT * FROM friendships WHERE (date, first_friend, second_friend) < (?, ?, ?) " +
+                    "ORDER BY date DESC, first_friend DESC, second_friend DESC LIMIT ?";
+        else
+            sql = "SELECT * FROM friendships ORDER BY date DESC, first_friend DESC, second_friend DESC LIMIT ? OFFSET ?";
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            if (cursor != null) {
+                statement.setTimestamp(1, Timestamp.valueOf(cursor.getDate()));
+                statement.setLong(2, cursor.getId());
+                statement.setLong(3, cursor.getSecondId());
+                statement.setInt(4, size + 1);
+            } else {
+                statement.setInt(1, size + 1);
+                statement.setLong(2, pageable instanceof KeysetPageable ? 0 : (long) pageable.getPageNumber() * size);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Tuple<Long, Long> ship = new Tuple<>(resultSet.getLong("first_friend"), resultSet.getLong("second_friend"));
+                    Friendship friendship = new Friendship(ship);
+                    friendship.setId(ship);
+                    friendship.setDate(resultSet.getTimestamp("date").toLocalDateTime());
+                    friendships.add(friendship);
                 }
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return null;
+
+        boolean hasNext = friendships.size() > size;
+        if (hasNext)
+            friendships.remove(friendships.size() - 1);
+        Cursor next = null;
+        if (!friendships.isEmpty()) {
+            Friendship last = friendships.get(friendships.size() - 1);
+            next = new Cursor(last.getDate(), last.getE1(), last.getE2());
+        }
+        return new PageImplementation<>(pageable, friendships.stream(), hasNext, next);
     }
 
+    /**
+     * Reads the friendships through a server side cursor, a batch of rows at a time
+     */
     @Override
-    public Page<Friendship> findAll(Pageable pageable) {
-        Paginator<Friendship> paginator = new Paginator<>(pageable, this.findAll());
-        return paginator.paginate();
+    public void forEachFriendship(EdgeConsumer consumer) {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement("SELECT first_friend, second_friend FROM friendships")) {
+                statement.setFetchSize(1000);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next())
+                        consumer.accept(resultSet.getLong(1), resultSet.getLong(2));
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
     }
 }
-
@@ -2,127 +2,187 @@ package com.example.lab6.repository.db;
 
 import com.example.lab6.model.Group;
 import com.example.lab6.model.MessageDTO;
-import com.example.lab6.repository.Repository;
+import com.example.lab6.repository.GroupRepository;
 
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-
-public class GroupDbRepository implements Repository<Long, Group> {
-    private String url;
-    private String username;
-    private String password;
+import java.util.function.Consumer;
+
+/**
+ * Groups with their members aggregated by the query, so a list of groups is read
+ * with one statement on one connection; the messages of a group are read a page at a time
+ */
+public class GroupDbRepository implements GroupRepository<Long, Group> {
+    private static final String GROUPS_WITH_MEMBERS = "SELECT g.id, g.name, " +
+            "array_agg(m.\"user\" ORDER BY m.\"user\") FILTER (WHERE m.\"user\" IS NOT NULL) AS members " +
+            "FROM \"groups\" g LEFT JOIN groups_users m ON m.\"group\" = g.id ";
+    private static final String OF_MEMBER = "WHERE g.id IN (SELECT \"group\" FROM groups_users WHERE \"user\" = ?) " +
+            "AND strpos(g.name, ?) > 0 ";
+
+    private ConnectionPool pool;
+
+    public GroupDbRepository(ConnectionPool pool) {
+        this.pool = pool;
+    }
 
-    public GroupDbRepository(String url, String username, String password) {
-        this.url = url;
-        this.username = username;
-        this.password = password;
+    private Group extractGroup(ResultSet resultSet) throws SQLException {
+        Long id = resultSet.getLong("id");
+        String name = resultSet.getString("name");
+        Group group = new Group(name, new ArrayList<>());
+        group.setId(id);
+        List<Long> members = new ArrayList<>();
+        Array array = resultSet.getArray("members");
+        if (array != null) {
+            for (Object member : (Object[]) array.getArray())
+                members.add(((Number) member).longValue());
+        }
+        group.setMembers(members);
+        return group;
     }
 
+    /**
+     * The group comes with its members; its messages are read with findMessages
+     */
     @Override
     public Group findOne(Long aLong) {
+        String sql = GROUPS_WITH_MEMBERS + "WHERE g.id = ? GROUP BY g.id, g.name";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setLong(1, aLong);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next())
+                    return extractGroup(resultSet);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
 
-        String sql = "SELECT * FROM groups WHERE id = " + aLong;
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement statement = connection.prepareStatement(sql);
-             ResultSet resultSet = statement.executeQuery()) {
-
-            if (resultSet.next()) {
-                Long id = resultSet.getLong("id");
-                String name = resultSet.getString("name");
-                Group group = new Group(name, new ArrayList<>());
-                group.setId(id);
-                String sql1 = "select * from groups_users where \"user\" = " + id;
-                List<Long> users = new ArrayList<>();
-                try (Connection connection1 = DriverManager.getConnection(url, username, password);
-                     PreparedStatement statement1 = connection1.prepareStatement(sql1);
-                     ResultSet resultSet1 = statement1.executeQuery()) {
-
-                    while(resultSet1.next()){
-                        Long idUser = resultSet1.getLong("user");
-                        users.add(idUser);
-                    }
-                }catch (SQLException e){
-                    e.printStackTrace();
+    @Override
+    public Iterable<Group> findAll() {
+        List<Group> groups = new ArrayList<>();
+        forEachGroup(groups::add);
+        return groups;
+    }
+
+    /**
+     * Reads the groups through a server side cursor, a batch of rows at a time
+     */
+    @Override
+    public void forEachGroup(Consumer<Group> consumer) {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(GROUPS_WITH_MEMBERS + "GROUP BY g.id, g.name ORDER BY g.id")) {
+                statement.setFetchSize(1000);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next())
+                        consumer.accept(extractGroup(resultSet));
                 }
-                group.setMembers(users);
-                return saveMessagesToUsers(group);
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
 
+    @Override
+    public List<Group> findByMember(Long user, String name, int offset, int limit) {
+        List<Group> groups = new ArrayList<>();
+        String sql = GROUPS_WITH_MEMBERS + OF_MEMBER + "GROUP BY g.id, g.name ORDER BY g.id DESC LIMIT ? OFFSET ?";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setLong(1, user);
+            statement.setString(2, name == null ? "" : name);
+            statement.setInt(3, limit);
+            statement.setInt(4, offset);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    groups.add(extractGroup(resultSet));
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return null;
+        return groups;
     }
 
-    private Group saveMessagesToUsers(Group group) {
-        String sql = "select * from messages_groups where recipient_group = " + group.getId();
-        List<MessageDTO> messageDTOList = new ArrayList<>();
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement statement = connection.prepareStatement(sql);
-             ResultSet resultSet = statement.executeQuery()) {
-
-            while(resultSet.next()){
-                Long id = resultSet.getLong("id");
-                LocalDateTime date = resultSet.getTimestamp("date").toLocalDateTime();
-                Long from = resultSet.getLong("from");
-                String message = resultSet.getString("message");
-                Long original_message = resultSet.getLong("original_message");
-                List<Long> recipients = new ArrayList<>();
-                group.getMembers().forEach(x->{
-                    if(!x.equals(from))
-                        recipients.add(x);
-                });
-                MessageDTO messageDTO = new MessageDTO(from, recipients, message, date, null);
-                messageDTO.setId(id);
-                messageDTOList.add(messageDTO);
+    @Override
+    public int countByMember(Long user, String name) {
+        String sql = "SELECT count(*) FROM \"groups\" g " + OF_MEMBER;
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setLong(1, user);
+            statement.setString(2, name == null ? "" : name);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next())
+                    return resultSet.getInt(1);
             }
-            group.setMessages(messageDTOList);
-            return group;
-        }catch (SQLException e){
+        } catch (SQLException e) {
             e.printStackTrace();
         }
-        return null;
+        return 0;
     }
 
+    /**
+     * The members are read once for the page, every message goes to the members but its sender
+     */
     @Override
-    public Iterable<Group> findAll() {
-        Set<Group> groups = new HashSet<>();
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement statement = connection.prepareStatement("select * from \"groups\"");
-             ResultSet resultSet = statement.executeQuery()) {
-
-            while (resultSet.next()) {
-                Long id = resultSet.getLong("id");
-                String name = resultSet.getString("name");
-                Group group = new Group(name, new ArrayList<>());
-                group.setId(id);
-                String sql1 = "select * from groups_users where \"group\" = " + id;
-                List<Long> users = new ArrayList<>();
-                try (Connection connection1 = DriverManager.getConnection(url, username, password);
-                     PreparedStatement statement1 = connection1.prepareStatement(sql1);
-                     ResultSet resultSet1 = statement1.executeQuery()) {
-
-                    while(resultSet1.next()){
-                        Long idUser = resultSet1.getLong("user");
-                        users.add(idUser);
+    public List<MessageDTO> findMessages(Long group, int offset, int limit) {
+        List<MessageDTO> messages = new ArrayList<>();
+        String sql = "SELECT id, date, \"from\", message FROM messages_groups WHERE recipient_group = ? " +
+                "ORDER BY date DESC, id DESC LIMIT ? OFFSET ?";
+        try (Connection connection = pool.getConnection()) {
+            List<Long> members = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement("SELECT \"user\" FROM groups_users WHERE \"group\" = ?")) {
+                statement.setLong(1, group);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next())
+                        members.add(resultSet.getLong("user"));
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, group);
+                statement.setInt(2, limit);
+                statement.setInt(3, offset);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        Long id = resultSet.getLong("id");
+                        LocalDateTime date = resultSet.getTimestamp("date").toLocalDateTime();
+                        Long from = resultSet.getLong("from");
+                        String message = resultSet.getString("message");
+                        List<Long> recipients = new ArrayList<>(members);
+                        recipients.remove(from);
+                        MessageDTO messageDTO = new MessageDTO(from, recipients, message, date, null);
+                        messageDTO.setId(id);
+                        messages.add(messageDTO);
                     }
-                }catch (SQLException e){
-                    e.printStackTrace();
                 }
-
-                group.setMembers(users);
-                groups.add(saveMessagesToUsers(group));
             }
-            return  groups;
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return null;
+        return messages;
+    }
 
+    @Override
+    public int countMessages(Long group) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT count(*) FROM messages_groups WHERE recipient_group = ?")) {
+
+            statement.setLong(1, group);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next())
+                    return resultSet.getInt(1);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return 0;
     }
 
     @Override
@@ -132,63 +192,71 @@ public class GroupDbRepository implements Repository<Long, Group> {
 
         String sql = "insert into groups (\"name\") values (?)";
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection();
              PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             ps.setString(1, entity.getName());
             ps.executeUpdate();
-            ResultSet rs = ps.getGeneratedKeys();
-            if (rs.next()) {
-                long id = rs.getLong(1);
-                saveUsersToGroup(id,  entity.getMembers());
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (rs.next()) {
+                    long id = rs.getLong(1);
+                    entity.setId(id);
+                    saveUsersToGroup(connection, id, entity.getMembers());
+                }
             }
-
         } catch (SQLException e) {
             e.printStackTrace();
         }
         return null;
     }
 
-    private void saveMessages(MessageDTO messages, Long idGroup) {
-
+    @Override
+    public void saveMessage(Long group, MessageDTO message) {
         String sql = "INSERT INTO messages_groups (date, \"from\", message, \"original_message\", recipient_group) VALUES (?, ? , ? ,? , ?)";
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
-            ps.setTimestamp(1, Timestamp.valueOf(messages.getDate()));
-            ps.setString(3, messages.getMessage());
-            ps.setLong(2, messages.getFrom());
-            if (messages.getReply() != null)
-                ps.setInt(4, Math.toIntExact(messages.getReply()));
+            ps.setTimestamp(1, Timestamp.valueOf(message.getDate()));
+            ps.setString(3, message.getMessage());
+            ps.setLong(2, message.getFrom());
+            if (message.getReply() != null)
+                ps.setInt(4, Math.toIntExact(message.getReply()));
             else {
                 ps.setNull(4, Types.NULL);
             }
-            ps.setLong(5, idGroup);
+            ps.setLong(5, group);
             ps.executeUpdate();
-
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (rs.next())
+                    message.setId(rs.getLong(1));
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-
     }
 
-    public void saveUsersToGroup(Long id, List<Long> users) {
+    /**
+     * Adds the members with one batch, on the connection that saved the group
+     */
+    private void saveUsersToGroup(Connection connection, Long id, List<Long> users) throws SQLException {
+        if (users == null || users.isEmpty())
+            return;
         String sql = "INSERT INTO groups_users (\"user\", \"group\") VALUES (?,?)";
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement ps = connection.prepareStatement(sql)) {
-
-            users.forEach(x -> {
-                try {
-                    ps.setInt(1, Math.toIntExact(x));
-                    ps.setInt(2, Math.toIntExact(id));
-                    ps.executeUpdate();
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (Long user : users) {
+                ps.setInt(1, Math.toIntExact(user));
+                ps.setInt(2, Math.toIntExact(id));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
 
-            });
+    public void saveUsersToGroup(Long id, List<Long> users) {
+        try (Connection connection = pool.getConnection()) {
+            saveUsersToGroup(connection, id, users);
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -199,9 +267,12 @@ public class GroupDbRepository implements Repository<Long, Group> {
         return null;
     }
 
+    /**
+     * Saves the last message of the group
+     */
     @Override
     public Group update(Group entity) {
-        saveMessages(entity.getMessages().get(entity.getMessages().size()-1), entity.getId());
+        saveMessage(entity.getId(), entity.getMessages().get(entity.getMessages().size()-1));
         return null;
     }
 }
@@ -2,145 +2,288 @@ package com.example.lab6.repository.db;
 
 
 import com.example.lab6.model.MessageDTO;
-import com.example.lab6.repository.paging.Page;
-import com.example.lab6.repository.paging.Pageable;
-import com.example.lab6.repository.paging.Paginator;
-import com.example.lab6.repository.paging.PagingRepository;
+import com.example.lab6.repository.MessageRepository;
+import com.example.lab6.repository.paging.*;
 
 import java.sql.*;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-
-public class MessageDbRepository implements PagingRepository<Long, MessageDTO> {
-    private String url;
-    private String username;
-    private String password;
-
-    public MessageDbRepository(String url, String username, String password) {
-        this.url = url;
-        this.username = username;
-        this.password = password;
-    }
-
-    private List<Long> getAllReceivers(Long id) {
-        List<Long> result = new ArrayList<>();
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement statement = connection.prepareStatement("SELECT * FROM message_recipients WHERE message = " + id);
-             ResultSet resultSet = statement.executeQuery()) {
-            while (resultSet.next()) {
-                result.add(resultSet.getLong(2));
+import java.util.*;
+
+public class MessageDbRepository implements MessageRepository<Long, MessageDTO> {
+    private static final int BATCH_SIZE = 1000;
+
+    private ConnectionPool pool;
+
+    public MessageDbRepository(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Fills the recipients of all the given messages with a single query
+     */
+    private void loadRecipients(Connection connection, List<MessageDTO> messages) throws SQLException {
+        if (messages.isEmpty())
+            return;
+        Map<Long, List<Long>> recipients = new HashMap<>();
+        Long[] ids = new Long[messages.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = messages.get(i).getId();
+            recipients.put(ids[i], new ArrayList<>());
+        }
+        try (PreparedStatement statement = connection.prepareStatement("SELECT message, recipient FROM message_recipients WHERE message = ANY(?)")) {
+            statement.setArray(1, connection.createArrayOf("bigint", ids));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    recipients.get(resultSet.getLong("message")).add(resultSet.getLong("recipient"));
+            }
+        }
+        messages.forEach(x -> x.setTo(recipients.get(x.getId())));
+    }
+
+    private MessageDTO extractMessage(ResultSet resultSet) throws SQLException {
+        Long id = resultSet.getLong("id");
+        LocalDateTime dateTime = resultSet.getTimestamp("date").toLocalDateTime();
+        String messageText = resultSet.getString("message_text");
+        Long from = resultSet.getLong("from");
+        Long originalMessage = resultSet.getLong("original_message");
+        if (resultSet.wasNull())
+            originalMessage = null;
+        MessageDTO messageDTO = new MessageDTO(from, new ArrayList<>(), messageText, dateTime, originalMessage);
+        messageDTO.setId(id);
+        return messageDTO;
+    }
+
+    /**
+     * Runs a query on messages and returns the rows with their recipients
+     * @param sql        the query, selecting columns of messages
+     * @param parameters the values of the ? placeholders, in order
+     */
+    private List<MessageDTO> query(String sql, Object... parameters) {
+        List<MessageDTO> messages = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            for (int i = 0; i < parameters.length; i++) {
+                if (parameters[i] instanceof Long[])
+                    statement.setArray(i + 1, connection.createArrayOf("bigint", (Long[]) parameters[i]));
+                else
+                    statement.setObject(i + 1, parameters[i]);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    messages.add(extractMessage(resultSet));
             }
+            loadRecipients(connection, messages);
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return result;
+        return messages;
     }
 
     @Override
     public MessageDTO findOne(Long aLong) {
+        List<MessageDTO> messages = query("SELECT * FROM messages WHERE id = ?", aLong);
+        if (messages.isEmpty())
+            return null;
+        return messages.get(0);
+    }
 
-        String sql = "SELECT * FROM messages WHERE id = " + aLong;
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement statement = connection.prepareStatement(sql);
-             ResultSet resultSet = statement.executeQuery()) {
-
-            if (resultSet.next()) {
-                Long id = resultSet.getLong("id");
-               // LocalDate date = resultSet.getDate("date").toLocalDate();
-                //LocalDateTime dateTime = LocalDateTime.parse(String.valueOf(resultSet.getTimestamp("date"))).format(DateTimeFormatter.ofPattern(""));
-                LocalDateTime dateTime = resultSet.getTimestamp("date").toLocalDateTime();
-                String messageText = resultSet.getString("message_text");
-                Long from = resultSet.getLong("from");
-                Long originalMessage = resultSet.getLong("original_message");
-                MessageDTO messageDTO = new MessageDTO(from, getAllReceivers(id), messageText, dateTime, originalMessage);
-                return messageDTO;
+    @Override
+    public Map<Long, MessageDTO> findByIds(Collection<Long> ids) {
+        Map<Long, MessageDTO> messages = new HashMap<>();
+        if (ids.isEmpty())
+            return messages;
+        query("SELECT * FROM messages WHERE id = ANY(?)", (Object) ids.toArray(new Long[0]))
+                .forEach(x -> messages.put(x.getId(), x));
+        return messages;
+    }
+
+    /**
+     * One recursive query following original_message from the message up; the recursive term
+     * stops at depth limit - 1, so at most limit messages are read even for a long or cyclic chain
+     */
+    @Override
+    public List<MessageDTO> findThread(Long message, int limit) {
+        if (limit <= 0)
+            return new ArrayList<>();
+        String sql = "WITH RECURSIVE thread AS (SELECT m.*, 0 AS depth FROM messages m WHERE m.id = ? " +
+                "UNION ALL SELECT m.*, t.depth + 1 FROM messages m JOIN thread t ON m.id = t.original_message " +
+                "WHERE t.depth < ?) " +
+                "SELECT * FROM thread ORDER BY depth";
+        return query(sql, message, limit - 1);
+    }
+
+    @Override
+    public Iterable<MessageDTO> findAll() {
+        return query("SELECT * FROM messages");
+    }
+
+    @Override
+    public List<MessageDTO> findConversation(Long user1, Long user2, int offset, int limit) {
+        String sql = "SELECT m.* FROM messages m JOIN message_recipients r ON r.message = m.id " +
+                "WHERE (m.\"from\" = ? AND r.recipient = ?) OR (m.\"from\" = ? AND r.recipient = ?) " +
+                "ORDER BY m.date DESC, m.id DESC LIMIT ? OFFSET ?";
+        return query(sql, user1, user2, user2, user1, limit, offset);
+    }
+
+    @Override
+    public int countConversation(Long user1, Long user2) {
+        String sql = "SELECT count(*) FROM messages m JOIN message_recipients r ON r.message = m.id " +
+                "WHERE (m.\"from\" = ? AND r.recipient = ?) OR (m.\"from\" = ? AND r.recipient = ?)";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setLong(1, user1);
+            statement.setLong(2, user2);
+            statement.setLong(3, user2);
+            statement.setLong(4, user1);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next())
+                    return resultSet.getInt(1);
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return null;
+        return 0;
     }
 
     @Override
-    public Iterable<MessageDTO> findAll() {
-        Set<MessageDTO> mess = new HashSet<>();
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement statement = connection.prepareStatement("SELECT * FROM messages");
-             ResultSet resultSet = statement.executeQuery()) {
-
-            while (resultSet.next()) {
-                Long id = resultSet.getLong("id");
-               // LocalDate date = resultSet.getDate("date").toLocalDate();
-                LocalDateTime dateTime = resultSet.getTimestamp("date").toLocalDateTime();
-                String messageText = resultSet.getString("message_text");
-                Long from = resultSet.getLong("from");
-                Long originalMessage = resultSet.getLong("original_message");
-                MessageDTO messageDTO = new MessageDTO(from, getAllReceivers(id), messageText, dateTime, originalMessage);
-                messageDTO.setId(id);
-                mess.add(messageDTO);
+    public List<MessageDTO> findGroupConversation(Long user, List<Long> members, int offset, int limit) {
+        Long[] ids = members.stream().distinct().toArray(Long[]::new);
+        String sql = "SELECT m.* FROM messages m " +
+                "WHERE (m.\"from\" = ? AND (SELECT count(DISTINCT r.recipient) FROM message_recipients r " +
+                "WHERE r.message = m.id AND r.recipient = ANY(?)) = ?) " +
+                "OR (m.\"from\" = ANY(?) AND EXISTS (SELECT 1 FROM message_recipients r " +
+                "WHERE r.message = m.id AND r.recipient = ?)) " +
+                "ORDER BY m.date, m.id LIMIT ? OFFSET ?";
+        return query(sql, user, ids, ids.length, ids, user, limit, offset);
+    }
+
+    @Override
+    public List<MessageDTO> findReceived(Long recipient, LocalDateTime start, LocalDateTime end, int offset, int limit) {
+        String sql = "SELECT m.* FROM messages m JOIN message_recipients r ON r.message = m.id " +
+                "WHERE r.recipient = ? AND m.date > ? AND m.date <= ? " +
+                "ORDER BY m.date, m.id LIMIT ? OFFSET ?";
+        return query(sql, recipient, Timestamp.valueOf(start), Timestamp.valueOf(end), limit, offset);
+    }
+
+    @Override
+    public List<MessageDTO> findSent(Long sender, Long recipient, LocalDateTime start, LocalDateTime end, int offset, int limit) {
+        if (recipient == null) {
+            String sql = "SELECT m.* FROM messages m " +
+                    "WHERE m.\"from\" = ? AND m.date > ? AND m.date <= ? " +
+                    "ORDER BY m.date, m.id LIMIT ? OFFSET ?";
+            return query(sql, sender, Timestamp.valueOf(start), Timestamp.valueOf(end), limit, offset);
+        }
+        String sql = "SELECT m.* FROM messages m JOIN message_recipients r ON r.message = m.id " +
+                "WHERE m.\"from\" = ? AND r.recipient = ? AND m.date > ? AND m.date <= ? " +
+                "ORDER BY m.date, m.id LIMIT ? OFFSET ?";
+        return query(sql, sender, recipient, Timestamp.valueOf(start), Timestamp.valueOf(end), limit, offset);
+    }
+
+    @Override
+    public Set<Long> findConversationPartners(Long user) {
+        Set<Long> partners = new HashSet<>();
+        String sql = "SELECT r.recipient FROM messages m JOIN message_recipients r ON r.message = m.id WHERE m.\"from\" = ? " +
+                "UNION SELECT m.\"from\" FROM messages m JOIN message_recipients r ON r.message = m.id WHERE r.recipient = ?";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setLong(1, user);
+            statement.setLong(2, user);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    partners.add(resultSet.getLong(1));
             }
-            return mess;
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return null;
+        partners.remove(user);
+        return partners;
     }
 
 
+    /**
+     * Saves the message and its recipients in one transaction;
+     * gives the entity the generated id and the date it was saved with
+     */
     @Override
     public MessageDTO save(MessageDTO entity) {
         if (entity == null)
             throw new IllegalArgumentException("Entity must not be null!");
+        saveAll(List.of(entity));
+        return null;
+    }
 
+    /**
+     * Saves all the messages and their recipients in one transaction, with batched inserts:
+     * the messages in batches of BATCH_SIZE rows, the recipients of each batch with a single
+     * unnest insert. Nothing is saved if any insert fails.
+     * The messages get their generated ids; a message without date is dated now.
+     *
+     * @throws IllegalStateException if the messages could not be saved; then none of them has an id
+     */
+    @Override
+    public List<MessageDTO> saveAll(List<MessageDTO> entities) {
         String sql = "INSERT INTO messages (date, message_text, \"from\", \"original_message\") VALUES (?, ?, ?, ?)";
+        String recipientsSql = "INSERT INTO message_recipients (message, recipient) SELECT * FROM unnest(?, ?)";
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-
-            LocalDateTime dateTime = LocalDateTime.now();
-            ps.setTimestamp(1, Timestamp.valueOf(dateTime));
-            ps.setString(2, entity.getMessage());
-
-            ps.setInt(3, Math.toIntExact(entity.getFrom()));
-            if (entity.getReply() != null)
-                ps.setInt(4, Math.toIntExact(entity.getReply()));
-            else {
-                ps.setNull(4, Types.NULL);
-            }
-            ps.executeUpdate();
-            ResultSet rs = ps.getGeneratedKeys();
-            if (rs.next()) {
-                long id = rs.getLong(1);
-                saveMessagesToUsers(id, entity.getTo());
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement recipients = connection.prepareStatement(recipientsSql)) {
+                LocalDateTime now = LocalDateTime.now();
+                for (int from = 0; from < entities.size(); from += BATCH_SIZE) {
+                    List<MessageDTO> batch = entities.subList(from, Math.min(entities.size(), from + BATCH_SIZE));
+                    for (MessageDTO entity : batch) {
+                        if (entity.getDate() == null)
+                            entity.setDate(now);
+                        ps.setTimestamp(1, Timestamp.valueOf(entity.getDate()));
+                        ps.setString(2, entity.getMessage());
+                        ps.setLong(3, entity.getFrom());
+                        if (entity.getReply() != null)
+                            ps.setLong(4, entity.getReply());
+                        else {
+                            ps.setNull(4, Types.BIGINT);
+                        }
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    try (ResultSet rs = ps.getGeneratedKeys()) {
+                        for (MessageDTO entity : batch)
+                            if (rs.next())
+                                entity.setId(rs.getLong(1));
+                    }
+                    saveRecipients(connection, recipients, batch);
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                entities.forEach(x -> x.setId(null));
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw new IllegalStateException("The messages could not be saved", e);
         }
-        return null;
+        return entities;
     }
 
-    public void saveMessagesToUsers(Long id, List<Long> users) {
-        String sql = "INSERT INTO message_recipients (message, recipient) VALUES (?,?)";
-
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement ps = connection.prepareStatement(sql)) {
-
-            users.forEach(x -> {
-                try {
-                    ps.setInt(1, Math.toIntExact(id));
-                    ps.setInt(2, Math.toIntExact(x));
-                    ps.executeUpdate();
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-
-            });
-        } catch (SQLException e) {
-            e.printStackTrace();
+    private void saveRecipients(Connection connection, PreparedStatement statement, List<MessageDTO> messages) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        List<Long> users = new ArrayList<>();
+        for (MessageDTO message : messages) {
+            for (Long user : message.getTo()) {
+                ids.add(message.getId());
+                users.add(user);
+            }
         }
+        if (ids.isEmpty())
+            return;
+        statement.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+        statement.setArray(2, connection.createArrayOf("bigint", users.toArray()));
+        statement.executeUpdate();
     }
 
     @Override
@@ -154,9 +297,30 @@ public class MessageDbRepository implements PagingRepository<Long, MessageDTO> {
     }
 
 
+    /**
+     * Messages are paged newest first; a KeysetPageable continues after its cursor,
+     * any other Pageable is translated to LIMIT/OFFSET
+     */
     @Override
     public Page<MessageDTO> findAll(Pageable pageable) {
-        Paginator<MessageDTO> paginator = new Paginator<>(pageable, this.findAll());
-        return paginator.paginate();
+        int size = pageable.getPageSize();
+        Cursor cursor = pageable instanceof KeysetPageable ? ((KeysetPageable) pageable).getCursor() : null;
+        List<MessageDTO> messages;
+        if (cursor != null)
+            messages = query("SELECT * FROM messages WHERE (date, id) < (?, ?) ORDER BY date DESC, id DESC LIMIT ?",
+                    Timestamp.valueOf(cursor.getDate()), cursor.getId(), size + 1);
+        else
+            messages = query("SELECT * FROM messages ORDER BY date DESC, id DESC LIMIT ? OFFSET ?",
+                    size + 1, pageable instanceof KeysetPageable ? 0L : (long) pageable.getPageNumber() * size);
+
+        boolean hasNext = messages.size() > size;
+        if (hasNext)
+            messages.remove(messages.size() - 1);
+        Cursor next = null;
+        if (!messages.isEmpty()) {
+            MessageDTO last = messages.get(messages.size() - 1);
+            next = new Cursor(last.getDate(), last.getId());
+        }
+        return new PageImplementation<>(pageable, messages.stream(), hasNext, next);
     }
 }
@@ -1,10 +1,8 @@
 package com.example.lab6.repository.db;
 
-import com.example.lab6.model.Event;
 import com.example.lab6.model.Post;
-import com.example.lab6.repository.paging.Page;
-import com.example.lab6.repository.paging.Pageable;
-import com.example.lab6.repository.paging.PagingRepository;
+import com.example.lab6.repository.PostRepository;
+import com.example.lab6.repository.paging.*;
 
 import java.sql.*;
 import java.time.LocalDateTime;
@@ -13,21 +11,17 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-public class PostDbRepository implements PagingRepository<Long, Post> {
-    private String url;
-    private String username;
-    private String password;
+public class PostDbRepository implements PostRepository<Long, Post> {
+    private ConnectionPool pool;
 
-    public PostDbRepository(String url, String username, String password) {
-        this.url = url;
-        this.username = username;
-        this.password = password;
+    public PostDbRepository(ConnectionPool pool) {
+        this.pool = pool;
     }
     @Override
     public Post findOne(Long aLong) {
         String sql = "SELECT * FROM posts WHERE id = " + aLong;
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection();
              PreparedStatement statement = connection.prepareStatement(sql);
              ResultSet resultSet = statement.executeQuery()) {
 
@@ -52,7 +46,7 @@ public class PostDbRepository implements PagingRepository<Long, Post> {
     public Iterable<Post> findAll() {
 
         Set<Post> posts = new HashSet<>();
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection();
              PreparedStatement statement = connection.prepareStatement("SELECT * from posts");
              ResultSet resultSet = statement.executeQuery()) {
 
@@ -76,6 +70,9 @@ public class PostDbRepository implements PagingRepository<Long, Post> {
         return posts;
     }
 
+    /**
+     * Gives the entity the generated id and the date it was saved with
+     */
     @Override
     public Post save(Post entity) {
         if (entity == null)
@@ -83,8 +80,8 @@ public class PostDbRepository implements PagingRepository<Long, Post> {
 
         String sql = "insert into posts (\"user\", photo, description, date) values (?, ?, ?, ?)";
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             ps.setInt(1, Math.toIntExact(entity.getAdmin()));
             if (entity.getUrl() != null)
@@ -97,9 +94,15 @@ public class PostDbRepository implements PagingRepository<Long, Post> {
             else {
                 ps.setNull(3, Types.NULL);
             }
-            ps.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+            LocalDateTime date = LocalDateTime.now();
+            ps.setTimestamp(4, Timestamp.valueOf(date));
 
             ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (rs.next())
+                    entity.setId(rs.getLong(1));
+            }
+            entity.setDate(date);
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -109,8 +112,7 @@ public class PostDbRepository implements PagingRepository<Long, Post> {
     @Override
     public Post remove(Post entity) {
 
-        try {
-            Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection()) {
             String sql = "DELETE FROM posts WHERE id = ?";
 
             PreparedStatement statement = connection.prepareStatement(sql);
@@ -131,8 +133,95 @@ public class PostDbRepository implements PagingRepository<Long, Post> {
         return null;
     }
 
+    /**
+     * Posts are paged newest first; a KeysetPageable continues after its cursor,
+     * any other Pageable is translated to LIMIT/OFFSET
+     */
     @Override
     public Page<Post> findAll(Pageable pageable) {
-        return null;
+        return page(null, pageable);
+    }
+
+    /**
+     * Reads the page through the ("user", date, id) index
+     */
+    @Override
+    public Page<Post> findByAuthor(Long author, Pageable pageable) {
+        return page(author, pageable);
+    }
+
+    @Override
+    public int countByAuthor(Long author) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM posts WHERE \"user\" = ?")) {
+
+            statement.setLong(1, author);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next())
+                    return resultSet.getInt(1);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return 0;
+    }
+
+    /**
+     * @param author the author of the posts, null for the posts of everyone
+     */
+    private Page<Post> page(Long author, Pageable pageable) {
+        int size = pageable.getPageSize();
+        List<Post> posts = new ArrayList<>();
+        Cursor cursor = pageable instanceof KeysetPageable ? ((KeysetPageable) pageable).getCursor() : null;
+        String where = author == null ? "" : "\"user\" = ? AND ";
+        String sql;
+        if (cursor != null)
+            sql = "SELECT * FROM posts WHERE " + where + "(date, id) < (?, ?) ORDER BY date DESC, id DESC LIMIT ?";
+        else
+            sql = "SELECT * FROM posts " + (author == null ? "" : "WHERE \"user\" = ? ") + "ORDER BY date DESC, id DESC LIMIT ? OFFSET ?";
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            int index = 1;
+            if (author != null)
+                statement.setLong(index++, author);
+            if (cursor != null) {
+                statement.setTimestamp(index++, Timestamp.valueOf(cursor.getDate()));
+                statement.setLong(index++, cursor.getId());
+                statement.setInt(index, size + 1);
+            } else {
+                statement.setInt(index++, size + 1);
+                statement.setLong(index, pageable instanceof KeysetPageable ? 0 : (long) pageable.getPageNumber() * size);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    posts.add(extractPost(resultSet));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        boolean hasNext = posts.size() > size;
+        if (hasNext)
+            posts.remove(posts.size() - 1);
+        Cursor next = null;
+        if (!posts.isEmpty()) {
+            Post last = posts.get(posts.size() - 1);
+            next = new Cursor(last.getDate(), last.getId());
+        }
+        return new PageImplementation<>(pageable, posts.stream(), hasNext, next);
+    }
+
+    private Post extractPost(ResultSet resultSet) throws SQLException {
+        Long id = resultSet.getLong("id");
+        Long user = resultSet.getLong("user");
+        String url = resultSet.getString("photo");
+        String description = resultSet.getString("description");
+        LocalDateTime date = resultSet.getTimestamp("date").toLocalDateTime();
+
+        Post post = new Post(user, url, description, date);
+        post.setId(id);
+        return post;
     }
 }
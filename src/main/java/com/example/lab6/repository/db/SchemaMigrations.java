@@ -0,0 +1,89 @@
+package com.example.lab6.repository.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Applies the SQL scripts from /db/migration in order, each one once: the applied scripts
+ * are recorded in the schema_version table. A script runs in one transaction with its
+ * record, so a failed script is rolled back whole, stops the others and is thrown, and the
+ * application does not start on a half migrated schema. The scripts are written to be
+ * idempotent anyway, since a database created before schema_version runs them once more.
+ */
+public class SchemaMigrations {
+    private static final String[] SCRIPTS = {
+            "001_message_indexes.sql",
+            "002_paging_indexes.sql",
+            "003_feed_entries.sql",
+            "004_friendship_lookup.sql",
+            "005_friendship_canonical_key.sql",
+            "006_group_lookup.sql",
+            "007_event_lookup.sql",
+            "008_friend_request_lookup.sql",
+    };
+
+    private SchemaMigrations() {
+    }
+
+    /**
+     * @throws IllegalStateException if a script can not be read or fails
+     */
+    public static void apply(ConnectionPool pool) {
+        try (Connection connection = pool.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                        "script varchar PRIMARY KEY, applied_at timestamp NOT NULL DEFAULT now())");
+            }
+            for (String script : SCRIPTS)
+                apply(connection, script);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Migrations failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Runs the script if it is not recorded yet; the table is locked, so another
+     * instance starting at the same time waits and then sees the script applied
+     */
+    private static void apply(Connection connection, String script) throws SQLException {
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement();
+             PreparedStatement applied = connection.prepareStatement("SELECT 1 FROM schema_version WHERE script = ?");
+             PreparedStatement record = connection.prepareStatement("INSERT INTO schema_version (script) VALUES (?)")) {
+            statement.execute("LOCK TABLE schema_version IN EXCLUSIVE MODE");
+            applied.setString(1, script);
+            try (ResultSet resultSet = applied.executeQuery()) {
+                if (resultSet.next()) {
+                    connection.commit();
+                    return;
+                }
+            }
+            for (String sql : read(script).split(";")) {
+                if (!sql.isBlank())
+                    statement.execute(sql);
+            }
+            record.setString(1, script);
+            record.executeUpdate();
+            connection.commit();
+        } catch (SQLException | IOException e) {
+            connection.rollback();
+            throw new IllegalStateException("Migration " + script + " failed: " + e.getMessage(), e);
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static String read(String script) throws IOException {
+        try (InputStream inputStream = SchemaMigrations.class.getResourceAsStream("/db/migration/" + script)) {
+            if (inputStream == null)
+                throw new IOException("Missing script " + script);
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
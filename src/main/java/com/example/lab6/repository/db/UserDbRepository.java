@@ -5,20 +5,19 @@ import com.example.lab6.model.validators.Validator;
 import com.example.lab6.repository.UserRepository;
 
 import java.sql.*;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class UserDbRepository implements UserRepository<Long, User> {
-    private String url;
-    private String username;
-    private String password;
+    private ConnectionPool pool;
     private Validator<User> validator;
 
 
-    public UserDbRepository(String url, String username, String password, Validator<User> validator) {
-        this.url = url;
-        this.username = username;
-        this.password = password;
+    public UserDbRepository(ConnectionPool pool, Validator<User> validator) {
+        this.pool = pool;
         this.validator = validator;
     }
 
@@ -26,7 +25,7 @@ public class UserDbRepository implements UserRepository<Long, User> {
     public User findOne(Long aLong) {
 
         String sql = "SELECT * from users where id = " + aLong;
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection();
              PreparedStatement statement = connection.prepareStatement(sql);
              ResultSet resultSet = statement.executeQuery()) {
 
@@ -52,8 +51,7 @@ public class UserDbRepository implements UserRepository<Long, User> {
 
     @Override
     public User findOneByEmail(String email) {
-        try {
-             Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection()) {
              String sql = "Select * from users where email = ?";
              PreparedStatement statement = connection.prepareStatement(sql);
              statement.setString(1, email);
@@ -75,40 +73,144 @@ public class UserDbRepository implements UserRepository<Long, User> {
         return null;
     }
 
+    /**
+     * One query on the primary key of users for all the ids
+     */
+    @Override
+    public Map<Long, User> findByIds(Collection<Long> ids) {
+        Map<Long, User> users = new HashMap<>();
+        if (ids.isEmpty())
+            return users;
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT * from users where id = ANY(?)")) {
+
+            statement.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    User utilizator = extractUser(resultSet);
+                    users.put(utilizator.getId(), utilizator);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return users;
+    }
+
+    /**
+     * Loads every user with one query and every friendship with a second one,
+     * then links the friend lists in memory using the same User instances
+     */
     @Override
     public Iterable<User> findAll() {
-        Set<User> users = new HashSet<>();
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        Map<Long, User> users = new HashMap<>();
+        try (Connection connection = pool.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT * from users");
+                 ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    User utilizator = extractUser(resultSet);
+                    users.put(utilizator.getId(), utilizator);
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement("SELECT first_friend, second_friend from friendships");
+                 ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    User first = users.get(resultSet.getLong("first_friend"));
+                    User second = users.get(resultSet.getLong("second_friend"));
+                    if (first != null && second != null) {
+                        first.addFriend(second);
+                        second.addFriend(first);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return users.values();
+    }
+
+    /**
+     * Loads every user with one query; the friend list of a user is queried
+     * only when getFriendsList() is called on it
+     */
+    @Override
+    public Iterable<User> findAllLazy() {
+        List<User> users = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
              PreparedStatement statement = connection.prepareStatement("SELECT * from users");
              ResultSet resultSet = statement.executeQuery()) {
 
             while (resultSet.next()) {
-                Long id = resultSet.getLong("id");
-                String firstName = resultSet.getString("first_name");
-                String lastName = resultSet.getString("last_name");
-                String email = resultSet.getString("email");
-                String password = resultSet.getString("password");
-                User utilizator = new User(firstName, lastName, email, password);
-                utilizator.setId(id);
-                String sql = "select * from friendships f where f.first_friend = " + utilizator.getId() + " or f.second_friend = " + String.valueOf(utilizator.getId());
-                PreparedStatement statement1 = connection.prepareStatement(sql);
-                ResultSet resultSet1 = statement1.executeQuery();
-                while (resultSet1.next()) {
-                    Long first = resultSet1.getLong("first_friend");
-                    Long second = resultSet1.getLong("second_friend");
-                    if(first == utilizator.getId())
-                        utilizator.addFriend(findOne(second));
-                    if(second == utilizator.getId())
-                        utilizator.addFriend(findOne(first));
-                    }
+                User utilizator = extractUser(resultSet);
+                Long id = utilizator.getId();
+                utilizator.setFriendsLoader(() -> findFriends(id));
                 users.add(utilizator);
             }
-            return users;
         } catch (SQLException e) {
             e.printStackTrace();
         }
         return users;
     }
+
+    @Override
+    public List<User> findFriends(Long id) {
+        List<User> friends = new ArrayList<>();
+        String sql = "SELECT u.* FROM (SELECT second_friend AS friend FROM friendships WHERE first_friend = ? " +
+                "UNION ALL SELECT first_friend FROM friendships WHERE second_friend = ?) f JOIN users u ON u.id = f.friend";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setLong(1, id);
+            statement.setLong(2, id);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    friends.add(extractUser(resultSet));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return friends;
+    }
+
+    /**
+     * One query on the primary key of users, each candidate probing the friendships index once
+     * with the smaller id first, as the friendships are stored
+     */
+    @Override
+    public Map<Long, Boolean> findFriendStatus(Long id, Collection<Long> candidates) {
+        Map<Long, Boolean> status = new HashMap<>();
+        if (candidates.isEmpty())
+            return status;
+        String sql = "SELECT u.id, EXISTS (SELECT 1 FROM friendships f " +
+                "WHERE f.first_friend = LEAST(?, u.id) AND f.second_friend = GREATEST(?, u.id)) AS friend " +
+                "FROM users u WHERE u.id = ANY(?)";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setLong(1, id);
+            statement.setLong(2, id);
+            statement.setArray(3, connection.createArrayOf("bigint", candidates.toArray()));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    status.put(resultSet.getLong("id"), resultSet.getBoolean("friend"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return status;
+    }
+
+    private User extractUser(ResultSet resultSet) throws SQLException {
+        Long id = resultSet.getLong("id");
+        String firstName = resultSet.getString("first_name");
+        String lastName = resultSet.getString("last_name");
+        String email = resultSet.getString("email");
+        String password = resultSet.getString("password");
+        User utilizator = new User(firstName, lastName, email, password);
+        utilizator.setId(id);
+        return utilizator;
+    }
+
     @Override
     public User save(User entity) {
         if (entity == null)
@@ -116,7 +218,7 @@ public class UserDbRepository implements UserRepository<Long, User> {
 
         String sql = "insert into users (first_name, last_name, email, password ) values (?, ?, ?, ?)";
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection();
              PreparedStatement ps = connection.prepareStatement(sql)) {
 
             ps.setString(1, entity.getFirstName());
@@ -137,7 +239,7 @@ public class UserDbRepository implements UserRepository<Long, User> {
 
         String sql = "insert into users_profile_pictures (email, url) values (?, ?)";
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection();
              PreparedStatement ps = connection.prepareStatement(sql)) {
 
             ps.setString(1, email);
@@ -151,10 +253,11 @@ public class UserDbRepository implements UserRepository<Long, User> {
 
     @Override
     public void updatePicture(String email, String urlphoto) {
-        String sql = "update users_profile_pictures set url = ? where email = \'" + email + "\'";
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        String sql = "update users_profile_pictures set url = ? where email = ?";
+        try (Connection connection = pool.getConnection();
              PreparedStatement ps = connection.prepareStatement(sql)) {
                 ps.setString(1, urlphoto);
+                ps.setString(2, email);
                 ps.executeUpdate();
         } catch (SQLException e) {
             e.printStackTrace();
@@ -165,15 +268,14 @@ public class UserDbRepository implements UserRepository<Long, User> {
     @Override
     public String findPhoto(String email) {
 
-        String sql = "SELECT * from users_profile_pictures where email = \'" + email + "\'";
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement statement = connection.prepareStatement(sql);
-             ResultSet resultSet = statement.executeQuery()) {
-
-            while (resultSet.next()) {
+        String sql = "SELECT url from users_profile_pictures where email = ?";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
 
-                String urlphoto = resultSet.getString("url");
-                return urlphoto;
+            statement.setString(1, email);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next())
+                    return resultSet.getString("url");
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -181,13 +283,37 @@ public class UserDbRepository implements UserRepository<Long, User> {
         return null;
     }
 
+    /**
+     * Loads the pictures of all the given users with a single query
+     */
+    @Override
+    public Map<String, String> findPhotos(Collection<String> emails) {
+        Map<String, String> photos = new HashMap<>();
+        if (emails.isEmpty())
+            return photos;
+
+        String sql = "SELECT email, url from users_profile_pictures where email = ANY(?)";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setArray(1, connection.createArrayOf("varchar", emails.toArray()));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    photos.put(resultSet.getString("email"), resultSet.getString("url"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return photos;
+    }
+
 
     @Override
     public User remove(User entity) {
 
         String sql = "delete from users where id = ?";
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = pool.getConnection();
              PreparedStatement statement = connection.prepareStatement("SELECT * from users");
              ResultSet resultSet = statement.executeQuery()) {
 
@@ -218,26 +344,24 @@ public class UserDbRepository implements UserRepository<Long, User> {
 
     @Override
     public User update(User entity) {
-        String sql = "update from users set first_name = ? where id = ?";
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
 
-        try (Connection connection = DriverManager.getConnection(url, username, password);
-             PreparedStatement statement = connection.prepareStatement("SELECT * from users");
-             ResultSet resultSet = statement.executeQuery()) {
+        String sql = "update users set first_name = ?, last_name = ?, email = ?, password = ? where id = ?";
 
-            while (resultSet.next()) {
-                Long id = resultSet.getLong("id");
-                if (id == entity.getId()) {
-
-                    PreparedStatement statement1 = connection.prepareStatement(sql);
-                    statement1.setString(2, entity.getFirstName());
-                    statement1.executeUpdate();
-                    return entity;
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
 
-                }
-            }
+            statement.setString(1, entity.getFirstName());
+            statement.setString(2, entity.getLastName());
+            statement.setString(3, entity.getEmail());
+            statement.setString(4, entity.getPassword());
+            statement.setLong(5, entity.getId());
+            if (statement.executeUpdate() == 1)
+                return null;
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return null;
+        return entity;
     }
 }
\ No newline at end of file
@@ -0,0 +1,400 @@
+package com.example.lab6.repository.file;
+
+import com.example.lab6.model.Entity;
+import com.example.lab6.model.Event;
+import com.example.lab6.model.FriendRequest;
+import com.example.lab6.model.Friendship;
+import com.example.lab6.model.Group;
+import com.example.lab6.model.MessageDTO;
+import com.example.lab6.model.Post;
+import com.example.lab6.model.Tuple;
+import com.example.lab6.model.User;
+import com.example.lab6.model.validators.FriendshipValidator;
+import com.example.lab6.model.validators.UserValidator;
+import com.example.lab6.repository.EventRepository;
+import com.example.lab6.repository.FeedRepository;
+import com.example.lab6.repository.FriendRequestRepository;
+import com.example.lab6.repository.FriendshipRepository;
+import com.example.lab6.repository.GroupRepository;
+import com.example.lab6.repository.MessageRepository;
+import com.example.lab6.repository.PostRepository;
+import com.example.lab6.repository.UserRepository;
+import com.example.lab6.repository.memory.InMemoryEventRepository;
+import com.example.lab6.repository.memory.InMemoryFeedRepository;
+import com.example.lab6.repository.memory.InMemoryFriendRequestRepository;
+import com.example.lab6.repository.memory.InMemoryFriendshipRepository;
+import com.example.lab6.repository.memory.InMemoryGroupRepository;
+import com.example.lab6.repository.memory.InMemoryMessageRepository;
+import com.example.lab6.repository.memory.InMemoryPostRepository;
+import com.example.lab6.repository.memory.InMemoryUserRepository;
+import com.example.lab6.repository.memory.Snapshottable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded storage, used instead of PostgreSQL: the data is kept in the InMemory*Repository
+ * classes, with their indexes, and every change is appended to a log file before the call
+ * returns. Every snapshotEvery changes the repositories are written to a snapshot and the
+ * log is emptied. On open the snapshot is read and the changes logged after it are replayed;
+ * a record cut by a crash ends the log and is dropped.
+ * The repositories are given as proxies of their interfaces: a read goes straight to the
+ * in-memory repository, a change is made and logged under one lock, so the log has the
+ * changes in the order they were made. A record is written after the call, with the
+ * arguments as the repository left them, so the ids and dates it gave are logged too.
+ * A change that cannot be written stays in memory, where it cannot be undone, but is lost
+ * on the next open; the storage refuses every later change, so nothing is built on it.
+ */
+public class FileStorage implements AutoCloseable {
+    private static final String LOG = "storage.log";
+    private static final String SNAPSHOT = "storage.snapshot";
+    private static final Set<String> CHANGES = Set.of("save", "saveAll", "remove", "update", "delete",
+            "savePicture", "updatePicture", "saveMessage", "accept", "removePending",
+            "saveLastNotificationDate", "saveLastNotificationDates",
+            "append", "copyPosts", "removeAuthor", "removePost", "savePullAuthor");
+
+    private final Path directory;
+    private final int snapshotEvery;
+    private final boolean sync;
+    private final Object lock = new Object();
+    private final Map<String, Snapshottable> targets = new LinkedHashMap<>();
+    private FileChannel log;
+    private long sequence;
+    private int sinceSnapshot;
+    private IOException failed;
+
+    private final UserRepository<Long, User> users;
+    private final FriendshipRepository<Tuple<Long, Long>, Friendship> friendships;
+    private final FriendRequestRepository<Tuple<Long, Long>, FriendRequest> friendRequests;
+    private final MessageRepository<Long, MessageDTO> messages;
+    private final GroupRepository<Long, Group> groups;
+    private final EventRepository<Long, Event> events;
+    private final PostRepository<Long, Post> posts;
+    private final FeedRepository feed;
+
+    /**
+     * One change: the repository, the method and its arguments
+     */
+    private static final class Record implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long sequence;
+        private final String repository;
+        private final String type;
+        private final String method;
+        private final String[] parameters;
+        private final Object[] arguments;
+
+        Record(long sequence, String repository, Method method, Object[] arguments) {
+            this.sequence = sequence;
+            this.repository = repository;
+            this.type = method.getDeclaringClass().getName();
+            this.method = method.getName();
+            this.parameters = new String[method.getParameterCount()];
+            for (int i = 0; i < parameters.length; i++)
+                parameters[i] = method.getParameterTypes()[i].getName();
+            this.arguments = new Object[arguments == null ? 0 : arguments.length];
+            for (int i = 0; i < this.arguments.length; i++)
+                this.arguments[i] = serializable(arguments[i]);
+        }
+
+        /**
+         * The collections given by the services (key sets, views) are not always serializable
+         */
+        private static Object serializable(Object argument) {
+            if (argument instanceof Collection && !(argument instanceof Entity))
+                return new ArrayList<>((Collection<?>) argument);
+            return argument;
+        }
+
+        Method resolve() throws ClassNotFoundException, NoSuchMethodException {
+            ClassLoader loader = FileStorage.class.getClassLoader();
+            Class<?>[] types = new Class<?>[parameters.length];
+            for (int i = 0; i < types.length; i++)
+                types[i] = Class.forName(parameters[i], false, loader);
+            return Class.forName(type, false, loader).getMethod(method, types);
+        }
+    }
+
+    private FileStorage(Path directory, int snapshotEvery, boolean sync) {
+        this.directory = directory;
+        this.snapshotEvery = snapshotEvery;
+        this.sync = sync;
+
+        InMemoryFriendshipRepository friendships = new InMemoryFriendshipRepository(new FriendshipValidator());
+        InMemoryPostRepository posts = new InMemoryPostRepository();
+        this.friendships = logged(FriendshipRepository.class, "friendships", friendships);
+        this.users = logged(UserRepository.class, "users", new InMemoryUserRepository(new UserValidator(), friendships));
+        this.friendRequests = logged(FriendRequestRepository.class, "friendRequests", new InMemoryFriendRequestRepository(friendships));
+        this.messages = logged(MessageRepository.class, "messages", new InMemoryMessageRepository());
+        this.groups = logged(GroupRepository.class, "groups", new InMemoryGroupRepository());
+        this.events = logged(EventRepository.class, "events", new InMemoryEventRepository());
+        this.posts = logged(PostRepository.class, "posts", posts);
+        this.feed = logged(FeedRepository.class, "feed", new InMemoryFeedRepository(posts, friendships));
+    }
+
+    /**
+     * Opens the storage in the directory, creating it if needed, and recovers its data
+     * @param snapshotEvery number of changes after which a snapshot is written
+     * @param sync true to force every change to the disk before the call returns, so it
+     *             survives a crash of the machine; otherwise it survives a crash of the application
+     */
+    public static FileStorage open(Path directory, int snapshotEvery, boolean sync) throws IOException {
+        if (snapshotEvery < 1)
+            throw new IllegalArgumentException("Snapshot interval must be positive!");
+        Files.createDirectories(directory);
+        FileStorage storage = new FileStorage(directory, snapshotEvery, sync);
+        storage.recover();
+        return storage;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T logged(Class<?> type, String name, Snapshottable target) {
+        targets.put(name, target);
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, arguments) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                if (method.getName().equals("equals"))
+                    return proxy == arguments[0];
+                if (method.getName().equals("hashCode"))
+                    return System.identityHashCode(proxy);
+                return name + " " + target;
+            }
+            if (!CHANGES.contains(method.getName()))
+                return invoke(target, method, arguments);
+            synchronized (lock) {
+                if (failed != null)
+                    throw new UncheckedIOException("The storage cannot log changes anymore", failed);
+                Object result = invoke(target, method, arguments);
+                append(new Record(sequence + 1, name, method, arguments));
+                return result;
+            }
+        });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] arguments) throws Throwable {
+        try {
+            return method.invoke(target, arguments);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes the record and, every snapshotEvery records, a snapshot. A snapshot that fails
+     * does not fail the change, which is already in the log; it is tried again on the next one.
+     * @throws UncheckedIOException if the record could not be written: the change was made
+     *                              in memory but is not durable, so the caller must not go on
+     */
+    private void append(Record record) {
+        try {
+            byte[] bytes = serialize(record);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            ByteBuffer buffer = ByteBuffer.allocate(12 + bytes.length);
+            buffer.putInt(bytes.length).putLong(crc.getValue()).put(bytes).flip();
+            while (buffer.hasRemaining())
+                log.write(buffer);
+            if (sync)
+                log.force(false);
+        } catch (IOException e) {
+            failed = e;
+            throw new UncheckedIOException("Could not write the change to the log", e);
+        }
+        sequence = record.sequence;
+        if (++sinceSnapshot >= snapshotEvery) {
+            try {
+                snapshot();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes all the repositories to a new snapshot, which replaces the old one at once,
+     * and empties the log; a crash in between only leaves records the snapshot already has
+     */
+    private void snapshot() throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Channels.newOutputStream(file)))) {
+            out.writeLong(sequence);
+            for (Snapshottable target : targets.values())
+                target.writeSnapshot(out);
+            out.flush();
+            if (sync)
+                file.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.truncate(0);
+        sinceSnapshot = 0;
+    }
+
+    /**
+     * Reads the snapshot, replays the log records written after it and
+     * cuts the log after the last whole record
+     */
+    private void recover() throws IOException {
+        long snapshotSequence = 0;
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                snapshotSequence = in.readLong();
+                for (Snapshottable target : targets.values())
+                    target.readSnapshot(in);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unreadable snapshot " + snapshot, e);
+            }
+        }
+        sequence = snapshotSequence;
+
+        Path path = directory.resolve(LOG);
+        long valid = 0;
+        if (Files.exists(path)) {
+            try (InputStream file = Files.newInputStream(path);
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+                byte[] bytes;
+                while ((bytes = read(in)) != null) {
+                    valid += 12 + bytes.length;
+                    Record record = deserialize(bytes);
+                    if (record.sequence <= snapshotSequence)
+                        continue;
+                    replay(record);
+                    sequence = record.sequence;
+                    sinceSnapshot++;
+                }
+            }
+        }
+        log = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (log.size() > valid)
+            log.truncate(valid);
+        log.position(valid);
+    }
+
+    /**
+     * @return the bytes of the next whole record, or null at the end of the log or at a cut or damaged record
+     */
+    private static byte[] read(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            long checksum = in.readLong();
+            if (length <= 0)
+                return null;
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            return crc.getValue() == checksum ? bytes : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static Record deserialize(byte[] bytes) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Record) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unreadable log record", e);
+        }
+    }
+
+    /**
+     * @throws IOException if the change fails again: the data would no longer be the one
+     *                     that was logged, so the storage is not opened
+     */
+    private void replay(Record record) throws IOException {
+        try {
+            record.resolve().invoke(targets.get(record.repository), record.arguments);
+        } catch (InvocationTargetException e) {
+            throw new IOException("Replay of " + record.repository + "." + record.method + " failed", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Cannot replay " + record.repository + "." + record.method, e);
+        }
+    }
+
+    public UserRepository<Long, User> getUserRepository() {
+        return users;
+    }
+
+    public FriendshipRepository<Tuple<Long, Long>, Friendship> getFriendshipRepository() {
+        return friendships;
+    }
+
+    public FriendRequestRepository<Tuple<Long, Long>, FriendRequest> getFriendRequestRepository() {
+        return friendRequests;
+    }
+
+    public MessageRepository<Long, MessageDTO> getMessageRepository() {
+        return messages;
+    }
+
+    public GroupRepository<Long, Group> getGroupRepository() {
+        return groups;
+    }
+
+    public EventRepository<Long, Event> getEventRepository() {
+        return events;
+    }
+
+    public PostRepository<Long, Post> getPostRepository() {
+        return posts;
+    }
+
+    public FeedRepository getFeedRepository() {
+        return feed;
+    }
+
+    /**
+     * Writes a last snapshot, so the next open does not replay the log, and closes the log;
+     * after a change that could not be logged no snapshot is written, so that change is dropped
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (log == null)
+                return;
+            try {
+                if (sinceSnapshot > 0 && failed == null)
+                    snapshot();
+            } finally {
+                log.close();
+                log = null;
+            }
+        }
+    }
+}
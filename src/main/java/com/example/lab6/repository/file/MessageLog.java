@@ -0,0 +1,521 @@
+package com.example.lab6.repository.file;
+
+import com.example.lab6.model.MessageDTO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the messages of every conversation, a directory per conversation
+ * (a pair of users) holding memory-mapped segment files. A segment is twice as large as
+ * the one before it, from 64 KiB up to the segment size, so a short conversation takes
+ * little space. A record is a fixed header followed by the recipients and the UTF-8 text:
+ * <pre>
+ *  0 int  length of the record     28 int  number of recipients
+ *  4 int  CRC32 of bytes 8..length  32 long sender
+ *  8 long id                        40 long replied message, Long.MIN_VALUE for none
+ * 16 long date, seconds (UTC)       48 int  length of the text in bytes, -1 for null
+ * 24 int  date, nanoseconds         52 long recipients..., then the text
+ * </pre>
+ * The records are read in place from the mapping, without copying them to the heap first.
+ * In memory every conversation keeps the position of each record, so a page is read
+ * straight from its records, and every segment keeps the date of every 32nd record,
+ * a sparse index to seek to the start of a time range. Both are built by reading the
+ * headers when the conversation is first used; a record left half written by a crash
+ * fails its checksum and ends the log.
+ */
+public class MessageLog implements AutoCloseable {
+    private static final int HEADER = 52;
+    private static final int INDEX_INTERVAL = 32;
+    private static final int FIRST_SEGMENT = 64 * 1024;
+    private static final long NO_REPLY = Long.MIN_VALUE;
+    private static final String LOADED = "loaded";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean sync;
+    private final Set<String> names = new LinkedHashSet<>();
+    private final Map<String, Conversation> conversations = new HashMap<>();
+
+    /**
+     * A record of the log, valid only inside the consumer it is given to
+     */
+    public static final class Record {
+        private ByteBuffer buffer;
+        private int offset;
+        private int position;
+
+        private Record at(ByteBuffer buffer, int offset, int position) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.position = position;
+            return this;
+        }
+
+        /**
+         * @return the index of the record in its conversation, in the order of appending
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        public long getId() {
+            return buffer.getLong(offset + 8);
+        }
+
+        public LocalDateTime getDate() {
+            return LocalDateTime.ofEpochSecond(buffer.getLong(offset + 16), buffer.getInt(offset + 24), ZoneOffset.UTC);
+        }
+
+        private long getKey() {
+            return key(buffer.getLong(offset + 16), buffer.getInt(offset + 24));
+        }
+
+        public long getFrom() {
+            return buffer.getLong(offset + 32);
+        }
+
+        public Long getReply() {
+            long reply = buffer.getLong(offset + 40);
+            return reply == NO_REPLY ? null : reply;
+        }
+
+        public int getRecipientCount() {
+            return buffer.getInt(offset + 28);
+        }
+
+        public long getRecipient(int index) {
+            return buffer.getLong(offset + HEADER + 8 * index);
+        }
+
+        public boolean hasRecipient(long user) {
+            for (int i = 0; i < getRecipientCount(); i++)
+                if (getRecipient(i) == user)
+                    return true;
+            return false;
+        }
+
+        /**
+         * @return the UTF-8 text as a read-only view of the mapping, or null if the message has no text
+         */
+        public ByteBuffer getText() {
+            int length = buffer.getInt(offset + 48);
+            if (length < 0)
+                return null;
+            return buffer.slice(offset + HEADER + 8 * getRecipientCount(), length).asReadOnlyBuffer();
+        }
+
+        public MessageDTO toMessage() {
+            List<Long> to = new ArrayList<>(getRecipientCount());
+            for (int i = 0; i < getRecipientCount(); i++)
+                to.add(getRecipient(i));
+            ByteBuffer text = getText();
+            MessageDTO message = new MessageDTO(getFrom(), to, text == null ? null : StandardCharsets.UTF_8.decode(text).toString(),
+                    getDate(), getReply());
+            message.setId(getId());
+            return message;
+        }
+    }
+
+    /**
+     * A mapped segment file with its sparse index
+     */
+    private static final class Segment {
+        private final MappedByteBuffer buffer;
+        private int end;
+        private int count;
+        private long[] index = new long[4];
+        private long lastKey = Long.MIN_VALUE;
+
+        Segment(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        void added(long key) {
+            if (count % INDEX_INTERVAL == 0) {
+                int slot = count / INDEX_INTERVAL;
+                if (slot == index.length)
+                    index = Arrays.copyOf(index, slot * 2);
+                index[slot] = key;
+            }
+            count++;
+            lastKey = Math.max(lastKey, key);
+        }
+
+        /**
+         * @return the first record to read for the records after the key, a multiple of INDEX_INTERVAL
+         */
+        int seek(long key) {
+            int low = 0, high = (count + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (index[middle] <= key)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return Math.max(0, low - 1) * INDEX_INTERVAL;
+        }
+    }
+
+    /**
+     * The segments of a conversation and the place of every record:
+     * the segment in the high 32 bits, the offset in the low 32 bits
+     */
+    private static final class Conversation {
+        private final Path directory;
+        private final List<Segment> segments = new ArrayList<>();
+        private final List<Integer> firsts = new ArrayList<>();
+        private long[] places = new long[16];
+        private int count;
+        private long lastKey = Long.MIN_VALUE;
+        private long lastId = Long.MIN_VALUE;
+        private boolean ordered = true;
+
+        Conversation(Path directory) {
+            this.directory = directory;
+        }
+
+        void added(Segment segment, int offset, long key, long id) {
+            if (count == places.length)
+                places = Arrays.copyOf(places, count * 2);
+            places[count++] = (long) (segments.size() - 1) << 32 | offset;
+            segment.added(key);
+            if (key < lastKey || key == lastKey && id < lastId)
+                ordered = false;
+            lastKey = key;
+            lastId = id;
+        }
+
+        Record read(Record record, int position) {
+            long place = places[position];
+            return record.at(segments.get((int) (place >>> 32)).buffer, (int) place, position);
+        }
+    }
+
+    private MessageLog(Path directory, int segmentSize, boolean sync) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+    }
+
+    /**
+     * @param segmentSize the largest size of a segment file, in bytes
+     * @param sync        true to force every record to the disk before append returns
+     */
+    public static MessageLog open(Path directory, int segmentSize, boolean sync) throws IOException {
+        if (segmentSize < FIRST_SEGMENT)
+            throw new IllegalArgumentException("Segment size must be at least " + FIRST_SEGMENT + " bytes!");
+        Files.createDirectories(directory);
+        MessageLog log = new MessageLog(directory, segmentSize, sync);
+        try (Stream<Path> conversations = Files.list(directory)) {
+            conversations.filter(Files::isDirectory).map(x -> x.getFileName().toString()).sorted().forEach(log.names::add);
+        }
+        return log;
+    }
+
+    /**
+     * @return the conversation of the two users, the same in either order
+     */
+    public static String pair(long first, long second) {
+        return "pair-" + Math.min(first, second) + "-" + Math.max(first, second);
+    }
+
+    /**
+     * @return the two users of a conversation made by pair
+     */
+    public static long[] users(String conversation) {
+        String[] parts = conversation.split("-");
+        return new long[]{Long.parseLong(parts[1]), Long.parseLong(parts[2])};
+    }
+
+    /**
+     * The date as one long, saturated outside the years 1677 to 2262
+     */
+    private static long key(long seconds, int nanos) {
+        if (seconds >= Long.MAX_VALUE / 1_000_000_000L)
+            return Long.MAX_VALUE;
+        if (seconds <= Long.MIN_VALUE / 1_000_000_000L)
+            return Long.MIN_VALUE;
+        return seconds * 1_000_000_000L + nanos;
+    }
+
+    private static long key(LocalDateTime date) {
+        return key(date.toEpochSecond(ZoneOffset.UTC), date.getNano());
+    }
+
+    private Conversation conversation(String name) throws IOException {
+        Conversation conversation = conversations.get(name);
+        if (conversation == null) {
+            conversation = new Conversation(directory.resolve(name));
+            if (names.contains(name))
+                recover(conversation);
+            conversations.put(name, conversation);
+        }
+        return conversation;
+    }
+
+    /**
+     * Maps the segments and reads the headers of their records, up to the first record
+     * that is cut or damaged; the rest of that segment is cleared for the next records.
+     * A conversation that lost records is no longer whole, so its loaded marker is removed.
+     */
+    private void recover(Conversation conversation) throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(conversation.directory)) {
+            files = list.filter(x -> x.toString().endsWith(".seg")).sorted(Comparator.comparing(Path::toString))
+                    .collect(Collectors.toList());
+        }
+        CRC32 crc = new CRC32();
+        Record record = new Record();
+        boolean dropped = false;
+        for (Path file : files) {
+            Segment segment = new Segment(map(file, Files.size(file)));
+            conversation.segments.add(segment);
+            conversation.firsts.add(conversation.count);
+            ByteBuffer buffer = segment.buffer;
+            int offset = 0;
+            while (offset + HEADER <= buffer.capacity()) {
+                int length = buffer.getInt(offset);
+                if (length < HEADER || offset + length > buffer.capacity())
+                    break;
+                crc.reset();
+                crc.update(buffer.slice(offset + 8, length - 8));
+                if ((int) crc.getValue() != buffer.getInt(offset + 4))
+                    break;
+                record.at(buffer, offset, conversation.count);
+                conversation.added(segment, offset, record.getKey(), record.getId());
+                offset += length;
+            }
+            segment.end = offset;
+            // a record is written before its length, so a cut one can start with a zero length
+            for (int i = offset; i < buffer.capacity(); i++) {
+                if (buffer.get(i) != 0) {
+                    buffer.put(i, (byte) 0);
+                    dropped = true;
+                }
+            }
+        }
+        if (dropped)
+            Files.deleteIfExists(conversation.directory.resolve(LOADED));
+    }
+
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * Appends the message to the conversation; the message must have its id and date
+     */
+    public synchronized void append(String name, MessageDTO message) throws IOException {
+        Conversation conversation = conversation(name);
+        if (conversation.segments.isEmpty()) {
+            Files.createDirectories(conversation.directory);
+            names.add(name);
+        }
+        byte[] text = message.getMessage() == null ? null : message.getMessage().getBytes(StandardCharsets.UTF_8);
+        List<Long> to = message.getTo();
+        int length = HEADER + 8 * to.size() + (text == null ? 0 : text.length);
+
+        Segment segment = conversation.segments.isEmpty() ? null : conversation.segments.get(conversation.segments.size() - 1);
+        if (segment == null || segment.capacity() - segment.end < length) {
+            int size = segment == null ? FIRST_SEGMENT : (int) Math.min(segmentSize, 2L * segment.capacity());
+            Path file = conversation.directory.resolve(String.format("%012d.seg", conversation.count));
+            segment = new Segment(map(file, Math.max(size, length)));
+            conversation.segments.add(segment);
+            conversation.firsts.add(conversation.count);
+        }
+
+        ByteBuffer buffer = segment.buffer;
+        int offset = segment.end;
+        LocalDateTime date = message.getDate();
+        buffer.putLong(offset + 8, message.getId());
+        buffer.putLong(offset + 16, date.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(offset + 24, date.getNano());
+        buffer.putInt(offset + 28, to.size());
+        buffer.putLong(offset + 32, message.getFrom());
+        buffer.putLong(offset + 40, message.getReply() == null ? NO_REPLY : message.getReply());
+        buffer.putInt(offset + 48, text == null ? -1 : text.length);
+        for (int i = 0; i < to.size(); i++)
+            buffer.putLong(offset + HEADER + 8 * i, to.get(i));
+        if (text != null)
+            buffer.put(offset + HEADER + 8 * to.size(), text);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset + 8, length - 8));
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.putInt(offset, length);
+        if (sync)
+            segment.buffer.force(offset, length);
+
+        segment.end = offset + length;
+        conversation.added(segment, offset, key(date), message.getId());
+    }
+
+    /**
+     * @return the number of messages of the conversation
+     */
+    public synchronized int count(String name) throws IOException {
+        return names.contains(name) ? conversation(name).count : 0;
+    }
+
+    /**
+     * @return the conversations of the log
+     */
+    public synchronized Set<String> getConversations() {
+        return new LinkedHashSet<>(names);
+    }
+
+    /**
+     * @return the message at the position in the conversation
+     */
+    public synchronized MessageDTO read(String name, int position) throws IOException {
+        return conversation(name).read(new Record(), position).toMessage();
+    }
+
+    /**
+     * Gives every message of the conversation to the consumer, in the order they were appended
+     */
+    public synchronized void forEach(String name, Consumer<Record> consumer) throws IOException {
+        if (!names.contains(name))
+            return;
+        Conversation conversation = conversation(name);
+        Record record = new Record();
+        for (int i = 0; i < conversation.count; i++)
+            consumer.accept(conversation.read(record, i));
+    }
+
+    /**
+     * Gives the consumer the messages dated after start and up to end. If the messages were
+     * appended in order, only the index entries and the records of the range are read
+     * and the messages come oldest first; otherwise all the records are read.
+     */
+    public synchronized void forEachBetween(String name, LocalDateTime start, LocalDateTime end, Consumer<Record> consumer) throws IOException {
+        if (!names.contains(name))
+            return;
+        Conversation conversation = conversation(name);
+        long from = key(start);
+        long to = key(end);
+        Record record = new Record();
+        if (!conversation.ordered) {
+            for (int i = 0; i < conversation.count; i++) {
+                long key = conversation.read(record, i).getKey();
+                if (key > from && key <= to)
+                    consumer.accept(record);
+            }
+            return;
+        }
+        for (int s = 0; s < conversation.segments.size(); s++) {
+            Segment segment = conversation.segments.get(s);
+            if (segment.count == 0 || segment.lastKey <= from)
+                continue;
+            int first = conversation.firsts.get(s);
+            for (int i = first + segment.seek(from); i < first + segment.count; i++) {
+                long key = conversation.read(record, i).getKey();
+                if (key > to)
+                    return;
+                if (key > from)
+                    consumer.accept(record);
+            }
+        }
+    }
+
+    /**
+     * @param newestFirst true for the newest messages first, false for the oldest first
+     * @return a page of the messages of the conversation, by date and id; if the messages were
+     * appended in order only the records of the page are read
+     */
+    public synchronized List<MessageDTO> findPage(String name, boolean newestFirst, int offset, int limit) throws IOException {
+        List<MessageDTO> page = new ArrayList<>();
+        if (!names.contains(name))
+            return page;
+        Conversation conversation = conversation(name);
+        Record record = new Record();
+        if (!conversation.ordered) {
+            List<MessageDTO> all = new ArrayList<>(conversation.count);
+            for (int i = 0; i < conversation.count; i++)
+                all.add(conversation.read(record, i).toMessage());
+            Comparator<MessageDTO> order = Comparator.comparing(MessageDTO::getDate).thenComparing(MessageDTO::getId);
+            all.sort(newestFirst ? order.reversed() : order);
+            return new ArrayList<>(all.subList(Math.min(all.size(), offset), (int) Math.min(all.size(), (long) offset + limit)));
+        }
+        long last = Math.min(conversation.count, (long) offset + limit);
+        for (long i = offset; i < last; i++) {
+            int position = newestFirst ? conversation.count - 1 - (int) i : (int) i;
+            page.add(conversation.read(record, position).toMessage());
+        }
+        return page;
+    }
+
+    /**
+     * Reads the conversation first, so a conversation that lost records on recovery is not loaded
+     * @return true if the conversation was marked as loaded whole from another store
+     */
+    public synchronized boolean isLoaded(String name) throws IOException {
+        if (!names.contains(name))
+            return false;
+        conversation(name);
+        return Files.exists(directory.resolve(name).resolve(LOADED));
+    }
+
+    /**
+     * Marks the conversation as loaded whole from another store
+     */
+    public synchronized void setLoaded(String name) throws IOException {
+        Files.createDirectories(directory.resolve(name));
+        names.add(name);
+        Path marker = directory.resolve(name).resolve(LOADED);
+        if (!Files.exists(marker))
+            Files.createFile(marker);
+    }
+
+    /**
+     * Removes all the messages of the conversation, with its files
+     */
+    public synchronized void clear(String name) throws IOException {
+        conversations.remove(name);
+        if (!names.remove(name))
+            return;
+        try (Stream<Path> files = Files.list(directory.resolve(name))) {
+            for (Path file : (Iterable<Path>) files::iterator)
+                Files.delete(file);
+        }
+        Files.delete(directory.resolve(name));
+    }
+
+    /**
+     * Forces the written records to the disk; the mappings are released by the garbage collector
+     */
+    @Override
+    public synchronized void close() {
+        for (Conversation conversation : conversations.values())
+            for (Segment segment : conversation.segments)
+                segment.buffer.force();
+        conversations.clear();
+    }
+}
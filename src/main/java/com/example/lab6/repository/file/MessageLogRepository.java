@@ -0,0 +1,339 @@
+package com.example.lab6.repository.file;
+
+import com.example.lab6.model.MessageDTO;
+import com.example.lab6.repository.MessageRepository;
+import com.example.lab6.repository.memory.MemoryPages;
+import com.example.lab6.repository.paging.Cursor;
+import com.example.lab6.repository.paging.Page;
+import com.example.lab6.repository.paging.Pageable;
+import com.example.lab6.utils.LongHashSet;
+import com.example.lab6.utils.LongObjectMap;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Messages stored only in a MessageLog. A message is appended to the conversation of its
+ * sender with each of its recipients, so a conversation of two users is one log and a
+ * message to a group is in the log of every member. The ids are indexed in memory to the
+ * place of the message in its first conversation, and the users to their conversation
+ * partners; both are read from the log when the repository is created.
+ * The log is append only: the messages are never changed or removed, so this is not a full
+ * MessageRepository; the application puts the log in front of one with CachingMessageRepository.
+ */
+public class MessageLogRepository implements MessageRepository<Long, MessageDTO> {
+    private static final Comparator<MessageDTO> OLDEST_FIRST =
+            Comparator.comparing(MessageDTO::getDate).thenComparing(MessageDTO::getId);
+
+    private final MessageLog log;
+    private final LongObjectMap<Place> places = new LongObjectMap<>();
+    private final Map<Long, Set<Long>> partners = new HashMap<>();
+    private long lastId;
+
+    /**
+     * A message in the log: its conversation and its position there
+     */
+    private static final class Place {
+        private final String conversation;
+        private final int position;
+
+        Place(String conversation, int position) {
+            this.conversation = conversation;
+            this.position = position;
+        }
+    }
+
+    public MessageLogRepository(MessageLog log) {
+        this.log = log;
+        try {
+            for (String conversation : log.getConversations()) {
+                long[] users = MessageLog.users(conversation);
+                addPartners(users[0], users[1]);
+                log.forEach(conversation, record -> {
+                    if (!places.containsKey(record.getId()))
+                        places.put(record.getId(), new Place(conversation, record.getPosition()));
+                    lastId = Math.max(lastId, record.getId());
+                });
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void addPartners(long first, long second) {
+        partners.computeIfAbsent(first, x -> new LinkedHashSet<>()).add(second);
+        partners.computeIfAbsent(second, x -> new LinkedHashSet<>()).add(first);
+    }
+
+    private Set<Long> partnersOf(Long user) {
+        return partners.getOrDefault(user, Collections.emptySet());
+    }
+
+    private MessageDTO read(long id) throws IOException {
+        Place place = places.get(id);
+        return place == null ? null : log.read(place.conversation, place.position);
+    }
+
+    /**
+     * Gives the consumer the records of the conversations of the user with the partners
+     */
+    private void forEach(Long user, Collection<Long> partners, Consumer<MessageLog.Record> consumer) throws IOException {
+        for (Long partner : partners)
+            log.forEach(MessageLog.pair(user, partner), consumer);
+    }
+
+    /**
+     * Gives the consumer the records of the time range in the conversations of the user with the partners
+     */
+    private void forEachBetween(Long user, Collection<Long> partners, LocalDateTime start, LocalDateTime end,
+                                Consumer<MessageLog.Record> consumer) throws IOException {
+        for (Long partner : partners)
+            log.forEachBetween(MessageLog.pair(user, partner), start, end, consumer);
+    }
+
+    private static List<MessageDTO> page(List<MessageDTO> messages, int offset, int limit) {
+        messages.sort(OLDEST_FIRST);
+        return messages.stream().skip(offset).limit(limit).collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized MessageDTO findOne(Long id) {
+        if (id == null)
+            throw new IllegalArgumentException("ID must not be null!");
+        try {
+            return read(id);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized Map<Long, MessageDTO> findByIds(Collection<Long> ids) {
+        Map<Long, MessageDTO> messages = new HashMap<>();
+        try {
+            for (Long id : ids) {
+                MessageDTO message = read(id);
+                if (message != null)
+                    messages.put(id, message);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return messages;
+    }
+
+    @Override
+    public synchronized List<MessageDTO> findThread(Long message, int limit) {
+        List<MessageDTO> thread = new ArrayList<>();
+        try {
+            MessageDTO current = read(message);
+            while (current != null && thread.size() < limit) {
+                thread.add(current);
+                current = current.getReply() == null ? null : read(current.getReply());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return thread;
+    }
+
+    /**
+     * Reads every conversation; a message to several users is read once
+     */
+    @Override
+    public synchronized Iterable<MessageDTO> findAll() {
+        List<MessageDTO> messages = new ArrayList<>();
+        LongHashSet seen = new LongHashSet();
+        try {
+            for (String conversation : log.getConversations())
+                log.forEach(conversation, record -> {
+                    if (seen.add(record.getId()))
+                        messages.add(record.toMessage());
+                });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return messages;
+    }
+
+    @Override
+    public synchronized Page<MessageDTO> findAll(Pageable pageable) {
+        List<MessageDTO> sorted = new ArrayList<>();
+        findAll().forEach(sorted::add);
+        sorted.sort(OLDEST_FIRST.reversed());
+        return MemoryPages.page(sorted, MemoryPages.newestFirst(), x -> new Cursor(x.getDate(), x.getId()), pageable);
+    }
+
+    /**
+     * Only the records of the page are read from the log of the two users
+     */
+    @Override
+    public synchronized List<MessageDTO> findConversation(Long user1, Long user2, int offset, int limit) {
+        try {
+            return log.findPage(MessageLog.pair(user1, user2), true, offset, limit);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    @Override
+    public synchronized int countConversation(Long user1, Long user2) {
+        try {
+            return log.count(MessageLog.pair(user1, user2));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return 0;
+    }
+
+    /**
+     * The messages of the user to all the members are in the log of the user with any of them,
+     * the messages of a member to the user in the log of the two
+     */
+    @Override
+    public synchronized List<MessageDTO> findGroupConversation(Long user, List<Long> members, int offset, int limit) {
+        Set<Long> others = new LinkedHashSet<>(members);
+        List<MessageDTO> messages = new ArrayList<>();
+        LongHashSet seen = new LongHashSet();
+        try {
+            Collection<Long> sentTo = others.isEmpty() ? partnersOf(user) : List.of(others.iterator().next());
+            forEach(user, sentTo, record -> {
+                if (record.getFrom() == user && seen.add(record.getId())
+                        && others.stream().allMatch(record::hasRecipient))
+                    messages.add(record.toMessage());
+            });
+            forEach(user, others, record -> {
+                if (record.getFrom() != user && others.contains(record.getFrom()))
+                    messages.add(record.toMessage());
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return page(messages, offset, limit);
+    }
+
+    /**
+     * Seeks the time range in the log of the recipient with each partner
+     */
+    @Override
+    public synchronized List<MessageDTO> findReceived(Long recipient, LocalDateTime start, LocalDateTime end, int offset, int limit) {
+        List<MessageDTO> messages = new ArrayList<>();
+        try {
+            LongHashSet seen = new LongHashSet();
+            forEachBetween(recipient, partnersOf(recipient), start, end, record -> {
+                if (record.hasRecipient(recipient) && seen.add(record.getId()))
+                    messages.add(record.toMessage());
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return page(messages, offset, limit);
+    }
+
+    @Override
+    public synchronized List<MessageDTO> findSent(Long sender, Long recipient, LocalDateTime start, LocalDateTime end, int offset, int limit) {
+        List<MessageDTO> messages = new ArrayList<>();
+        LongHashSet seen = new LongHashSet();
+        try {
+            forEachBetween(sender, recipient == null ? partnersOf(sender) : List.of(recipient), start, end, record -> {
+                if (record.getFrom() == sender && seen.add(record.getId()))
+                    messages.add(record.toMessage());
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return page(messages, offset, limit);
+    }
+
+    @Override
+    public synchronized Set<Long> findConversationPartners(Long user) {
+        Set<Long> result = new LinkedHashSet<>(partnersOf(user));
+        result.remove(user);
+        return result;
+    }
+
+    /**
+     * Keeps the id of the message if it has one, otherwise gives it the next free id;
+     * a message without date is dated now
+     */
+    @Override
+    public synchronized MessageDTO save(MessageDTO entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        saveAll(List.of(entity));
+        return null;
+    }
+
+    /**
+     * Appends every message to the conversation of its sender with each of its recipients;
+     * a message whose id is already in the log is not appended again. A message is indexed
+     * only once it is in all its conversations.
+     *
+     * @throws IllegalStateException if a message could not be appended; the messages before it
+     *                               are saved, it and the ones after it are not. It may be in some
+     *                               of its conversations, so the id it was given is not used again.
+     */
+    @Override
+    public synchronized List<MessageDTO> saveAll(List<MessageDTO> entities) {
+        for (MessageDTO entity : entities)
+            if (entity.getTo() == null || entity.getTo().isEmpty())
+                throw new IllegalArgumentException("Message must have recipients!");
+        LocalDateTime now = LocalDateTime.now();
+        for (MessageDTO entity : entities) {
+            if (entity.getId() != null && places.containsKey(entity.getId()))
+                continue;
+            boolean newId = entity.getId() == null;
+            if (newId)
+                entity.setId(lastId + 1);
+            lastId = Math.max(lastId, entity.getId());
+            if (entity.getDate() == null)
+                entity.setDate(now);
+            Place first = null;
+            try {
+                for (Long recipient : new LinkedHashSet<>(entity.getTo())) {
+                    String conversation = MessageLog.pair(entity.getFrom(), recipient);
+                    log.append(conversation, entity);
+                    if (first == null)
+                        first = new Place(conversation, log.count(conversation) - 1);
+                }
+            } catch (IOException e) {
+                if (newId)
+                    entity.setId(null);
+                throw new IllegalStateException("The message could not be saved", e);
+            }
+            places.put(entity.getId(), first);
+            for (Long recipient : entity.getTo())
+                addPartners(entity.getFrom(), recipient);
+        }
+        return entities;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, the log is append only
+     */
+    @Override
+    public MessageDTO remove(MessageDTO entity) {
+        throw new UnsupportedOperationException("The messages of the log cannot be removed");
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, the log is append only
+     */
+    @Override
+    public MessageDTO update(MessageDTO entity) {
+        throw new UnsupportedOperationException("The messages of the log cannot be changed");
+    }
+}
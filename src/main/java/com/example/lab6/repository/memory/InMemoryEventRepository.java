@@ -0,0 +1,219 @@
+package com.example.lab6.repository.memory;
+
+import com.example.lab6.model.Event;
+import com.example.lab6.model.EventSubscription;
+import com.example.lab6.model.Tuple;
+import com.example.lab6.repository.EventRepository;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Events kept in memory, answering the same queries as EventDbRepository in the same order.
+ * The subscriptions are indexed by event, with the date of the last reminder, and by user.
+ */
+public class InMemoryEventRepository implements EventRepository<Long, Event>, Snapshottable {
+    private static final Comparator<Event> BY_START = Comparator.comparing(Event::getStart).thenComparing(Event::getId);
+
+    private final Map<Long, Event> events = new LinkedHashMap<>();
+    private final Map<Long, Map<Long, LocalDateTime>> subscribers = new HashMap<>();
+    private final Map<Long, Set<Long>> subscribed = new HashMap<>();
+    private long lastId;
+
+    /**
+     * The copy has the subscribers of the event, like the events read by EventDbRepository
+     */
+    private Event copy(Event event) {
+        Event copy = new Event(event.getName(), event.getCreationDate(), event.getStart(), event.getEnd(),
+                event.getDescription(), event.getLocation(), event.getAdmin());
+        copy.setId(event.getId());
+        copy.setSubscribers(new ArrayList<>(subscribers.getOrDefault(event.getId(), Collections.emptyMap()).keySet()));
+        return copy;
+    }
+
+    private List<Event> select(Predicate<Event> filter, int offset, int limit) {
+        return events.values().stream().filter(filter).sorted(BY_START)
+                .skip(offset).limit(limit).map(this::copy).collect(Collectors.toList());
+    }
+
+    private boolean isSubscribed(Long event, Long user) {
+        return subscribed.getOrDefault(user, Collections.emptySet()).contains(event);
+    }
+
+    @Override
+    public synchronized Event findOne(Long id) {
+        if (id == null)
+            throw new IllegalArgumentException("ID must not be null!");
+        Event event = events.get(id);
+        return event == null ? null : copy(event);
+    }
+
+    @Override
+    public synchronized Iterable<Event> findAll() {
+        return events.values().stream().map(this::copy).collect(Collectors.toList());
+    }
+
+    /**
+     * Keeps the id and the creation date of the event if it has them, otherwise gives it
+     * the next free id and the current date; the subscribers are not saved, like in EventDbRepository
+     */
+    @Override
+    public synchronized Event save(Event entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        if (entity.getId() != null && events.containsKey(entity.getId()))
+            return entity;
+        if (entity.getId() == null)
+            entity.setId(lastId + 1);
+        if (entity.getCreationDate() == null)
+            entity.setCreationDate(LocalDateTime.now());
+        lastId = Math.max(lastId, entity.getId());
+        Event event = new Event(entity.getName(), entity.getCreationDate(), entity.getStart(), entity.getEnd(),
+                entity.getDescription(), entity.getLocation(), entity.getAdmin());
+        event.setId(entity.getId());
+        events.put(event.getId(), event);
+        return null;
+    }
+
+    /**
+     * Removes the event with its subscriptions
+     */
+    @Override
+    public synchronized Event remove(Event entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        Event removed = events.remove(entity.getId());
+        Map<Long, LocalDateTime> users = subscribers.remove(entity.getId());
+        if (users != null)
+            users.keySet().forEach(x -> subscribed.get(x).remove(entity.getId()));
+        return removed;
+    }
+
+    /**
+     * Subscribes the subscribers of the entity to the event, like EventDbRepository
+     */
+    @Override
+    public synchronized Event update(Event entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        if (!events.containsKey(entity.getId()) || entity.getSubscribers() == null)
+            return null;
+        for (Long user : entity.getSubscribers()) {
+            subscribers.computeIfAbsent(entity.getId(), x -> new LinkedHashMap<>()).putIfAbsent(user, null);
+            subscribed.computeIfAbsent(user, x -> new LinkedHashSet<>()).add(entity.getId());
+        }
+        return null;
+    }
+
+    /**
+     * Unsubscribes the user from the event
+     */
+    @Override
+    public synchronized Event delete(Event entity, Long userID) {
+        Map<Long, LocalDateTime> users = subscribers.get(entity.getId());
+        if (users != null && users.containsKey(userID)) {
+            users.remove(userID);
+            if (users.isEmpty())
+                subscribers.remove(entity.getId());
+            subscribed.get(userID).remove(entity.getId());
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized Event saveLastNotificationDate(Long event, Long user, LocalDateTime date) {
+        saveLastNotificationDates(Collections.singletonList(new Tuple<>(event, user)), date);
+        return null;
+    }
+
+    @Override
+    public synchronized LocalDateTime getLastNotificationDate(Long eventID, Long userID) {
+        return subscribers.getOrDefault(eventID, Collections.emptyMap()).get(userID);
+    }
+
+    @Override
+    public synchronized List<Event> findSubscribed(Long user, int offset, int limit) {
+        Set<Long> ids = subscribed.getOrDefault(user, Collections.emptySet());
+        return ids.stream().map(events::get).sorted(BY_START)
+                .skip(offset).limit(limit).map(this::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized List<Event> findNotSubscribed(Long user, int offset, int limit) {
+        return select(x -> !isSubscribed(x.getId(), user), offset, limit);
+    }
+
+    @Override
+    public synchronized List<Event> findAdministered(Long user, int offset, int limit) {
+        return select(x -> x.getAdmin().equals(user), offset, limit);
+    }
+
+    @Override
+    public synchronized void forEachSubscription(SubscriptionConsumer consumer) {
+        subscribers.forEach((event, users) -> users.keySet().forEach(user -> consumer.accept(event, user)));
+    }
+
+    @Override
+    public synchronized List<EventSubscription> findSubscriptions(Collection<Long> users, LocalDateTime from, LocalDateTime to) {
+        List<EventSubscription> result = new ArrayList<>();
+        Map<Long, Event> copies = new HashMap<>();
+        for (Long user : new LinkedHashSet<>(users)) {
+            for (Long id : subscribed.getOrDefault(user, Collections.emptySet())) {
+                Event event = events.get(id);
+                if (event.getStart().isBefore(from) || !event.getStart().isBefore(to))
+                    continue;
+                Event copy = copies.computeIfAbsent(id, x -> {
+                    Event withoutSubscribers = copy(event);
+                    withoutSubscribers.setSubscribers(null);
+                    return withoutSubscribers;
+                });
+                result.add(new EventSubscription(copy, user, subscribers.get(id).get(user)));
+            }
+        }
+        result.sort(Comparator.comparing((EventSubscription x) -> x.getEvent().getStart()).thenComparing(x -> x.getEvent().getId()));
+        return result;
+    }
+
+    @Override
+    public synchronized void saveLastNotificationDates(Collection<Tuple<Long, Long>> subscriptions, LocalDateTime date) {
+        for (Tuple<Long, Long> subscription : subscriptions) {
+            Map<Long, LocalDateTime> users = subscribers.get(subscription.getE1());
+            if (users != null && users.containsKey(subscription.getE2()))
+                users.put(subscription.getE2(), date);
+        }
+    }
+
+    @Override
+    public synchronized void writeSnapshot(ObjectOutputStream out) throws IOException {
+        out.writeObject(events);
+        out.writeObject(subscribers);
+        out.writeObject(subscribed);
+        out.writeLong(lastId);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized void readSnapshot(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        events.clear();
+        events.putAll((Map<Long, Event>) in.readObject());
+        subscribers.clear();
+        subscribers.putAll((Map<Long, Map<Long, LocalDateTime>>) in.readObject());
+        subscribed.clear();
+        subscribed.putAll((Map<Long, Set<Long>>) in.readObject());
+        lastId = in.readLong();
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.lab6.repository.memory;
+
+import com.example.lab6.model.Post;
+import com.example.lab6.repository.FeedRepository;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Timelines kept in memory: the ids of the posts copied to every owner, with the posts
+ * and the friendships read from the in-memory repositories, ordered like FeedDbRepository
+ */
+public class InMemoryFeedRepository implements FeedRepository, Snapshottable {
+    private static final Comparator<Post> NEWEST_FIRST = Comparator.comparing(Post::getDate).thenComparing(Post::getId).reversed();
+
+    private final InMemoryPostRepository posts;
+    private final InMemoryFriendshipRepository friendships;
+    private final Map<Long, Set<Long>> entries = new HashMap<>();
+    private final Set<Long> pullAuthors = new HashSet<>();
+
+    public InMemoryFeedRepository(InMemoryPostRepository posts, InMemoryFriendshipRepository friendships) {
+        this.posts = posts;
+        this.friendships = friendships;
+    }
+
+    @Override
+    public synchronized void append(Post post, Collection<Long> owners) {
+        for (Long owner : owners)
+            entries.computeIfAbsent(owner, x -> new LinkedHashSet<>()).add(post.getId());
+    }
+
+    @Override
+    public synchronized void copyPosts(Long owner, Long author) {
+        for (Post post : posts.findByAuthor(author))
+            entries.computeIfAbsent(owner, x -> new LinkedHashSet<>()).add(post.getId());
+    }
+
+    @Override
+    public synchronized void removeAuthor(Long owner, Long author) {
+        Set<Long> timeline = entries.get(owner);
+        if (timeline == null)
+            return;
+        timeline.removeIf(id -> {
+            Post post = posts.findOne(id);
+            return post == null || post.getAdmin().equals(author);
+        });
+    }
+
+    @Override
+    public synchronized void removePost(Long post) {
+        entries.values().forEach(x -> x.remove(post));
+    }
+
+    /**
+     * The copied posts of the owner whose author is not a pull author,
+     * plus the posts of the pull authors who are friends of the owner
+     */
+    private List<Post> timeline(Long owner, Collection<Long> pull) {
+        List<Post> result = new ArrayList<>();
+        for (Long id : entries.getOrDefault(owner, new LinkedHashSet<>())) {
+            Post post = posts.findOne(id);
+            if (post != null && !pull.contains(post.getAdmin()))
+                result.add(post);
+        }
+        if (!pull.isEmpty()) {
+            Set<Long> friends = friendships.findFriendIds(owner);
+            for (Long author : new LinkedHashSet<>(pull))
+                if (friends.contains(author))
+                    result.addAll(posts.findByAuthor(author));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<Post> findTimeline(Long owner, Collection<Long> pullAuthors, int offset, int limit) {
+        return timeline(owner, pullAuthors).stream().sorted(NEWEST_FIRST)
+                .skip(offset).limit(limit).collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized int countTimeline(Long owner, Collection<Long> pullAuthors) {
+        return timeline(owner, pullAuthors).size();
+    }
+
+    @Override
+    public synchronized Set<Long> findPullAuthors() {
+        return new HashSet<>(pullAuthors);
+    }
+
+    @Override
+    public synchronized void savePullAuthor(Long author) {
+        pullAuthors.add(author);
+    }
+
+    @Override
+    public synchronized void writeSnapshot(ObjectOutputStream out) throws IOException {
+        out.writeObject(entries);
+        out.writeObject(pullAuthors);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized void readSnapshot(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        entries.clear();
+        entries.putAll((Map<Long, Set<Long>>) in.readObject());
+        pullAuthors.clear();
+        pullAuthors.addAll((Set<Long>) in.readObject());
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.lab6.repository.memory;
+
+import com.example.lab6.model.FriendRequest;
+import com.example.lab6.model.Friendship;
+import com.example.lab6.model.Status;
+import com.example.lab6.model.Tuple;
+import com.example.lab6.repository.FriendRequestRepository;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Friend requests kept in memory, by sender and receiver; accepting a request
+ * saves the friendship in the given friendship repository, like the statement of FriendRequestDbRepository
+ */
+public class InMemoryFriendRequestRepository implements FriendRequestRepository<Tuple<Long, Long>, FriendRequest>, Snapshottable {
+    private final InMemoryFriendshipRepository friendships;
+    private final Map<Tuple<Long, Long>, FriendRequest> requests = new LinkedHashMap<>();
+
+    public InMemoryFriendRequestRepository(InMemoryFriendshipRepository friendships) {
+        this.friendships = friendships;
+    }
+
+    private static FriendRequest copy(FriendRequest request) {
+        FriendRequest copy = new FriendRequest(request.getFrom(), request.getTo(), request.getStatus(), request.getLastUpdatedDate());
+        copy.setId(new Tuple<>(request.getFrom(), request.getTo()));
+        return copy;
+    }
+
+    private List<FriendRequest> select(Predicate<FriendRequest> filter, int offset, int limit) {
+        return requests.values().stream().filter(filter)
+                .sorted(Comparator.comparing(FriendRequest::getLastUpdatedDate).reversed())
+                .skip(offset).limit(limit).map(InMemoryFriendRequestRepository::copy).collect(Collectors.toList());
+    }
+
+    private int count(Predicate<FriendRequest> filter) {
+        return (int) requests.values().stream().filter(filter).count();
+    }
+
+    /**
+     * Finds the request between the two users in either direction
+     */
+    @Override
+    public synchronized FriendRequest findOne(Tuple<Long, Long> id) {
+        if (id == null)
+            throw new IllegalArgumentException("ID must not be null!");
+        FriendRequest request = requests.get(id);
+        if (request == null)
+            request = requests.get(new Tuple<>(id.getE2(), id.getE1()));
+        if (request == null)
+            return null;
+        FriendRequest copy = copy(request);
+        copy.setId(new Tuple<>(id.getE1(), id.getE2()));
+        return copy;
+    }
+
+    @Override
+    public synchronized Iterable<FriendRequest> findAll() {
+        return requests.values().stream().map(InMemoryFriendRequestRepository::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized List<FriendRequest> findReceived(Long user, Status status, int offset, int limit) {
+        return select(x -> x.getTo().equals(user) && x.getStatus() == status, offset, limit);
+    }
+
+    @Override
+    public synchronized int countReceived(Long user, Status status) {
+        return count(x -> x.getTo().equals(user) && x.getStatus() == status);
+    }
+
+    @Override
+    public synchronized List<FriendRequest> findSent(Long user, Status status, int offset, int limit) {
+        return select(x -> x.getFrom().equals(user) && x.getStatus() == status, offset, limit);
+    }
+
+    @Override
+    public synchronized int countSent(Long user, Status status) {
+        return count(x -> x.getFrom().equals(user) && x.getStatus() == status);
+    }
+
+    @Override
+    public synchronized FriendRequest accept(Long from, Long to, LocalDateTime date) {
+        FriendRequest request = removePending(from, to);
+        if (request == null)
+            return null;
+        Friendship friendship = new Friendship(new Tuple<>(from, to));
+        friendship.setDate(date);
+        friendships.save(friendship);
+        request.setStatus(Status.APPROVED);
+        return request;
+    }
+
+    @Override
+    public synchronized FriendRequest removePending(Long from, Long to) {
+        Tuple<Long, Long> key = new Tuple<>(from, to);
+        FriendRequest request = requests.get(key);
+        if (request == null || request.getStatus() != Status.PENDING)
+            return null;
+        requests.remove(key);
+        return copy(request);
+    }
+
+    @Override
+    public synchronized FriendRequest save(FriendRequest entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        Tuple<Long, Long> key = new Tuple<>(entity.getFrom(), entity.getTo());
+        if (requests.containsKey(key))
+            return entity;
+        requests.put(key, copy(entity));
+        return null;
+    }
+
+    @Override
+    public synchronized FriendRequest remove(FriendRequest entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        return requests.remove(entity.getId());
+    }
+
+    @Override
+    public synchronized FriendRequest update(FriendRequest entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        FriendRequest request = requests.get(new Tuple<>(entity.getFrom(), entity.getTo()));
+        if (request != null) {
+            request.setStatus(entity.getStatus());
+            request.setLastUpdatedDate(entity.getLastUpdatedDate());
+        }
+        return entity;
+    }
+
+    @Override
+    public synchronized void writeSnapshot(ObjectOutputStream out) throws IOException {
+        out.writeObject(requests);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized void readSnapshot(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        requests.clear();
+        requests.putAll((Map<Tuple<Long, Long>, FriendRequest>) in.readObject());
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.lab6.repository.memory;
+
+import com.example.lab6.model.Friendship;
+import com.example.lab6.model.Tuple;
+import com.example.lab6.model.validators.Validator;
+import com.example.lab6.repository.FriendshipRepository;
+import com.example.lab6.repository.paging.Cursor;
+import com.example.lab6.repository.paging.Page;
+import com.example.lab6.repository.paging.Pageable;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Friendships kept in memory, with the friends of every user indexed;
+ * a friendship is found by its two users in either order, like in FriendshipDbRepository
+ */
+public class InMemoryFriendshipRepository implements FriendshipRepository<Tuple<Long, Long>, Friendship>, Snapshottable {
+    private final Validator<Friendship> validator;
+    private final Map<Tuple<Long, Long>, Friendship> friendships = new LinkedHashMap<>();
+    private final Map<Long, Set<Long>> friends = new HashMap<>();
+
+    public InMemoryFriendshipRepository(Validator<Friendship> validator) {
+        this.validator = validator;
+    }
+
+    @Override
+    public synchronized Friendship findOne(Tuple<Long, Long> id) {
+        if (id == null)
+            throw new IllegalArgumentException("ID must not be null!");
+        return friendships.get(Friendship.key(id.getE1(), id.getE2()));
+    }
+
+    @Override
+    public synchronized Iterable<Friendship> findAll() {
+        return new ArrayList<>(friendships.values());
+    }
+
+    /**
+     * @return the ids of the friends of the user
+     */
+    public synchronized Set<Long> findFriendIds(Long user) {
+        return new LinkedHashSet<>(friends.getOrDefault(user, Collections.emptySet()));
+    }
+
+    @Override
+    public synchronized List<Friendship> friendsOf(Long user) {
+        List<Friendship> result = new ArrayList<>();
+        for (Long friend : friends.getOrDefault(user, Collections.emptySet())) {
+            Tuple<Long, Long> ship = new Tuple<>(user, friend);
+            Friendship friendship = new Friendship(ship);
+            friendship.setId(ship);
+            friendship.setDate(friendships.get(Friendship.key(user, friend)).getDate());
+            result.add(friendship);
+        }
+        result.sort(Comparator.comparing(Friendship::getDate).thenComparing(Friendship::getE2).reversed());
+        return result;
+    }
+
+    @Override
+    public synchronized Page<Friendship> friendsOf(Long user, Pageable pageable) {
+        return MemoryPages.page(friendsOf(user), MemoryPages.newestFirst(), InMemoryFriendshipRepository::cursorOf, pageable);
+    }
+
+    @Override
+    public synchronized int countFriends(Long user) {
+        return friends.getOrDefault(user, Collections.emptySet()).size();
+    }
+
+    @Override
+    public synchronized void forEachFriendship(EdgeConsumer consumer) {
+        friendships.values().forEach(x -> consumer.accept(x.getE1(), x.getE2()));
+    }
+
+    /**
+     * Keeps the date of the friendship if it has one, otherwise it is made now
+     */
+    @Override
+    public synchronized Friendship save(Friendship entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        validator.validate(entity);
+        Tuple<Long, Long> key = entity.getKey();
+        if (friendships.containsKey(key))
+            return entity;
+        if (entity.getDate() == null)
+            entity.setDate(LocalDateTime.now());
+        friendships.put(key, entity);
+        friends.computeIfAbsent(entity.getE1(), x -> new LinkedHashSet<>()).add(entity.getE2());
+        friends.computeIfAbsent(entity.getE2(), x -> new LinkedHashSet<>()).add(entity.getE1());
+        return null;
+    }
+
+    @Override
+    public synchronized Friendship remove(Friendship entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        Friendship removed = friendships.remove(entity.getKey());
+        if (removed != null) {
+            friends.get(removed.getE1()).remove(removed.getE2());
+            friends.get(removed.getE2()).remove(removed.getE1());
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized Friendship update(Friendship entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        Friendship friendship = friendships.get(entity.getKey());
+        if (friendship == null)
+            return entity;
+        friendship.setDate(entity.getDate());
+        return null;
+    }
+
+    @Override
+    public synchronized Page<Friendship> findAll(Pageable pageable) {
+        Comparator<Cursor> order = MemoryPages.newestFirst();
+        List<Friendship> sorted = new ArrayList<>(friendships.values());
+        sorted.sort((x, y) -> order.compare(cursorOf(x), cursorOf(y)));
+        return MemoryPages.page(sorted, order, InMemoryFriendshipRepository::cursorOf, pageable);
+    }
+
+    private static Cursor cursorOf(Friendship friendship) {
+        return new Cursor(friendship.getDate(), friendship.getE1(), friendship.getE2());
+    }
+
+    @Override
+    public synchronized void writeSnapshot(ObjectOutputStream out) throws IOException {
+        out.writeObject(friendships);
+        out.writeObject(friends);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized void readSnapshot(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        friendships.clear();
+        friendships.putAll((Map<Tuple<Long, Long>, Friendship>) in.readObject());
+        friends.clear();
+        friends.putAll((Map<Long, Set<Long>>) in.readObject());
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.lab6.repository.memory;
+
+import com.example.lab6.model.Group;
+import com.example.lab6.model.MessageDTO;
+import com.example.lab6.repository.GroupRepository;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Groups kept in memory, answering the same queries as GroupDbRepository in the same order
+ */
+public class InMemoryGroupRepository implements GroupRepository<Long, Group>, Snapshottable {
+    private static final Comparator<MessageDTO> NEWEST_FIRST =
+            Comparator.comparing(MessageDTO::getDate).thenComparing(MessageDTO::getId).reversed();
+
+    private final Map<Long, Group> groups = new LinkedHashMap<>();
+    private final Map<Long, List<MessageDTO>> messages = new HashMap<>();
+    private long lastGroupId;
+    private long lastMessageId;
+
+    /**
+     * The copy has the members sorted, like the aggregated members of GroupDbRepository, and no messages
+     */
+    private static Group copy(Group group) {
+        Group copy = new Group(group.getName(), new ArrayList<>());
+        copy.setId(group.getId());
+        copy.setMembers(group.getMembers().stream().sorted().collect(Collectors.toList()));
+        return copy;
+    }
+
+    private Stream<Group> ofMember(Long user, String name) {
+        String part = name == null ? "" : name;
+        return groups.values().stream()
+                .filter(x -> x.getMembers().contains(user) && x.getName().contains(part));
+    }
+
+    @Override
+    public synchronized Group findOne(Long id) {
+        if (id == null)
+            throw new IllegalArgumentException("ID must not be null!");
+        Group group = groups.get(id);
+        return group == null ? null : copy(group);
+    }
+
+    @Override
+    public synchronized Iterable<Group> findAll() {
+        return groups.values().stream().map(InMemoryGroupRepository::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public void forEachGroup(Consumer<Group> consumer) {
+        findAll().forEach(consumer);
+    }
+
+    @Override
+    public synchronized List<Group> findByMember(Long user, String name, int offset, int limit) {
+        return ofMember(user, name).sorted(Comparator.comparing(Group::getId).reversed())
+                .skip(offset).limit(limit).map(InMemoryGroupRepository::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized int countByMember(Long user, String name) {
+        return (int) ofMember(user, name).count();
+    }
+
+    @Override
+    public synchronized List<MessageDTO> findMessages(Long group, int offset, int limit) {
+        List<Long> members = groups.containsKey(group) ? copy(groups.get(group)).getMembers() : new ArrayList<>();
+        return messages.getOrDefault(group, new ArrayList<>()).stream().sorted(NEWEST_FIRST)
+                .skip(offset).limit(limit)
+                .map(x -> {
+                    List<Long> recipients = new ArrayList<>(members);
+                    recipients.remove(x.getFrom());
+                    MessageDTO copy = new MessageDTO(x.getFrom(), recipients, x.getMessage(), x.getDate(), null);
+                    copy.setId(x.getId());
+                    return copy;
+                })
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized int countMessages(Long group) {
+        return messages.getOrDefault(group, new ArrayList<>()).size();
+    }
+
+    @Override
+    public synchronized void saveMessage(Long group, MessageDTO message) {
+        message.setId(++lastMessageId);
+        if (message.getDate() == null)
+            message.setDate(LocalDateTime.now());
+        MessageDTO copy = new MessageDTO(message.getFrom(), new ArrayList<>(), message.getMessage(), message.getDate(), message.getReply());
+        copy.setId(message.getId());
+        messages.computeIfAbsent(group, x -> new ArrayList<>()).add(copy);
+    }
+
+    /**
+     * Gives the group the next free id
+     */
+    @Override
+    public synchronized Group save(Group entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        entity.setId(++lastGroupId);
+        Group group = new Group(entity.getName(), new ArrayList<>());
+        group.setId(entity.getId());
+        group.setMembers(entity.getMembers() == null ? new ArrayList<>() : new ArrayList<>(entity.getMembers()));
+        groups.put(group.getId(), group);
+        return null;
+    }
+
+    @Override
+    public Group remove(Group entity) {
+        return null;
+    }
+
+    /**
+     * Saves the last message of the group
+     */
+    @Override
+    public Group update(Group entity) {
+        saveMessage(entity.getId(), entity.getMessages().get(entity.getMessages().size() - 1));
+        return null;
+    }
+
+    @Override
+    public synchronized void writeSnapshot(ObjectOutputStream out) throws IOException {
+        out.writeObject(groups);
+        out.writeObject(messages);
+        out.writeLong(lastGroupId);
+        out.writeLong(lastMessageId);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized void readSnapshot(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        groups.clear();
+        groups.putAll((Map<Long, Group>) in.readObject());
+        messages.clear();
+        messages.putAll((Map<Long, List<MessageDTO>>) in.readObject());
+        lastGroupId = in.readLong();
+        lastMessageId = in.readLong();
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.lab6.repository.memory;
+
+import com.example.lab6.model.MessageDTO;
+import com.example.lab6.repository.MessageRepository;
+import com.example.lab6.repository.paging.Cursor;
+import com.example.lab6.repository.paging.Page;
+import com.example.lab6.repository.paging.Pageable;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Messages kept in memory, indexed by sender and by recipient,
+ * answering the same queries as MessageDbRepository in the same order
+ */
+public class InMemoryMessageRepository implements MessageRepository<Long, MessageDTO>, Snapshottable {
+    private static final Comparator<MessageDTO> OLDEST_FIRST =
+            Comparator.comparing(MessageDTO::getDate).thenComparing(MessageDTO::getId);
+
+    private final Map<Long, MessageDTO> messages = new LinkedHashMap<>();
+    private final Map<Long, List<MessageDTO>> sent = new HashMap<>();
+    private final Map<Long, List<MessageDTO>> received = new HashMap<>();
+    private long lastId;
+
+    private static MessageDTO copy(MessageDTO message) {
+        MessageDTO copy = new MessageDTO(message.getFrom(), new ArrayList<>(message.getTo()), message.getMessage(),
+                message.getDate(), message.getReply());
+        copy.setId(message.getId());
+        return copy;
+    }
+
+    private static List<MessageDTO> select(Iterable<MessageDTO> messages, Predicate<MessageDTO> filter,
+                                           Comparator<MessageDTO> order, int offset, int limit) {
+        List<MessageDTO> result = new ArrayList<>();
+        for (MessageDTO message : messages)
+            if (filter.test(message))
+                result.add(message);
+        result.sort(order);
+        return result.stream().skip(offset).limit(limit).map(InMemoryMessageRepository::copy).collect(Collectors.toList());
+    }
+
+    private List<MessageDTO> sentBy(Long user) {
+        return sent.getOrDefault(user, Collections.emptyList());
+    }
+
+    private List<MessageDTO> receivedBy(Long user) {
+        return received.getOrDefault(user, Collections.emptyList());
+    }
+
+    @Override
+    public synchronized MessageDTO findOne(Long id) {
+        if (id == null)
+            throw new IllegalArgumentException("ID must not be null!");
+        MessageDTO message = messages.get(id);
+        return message == null ? null : copy(message);
+    }
+
+    @Override
+    public synchronized Map<Long, MessageDTO> findByIds(Collection<Long> ids) {
+        Map<Long, MessageDTO> result = new HashMap<>();
+        for (Long id : ids) {
+            MessageDTO message = messages.get(id);
+            if (message != null)
+                result.put(id, copy(message));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<MessageDTO> findThread(Long message, int limit) {
+        List<MessageDTO> thread = new ArrayList<>();
+        MessageDTO current = message == null ? null : messages.get(message);
+        while (current != null && thread.size() < limit) {
+            thread.add(copy(current));
+            current = current.getReply() == null ? null : messages.get(current.getReply());
+        }
+        return thread;
+    }
+
+    @Override
+    public synchronized Iterable<MessageDTO> findAll() {
+        return messages.values().stream().map(InMemoryMessageRepository::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized List<MessageDTO> findConversation(Long user1, Long user2, int offset, int limit) {
+        List<MessageDTO> candidates = new ArrayList<>(sentBy(user1));
+        if (!user1.equals(user2))
+            candidates.addAll(sentBy(user2));
+        Predicate<MessageDTO> between = x -> x.getFrom().equals(user1) ? x.getTo().contains(user2) : x.getTo().contains(user1);
+        return select(candidates, between, OLDEST_FIRST.reversed(), offset, limit);
+    }
+
+    @Override
+    public synchronized int countConversation(Long user1, Long user2) {
+        return findConversation(user1, user2, 0, Integer.MAX_VALUE).size();
+    }
+
+    @Override
+    public synchronized List<MessageDTO> findGroupConversation(Long user, List<Long> members, int offset, int limit) {
+        Set<Long> group = new HashSet<>(members);
+        List<MessageDTO> candidates = new ArrayList<>(sentBy(user));
+        candidates.addAll(receivedBy(user));
+        Predicate<MessageDTO> inGroup = x -> x.getFrom().equals(user)
+                ? x.getTo().stream().filter(group::contains).distinct().count() == group.size()
+                : group.contains(x.getFrom());
+        return select(new LinkedHashSet<>(candidates), inGroup, OLDEST_FIRST, offset, limit);
+    }
+
+    @Override
+    public synchronized List<MessageDTO> findReceived(Long recipient, LocalDateTime start, LocalDateTime end, int offset, int limit) {
+        return select(receivedBy(recipient), x -> x.getDate().isAfter(start) && !x.getDate().isAfter(end),
+                OLDEST_FIRST, offset, limit);
+    }
+
+    @Override
+    public synchronized List<MessageDTO> findSent(Long sender, Long recipient, LocalDateTime start, LocalDateTime end, int offset, int limit) {
+        return select(sentBy(sender), x -> (recipient == null || x.getTo().contains(recipient))
+                && x.getDate().isAfter(start) && !x.getDate().isAfter(end), OLDEST_FIRST, offset, limit);
+    }
+
+    @Override
+    public synchronized Set<Long> findConversationPartners(Long user) {
+        Set<Long> partners = new HashSet<>();
+        sentBy(user).forEach(x -> partners.addAll(x.getTo()));
+        receivedBy(user).forEach(x -> partners.add(x.getFrom()));
+        partners.remove(user);
+        return partners;
+    }
+
+    /**
+     * Keeps the id and the date of the message if it has them, otherwise gives it
+     * the next free id and the current date
+     */
+    @Override
+    public synchronized MessageDTO save(MessageDTO entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        if (entity.getId() != null && messages.containsKey(entity.getId()))
+            return entity;
+        if (entity.getId() == null)
+            entity.setId(lastId + 1);
+        if (entity.getDate() == null)
+            entity.setDate(LocalDateTime.now());
+        lastId = Math.max(lastId, entity.getId());
+
+        MessageDTO message = copy(entity);
+        messages.put(message.getId(), message);
+        sent.computeIfAbsent(message.getFrom(), x -> new ArrayList<>()).add(message);
+        for (Long recipient : new HashSet<>(message.getTo()))
+            received.computeIfAbsent(recipient, x -> new ArrayList<>()).add(message);
+        return null;
+    }
+
+    @Override
+    public synchronized List<MessageDTO> saveAll(List<MessageDTO> entities) {
+        entities.forEach(this::save);
+        return entities;
+    }
+
+    @Override
+    public synchronized MessageDTO remove(MessageDTO entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        MessageDTO removed = messages.remove(entity.getId());
+        if (removed != null) {
+            sentBy(removed.getFrom()).remove(removed);
+            removed.getTo().forEach(x -> receivedBy(x).remove(removed));
+        }
+        return removed;
+    }
+
+    /**
+     * Replaces the message with the same id, in the indexes too
+     */
+    @Override
+    public synchronized MessageDTO update(MessageDTO entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        if (entity.getId() == null || !messages.containsKey(entity.getId()))
+            return entity;
+        remove(entity);
+        return save(entity);
+    }
+
+    @Override
+    public synchronized Page<MessageDTO> findAll(Pageable pageable) {
+        List<MessageDTO> sorted = messages.values().stream().map(InMemoryMessageRepository::copy)
+                .sorted(OLDEST_FIRST.reversed())
+                .collect(Collectors.toList());
+        return MemoryPages.page(sorted, MemoryPages.newestFirst(), x -> new Cursor(x.getDate(), x.getId()), pageable);
+    }
+
+    @Override
+    public synchronized void writeSnapshot(ObjectOutputStream out) throws IOException {
+        out.writeObject(messages);
+        out.writeObject(sent);
+        out.writeObject(received);
+        out.writeLong(lastId);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized void readSnapshot(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        messages.clear();
+        messages.putAll((Map<Long, MessageDTO>) in.readObject());
+        sent.clear();
+        sent.putAll((Map<Long, List<MessageDTO>>) in.readObject());
+        received.clear();
+        received.putAll((Map<Long, List<MessageDTO>>) in.readObject());
+        lastId = in.readLong();
+    }
+}
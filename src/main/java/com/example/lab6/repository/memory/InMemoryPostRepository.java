@@ -0,0 +1,122 @@
+package com.example.lab6.repository.memory;
+
+import com.example.lab6.model.Post;
+import com.example.lab6.repository.PostRepository;
+import com.example.lab6.repository.paging.Cursor;
+import com.example.lab6.repository.paging.Page;
+import com.example.lab6.repository.paging.Pageable;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Posts kept in memory, paged like PostDbRepository
+ */
+public class InMemoryPostRepository implements PostRepository<Long, Post>, Snapshottable {
+    private final Map<Long, Post> posts = new LinkedHashMap<>();
+    private long lastId;
+
+    private static Post copy(Post post) {
+        Post copy = new Post(post.getAdmin(), post.getUrl(), post.getDescription(), post.getDate());
+        copy.setId(post.getId());
+        return copy;
+    }
+
+    @Override
+    public synchronized Post findOne(Long id) {
+        if (id == null)
+            throw new IllegalArgumentException("ID must not be null!");
+        Post post = posts.get(id);
+        return post == null ? null : copy(post);
+    }
+
+    @Override
+    public synchronized Iterable<Post> findAll() {
+        return posts.values().stream().map(InMemoryPostRepository::copy).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the posts of the user, in the order they were saved
+     */
+    public synchronized List<Post> findByAuthor(Long user) {
+        return posts.values().stream().filter(x -> x.getAdmin().equals(user))
+                .map(InMemoryPostRepository::copy).collect(Collectors.toList());
+    }
+
+    /**
+     * Keeps the id and the date of the post if it has them, otherwise gives it
+     * the next free id and the current date
+     */
+    @Override
+    public synchronized Post save(Post entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        if (entity.getId() != null && posts.containsKey(entity.getId()))
+            return entity;
+        if (entity.getId() == null)
+            entity.setId(lastId + 1);
+        if (entity.getDate() == null)
+            entity.setDate(LocalDateTime.now());
+        lastId = Math.max(lastId, entity.getId());
+        posts.put(entity.getId(), copy(entity));
+        return null;
+    }
+
+    @Override
+    public synchronized Post remove(Post entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        return posts.remove(entity.getId());
+    }
+
+    @Override
+    public synchronized Post update(Post entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        if (!posts.containsKey(entity.getId()))
+            return entity;
+        posts.put(entity.getId(), copy(entity));
+        return null;
+    }
+
+    @Override
+    public synchronized Page<Post> findAll(Pageable pageable) {
+        return newestFirst(posts.values().stream().map(InMemoryPostRepository::copy).collect(Collectors.toList()), pageable);
+    }
+
+    @Override
+    public synchronized Page<Post> findByAuthor(Long author, Pageable pageable) {
+        return newestFirst(findByAuthor(author), pageable);
+    }
+
+    @Override
+    public synchronized int countByAuthor(Long author) {
+        return (int) posts.values().stream().filter(x -> x.getAdmin().equals(author)).count();
+    }
+
+    private static Page<Post> newestFirst(List<Post> posts, Pageable pageable) {
+        posts.sort(Comparator.comparing(Post::getDate).thenComparing(Post::getId).reversed());
+        return MemoryPages.page(posts, MemoryPages.newestFirst(), x -> new Cursor(x.getDate(), x.getId()), pageable);
+    }
+
+    @Override
+    public synchronized void writeSnapshot(ObjectOutputStream out) throws IOException {
+        out.writeObject(posts);
+        out.writeLong(lastId);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized void readSnapshot(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        posts.clear();
+        posts.putAll((Map<Long, Post>) in.readObject());
+        lastId = in.readLong();
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.lab6.repository.memory;
+
+import com.example.lab6.model.User;
+import com.example.lab6.model.validators.Validator;
+import com.example.lab6.repository.UserRepository;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Users kept in memory, indexed by id and by email; the friends come from an
+ * InMemoryFriendshipRepository. Every method returns copies, like a repository
+ * that reads the users from a database, so the callers cannot change the stored users.
+ */
+public class InMemoryUserRepository implements UserRepository<Long, User>, Snapshottable {
+    private final Validator<User> validator;
+    private final InMemoryFriendshipRepository friendships;
+    private final Map<Long, User> users = new LinkedHashMap<>();
+    private final Map<String, Long> idsByEmail = new HashMap<>();
+    private final Map<String, String> photos = new HashMap<>();
+    private long lastId;
+
+    public InMemoryUserRepository(Validator<User> validator, InMemoryFriendshipRepository friendships) {
+        this.validator = validator;
+        this.friendships = friendships;
+    }
+
+    private static User copy(User user) {
+        User copy = new User(user.getFirstName(), user.getLastName(), user.getEmail(), user.getPassword());
+        copy.setId(user.getId());
+        return copy;
+    }
+
+    @Override
+    public synchronized User findOne(Long id) {
+        if (id == null)
+            throw new IllegalArgumentException("ID must not be null!");
+        User user = users.get(id);
+        return user == null ? null : copy(user);
+    }
+
+    @Override
+    public synchronized User findOneByEmail(String email) {
+        Long id = idsByEmail.get(email);
+        return id == null ? null : copy(users.get(id));
+    }
+
+    @Override
+    public synchronized Map<Long, User> findByIds(Collection<Long> ids) {
+        Map<Long, User> result = new HashMap<>();
+        for (Long id : ids) {
+            User user = users.get(id);
+            if (user != null)
+                result.put(id, copy(user));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Iterable<User> findAll() {
+        Map<Long, User> copies = new LinkedHashMap<>();
+        users.values().forEach(x -> copies.put(x.getId(), copy(x)));
+        friendships.forEachFriendship((first, second) -> {
+            User firstUser = copies.get(first), secondUser = copies.get(second);
+            if (firstUser != null && secondUser != null) {
+                firstUser.addFriend(secondUser);
+                secondUser.addFriend(firstUser);
+            }
+        });
+        return copies.values();
+    }
+
+    @Override
+    public synchronized Iterable<User> findAllLazy() {
+        List<User> copies = new ArrayList<>(users.size());
+        for (User user : users.values()) {
+            User copy = copy(user);
+            Long id = user.getId();
+            copy.setFriendsLoader(() -> findFriends(id));
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    @Override
+    public synchronized List<User> findFriends(Long id) {
+        List<User> friends = new ArrayList<>();
+        for (Long friend : friendships.findFriendIds(id)) {
+            User user = users.get(friend);
+            if (user != null)
+                friends.add(copy(user));
+        }
+        return friends;
+    }
+
+    @Override
+    public synchronized Map<Long, Boolean> findFriendStatus(Long id, Collection<Long> candidates) {
+        Set<Long> friends = friendships.findFriendIds(id);
+        Map<Long, Boolean> status = new HashMap<>();
+        for (Long candidate : candidates)
+            if (users.containsKey(candidate))
+                status.put(candidate, friends.contains(candidate));
+        return status;
+    }
+
+    /**
+     * Keeps the id of the user if it has one, otherwise gives it the next free id
+     */
+    @Override
+    public synchronized User save(User entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        if ((entity.getId() != null && users.containsKey(entity.getId())) || idsByEmail.containsKey(entity.getEmail()))
+            return entity;
+        if (entity.getId() == null)
+            entity.setId(lastId + 1);
+        validator.validate(entity);
+        lastId = Math.max(lastId, entity.getId());
+        users.put(entity.getId(), copy(entity));
+        idsByEmail.put(entity.getEmail(), entity.getId());
+        return null;
+    }
+
+    @Override
+    public synchronized void savePicture(String email, String url) {
+        photos.putIfAbsent(email, url);
+    }
+
+    @Override
+    public synchronized void updatePicture(String email, String url) {
+        photos.replace(email, url);
+    }
+
+    @Override
+    public synchronized String findPhoto(String email) {
+        return photos.get(email);
+    }
+
+    @Override
+    public synchronized Map<String, String> findPhotos(Collection<String> emails) {
+        Map<String, String> result = new HashMap<>();
+        for (String email : emails) {
+            String url = photos.get(email);
+            if (url != null)
+                result.put(email, url);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized User remove(User entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        User removed = users.remove(entity.getId());
+        if (removed != null)
+            idsByEmail.remove(removed.getEmail());
+        return removed;
+    }
+
+    @Override
+    public synchronized User update(User entity) {
+        if (entity == null)
+            throw new IllegalArgumentException("Entity must not be null!");
+        validator.validate(entity);
+        User old = users.get(entity.getId());
+        if (old == null)
+            return entity;
+        idsByEmail.remove(old.getEmail());
+        users.put(entity.getId(), copy(entity));
+        idsByEmail.put(entity.getEmail(), entity.getId());
+        return null;
+    }
+
+    @Override
+    public synchronized void writeSnapshot(ObjectOutputStream out) throws IOException {
+        out.writeObject(users);
+        out.writeObject(idsByEmail);
+        out.writeObject(photos);
+        out.writeLong(lastId);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized void readSnapshot(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        users.clear();
+        users.putAll((Map<Long, User>) in.readObject());
+        idsByEmail.clear();
+        idsByEmail.putAll((Map<String, Long>) in.readObject());
+        photos.clear();
+        photos.putAll((Map<String, String>) in.readObject());
+        lastId = in.readLong();
+    }
+}
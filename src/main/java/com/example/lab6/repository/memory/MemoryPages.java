@@ -0,0 +1,59 @@
+package com.example.lab6.repository.memory;
+
+import com.example.lab6.repository.paging.Cursor;
+import com.example.lab6.repository.paging.KeysetPageable;
+import com.example.lab6.repository.paging.Page;
+import com.example.lab6.repository.paging.PageImplementation;
+import com.example.lab6.repository.paging.Pageable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Pages a list the same way the *DbRepository classes page their tables:
+ * newest first, after the cursor of a KeysetPageable or by offset otherwise
+ */
+public final class MemoryPages {
+    private MemoryPages() {
+    }
+
+    /**
+     * @param elements the elements, sorted by order
+     * @param order    the order of the elements, the newest first
+     * @param cursorOf the cursor of an element
+     */
+    public static <E> Page<E> page(List<E> elements, Comparator<Cursor> order, Function<E, Cursor> cursorOf, Pageable pageable) {
+        int size = pageable.getPageSize();
+        Cursor cursor = pageable instanceof KeysetPageable ? ((KeysetPageable) pageable).getCursor() : null;
+        int from;
+        if (cursor != null) {
+            int low = 0, high = elements.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (order.compare(cursorOf.apply(elements.get(middle)), cursor) <= 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            from = low;
+        } else
+            from = pageable instanceof KeysetPageable ? 0 : (int) Math.min(elements.size(), (long) pageable.getPageNumber() * size);
+
+        int to = Math.min(elements.size(), from + size);
+        List<E> page = new ArrayList<>(elements.subList(from, to));
+        Cursor next = page.isEmpty() ? null : cursorOf.apply(page.get(page.size() - 1));
+        return new PageImplementation<>(pageable, page.stream(), to < elements.size(), next);
+    }
+
+    /**
+     * @return the order of cursors by date, id and second id, the newest first
+     */
+    public static Comparator<Cursor> newestFirst() {
+        Comparator<Cursor> order = Comparator.comparing(Cursor::getDate)
+                .thenComparing(Cursor::getId)
+                .thenComparing(x -> x.getSecondId() == null ? Long.MIN_VALUE : x.getSecondId());
+        return order.reversed();
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.lab6.repository.memory;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * An in-memory repository whose data can be written to a snapshot and read back,
+ * used by the embedded storage to recover without replaying its whole log
+ */
+public interface Snapshottable {
+
+    /**
+     * Writes the data of the repository; called while no other thread changes it
+     */
+    void writeSnapshot(ObjectOutputStream out) throws IOException;
+
+    /**
+     * Replaces the data of the repository with the data written by writeSnapshot
+     */
+    void readSnapshot(ObjectInputStream in) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,45 @@
+package com.example.lab6.repository.paging;
+
+import java.time.LocalDateTime;
+
+/**
+ * Position of the last element of a page, used by keyset pagination.
+ * Pages are ordered by date and then by id, newest first; secondId is the
+ * second part of the key for entities with a composite id (e.g. friendships)
+ */
+public class Cursor {
+    private final LocalDateTime date;
+    private final Long id;
+    private final Long secondId;
+
+    public Cursor(LocalDateTime date, Long id) {
+        this(date, id, null);
+    }
+
+    public Cursor(LocalDateTime date, Long id, Long secondId) {
+        this.date = date;
+        this.id = id;
+        this.secondId = secondId;
+    }
+
+    public LocalDateTime getDate() {
+        return date;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getSecondId() {
+        return secondId;
+    }
+
+    @Override
+    public String toString() {
+        return "Cursor{" +
+                "date=" + date +
+                ", id=" + id +
+                ", secondId=" + secondId +
+                '}';
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.lab6.repository.paging;
+
+/**
+ * Pageable that continues after the last element seen instead of skipping
+ * pageNumber * pageSize elements, so a deep page costs the same as the first one
+ */
+public class KeysetPageable implements Pageable {
+
+    private Cursor cursor;
+    private int pageNumber;
+    private int pageSize;
+
+    /**
+     * @param pageSize the size of the first page
+     */
+    public KeysetPageable(int pageSize) {
+        this(null, 0, pageSize);
+    }
+
+    /**
+     * @param cursor     the last element of the previous page, null for the first page
+     * @param pageNumber the number of the page, only informative
+     * @param pageSize   the size of the page
+     */
+    public KeysetPageable(Cursor cursor, int pageNumber, int pageSize) {
+        this.cursor = cursor;
+        this.pageNumber = pageNumber;
+        this.pageSize = pageSize;
+    }
+
+    public Cursor getCursor() {
+        return this.cursor;
+    }
+
+    @Override
+    public int getPageNumber() {
+        return this.pageNumber;
+    }
+
+    @Override
+    public int getPageSize() {
+        return this.pageSize;
+    }
+}
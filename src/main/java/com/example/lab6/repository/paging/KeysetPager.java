@@ -0,0 +1,64 @@
+package com.example.lab6.repository.paging;
+
+import com.example.lab6.model.Tuple;
+import com.example.lab6.repository.cache.EntityCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Turns the pages asked by offset into keyset pages. The cursor at the end of every page
+ * read is kept by owner and offset, so the page that starts there continues after it instead
+ * of skipping the previous ones. The first page needs no cursor; a page without a known
+ * cursor falls back to LIMIT/OFFSET.
+ */
+public class KeysetPager {
+    private final EntityCache<Tuple<Long, Integer>, Cursor> cursors;
+
+    /**
+     * @param maxCursors maximum number of cursors kept
+     */
+    public KeysetPager(int maxCursors) {
+        this.cursors = new EntityCache<>(maxCursors, 0);
+    }
+
+    /**
+     * @param owner  the id the list belongs to, e.g. the user whose friends are paged
+     * @param offset number of elements skipped
+     * @param limit  maximum number of elements returned
+     * @param query  reads a page of the list
+     * @return the elements from offset to offset + limit
+     */
+    public <E> List<E> page(Long owner, int offset, int limit, Function<Pageable, Page<E>> query) {
+        if (limit <= 0)
+            return new ArrayList<>();
+        Cursor cursor = offset == 0 ? null : cursors.get(new Tuple<>(owner, offset));
+        List<E> page;
+        Cursor next;
+        if (offset == 0 || cursor != null || offset % limit == 0) {
+            Pageable pageable = offset == 0 || cursor != null
+                    ? new KeysetPageable(cursor, offset / limit, limit)
+                    : new PageableImplementation(offset / limit, limit);
+            Page<E> result = query.apply(pageable);
+            page = result.getContent().collect(Collectors.toList());
+            next = result.getNextCursor();
+        } else {
+            Page<E> result = query.apply(new PageableImplementation(0, offset + limit));
+            List<E> all = result.getContent().collect(Collectors.toList());
+            page = new ArrayList<>(all.subList(Math.min(offset, all.size()), all.size()));
+            next = result.getNextCursor();
+        }
+        if (next != null && !page.isEmpty())
+            cursors.put(new Tuple<>(owner, offset + page.size()), next);
+        return page;
+    }
+
+    /**
+     * Drops the cursors, the offsets they were kept for may have moved
+     */
+    public void clear() {
+        cursors.invalidateAll();
+    }
+}
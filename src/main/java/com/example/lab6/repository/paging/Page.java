@@ -8,5 +8,13 @@ public interface Page<E> {
 
     Stream<E> getContent();
 
+    /**
+     * @return true if there is at least one element after this page
+     */
+    boolean hasNext();
 
+    /**
+     * @return the cursor of the last element of this page, null if the page is empty
+     */
+    Cursor getNextCursor();
 }
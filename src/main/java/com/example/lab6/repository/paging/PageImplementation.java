@@ -4,10 +4,18 @@ import java.util.stream.Stream;
 public class PageImplementation<T> implements Page<T> {
     private Pageable pageable;
     private Stream<T> content;
+    private boolean hasNext;
+    private Cursor nextCursor;
 
     PageImplementation(Pageable pageable, Stream<T> content) {
+        this(pageable, content, false, null);
+    }
+
+    public PageImplementation(Pageable pageable, Stream<T> content, boolean hasNext, Cursor nextCursor) {
         this.pageable = pageable;
         this.content = content;
+        this.hasNext = hasNext;
+        this.nextCursor = nextCursor;
     }
 
     @Override
@@ -17,6 +25,8 @@ public class PageImplementation<T> implements Page<T> {
 
     @Override
     public Pageable nextPageable() {
+        if (this.pageable instanceof KeysetPageable)
+            return new KeysetPageable(this.nextCursor, this.pageable.getPageNumber() + 1, this.pageable.getPageSize());
         return new PageableImplementation(this.pageable.getPageNumber() + 1, this.pageable.getPageSize());
     }
 
@@ -24,4 +34,14 @@ public class PageImplementation<T> implements Page<T> {
     public Stream<T> getContent() {
         return this.content;
     }
+
+    @Override
+    public boolean hasNext() {
+        return this.hasNext;
+    }
+
+    @Override
+    public Cursor getNextCursor() {
+        return this.nextCursor;
+    }
 }
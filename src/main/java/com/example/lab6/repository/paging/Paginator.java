@@ -1,7 +1,8 @@
 package com.example.lab6.repository.paging;
 
 
-import java.util.stream.Stream;
+import java.util.List;
+import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 public class Paginator<E> {
@@ -13,10 +14,18 @@ public class Paginator<E> {
         this.elements = elements;
     }
 
+    /**
+     * Pages an in-memory Iterable by offset; storages that can page natively
+     * should not use it
+     */
     public Page<E> paginate() {
-        Stream<E> result = StreamSupport.stream(elements.spliterator(), false)
-                .skip(pageable.getPageNumber()  * pageable.getPageSize())
-                .limit(pageable.getPageSize());
-        return new PageImplementation<>(pageable, result);
+        List<E> result = StreamSupport.stream(elements.spliterator(), false)
+                .skip((long) pageable.getPageNumber() * pageable.getPageSize())
+                .limit(pageable.getPageSize() + 1L)
+                .collect(Collectors.toList());
+        boolean hasNext = result.size() > pageable.getPageSize();
+        if (hasNext)
+            result.remove(result.size() - 1);
+        return new PageImplementation<>(pageable, result.stream(), hasNext, null);
     }
 }
@@ -0,0 +1,388 @@
+package com.example.lab6.service;
+
+import com.example.lab6.model.Event;
+import com.example.lab6.model.FriendRequestDTO;
+import com.example.lab6.model.FriendshipDTO;
+import com.example.lab6.model.Group;
+import com.example.lab6.model.Message;
+import com.example.lab6.model.MessageDTO;
+import com.example.lab6.model.Post;
+import com.example.lab6.model.Tuple;
+import com.example.lab6.model.User;
+import com.example.lab6.model.UserDTO;
+import com.example.lab6.utils.EventListType;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the service calls of the controllers on a bounded pool of background threads,
+ * so the JavaFX application thread never waits for the database.
+ * Cancelling a returned future interrupts the call if it is still running;
+ * the controllers cancel the load of a page when the user flips to another one.
+ */
+public class AsyncServices {
+    private final UserService userService;
+    private final FriendshipService friendshipService;
+    private final MessageService messageService;
+    private final FriendRequestService friendRequestService;
+    private final EventService eventService;
+    private final PostService postService;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Constructor
+     *
+     * @param threads   number of calls running at the same time, at most the size of the connection pool
+     * @param queueSize number of calls waiting for a thread; further calls fail with RejectedExecutionException
+     */
+    public AsyncServices(UserService userService, FriendshipService friendshipService, MessageService messageService,
+                         FriendRequestService friendRequestService, EventService eventService, PostService postService,
+                         int threads, int queueSize) {
+        this.userService = userService;
+        this.friendshipService = friendshipService;
+        this.messageService = messageService;
+        this.friendRequestService = friendRequestService;
+        this.eventService = eventService;
+        this.postService = postService;
+
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread thread = new Thread(r, "Service Worker " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param task a call to one or more services
+     * @return the result of the call, completed on a background thread
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            Future<?> running = executor.submit(() -> {
+                if (result.isDone())
+                    return;
+                try {
+                    result.complete(task.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            result.whenComplete((value, error) -> {
+                if (result.isCancelled())
+                    running.cancel(true);
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    public CompletableFuture<Void> run(Runnable task) {
+        return supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return the friends of the user on the page, with their profile pictures;
+     * the url of the picture is null for the users without one
+     */
+    public CompletableFuture<List<UserDTO>> getFriendsOnPage(Long user, int offset, int limit) {
+        return supply(() -> toUserDTOs(friendshipService.getMyFriendsOnPage(offset, limit, user).stream()
+                .map(FriendshipDTO::getUser)
+                .collect(Collectors.toList())));
+    }
+
+    public CompletableFuture<Integer> countFriends(Long user) {
+        return supply(() -> friendshipService.countFriends(user));
+    }
+
+    /**
+     * @return the users on the page whose name starts with the text; their profile
+     * pictures are looked up in the same call, so UserService.findPhoto answers from memory
+     */
+    public CompletableFuture<List<User>> getSearchOnPage(Long user, String text, int offset, int limit) {
+        return supply(() -> {
+            List<User> users = userService.getSearchOnPage(offset, limit, user, text);
+            userService.findPhotos(users.stream().map(User::getEmail).collect(Collectors.toList()));
+            return users;
+        });
+    }
+
+    public CompletableFuture<Integer> countSearch(Long user, String text) {
+        return supply(() -> userService.countSearch(user, text));
+    }
+
+    /**
+     * @return the friends of the user on the page whose name starts with the text, with their profile pictures
+     */
+    public CompletableFuture<List<UserDTO>> getFriendsMatchingOnPage(Long user, String text, int offset, int limit) {
+        return supply(() -> toUserDTOs(userService.searchingFriends(offset, limit, user, text)));
+    }
+
+    public CompletableFuture<Integer> countFriendsMatching(Long user, String text) {
+        return supply(() -> userService.countFriends(user, text));
+    }
+
+    /**
+     * @return the users, in the order of the ids, with their profile pictures
+     */
+    public CompletableFuture<List<UserDTO>> getUsers(List<Long> ids) {
+        return supply(() -> {
+            Map<Long, User> users = userService.getUsersByID(ids);
+            return toUserDTOs(ids.stream().map(users::get).filter(Objects::nonNull).collect(Collectors.toList()));
+        });
+    }
+
+    /**
+     * @return the profile picture url of the user, null if the user has none
+     */
+    public CompletableFuture<String> findPhoto(String email) {
+        return supply(() -> userService.findPhoto(email));
+    }
+
+    /**
+     * @return the friends the user exchanged messages with, on the page, with their profile pictures
+     */
+    public CompletableFuture<List<UserDTO>> getConversationPartnersOnPage(Long user, int offset, int limit) {
+        return supply(() -> toUserDTOs(messageService.getMyConversationPage(offset, limit, user).stream()
+                .map(FriendshipDTO::getUser)
+                .collect(Collectors.toList())));
+    }
+
+    public CompletableFuture<Integer> countConversationPartners(Long user) {
+        return supply(() -> messageService.countMyFriendsWithMessages(user));
+    }
+
+    /**
+     * @return the pending friend requests received by the user, on the page, newest first
+     */
+    public CompletableFuture<List<FriendRequestDTO>> getFriendRequestsOnPage(Long user, int offset, int limit) {
+        return supply(() -> friendRequestService.getFriendRequestsOnPage(offset, limit, user));
+    }
+
+    public CompletableFuture<Integer> countFriendRequests(Long user) {
+        return supply(() -> friendRequestService.countFriendRequests(user));
+    }
+
+    /**
+     * @return the pending friend requests sent by the user, on the page, newest first
+     */
+    public CompletableFuture<List<FriendRequestDTO>> getSentFriendRequestsOnPage(Long user, int offset, int limit) {
+        return supply(() -> friendRequestService.getFriendRequestsByMeOnPage(offset, limit, user));
+    }
+
+    public CompletableFuture<Integer> countSentFriendRequests(Long user) {
+        return supply(() -> friendRequestService.countMyFriendRequests(user));
+    }
+
+    /**
+     * @return the posts of the user on the page, newest first
+     */
+    public CompletableFuture<List<Post>> getPostsOnPage(Long user, int offset, int limit) {
+        return supply(() -> postService.getMyPostsOnPage(offset, limit, user));
+    }
+
+    public CompletableFuture<Integer> countPosts(Long user) {
+        return supply(() -> postService.countMyPosts(user));
+    }
+
+    /**
+     * @return the posts of the friends of the user on the page, newest first, each with its author
+     * and the profile picture of the author, read in the same call
+     */
+    public CompletableFuture<Map<Post, UserDTO>> getHomePostsOnPage(Long user, int offset, int limit) {
+        return supply(() -> {
+            List<Post> posts = postService.getHomePostsOnPage(offset, limit, user);
+            Map<Long, User> users = userService.getUsersByID(posts.stream().map(Post::getAdmin).collect(Collectors.toSet()));
+            Map<Long, UserDTO> authors = toUserDTOs(new ArrayList<>(users.values())).stream()
+                    .collect(Collectors.toMap(UserDTO::getIdUser, x -> x));
+            Map<Post, UserDTO> result = new LinkedHashMap<>();
+            posts.stream().filter(x -> authors.containsKey(x.getAdmin())).forEach(x -> result.put(x, authors.get(x.getAdmin())));
+            return result;
+        });
+    }
+
+    public CompletableFuture<Integer> countHomePosts(Long user) {
+        return supply(() -> postService.countHomePosts(user));
+    }
+
+    /**
+     * @return the friendships made and the messages received by the user in the time range,
+     * for the activity report
+     */
+    public CompletableFuture<Tuple<List<FriendshipDTO>, List<MessageDTO>>> getActivity(Long user, LocalDateTime start, LocalDateTime end) {
+        return supply(() -> new Tuple<>(userService.getFriendshipsByDate(start, end, user),
+                messageService.getMessagesByDate(start, end, user)));
+    }
+
+    /**
+     * @return the friend and the messages the user received from the friend in the time range,
+     * for the messages report
+     */
+    public CompletableFuture<Tuple<User, List<MessageDTO>>> getMessagesFromFriend(Long user, Long friend,
+                                                                                   LocalDateTime start, LocalDateTime end) {
+        return supply(() -> new Tuple<>(userService.getUserByID(friend),
+                messageService.getMessagesFromAFriend(start, end, user, friend)));
+    }
+
+    public CompletableFuture<List<Group>> getGroupsOnPage(Long user, int offset, int limit) {
+        return supply(() -> messageService.getGroupsOnPage(offset, limit, user));
+    }
+
+    public CompletableFuture<Integer> countGroups(Long user) {
+        return supply(() -> messageService.countGroups(user));
+    }
+
+    /**
+     * @return the groups of the user on the page whose name starts with the text
+     */
+    public CompletableFuture<List<Group>> getGroupsMatchingOnPage(Long user, String text, int offset, int limit) {
+        return supply(() -> messageService.getSearchingGroupsOnPage(offset, limit, user, text));
+    }
+
+    public CompletableFuture<Integer> countGroupsMatching(Long user, String text) {
+        return supply(() -> messageService.countSearchingGroups(user, text));
+    }
+
+    /**
+     * @return the messages of the two users, oldest first; the profile pictures of the
+     * two users are looked up in the same call, so UserService.findPhoto answers from memory
+     */
+    public CompletableFuture<List<Message>> getConversation(Long user1, Long user2) {
+        return supply(() -> {
+            List<Message> messages = messageService.getConversation(user1, user2);
+            Collections.reverse(messages);
+            loadPhotosOfSenders(messages);
+            return messages;
+        });
+    }
+
+    /**
+     * @return the messages of the two users on the page counted from the newest one, oldest first;
+     * the profile pictures of the senders are looked up in the same call
+     */
+    public CompletableFuture<List<Message>> getConversationOnPage(Long user1, Long user2, int offset, int limit) {
+        return supply(() -> {
+            List<Message> messages = messageService.getMyMessagesOnPage(offset, limit, user1, user2);
+            Collections.reverse(messages);
+            loadPhotosOfSenders(messages);
+            return messages;
+        });
+    }
+
+    public CompletableFuture<Integer> countConversation(Long user1, Long user2) {
+        return supply(() -> messageService.countConversation(user1, user2));
+    }
+
+    /**
+     * @return the messages of the group on the page counted from the newest one, oldest first;
+     * the profile pictures of the senders are looked up in the same call
+     */
+    public CompletableFuture<List<Message>> getConversationGroupOnPage(Long group, int offset, int limit) {
+        return supply(() -> {
+            List<Message> messages = messageService.getGroupMessagesOnPage(offset, limit, group);
+            Collections.reverse(messages);
+            loadPhotosOfSenders(messages);
+            return messages;
+        });
+    }
+
+    public CompletableFuture<Integer> countGroupMessages(Long group) {
+        return supply(() -> messageService.countGroupMessages(group));
+    }
+
+    /**
+     * @return the messages of the group, oldest first, linked to the messages they reply to
+     */
+    public CompletableFuture<List<Message>> getConversationGroup(Long group) {
+        return supply(() -> {
+            List<Message> messages = messageService.getGroupMessagesOnPage(0, Integer.MAX_VALUE, group);
+            Collections.reverse(messages);
+            loadPhotosOfSenders(messages);
+            return messages;
+        });
+    }
+
+    /**
+     * @see MessageService#getReplyThread(Long, int)
+     */
+    public CompletableFuture<List<Message>> getReplyThread(Long message, int limit) {
+        return supply(() -> messageService.getReplyThread(message, limit));
+    }
+
+    private void loadPhotosOfSenders(List<Message> messages) {
+        userService.findPhotos(messages.stream().map(x -> x.getFrom().getEmail()).collect(Collectors.toSet()));
+    }
+
+    /**
+     * @return the page of the events of the list, by start date, each with its number of subscribers
+     */
+    public CompletableFuture<Map<Event, Integer>> getEventsOnPage(EventListType list, Long user, int offset, int limit) {
+        return supply(() -> {
+            List<Event> events = switch (list) {
+                case AllEvents -> eventService.getAllEvents(user, offset, limit);
+                case MyEvents -> eventService.getMyEvents(user, offset, limit);
+                case CreatedByMeEvents -> eventService.getCreatedByMeEvents(user, offset, limit);
+            };
+            Map<Event, Integer> subscribers = new LinkedHashMap<>();
+            events.forEach(x -> subscribers.put(x, eventService.countSubscribers(x.getId())));
+            return subscribers;
+        });
+    }
+
+    private List<UserDTO> toUserDTOs(List<User> users) {
+        return userService.toUserDTOs(users, null);
+    }
+
+    public UserService getUserService() {
+        return userService;
+    }
+
+    public FriendshipService getFriendshipService() {
+        return friendshipService;
+    }
+
+    public MessageService getMessageService() {
+        return messageService;
+    }
+
+    public FriendRequestService getFriendRequestService() {
+        return friendRequestService;
+    }
+
+    public EventService getEventService() {
+        return eventService;
+    }
+
+    public PostService getPostService() {
+        return postService;
+    }
+
+    /**
+     * Stops the background threads; the calls already running are interrupted
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
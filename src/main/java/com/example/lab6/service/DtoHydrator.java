@@ -0,0 +1,191 @@
+package com.example.lab6.service;
+
+import com.example.lab6.model.*;
+import com.example.lab6.repository.MessageRepository;
+import com.example.lab6.repository.UserRepository;
+import com.example.lab6.utils.LongObjectMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the DTOs of a page in the style of a DataLoader: the ids of the users and of
+ * the messages the page refers to are collected first, then loaded with one batched
+ * lookup per kind (WHERE id = ANY(?)) and kept for the rest of the conversion, so
+ * every id is read once per call, however many rows refer to it.
+ */
+public class DtoHydrator {
+    private final UserRepository<Long, User> repoUser;
+    private final MessageRepository<Long, MessageDTO> repoMessage;
+
+    /**
+     * @param repoMessage the repository of the replied messages, null if no messages are converted
+     */
+    public DtoHydrator(UserRepository<Long, User> repoUser, MessageRepository<Long, MessageDTO> repoMessage) {
+        this.repoUser = repoUser;
+        this.repoMessage = repoMessage;
+    }
+
+    public DtoHydrator(UserRepository<Long, User> repoUser) {
+        this(repoUser, null);
+    }
+
+    /**
+     * The users and messages of one conversion. The ids are only collected by user and message;
+     * the first get loads all the collected ids, the ones that do not exist are remembered as null.
+     */
+    public final class Batch {
+        private final Map<Long, User> users = new HashMap<>();
+        private final Set<Long> pendingUsers = new HashSet<>();
+        private final Map<Long, MessageDTO> messages = new HashMap<>();
+        private final Set<Long> pendingMessages = new HashSet<>();
+
+        public Batch user(Long id) {
+            if (id != null && !users.containsKey(id))
+                pendingUsers.add(id);
+            return this;
+        }
+
+        public Batch users(Collection<Long> ids) {
+            ids.forEach(this::user);
+            return this;
+        }
+
+        public Batch message(Long id) {
+            if (id != null && !messages.containsKey(id))
+                pendingMessages.add(id);
+            return this;
+        }
+
+        public User getUser(Long id) {
+            user(id);
+            dispatch();
+            return users.get(id);
+        }
+
+        public MessageDTO getMessage(Long id) {
+            message(id);
+            dispatch();
+            return messages.get(id);
+        }
+
+        private void dispatch() {
+            if (!pendingUsers.isEmpty()) {
+                Map<Long, User> loaded = repoUser.findByIds(pendingUsers);
+                pendingUsers.forEach(x -> users.put(x, loaded.get(x)));
+                pendingUsers.clear();
+            }
+            if (!pendingMessages.isEmpty()) {
+                Map<Long, MessageDTO> loaded = repoMessage.findByIds(pendingMessages);
+                pendingMessages.forEach(x -> messages.put(x, loaded.get(x)));
+                pendingMessages.clear();
+            }
+        }
+    }
+
+    public Batch batch() {
+        return new Batch();
+    }
+
+    public List<FriendRequestDTO> friendRequests(List<FriendRequest> requests) {
+        Batch batch = batch();
+        requests.forEach(x -> batch.user(x.getFrom()).user(x.getTo()));
+        return requests.stream()
+                .map(x -> new FriendRequestDTO(batch.getUser(x.getFrom()), batch.getUser(x.getTo()), x.getStatus(), x.getLastUpdatedDate()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param friendships friendships oriented from the user, as FriendshipRepository.friendsOf returns them
+     * @return the friend and the date of every friendship
+     */
+    public List<FriendshipDTO> friendships(List<Friendship> friendships) {
+        Batch batch = batch();
+        friendships.forEach(x -> batch.user(x.getE2()));
+        return friendships.stream()
+                .map(x -> new FriendshipDTO(batch.getUser(x.getE2()), x.getDate()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param defaultPhoto the url used for the users without a profile picture
+     */
+    public List<UserDTO> userDTOs(List<User> users, String defaultPhoto) {
+        Map<String, String> photos = repoUser.findPhotos(users.stream().map(User::getEmail).collect(Collectors.toList()));
+        List<UserDTO> result = new ArrayList<>(users.size());
+        users.forEach(x -> {
+            UserDTO userDto = new UserDTO(x);
+            userDto.setUrlPhoto(photos.getOrDefault(x.getEmail(), defaultPhoto));
+            userDto.setEmailDTO(x.getEmail());
+            result.add(userDto);
+        });
+        return result;
+    }
+
+    /**
+     * @return the id of the message the message replies to, null if it is not a reply
+     * (0 is read back for a missing original_message as well)
+     */
+    private static Long parentOf(MessageDTO message) {
+        Long reply = message.getReply();
+        return reply == null || reply == 0 ? null : reply;
+    }
+
+    /**
+     * transform a list of MessageDTOs in a list of Messages, each one linked to the message it replies to.
+     * The messages are indexed by id; the replied messages that are not in the list are loaded with one
+     * lookup, then the senders and recipients of all of them with another one. A replied message from
+     * outside the list is linked without its own reply, which can be loaded later with the thread of the message.
+     */
+    public List<Message> messages(List<MessageDTO> list) {
+        LongObjectMap<MessageDTO> page = new LongObjectMap<>(list.size());
+        list.forEach(x -> page.put(x.getId(), x));
+        Batch batch = batch();
+        List<Long> outside = new ArrayList<>();
+        list.forEach(x -> {
+            Long parent = parentOf(x);
+            if (parent != null && !page.containsKey(parent)) {
+                batch.message(parent);
+                outside.add(parent);
+            }
+        });
+        List<MessageDTO> parents = new ArrayList<>(outside.size());
+        for (Long id : outside) {
+            MessageDTO parent = batch.getMessage(id);
+            if (parent != null && !page.containsKey(id)) {
+                page.put(id, parent);
+                parents.add(parent);
+            }
+        }
+
+        list.forEach(x -> batch.user(x.getFrom()).users(x.getTo()));
+        parents.forEach(x -> batch.user(x.getFrom()).users(x.getTo()));
+        LongObjectMap<Message> messages = new LongObjectMap<>(page.size());
+        List<Message> result = new ArrayList<>(list.size());
+        for (MessageDTO x : list)
+            result.add(toMessage(x, batch, messages));
+        for (MessageDTO x : parents)
+            toMessage(x, batch, messages);
+
+        for (int i = 0; i < list.size(); i++) {
+            Long parent = parentOf(list.get(i));
+            if (parent != null)
+                result.get(i).setReply(messages.get(parent));
+        }
+        return result;
+    }
+
+    private static Message toMessage(MessageDTO x, Batch batch, LongObjectMap<Message> messages) {
+        List<User> toUsers = new ArrayList<>(x.getTo().size());
+        x.getTo().forEach(y -> toUsers.add(batch.getUser(y)));
+        Message message = new Message(x.getId(), batch.getUser(x.getFrom()), toUsers, x.getMessage(), x.getDate());
+        messages.put(x.getId(), message);
+        return message;
+    }
+}
@@ -1,111 +1,138 @@
 package com.example.lab6.service;
 
 import com.example.lab6.model.Event;
+import com.example.lab6.model.EventSubscription;
+import com.example.lab6.model.Tuple;
 import com.example.lab6.model.User;
 import com.example.lab6.model.validators.EventValidator;
 import com.example.lab6.model.validators.ValidationException;
 import com.example.lab6.repository.EventRepository;
 import com.example.lab6.repository.UserRepository;
+import com.example.lab6.repository.cache.EventSubscriberIndex;
+import com.example.lab6.utils.events.ChangeEventType;
 import com.example.lab6.utils.events.EventChangeEvent;
+import com.example.lab6.utils.observer.EventBus;
 import com.example.lab6.utils.observer.Observable;
 import com.example.lab6.utils.observer.Observer;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 public class EventService implements Observable<EventChangeEvent> {
 
    EventRepository<Long, Event> repoEvent;
     UserRepository<Long, User> repoUser;
     EventValidator eventValidator;
+    private final EventSubscriberIndex subscriberIndex;
+    private final ReminderScheduler reminders;
 
     public EventService(EventRepository<Long, Event> repoEvent, UserRepository<Long, User> repoUser, EventValidator eventValidator) {
         this.repoEvent = repoEvent;
         this.repoUser = repoUser;
         this.eventValidator = eventValidator;
+        this.subscriberIndex = new EventSubscriberIndex(repoEvent);
+        this.reminders = new ReminderScheduler(this);
+        addObserver(reminders);
     }
 
     public void addEvent(Event event) {
         try {
             eventValidator.validate(event);
             repoEvent.save(event);
+            notifyObservers(new EventChangeEvent(ChangeEventType.ADD, event));
         } catch (ValidationException ex) {
             throw new ValidationException(ex.getMessage());
         }
     }
 
+    /**
+     * @return the events the user did not subscribe to, by start date
+     */
     public List<Event> getAllEvents(Long id) {
-        Iterable<Event> list = repoEvent.findAll();
-
-        List<Event> events = new ArrayList<>();
-
-        list.forEach(events::add);
-
-        Predicate<Event> event = x -> !x.getSubscribers().contains(id);
-
-        events = events.stream().filter(event).collect(Collectors.toList());
+        return getAllEvents(id, 0, Integer.MAX_VALUE);
+    }
 
-        return events;
+    public List<Event> getAllEvents(Long id, int offset, int limit) {
+        return repoEvent.findNotSubscribed(id, offset, limit);
     }
 
+    /**
+     * @return the events the user subscribed to, by start date
+     */
     public List<Event> getMyEvents(Long id) {
-        Iterable<Event> subscribedEvents = repoEvent.findAll();
-
-        List<Event> myEvents = new ArrayList<>();
-
-        subscribedEvents.forEach(myEvents::add);
-
-        Predicate<Event> event = x -> x.getSubscribers().contains(id);
-
-        myEvents = myEvents.stream().filter(event).collect(Collectors.toList());
+        return getMyEvents(id, 0, Integer.MAX_VALUE);
+    }
 
-        return myEvents;
+    public List<Event> getMyEvents(Long id, int offset, int limit) {
+        return repoEvent.findSubscribed(id, offset, limit);
     }
 
+    /**
+     * @return the events created by the user, by start date
+     */
     public List<Event> getCreatedByMeEvents(Long id) {
-        Iterable<Event> list = repoEvent.findAll();
-        List<Event> myEvents = new ArrayList<>();
-        List<Event> myEventsList;
+        return getCreatedByMeEvents(id, 0, Integer.MAX_VALUE);
+    }
 
-        Predicate<Event> event = x -> x.getAdmin().equals(id);
-        list.forEach(myEvents::add);
+    public List<Event> getCreatedByMeEvents(Long id, int offset, int limit) {
+        return repoEvent.findAdministered(id, offset, limit);
+    }
+
+    public boolean isSubscribed(Long idEvent, Long idUser) {
+        return subscriberIndex.isSubscribed(idEvent, idUser);
+    }
 
-        myEventsList = myEvents.stream().filter(event).collect(Collectors.toList());
-        return myEventsList;
+    public int countSubscribers(Long idEvent) {
+        return subscriberIndex.countSubscribers(idEvent);
     }
 
     public void removeEvent(Long id) {
         Event event = repoEvent.findOne(id);
         repoEvent.remove(event);
+        subscriberIndex.removeEvent(id);
+        notifyObservers(new EventChangeEvent(ChangeEventType.DELETE, event));
     }
 
-    private final List<Observer<EventChangeEvent>> observers = new ArrayList<>();
+    private final EventBus<EventChangeEvent> observers = new EventBus<>("events");
 
     @Override
     public void addObserver(Observer<EventChangeEvent> e) {
-
+        observers.addObserver(e);
     }
 
     @Override
     public void removeObserver(Observer<EventChangeEvent> e) {
-
+        observers.removeObserver(e);
     }
 
     @Override
     public void notifyObservers(EventChangeEvent t) {
-        observers.forEach(x -> x.update(t));
+        observers.notifyObservers(t);
+    }
+
+    /**
+     * @return the observers of the events and of the reminders, to subscribe with a queue of their own
+     */
+    public EventBus<EventChangeEvent> getEventBus() {
+        return observers;
     }
 
     public void unsubscribe(Long idEvent, Long idUser) {
         Event event = repoEvent.findOne(idEvent);
 
         repoEvent.delete(event, idUser);
+        subscriberIndex.unsubscribe(idEvent, idUser);
+        notifyObservers(new EventChangeEvent(ChangeEventType.UPDATE, event, idUser));
     }
 
+    /**
+     * Subscribes the user to the event, unless it is already subscribed
+     */
     public void subscribe(Long idEvent, Long myId) {
+        if (subscriberIndex.isSubscribed(idEvent, myId))
+            return;
         Event event = repoEvent.findOne(idEvent);
         List<Long> subs;
         List<Long> subscribers = new ArrayList<>();
@@ -120,13 +147,45 @@ public class EventService implements Observable<EventChangeEvent> {
         event.setSubscribers(subscribers);
 
         repoEvent.update(event);
+        subscriberIndex.subscribe(idEvent, myId);
+        notifyObservers(new EventChangeEvent(ChangeEventType.UPDATE, event, myId));
     }
 
     public void saveNotificationDate(Long user, Long event) {
-      repoEvent.saveLastNotificationDate(event, user);
+      repoEvent.saveLastNotificationDate(event, user, LocalDateTime.now());
     }
 
     public LocalDateTime getLastNotificationDate(Long user, Long event) {
         return repoEvent.getLastNotificationDate(event, user);
     }
+
+    /**
+     * @see EventRepository#findSubscriptions(Collection, LocalDateTime, LocalDateTime)
+     */
+    public List<EventSubscription> getSubscriptions(Collection<Long> users, LocalDateTime from, LocalDateTime to) {
+        return repoEvent.findSubscriptions(users, from, to);
+    }
+
+    /**
+     * Marks the reminders of several subscriptions (event, user) as sent at the given date
+     */
+    public void saveNotificationDates(Collection<Tuple<Long, Long>> subscriptions, LocalDateTime date) {
+        repoEvent.saveLastNotificationDates(subscriptions, date);
+    }
+
+    /**
+     * Starts sending the reminders of the user as REMINDER events to the observers
+     */
+    public void watchReminders(Long user) {
+        reminders.start();
+        reminders.watch(user);
+    }
+
+    public void unwatchReminders(Long user) {
+        reminders.unwatch(user);
+    }
+
+    public void stopReminders() {
+        reminders.stop();
+    }
 }
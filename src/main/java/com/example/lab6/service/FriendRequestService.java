@@ -2,32 +2,33 @@ package com.example.lab6.service;
 
 import com.example.lab6.model.*;
 import com.example.lab6.model.validators.ValidationException;
+import com.example.lab6.repository.FriendRequestRepository;
 import com.example.lab6.repository.Repository;
 import com.example.lab6.repository.UserRepository;
 import com.example.lab6.utils.events.ChangeEventType;
 import com.example.lab6.utils.events.FriendRequestChangeEvent;
+import com.example.lab6.utils.observer.EventBus;
 import com.example.lab6.utils.observer.Observable;
 import com.example.lab6.utils.observer.Observer;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 public class FriendRequestService implements Observable<FriendRequestChangeEvent> {
     Repository<Tuple<Long, Long>, Friendship> repoFriendship;
-    Repository<Tuple<Long, Long>, FriendRequest> friendRequestRepo;
+    FriendRequestRepository<Tuple<Long, Long>, FriendRequest> friendRequestRepo;
     UserRepository<Long, User> repoUser;
+    private final DtoHydrator hydrator;
 
     /**
      * The constructor
      * @param friendRequestRepo
      */
-    public FriendRequestService(Repository<Tuple<Long, Long>, FriendRequest> friendRequestRepo,UserRepository<Long, User> repoUser, Repository<Tuple<Long, Long>, Friendship> repoFriendship ) {
+    public FriendRequestService(FriendRequestRepository<Tuple<Long, Long>, FriendRequest> friendRequestRepo,UserRepository<Long, User> repoUser, Repository<Tuple<Long, Long>, Friendship> repoFriendship ) {
         this.friendRequestRepo = friendRequestRepo;
         this.repoUser = repoUser;
         this.repoFriendship = repoFriendship;
+        this.hydrator = new DtoHydrator(repoUser);
     }
 
     /**
@@ -52,35 +53,15 @@ public class FriendRequestService implements Observable<FriendRequestChangeEvent
     }
 
     /**
-     * Accept a friend request method
+     * Accept a friend request method; the request is removed and the friendship saved with one statement
      * @param from - id of the sender user
      * @param to - id of the receiver user
      */
     public void acceptFriendRequest(Long from, Long to)
     {
-        if(repoUser.findOne(from) == null)
-            throw new ValidationException("The user do not exist!");
-
-        if(repoUser.findOne(to) == null)
-            throw new ValidationException("The user do not exist!");
-
-        Tuple<Long, Long> ship = new Tuple<>(from, to);
-        if(friendRequestRepo.findOne(ship) != null) {
-            if (friendRequestRepo.findOne(ship).getStatus() != Status.PENDING)
-                throw new ValidationException("The request is not possible");
-        }
-        if(friendRequestRepo.findOne(ship) != null){
-
-       // FriendRequest friendRequest = new FriendRequest(friendRequestRepo.findOne(ship).getFrom(), friendRequestRepo.findOne(ship).getTo(), friendRequestRepo.findOne(ship).getStatus(), friendRequestRepo.findOne(ship).getLastUpdatedDate());
-            FriendRequest friendRequest = friendRequestRepo.findOne(ship);
-
-        FriendRequest old = friendRequest;
-        friendRequest.setStatus(Status.APPROVED);
-        friendRequestRepo.remove(friendRequest);
-        //friendRequestRepo.update(friendRequest);
-        Friendship friendship = new Friendship(ship);
-        repoFriendship.save(friendship);
-        notifyObservers(new FriendRequestChangeEvent(ChangeEventType.ADD, friendRequest));}
+        FriendRequest friendRequest = friendRequestRepo.accept(from, to, LocalDateTime.now());
+        if (friendRequest != null)
+            notifyObservers(new FriendRequestChangeEvent(ChangeEventType.UPDATE, friendRequest));
     }
 
     /**
@@ -90,23 +71,11 @@ public class FriendRequestService implements Observable<FriendRequestChangeEvent
      */
     public void rejectFriendRequest(Long from, Long to)
     {
-        if(repoUser.findOne(from) == null)
-            throw new ValidationException("The user do not exist!");
-
-        if(repoUser.findOne(to) == null)
-            throw new ValidationException("The user do not exist!");
-
-        Tuple<Long, Long> ship = new Tuple<>(from, to);
-        if(friendRequestRepo.findOne(ship) != null) {
-            if (friendRequestRepo.findOne(ship).getStatus() != Status.PENDING)
-                throw new ValidationException("The request is not possible");
+        FriendRequest friendRequest = friendRequestRepo.removePending(from, to);
+        if (friendRequest != null) {
+            friendRequest.setStatus(Status.REJECTED);
+            notifyObservers(new FriendRequestChangeEvent(ChangeEventType.UPDATE, friendRequest));
         }
-        if(friendRequestRepo.findOne(ship) != null){
-        FriendRequest friendRequest = new FriendRequest(friendRequestRepo.findOne(ship).getFrom(), friendRequestRepo.findOne(ship).getTo(), friendRequestRepo.findOne(ship).getStatus(), friendRequestRepo.findOne(ship).getLastUpdatedDate());
-        friendRequest.setStatus(Status.REJECTED);
-        friendRequest.setId(ship);
-        friendRequestRepo.remove(friendRequest);
-        notifyObservers(new FriendRequestChangeEvent(ChangeEventType.ADD, friendRequest));}
     }
 
     /**
@@ -116,117 +85,85 @@ public class FriendRequestService implements Observable<FriendRequestChangeEvent
      */
     public void deleteFriendRequest(Long from, Long to)
     {
-        if(repoUser.findOne(from) == null)
-            throw new ValidationException("The user do not exist!");
-
-        if(repoUser.findOne(to) == null)
-            throw new ValidationException("The user do not exist!");
-
-        Tuple<Long, Long> ship = new Tuple<>(from, to);
-        if(friendRequestRepo.findOne(ship) != null) {
-            if (friendRequestRepo.findOne(ship).getStatus() != Status.PENDING)
-                throw new ValidationException("The request is not possible");
-        }
-
-        if(friendRequestRepo.findOne(ship) != null)
-        { FriendRequest  friendRequest= new FriendRequest(friendRequestRepo.findOne(ship).getFrom(), friendRequestRepo.findOne(ship).getTo(), friendRequestRepo.findOne(ship).getStatus(), friendRequestRepo.findOne(ship).getLastUpdatedDate());
-        friendRequest.setId(ship);
-        friendRequestRepo.remove(friendRequest);
-        notifyObservers(new FriendRequestChangeEvent(ChangeEventType.ADD, friendRequest));}
+        FriendRequest friendRequest = friendRequestRepo.removePending(from, to);
+        if (friendRequest != null)
+            notifyObservers(new FriendRequestChangeEvent(ChangeEventType.DELETE, friendRequest));
     }
 
     /**
-     * return all the friend request of a user
+     * return all the pending friend requests received by a user, newest first
      * @param id
      * @return
      */
     public List<FriendRequestDTO> getFriendRequest(Long id){
-        if(repoUser.findOne(id) == null)
-            throw new ValidationException("Invalid id");
-
-        List<FriendRequestDTO> requestlist = new ArrayList<>();
-        Iterable<FriendRequest> requestIterable = friendRequestRepo.findAll();
-
-       // Predicate<FriendRequest> from = x->x.getFrom().equals(id);
-        Predicate<FriendRequest> to = x->x.getTo().equals(id);
-        Predicate<FriendRequest> status = x->x.getStatus().equals(Status.PENDING);
-        Predicate<FriendRequest> requestPredicate = status.and(to);
-        List<FriendRequest> list = new ArrayList<>();
-        requestIterable.forEach(list::add);
-        list.stream().filter(requestPredicate).map(x ->{
-            return new FriendRequestDTO(repoUser.findOne(x.getFrom()), repoUser.findOne(x.getTo()), x.getStatus(), x.getLastUpdatedDate());
-
-        }).forEach(requestlist::add);
-
-        return requestlist;
+        return getFriendRequestsOnPage(0, Integer.MAX_VALUE, id);
     }
 
     /**
-     * return all the friend request of a user
+     * return all the pending friend requests sent by a user, newest first
      * @param id
      * @return
      */
     public List<FriendRequestDTO> getMyFriendsRequestes(Long id){
+        return getFriendRequestsByMeOnPage(0, Integer.MAX_VALUE, id);
+    }
+
+    public List<FriendRequestDTO> getFriendRequestsOnPage(int leftLimit,int rightLimit, Long id) {
         if(repoUser.findOne(id) == null)
             throw new ValidationException("Invalid id");
 
-        List<FriendRequestDTO> requestlist = new ArrayList<>();
-        Iterable<FriendRequest> requestIterable = friendRequestRepo.findAll();
-
-        Predicate<FriendRequest> from = x->x.getFrom().equals(id);
-        Predicate<FriendRequest> status = x->x.getStatus().equals(Status.PENDING);
-        //Predicate<FriendRequest> to = x->x.getTo().equals(id);
-        Predicate<FriendRequest> requestPredicate = from.and(status);
-        List<FriendRequest> list = new ArrayList<>();
-        requestIterable.forEach(list::add);
-        list.stream().filter(requestPredicate).map(x ->{
-            return new FriendRequestDTO(repoUser.findOne(x.getFrom()), repoUser.findOne(x.getTo()), x.getStatus(), x.getLastUpdatedDate());
+        return hydrator.friendRequests(friendRequestRepo.findReceived(id, Status.PENDING, leftLimit, rightLimit));
+    }
 
-        }).forEach(requestlist::add);
+    public List<FriendRequestDTO> getFriendRequestsByMeOnPage(int leftLimit,int rightLimit, Long id) {
+        if(repoUser.findOne(id) == null)
+            throw new ValidationException("Invalid id");
 
-        return requestlist;
+        return hydrator.friendRequests(friendRequestRepo.findSent(id, Status.PENDING, leftLimit, rightLimit));
     }
 
-    public List<FriendRequestDTO> getFriendRequestsOnPage(int leftLimit,int rightLimit, Long id) {
-        List<FriendRequestDTO> friendslist = getFriendRequest(id);
-        return friendslist.stream().skip(leftLimit)
-                .limit(rightLimit)
-                .collect(Collectors.toList());
+    /**
+     * @return the number of pending friend requests received by the user
+     */
+    public int countFriendRequests(Long id) {
+        return friendRequestRepo.countReceived(id, Status.PENDING);
     }
 
-    public List<FriendRequestDTO> getFriendRequestsByMeOnPage(int leftLimit,int rightLimit, Long id) {
-        List<FriendRequestDTO> friendslist = getMyFriendsRequestes(id);
-        return friendslist.stream().skip(leftLimit)
-                .limit(rightLimit)
-                .collect(Collectors.toList());
+    /**
+     * @return the number of pending friend requests sent by the user
+     */
+    public int countMyFriendRequests(Long id) {
+        return friendRequestRepo.countSent(id, Status.PENDING);
     }
 
     public FriendRequest existsFriendRequests(Long id1, Long id2){
-        Tuple<Long, Long> ship = new Tuple<>(id1, id2);
-        if(friendRequestRepo.findOne(ship) == null)
-            return null;
-        else {
-            if(friendRequestRepo.findOne(ship).getStatus().equals(Status.PENDING))
-                return friendRequestRepo.findOne(ship);
-            else
-                return null;
-            }
-    }
-
-    private List<Observer> observers = new ArrayList<>();
+        FriendRequest friendRequest = friendRequestRepo.findOne(new Tuple<>(id1, id2));
+        if(friendRequest != null && friendRequest.getStatus().equals(Status.PENDING))
+            return friendRequest;
+        return null;
+    }
+
+    private final EventBus<FriendRequestChangeEvent> observers = new EventBus<>("friend requests");
+
     @Override
     public void addObserver(Observer<FriendRequestChangeEvent> e) {
-        observers.add(e);
-
+        observers.addObserver(e);
     }
 
     @Override
     public void removeObserver(Observer<FriendRequestChangeEvent> e) {
-
+        observers.removeObserver(e);
     }
 
     @Override
     public void notifyObservers(FriendRequestChangeEvent t) {
-        observers.forEach(x->x.update(t));
+        observers.notifyObservers(t);
+    }
+
+    /**
+     * @return the observers of the friend requests, to subscribe with a queue of their own
+     */
+    public EventBus<FriendRequestChangeEvent> getEventBus() {
+        return observers;
     }
 }
@@ -2,29 +2,38 @@ package com.example.lab6.service;
 
 import com.example.lab6.model.*;
 import com.example.lab6.model.validators.ValidationException;
+import com.example.lab6.repository.FriendshipRepository;
 import com.example.lab6.repository.UserRepository;
-import com.example.lab6.repository.paging.PagingRepository;
+import com.example.lab6.repository.paging.KeysetPager;
+import com.example.lab6.utils.events.ChangeEventType;
+import com.example.lab6.utils.events.FriendRequestChangeEvent;
+import com.example.lab6.utils.events.FriendshipChangeEvent;
 import com.example.lab6.utils.events.UserChangeEvent;
+import com.example.lab6.utils.observer.EventBus;
 import com.example.lab6.utils.observer.Observable;
 import com.example.lab6.utils.observer.Observer;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Predicate;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
-public class FriendshipService implements Observable<UserChangeEvent> {
+public class FriendshipService implements Observable<UserChangeEvent>, Observer<FriendRequestChangeEvent> {
     UserRepository<Long, User> repoUser;
-    PagingRepository<Tuple<Long, Long>, Friendship> repoFriendship;
+    FriendshipRepository<Tuple<Long, Long>, Friendship> repoFriendship;
+    private final DtoHydrator hydrator;
+    private final KeysetPager friendPages = new KeysetPager(1000);
+    private Communities communities;
 
     /**
      * @param repoUser
      * @param repoFriendship
      */
-    public FriendshipService(UserRepository repoUser, PagingRepository<Tuple<Long, Long>, Friendship> repoFriendship) {
+    public FriendshipService(UserRepository<Long, User> repoUser, FriendshipRepository<Tuple<Long, Long>, Friendship> repoFriendship) {
         this.repoUser = repoUser;
         this.repoFriendship = repoFriendship;
+        this.hydrator = new DtoHydrator(repoUser);
     }
 
     /**
@@ -41,12 +50,13 @@ public class FriendshipService implements Observable<UserChangeEvent> {
         if (repoFriendship.findOne(entity.getId()) != null)
             throw new ValidationException("Already exists");
 
-        repoUser.findOne(id1).addFriend(repoUser.findOne(id2));
-        repoUser.findOne(id2).addFriend(repoUser.findOne(id1));
         LocalDateTime dateTime = LocalDateTime.now();
 
         entity.setDate(dateTime);
-        return repoFriendship.save(entity);
+        Friendship saved = repoFriendship.save(entity);
+        friendshipAdded(id1, id2);
+        notifyFriendshipObservers(new FriendshipChangeEvent(ChangeEventType.ADD, entity));
+        return saved;
     }
 
     public Friendship exists(Long id1, Long id2) {
@@ -69,10 +79,77 @@ public class FriendshipService implements Observable<UserChangeEvent> {
         Tuple<Long, Long> ship = new Tuple<>(id1, id2);
         repoFriendship.remove(repoFriendship.findOne(ship));
         //repoFriendship.setFriendships();
+        synchronized (this) {
+            if (communities != null)
+                communities.removeFriendship(id1, id2);
+        }
+        notifyFriendshipObservers(new FriendshipChangeEvent(ChangeEventType.DELETE, new Friendship(ship)));
     }
 
     /**
-     * return all the friendships of a user
+     * @return the communities of the friendship graph, built on the first call from all
+     * the friendships and kept up to date by add, removeFriendship and the accepted requests
+     */
+    public synchronized Communities getCommunities() {
+        if (communities == null) {
+            Graph graph = new Graph(repoFriendship);
+            graph.createGraph();
+            communities = new Communities(graph);
+        }
+        return communities;
+    }
+
+    public int nrCommunities() {
+        return getCommunities().count();
+    }
+
+    /**
+     * @param timeBudget milliseconds after which the diameters found so far are kept as bounds, 0 for no limit
+     * @return the community whose two most distant users are the farthest apart, null if there are no friendships
+     */
+    public synchronized CommunityDiameter mostSociableCommunity(long timeBudget) {
+        return new Diameters(getCommunities().getGraph(), timeBudget, Integer.MAX_VALUE, ForkJoinPool.commonPool())
+                .mostSociable();
+    }
+
+    private synchronized void friendshipAdded(Long id1, Long id2) {
+        if (communities != null)
+            communities.addFriendship(id1, id2);
+    }
+
+    /**
+     * Keeps the communities up to date with the friendships made by accepting a request
+     */
+    @Override
+    public void update(FriendRequestChangeEvent event) {
+        FriendRequest request = event.getData();
+        if (event.getType() == ChangeEventType.UPDATE && request.getStatus() == Status.APPROVED) {
+            friendshipAdded(request.getFrom(), request.getTo());
+            notifyFriendshipObservers(new FriendshipChangeEvent(ChangeEventType.ADD,
+                    new Friendship(new Tuple<>(request.getFrom(), request.getTo()))));
+        }
+    }
+
+    private final List<Observer<FriendshipChangeEvent>> friendshipObservers = new ArrayList<>();
+
+    /**
+     * @param e notified of every friendship made or removed, also by accepting a friend request
+     */
+    public void addFriendshipObserver(Observer<FriendshipChangeEvent> e) {
+        friendshipObservers.add(e);
+    }
+
+    public void removeFriendshipObserver(Observer<FriendshipChangeEvent> e) {
+        friendshipObservers.remove(e);
+    }
+
+    private void notifyFriendshipObservers(FriendshipChangeEvent t) {
+        friendPages.clear();
+        friendshipObservers.forEach(x -> x.update(t));
+    }
+
+    /**
+     * return all the friendships of a user, newest first
      *
      * @param id
      * @return
@@ -80,47 +157,41 @@ public class FriendshipService implements Observable<UserChangeEvent> {
     public List<FriendshipDTO> getFriendships(Long id) {
         if (repoUser.findOne(id) == null)
             throw new ValidationException("Invalid id");
-        User user = repoUser.findOne(id);
-        List<FriendshipDTO> friendslist = new ArrayList<>();
-        Iterable<Friendship> friendshipIterable = repoFriendship.findAll();
-
-        Predicate<Friendship> firstfriend = x -> x.getE1().equals(id);
-        Predicate<Friendship> secondfriend = x -> x.getE2().equals(id);
-        Predicate<Friendship> friendshipPredicate = firstfriend.or(secondfriend);
-        List<Friendship> list = new ArrayList<>();
-        friendshipIterable.forEach(list::add);
-        list.stream().filter(friendshipPredicate).map(x -> {
-            if (x.getE1().equals(id))
-                return new FriendshipDTO(repoUser.findOne(x.getE2()), x.getDate());
-            else
-                return new FriendshipDTO(repoUser.findOne(x.getE1()), x.getDate());
-        }).forEach(friendslist::add);
-
-        return friendslist;
+        return hydrator.friendships(repoFriendship.friendsOf(id));
     }
 
-    private final List<Observer<UserChangeEvent>> observers = new ArrayList<>();
+    private final EventBus<UserChangeEvent> observers = new EventBus<>("friendships");
 
     @Override
     public void addObserver(Observer<UserChangeEvent> e) {
-        observers.add(e);
+        observers.addObserver(e);
     }
 
     @Override
     public void notifyObservers(UserChangeEvent t) {
-        observers.forEach(x -> x.update(t));
+        observers.notifyObservers(t);
     }
 
     @Override
     public void removeObserver(Observer<UserChangeEvent> e) {
-
+        observers.removeObserver(e);
     }
 
+    /**
+     * @return the friendships of the user from leftLimit to leftLimit + rightLimit, newest first;
+     * the next page continues after the last friendship of this one
+     */
     public List<FriendshipDTO> getMyFriendsOnPage(int leftLimit, int rightLimit, Long id) {
-        List<FriendshipDTO> friendslist = getFriendships(id);
-        return friendslist.stream().skip(leftLimit)
-                .limit(rightLimit)
-                .collect(Collectors.toList());
+        if (repoUser.findOne(id) == null)
+            throw new ValidationException("Invalid id");
+        return hydrator.friendships(friendPages.page(id, leftLimit, rightLimit, pageable -> repoFriendship.friendsOf(id, pageable)));
+    }
+
+    /**
+     * @return the number of friends of the user
+     */
+    public int countFriends(Long id) {
+        return repoFriendship.countFriends(id);
     }
 
 }
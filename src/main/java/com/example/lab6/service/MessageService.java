@@ -2,28 +2,35 @@ package com.example.lab6.service;
 
 import com.example.lab6.model.*;
 import com.example.lab6.model.validators.ValidationException;
-import com.example.lab6.repository.Repository;
+import com.example.lab6.repository.FriendshipRepository;
+import com.example.lab6.repository.GroupRepository;
+import com.example.lab6.repository.MessageRepository;
 import com.example.lab6.repository.UserRepository;
+import com.example.lab6.repository.cache.FriendIdCache;
 import com.example.lab6.repository.paging.Pageable;
-import com.example.lab6.repository.paging.PagingRepository;
 import com.example.lab6.utils.events.ChangeEventType;
 import com.example.lab6.utils.events.MessageChangeEvent;
+import com.example.lab6.utils.observer.EventBus;
 import com.example.lab6.utils.observer.Observable;
 import com.example.lab6.utils.observer.Observer;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.function.Predicate;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class MessageService implements Observable<MessageChangeEvent> {
-    PagingRepository<Long, MessageDTO> repoMessage;
+    MessageRepository<Long, MessageDTO> repoMessage;
     UserRepository<Long, User> repoUser;
-    Repository<Tuple<Long, Long>, Friendship> repoFriendship;
-    Repository<Long, Group> repoGroup;
+    FriendshipRepository<Tuple<Long, Long>, Friendship> repoFriendship;
+    GroupRepository<Long, Group> repoGroup;
+    private final DtoHydrator hydrator;
+    FriendIdCache friendIds;
 
     /**
      * Constructor
@@ -31,11 +38,31 @@ public class MessageService implements Observable<MessageChangeEvent> {
      * @param repoMessage
      * @param repoUser
      */
-    public MessageService(PagingRepository<Long, MessageDTO> repoMessage, UserRepository<Long, User> repoUser, Repository<Tuple<Long, Long>, Friendship> repoFriendship, Repository<Long, Group> repoGroup) {
+    public MessageService(MessageRepository<Long, MessageDTO> repoMessage, UserRepository<Long, User> repoUser, FriendshipRepository<Tuple<Long, Long>, Friendship> repoFriendship, GroupRepository<Long, Group> repoGroup) {
+        this(repoMessage, repoUser, repoFriendship, repoGroup, null);
+    }
+
+    /**
+     * @param friendIds the cached friends of the users, null to check the friendships in the repository
+     */
+    public MessageService(MessageRepository<Long, MessageDTO> repoMessage, UserRepository<Long, User> repoUser, FriendshipRepository<Tuple<Long, Long>, Friendship> repoFriendship, GroupRepository<Long, Group> repoGroup, FriendIdCache friendIds) {
         this.repoMessage = repoMessage;
         this.repoUser = repoUser;
         this.repoFriendship = repoFriendship;
         this.repoGroup = repoGroup;
+        this.friendIds = friendIds;
+        this.hydrator = new DtoHydrator(repoUser, repoMessage);
+    }
+
+    /**
+     * @return the users that are friends of the user, in the order of the candidates;
+     * a friend is always an existing user
+     */
+    private List<Long> friendsAmong(Long user, List<Long> candidates) {
+        if (friendIds != null)
+            return friendIds.friendsAmong(user, candidates);
+        Map<Long, Boolean> status = repoUser.findFriendStatus(user, candidates);
+        return candidates.stream().filter(x -> Boolean.TRUE.equals(status.get(x))).collect(Collectors.toList());
     }
 
     /**
@@ -44,45 +71,80 @@ public class MessageService implements Observable<MessageChangeEvent> {
      * @param from
      * @param to
      * @param message
+     * @return the id of the saved message
      */
-    public void sendMessage(Long from, List<Long> to, String message) {
+    public Long sendMessage(Long from, List<Long> to, String message) {
         if (repoUser.findOne(from) == null)
             throw new ValidationException("The user doesn't exist!");
 
-        List<Long> existentFriendship = new ArrayList<>();
-        for (Long user : to) {
-
-            if ((repoFriendship.findOne(new Tuple<>(from, user)) != null)) {
-                existentFriendship.add(user);
-            }
-        }
+        Long id = null;
+        List<Long> existentFriendship = friendsAmong(from, to);
 
         if (existentFriendship.size() > 0) {
-            List<Long> distinctTos = existentFriendship.stream().distinct().collect(Collectors.toList());
-            distinctTos.forEach(
-                    x -> {
-                        if (repoUser.findOne(x) == null)
-                            throw new ValidationException("The user doesn't exist!");
-                    }
-            );
-
             if (message.length() == 0)
                 throw new ValidationException("The message is empty!");
 
             MessageDTO messageDTO = new MessageDTO(from, to, message, LocalDateTime.now(), null);
             repoMessage.save(messageDTO);
+            id = messageDTO.getId();
             notifyObservers(new MessageChangeEvent(ChangeEventType.ADD, messageDTO));
         } else
             throw new ValidationException("The user has no friends!");
 
         if (existentFriendship.size() != to.size())
             throw new ValidationException("The message was sent only to friends!");
+        return id;
     }
 
+    /**
+     * send many messages at once, for imports and broadcasts; the messages are saved
+     * in one transaction, so either all of them are sent or none
+     *
+     * @param messages the messages, from existing users to their friends; the ones without date are dated now
+     * @return the ids of the saved messages, in order
+     * throw ValidationException if a sender does not exist or a recipient is not a friend of the sender,
+     * and then no message is sent
+     */
+    public List<Long> sendMessages(List<MessageDTO> messages) {
+        Map<Long, Set<Long>> recipients = new LinkedHashMap<>();
+        for (MessageDTO messageDTO : messages) {
+            if (messageDTO.getMessage() == null || messageDTO.getMessage().length() == 0)
+                throw new ValidationException("The message is empty!");
+            if (messageDTO.getTo() == null || messageDTO.getTo().isEmpty())
+                throw new ValidationException("The message has no recipients!");
+            recipients.computeIfAbsent(messageDTO.getFrom(), x -> new LinkedHashSet<>()).addAll(messageDTO.getTo());
+        }
+        Map<Long, User> senders = repoUser.findByIds(recipients.keySet());
+        for (Map.Entry<Long, Set<Long>> entry : recipients.entrySet()) {
+            if (!senders.containsKey(entry.getKey()))
+                throw new ValidationException("The user doesn't exist!");
+            List<Long> candidates = new ArrayList<>(entry.getValue());
+            List<Long> friends = friendsAmong(entry.getKey(), candidates);
+            if (friends.isEmpty())
+                throw new ValidationException("The user has no friends!");
+            if (friends.size() != candidates.size())
+                throw new ValidationException("The messages can be sent only to friends!");
+        }
 
+        repoMessage.saveAll(messages);
+        List<Long> ids = new ArrayList<>(messages.size());
+        for (MessageDTO messageDTO : messages) {
+            if (messageDTO.getId() == null)
+                throw new ValidationException("The messages could not be sent!");
+            ids.add(messageDTO.getId());
+        }
+        messages.forEach(x -> notifyObservers(new MessageChangeEvent(ChangeEventType.ADD, x)));
+        return ids;
+    }
+
+
+    /**
+     * Saves the message in the group; the messages of the group are not loaded for it
+     */
     public void sendMessageGroup(Group group, MessageDTO messageDTO) {
-        group.addMessage(messageDTO);
-        repoGroup.update(group);
+        repoGroup.saveMessage(group.getId(), messageDTO);
+        if (group.getMessages() != null)
+            group.addMessage(messageDTO);
         notifyObservers(new MessageChangeEvent(ChangeEventType.ADD, messageDTO));
     }
 
@@ -156,15 +218,14 @@ public class MessageService implements Observable<MessageChangeEvent> {
      * @return
      */
     public List<Message> getConversation(Long id1, Long id2) {
-        Iterable<MessageDTO> messages = this.repoMessage.findAll();
-        List<MessageDTO> result = new ArrayList<>();
-        for (MessageDTO mess : messages) {
-            if ((mess.getFrom().equals(id1) && mess.getTo().contains(id2)) || (mess.getFrom().equals(id2) && mess.getTo().contains(id1)))
-                result.add(mess);
-        }
+        return convertMessages(repoMessage.findConversation(id1, id2, 0, Integer.MAX_VALUE));
+    }
 
-        result.sort(Comparator.comparing(MessageDTO::getDate).reversed());
-        return convertMessages(result);
+    /**
+     * @return the number of messages exchanged by two users
+     */
+    public int countConversation(Long id1, Long id2) {
+        return repoMessage.countConversation(id1, id2);
     }
 
     /**
@@ -174,70 +235,35 @@ public class MessageService implements Observable<MessageChangeEvent> {
      * @return
      */
     public List<Message> convertMessages(List<MessageDTO> list) {
-        List<Message> result = new ArrayList<>();
-        list.forEach(x -> {
-            List<User> toUsers = new ArrayList<>();
-            x.getTo().forEach(y -> {
-                toUsers.add(repoUser.findOne(y));
-            });
-            if (repoMessage.findOne(x.getReply()) == null) {
-                Message message = new Message(x.getId(), repoUser.findOne(x.getFrom()), toUsers, x.getMessage(), x.getDate());
-                result.add(message);
-            } else {
-                Message message = new Message(x.getId(), repoUser.findOne(x.getFrom()), toUsers, x.getMessage(), x.getDate(), result.get(result.size() - 1));
-                result.add(message);
-            }
-        });
-        return result;
+        return hydrator.messages(list);
+    }
+
+    /**
+     * @param message the id of a message
+     * @param limit   maximum number of messages returned
+     * @return the message and the messages it replies to, up the reply chain, each one linked to its parent;
+     * used to load the older parents of a reply lazily
+     */
+    public List<Message> getReplyThread(Long message, int limit) {
+        return convertMessages(repoMessage.findThread(message, limit));
     }
 
     public List<MessageDTO> getMessagesByDate(LocalDateTime startDate, LocalDateTime endDate, Long loggedUser) {
-        Iterable<MessageDTO> messages = repoMessage.findAll();
-        List<MessageDTO> messageDTOS = new ArrayList<>();
         List<Long> tos = new ArrayList<>();
         tos.add(loggedUser);
 
-        messages.forEach(x -> {
-            Long to = x.getTo().get(0);
-            if (to.equals(loggedUser)) {
-                MessageDTO message = new MessageDTO(x.getFrom(), tos, x.getMessage(), x.getDate(), x.getReply());
-                messageDTOS.add(message);
-            }
-        });
-
-        Predicate<MessageDTO> isAfter = x -> x.getDate().isAfter(startDate);
-        Predicate<MessageDTO> isBefore = x -> x.getDate().isBefore(endDate);
-        Predicate<MessageDTO> isEqual = x -> x.getDate().isEqual(endDate);
-        Predicate<MessageDTO> isFinal = isAfter.and(isBefore).or(isEqual);
-
-        List<MessageDTO> messageDTOS1 = messageDTOS.stream().filter(isFinal).collect(Collectors.toList());
-
-        return messageDTOS1;
+        return repoMessage.findReceived(loggedUser, startDate, endDate, 0, Integer.MAX_VALUE).stream()
+                .map(x -> new MessageDTO(x.getFrom(), tos, x.getMessage(), x.getDate(), x.getReply()))
+                .collect(Collectors.toList());
     }
 
     public List<MessageDTO> getMessagesFromAFriend(LocalDateTime startDate, LocalDateTime endDate, Long loggedUser, Long fromUser) {
-        Iterable<MessageDTO> messages = repoMessage.findAll();
-        List<MessageDTO> messageDTOS = new ArrayList<>();
         List<Long> tos = new ArrayList<>();
         tos.add(loggedUser);
 
-        messages.forEach(x -> {
-            Long to = x.getTo().get(0);
-            Long from = x.getFrom();
-            if (to.equals(loggedUser) && from.equals(fromUser)) {
-                MessageDTO message = new MessageDTO(x.getFrom(), tos, x.getMessage(), x.getDate(), x.getReply());
-                messageDTOS.add(message);
-            }
-        });
-
-        Predicate<MessageDTO> isAfter = x -> x.getDate().isAfter(startDate);
-        Predicate<MessageDTO> isBefore = x -> x.getDate().isBefore(endDate);
-        Predicate<MessageDTO> isEqual = x -> x.getDate().isEqual(endDate);
-        Predicate<MessageDTO> isFinal = isAfter.and(isBefore).or(isEqual);
-
-        List<MessageDTO> messageDTOS1 = messageDTOS.stream().filter(isFinal).collect(Collectors.toList());
-
-        return messageDTOS1;
+        return repoMessage.findSent(fromUser, loggedUser, startDate, endDate, 0, Integer.MAX_VALUE).stream()
+                .map(x -> new MessageDTO(x.getFrom(), tos, x.getMessage(), x.getDate(), x.getReply()))
+                .collect(Collectors.toList());
     }
 
     /**
@@ -251,28 +277,27 @@ public class MessageService implements Observable<MessageChangeEvent> {
         });
     }
 
-    private List<Observer> observers = new ArrayList<>();
+    private final EventBus<MessageChangeEvent> observers = new EventBus<>("messages");
 
     @Override
     public void addObserver(Observer<MessageChangeEvent> e) {
-        observers.add(e);
+        observers.addObserver(e);
     }
 
     @Override
     public void notifyObservers(MessageChangeEvent t) {
-        observers.forEach(x -> x.update(t));
+        observers.notifyObservers(t);
     }
 
-    public List<Message> getConversationGroup(Long from, List<Long> groupConversation) {
-        Iterable<MessageDTO> messages = this.repoMessage.findAll();
-        List<MessageDTO> result = new ArrayList<>();
-        for (MessageDTO mess : messages) {
-            if ((mess.getFrom().equals(from) && mess.getTo().containsAll(groupConversation)) || (groupConversation.contains(mess.getFrom()) && mess.getTo().contains(from)))
-                result.add(mess);
-        }
-        result.sort(Comparator.comparing(MessageDTO::getDate));
+    /**
+     * @return the observers of the messages, to subscribe with a queue of their own
+     */
+    public EventBus<MessageChangeEvent> getEventBus() {
+        return observers;
+    }
 
-        return convertMessages(result);
+    public List<Message> getConversationGroup(Long from, List<Long> groupConversation) {
+        return convertMessages(repoMessage.findGroupConversation(from, groupConversation, 0, Integer.MAX_VALUE));
     }
 
     public void saveGroup(Group group) {
@@ -288,6 +313,7 @@ public class MessageService implements Observable<MessageChangeEvent> {
 
     @Override
     public void removeObserver(Observer<MessageChangeEvent> e) {
+        observers.removeObserver(e);
     }
 
     private Pageable pageable;
@@ -302,49 +328,34 @@ public class MessageService implements Observable<MessageChangeEvent> {
 //        this.pageable = pageable;
 //    }
 
+    /**
+     * @return the groups of the user, newest first, with their members but without their messages
+     */
     public List<Group> myGroups(Long id) {
-        Iterable<Group> groupIterable = repoGroup.findAll();
-        List<Group> groupList = new ArrayList<>();
-        groupIterable.forEach(groupList::add);
-
-        List<Group> myGroups = new ArrayList<>();
+        return repoGroup.findByMember(id, "", 0, Integer.MAX_VALUE);
+    }
 
-        Predicate<Group> myGroup = x -> x.getMembers().contains(id);
-        groupList.stream().filter(myGroup).forEach(myGroups::add);
-        Collections.reverse(myGroups);
-        return myGroups;
+    public int countGroups(Long id) {
+        return repoGroup.countByMember(id, "");
     }
 
     public List<Group> getGroupsOnPage(int leftLimit, int rightLimit, Long id) {
-        Iterable<Group> groupIterable = repoGroup.findAll();
-        List<Group> groups = myGroups(id);
-        return groups.stream().skip(leftLimit)
-                .limit(rightLimit)
-                .collect(Collectors.toList());
+        return repoGroup.findByMember(id, "", leftLimit, rightLimit);
     }
 
+    /**
+     * @return the groups of the user with a name containing the string, newest first
+     */
     public List<Group> filterName(String string, Long id) {
-        Iterable<Group> groupIterable = repoGroup.findAll();
-        List<Group> groupList = new ArrayList<>();
-        groupIterable.forEach(groupList::add);
-
-        Predicate<Group> name = x -> x.getName().contains(string);
-        Predicate<Group> inGroup = x -> x.getMembers().contains(id);
-        Predicate<Group> filter = name.and(inGroup);
-
-        List<Group> myGroups = new ArrayList<>();
-        groupList.stream().filter(filter).forEach(myGroups::add);
-
-        return myGroups;
+        return repoGroup.findByMember(id, string, 0, Integer.MAX_VALUE);
+    }
 
+    public int countSearchingGroups(Long id, String string) {
+        return repoGroup.countByMember(id, string);
     }
 
     public List<Group> getSearchingGroupsOnPage(int leftLimit, int rightLimit, Long id, String string) {
-
-        List<Group> groups = filterName(string, id);
-        return groups.stream().skip(leftLimit)
-                .limit(rightLimit)
-                .collect(Collectors.toList());
+        return repoGroup.findByMember(id, string, leftLimit, rightLimit);
     }
 
     /**
@@ -356,54 +367,64 @@ public class MessageService implements Observable<MessageChangeEvent> {
     public List<FriendshipDTO> getFriendships(Long id) {
         if (repoUser.findOne(id) == null)
             throw new ValidationException("Invalid id");
-        User user = repoUser.findOne(id);
-        List<FriendshipDTO> friendslist = new ArrayList<>();
-        Iterable<Friendship> friendshipIterable = repoFriendship.findAll();
-
-        Predicate<Friendship> firstfriend = x -> x.getE1().equals(id);
-        Predicate<Friendship> secondfriend = x -> x.getE2().equals(id);
-        Predicate<Friendship> friendshipPredicate = firstfriend.or(secondfriend);
-        List<Friendship> list = new ArrayList<>();
-        friendshipIterable.forEach(list::add);
-        list.stream().filter(friendshipPredicate).map(x -> {
-            if (x.getE1().equals(id))
-                return new FriendshipDTO(repoUser.findOne(x.getE2()), x.getDate());
-            else
-                return new FriendshipDTO(repoUser.findOne(x.getE1()), x.getDate());
-        }).forEach(friendslist::add);
-
-        return friendslist;
+        return hydrator.friendships(repoFriendship.friendsOf(id));
     }
 
 
     public List<FriendshipDTO> getMyFriendsWithMessages(Long id) {
         List<FriendshipDTO> friendslist = getFriendships(id);
-        List<FriendshipDTO> friendshipDTOS = new ArrayList<>();
-        friendslist.forEach(x -> {
-            if (getConversation(id, x.getUser().getId()).size() > 0)
-                friendshipDTOS.add(x);
-        });
-        return friendshipDTOS;
+        Set<Long> partners = repoMessage.findConversationPartners(id);
+        return friendslist.stream()
+                .filter(x -> partners.contains(x.getUser().getId()))
+                .collect(Collectors.toList());
     }
 
+    /**
+     * The friendships are filtered by id, only the ones on the page are loaded with their users
+     */
     public List<FriendshipDTO> getMyConversationPage(int leftLimit, int rightLimit, Long id) {
-        List<FriendshipDTO> friendslist = getMyFriendsWithMessages(id);
-        return friendslist.stream().skip(leftLimit)
+        if (repoUser.findOne(id) == null)
+            throw new ValidationException("Invalid id");
+        Set<Long> partners = repoMessage.findConversationPartners(id);
+        return hydrator.friendships(repoFriendship.friendsOf(id).stream()
+                .filter(x -> partners.contains(x.getE2()))
+                .skip(leftLimit)
                 .limit(rightLimit)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * @return the number of friends the user exchanged messages with
+     */
+    public int countMyFriendsWithMessages(Long id) {
+        Set<Long> partners = repoMessage.findConversationPartners(id);
+        return (int) repoFriendship.friendsOf(id).stream().filter(x -> partners.contains(x.getE2())).count();
     }
 
     public List<Message> getMyMessagesOnPage(int leftLimit, int rightLimit, Long id1, Long id2) {
-        List<Message> messages = getConversation(id1, id2);
-        return messages.stream().skip(leftLimit)
-                .limit(rightLimit)
-                .collect(Collectors.toList());
+        return convertMessages(repoMessage.findConversation(id1, id2, leftLimit, rightLimit));
     }
 
+    /**
+     * @return the group with its members; its messages are read a page at a time
+     * with getGroupMessagesOnPage
+     */
     public Group find_group(Long id){
         Group group = repoGroup.findOne(id);
         return group;
     }
+
+    /**
+     * @return the messages of the group from leftLimit to leftLimit + rightLimit, newest first
+     */
+    public List<Message> getGroupMessagesOnPage(int leftLimit, int rightLimit, Long group) {
+        return convertMessages(repoGroup.findMessages(group, leftLimit, rightLimit));
+    }
+
+    public int countGroupMessages(Long group) {
+        return repoGroup.countMessages(group);
+    }
+
     public List<Message> getGroupMessagesOnPage(int leftLimit, int rightLimit, List<Message> messages) {
         messages.sort(Comparator.comparing(Message::getDate).reversed());
         return messages.stream().skip(leftLimit)
@@ -6,35 +6,104 @@ import com.example.lab6.model.User;
 
 import com.example.lab6.model.validators.PostValidator;
 import com.example.lab6.model.validators.ValidationException;
+import com.example.lab6.repository.FeedRepository;
+import com.example.lab6.repository.PostRepository;
 import com.example.lab6.repository.UserRepository;
-import com.example.lab6.repository.paging.PagingRepository;
+import com.example.lab6.repository.cache.EntityCache;
+import com.example.lab6.repository.paging.KeysetPager;
 
+import com.example.lab6.utils.TimelineBuffer;
+import com.example.lab6.utils.events.ChangeEventType;
+import com.example.lab6.utils.events.FriendshipChangeEvent;
 import com.example.lab6.utils.observer.Observer;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-public class PostService {
-    PagingRepository<Long, Post> repoPost;
+/**
+ * Posts and home timelines. With a FeedRepository every post is copied to the timelines
+ * of the friends of its author when it is added; the authors with more than fanOutLimit
+ * friends become pull authors, whose posts are read with the timeline instead.
+ * The newest posts of the timelines of the active users are kept in TimelineBuffers,
+ * so the first pages of the home page do not need the database.
+ */
+public class PostService implements Observer<FriendshipChangeEvent> {
+    private static final int TIMELINE_SIZE = 200;
+    private static final int ACTIVE_TIMELINES = 1000;
+    private static final int FAN_OUT_LIMIT = 5000;
+
+    PostRepository<Long, Post> repoPost;
     UserRepository<Long, User> repoUser;
+    FeedRepository repoFeed;
     PostValidator postValidator;
+    private final int fanOutLimit;
+    private final EntityCache<Long, TimelineBuffer> timelines = new EntityCache<>(ACTIVE_TIMELINES, 0);
+    private final Set<Long> pullAuthors = ConcurrentHashMap.newKeySet();
+    private final KeysetPager postPages = new KeysetPager(1000);
+    // number of changes made to the buffered timelines, guarded by timelines
+    private long timelineChanges;
+
+    public PostService(PostRepository<Long, Post> repoEvent, UserRepository<Long, User> repoUser, PostValidator postValidator) {
+        this(repoEvent, repoUser, null, postValidator, FAN_OUT_LIMIT);
+    }
+
+    public PostService(PostRepository<Long, Post> repoEvent, UserRepository<Long, User> repoUser, FeedRepository repoFeed,
+                       PostValidator postValidator) {
+        this(repoEvent, repoUser, repoFeed, postValidator, FAN_OUT_LIMIT);
+    }
 
-    public PostService(PagingRepository<Long, Post> repoEvent, UserRepository<Long, User> repoUser, PostValidator postValidator) {
+    /**
+     * @param repoFeed    the materialized timelines, null to compute the home page from all the posts
+     * @param fanOutLimit the posts of the authors with more friends are not copied to the timelines
+     */
+    public PostService(PostRepository<Long, Post> repoEvent, UserRepository<Long, User> repoUser, FeedRepository repoFeed,
+                       PostValidator postValidator, int fanOutLimit) {
         this.repoPost = repoEvent;
         this.repoUser = repoUser;
+        this.repoFeed = repoFeed;
         this.postValidator = postValidator;
+        this.fanOutLimit = fanOutLimit;
+        if (repoFeed != null)
+            pullAuthors.addAll(repoFeed.findPullAuthors());
     }
 
     public void addPost(Post post) {
         try {
             postValidator.validate(post);
             repoPost.save(post);
+            postPages.clear();
         } catch (ValidationException ex) {
             throw new ValidationException(ex.getMessage());
         }
+        if (repoFeed != null && post.getId() != null)
+            fanOut(post);
+    }
+
+    /**
+     * Copies the post to the timelines of the friends of its author, unless the author is a pull author,
+     * and adds it to the buffered timelines
+     */
+    private void fanOut(Post post) {
+        Long author = post.getAdmin();
+        List<Long> friends = repoUser.findFriends(author).stream().map(User::getId).collect(Collectors.toList());
+        if (friends.size() > fanOutLimit && pullAuthors.add(author))
+            repoFeed.savePullAuthor(author);
+        if (!pullAuthors.contains(author))
+            repoFeed.append(post, friends);
+        synchronized (timelines) {
+            timelineChanges++;
+            for (Long friend : friends) {
+                TimelineBuffer timeline = timelines.get(friend);
+                if (timeline != null)
+                    timeline.push(post);
+            }
+        }
     }
 
     public void deletePost(Post post){
@@ -42,6 +111,113 @@ public class PostService {
             throw  new ValidationException("The post do not exists");
         else
             repoPost.remove(post);
+        postPages.clear();
+        if (repoFeed != null) {
+            repoFeed.removePost(post.getId());
+            List<User> friends = repoUser.findFriends(post.getAdmin());
+            synchronized (timelines) {
+                timelineChanges++;
+                for (User friend : friends) {
+                    TimelineBuffer timeline = timelines.get(friend.getId());
+                    if (timeline != null)
+                        timeline.remove(post.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps the timelines up to date with the friendships: new friends get each other's posts,
+     * former friends lose them. The buffered timelines of new friends are reloaded,
+     * former friends are only removed from them.
+     */
+    @Override
+    public void update(FriendshipChangeEvent event) {
+        if (repoFeed == null)
+            return;
+        Long first = event.getData().getE1();
+        Long second = event.getData().getE2();
+        if (event.getType() == ChangeEventType.ADD) {
+            if (!pullAuthors.contains(second))
+                repoFeed.copyPosts(first, second);
+            if (!pullAuthors.contains(first))
+                repoFeed.copyPosts(second, first);
+        } else if (event.getType() == ChangeEventType.DELETE) {
+            repoFeed.removeAuthor(first, second);
+            repoFeed.removeAuthor(second, first);
+        }
+        synchronized (timelines) {
+            timelineChanges++;
+            if (event.getType() == ChangeEventType.DELETE) {
+                removeAuthor(first, second);
+                removeAuthor(second, first);
+            } else {
+                timelines.invalidate(first);
+                timelines.invalidate(second);
+            }
+        }
+    }
+
+    private void removeAuthor(Long user, Long author) {
+        TimelineBuffer timeline = timelines.get(user);
+        if (timeline != null)
+            timeline.removeAuthor(author);
+    }
+
+    /**
+     * @return the buffered timeline of the user, loaded with its newest posts if the user was not active.
+     * The posts are read without holding the lock of the timelines; a timeline loaded while they
+     * were changed is returned but not buffered, it may miss the change.
+     */
+    private TimelineBuffer timeline(Long user) {
+        long changes;
+        synchronized (timelines) {
+            TimelineBuffer timeline = timelines.get(user);
+            if (timeline != null)
+                return timeline;
+            changes = timelineChanges;
+        }
+        List<Post> newest = repoFeed.findTimeline(user, pullAuthors, 0, TIMELINE_SIZE + 1);
+        TimelineBuffer loaded = new TimelineBuffer(TIMELINE_SIZE, newest, newest.size() <= TIMELINE_SIZE);
+        synchronized (timelines) {
+            TimelineBuffer timeline = timelines.get(user);
+            if (timeline != null)
+                return timeline;
+            if (changes == timelineChanges)
+                timelines.put(user, loaded);
+            return loaded;
+        }
+    }
+
+    /**
+     * @param leftLimit number of posts skipped
+     * @param rightLimit number of posts returned
+     * @param user the id of the user
+     * @return a page of the posts of the friends of the user, newest first
+     */
+    public List<Post> getHomePostsOnPage(int leftLimit, int rightLimit, Long user) {
+        if (repoFeed == null)
+            return getHomePostsOnPage(leftLimit, rightLimit, friendships(user));
+        TimelineBuffer timeline = timeline(user);
+        if (timeline.covers(leftLimit, rightLimit))
+            return timeline.page(leftLimit, rightLimit);
+        return repoFeed.findTimeline(user, pullAuthors, leftLimit, rightLimit);
+    }
+
+    /**
+     * @return the number of posts of the friends of the user
+     */
+    public int countHomePosts(Long user) {
+        if (repoFeed == null)
+            return getFriendsPosts(friendships(user)).size();
+        TimelineBuffer timeline = timeline(user);
+        if (timeline.isComplete())
+            return timeline.size();
+        return repoFeed.countTimeline(user, pullAuthors);
+    }
+
+    private List<FriendshipDTO> friendships(Long user) {
+        return repoUser.findFriends(user).stream().map(x -> new FriendshipDTO(x, null)).collect(Collectors.toList());
     }
 
 
@@ -65,12 +241,19 @@ public class PostService {
         return myPosts;
     }
 
+    /**
+     * @return the posts of the user from leftLimit to leftLimit + rightLimit, newest first;
+     * the next page continues after the last post of this one
+     */
     public List<Post> getMyPostsOnPage(int leftLimit, int rightLimit, Long id) {
-        List<Post> postList= getMyPosts(id);
+        return postPages.page(id, leftLimit, rightLimit, pageable -> repoPost.findByAuthor(id, pageable));
+    }
 
-        return postList.stream().skip(leftLimit)
-                .limit(rightLimit)
-                .collect(Collectors.toList());
+    /**
+     * @return the number of posts of the user
+     */
+    public int countMyPosts(Long id) {
+        return repoPost.countByAuthor(id);
     }
 
 
@@ -80,7 +263,7 @@ public class PostService {
         iterable.forEach(list::add);
         list.sort(Comparator.comparing(Post::getDate).reversed());
 
-        List<Long> ids = new ArrayList<>();
+        Set<Long> ids = new HashSet<>();
         users.forEach(x->{
             ids.add(x.getUser().getId());
         });
@@ -110,10 +293,7 @@ public class PostService {
     }
 
     public List<Post> getFriendPostsOnPage(int leftLimit, int rightLimit, Long id) {
-        List<Post> postList= getFriendPosts(id);
-        return postList.stream().skip(leftLimit)
-                .limit(rightLimit)
-                .collect(Collectors.toList());
+        return getMyPostsOnPage(leftLimit, rightLimit, id);
     }
 
 }
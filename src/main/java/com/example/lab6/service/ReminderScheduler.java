@@ -0,0 +1,183 @@
+package com.example.lab6.service;
+
+import com.example.lab6.model.Event;
+import com.example.lab6.model.EventSubscription;
+import com.example.lab6.model.Tuple;
+import com.example.lab6.utils.NotificationType;
+import com.example.lab6.utils.events.ChangeEventType;
+import com.example.lab6.utils.events.EventChangeEvent;
+import com.example.lab6.utils.observer.Observer;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the reminders of the events (7 days, 1 day and on the day of the start) to the
+ * watched users, on a background thread. The reminders of the next week are loaded with
+ * one query into a queue ordered by the time they are due; a tick only looks at the head
+ * of the queue. The queue is loaded again every day and after every change of the events,
+ * which the scheduler gets as an observer of EventService. Every reminder is published
+ * through EventService as a REMINDER EventChangeEvent; the reminders due in a tick are
+ * marked as sent with one statement before they are published.
+ */
+public class ReminderScheduler implements Observer<EventChangeEvent> {
+    private static final long TICK_SECONDS = 30;
+
+    private final EventService eventService;
+    private final Clock clock;
+    private final PriorityQueue<Reminder> queue = new PriorityQueue<>(Comparator.comparing(Reminder::getDue));
+    private final Set<Long> users = new HashSet<>();
+    private LocalDate loadedFor;
+    private ScheduledExecutorService executor;
+
+    /**
+     * A reminder due at the start of its day
+     */
+    private static final class Reminder {
+        private final Event event;
+        private final Long user;
+        private final NotificationType type;
+        private final LocalDate day;
+
+        Reminder(Event event, Long user, NotificationType type, LocalDate day) {
+            this.event = event;
+            this.user = user;
+            this.type = type;
+            this.day = day;
+        }
+
+        LocalDateTime getDue() {
+            return day.atStartOfDay();
+        }
+    }
+
+    public ReminderScheduler(EventService eventService, Clock clock) {
+        this.eventService = eventService;
+        this.clock = clock;
+    }
+
+    public ReminderScheduler(EventService eventService) {
+        this(eventService, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Starts the background thread; the first tick runs at once
+     */
+    public synchronized void start() {
+        if (executor != null)
+            return;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Event Reminders");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::tick, 0, TICK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null)
+            executor.shutdownNow();
+        executor = null;
+    }
+
+    /**
+     * Sends the reminders of the user from now on, starting with the ones due today
+     */
+    public void watch(Long user) {
+        synchronized (this) {
+            if (!users.add(user))
+                return;
+            loadedFor = null;
+        }
+        tickSoon();
+    }
+
+    public synchronized void unwatch(Long user) {
+        if (users.remove(user))
+            queue.removeIf(x -> x.user.equals(user));
+    }
+
+    /**
+     * Loads the reminders again after a change of the events or of the subscriptions
+     */
+    @Override
+    public void update(EventChangeEvent event) {
+        if (event.getType() == ChangeEventType.REMINDER)
+            return;
+        synchronized (this) {
+            loadedFor = null;
+        }
+        tickSoon();
+    }
+
+    private synchronized void tickSoon() {
+        if (executor != null)
+            executor.execute(this::tick);
+    }
+
+    /**
+     * Publishes the reminders that are due; they are marked as sent first, so a reload of
+     * the queue cannot bring them back
+     */
+    void tick() {
+        try {
+            for (Reminder reminder : takeDue(LocalDateTime.now(clock)))
+                eventService.notifyObservers(new EventChangeEvent(reminder.event, reminder.user, reminder.type));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Removes the due reminders from the queue and marks them as sent, holding the lock
+     * until they are marked so that a reload in between does not queue them again
+     */
+    private synchronized List<Reminder> takeDue(LocalDateTime now) {
+        LocalDate today = now.toLocalDate();
+        if (!today.equals(loadedFor))
+            load(today);
+        List<Reminder> due = new ArrayList<>();
+        List<Tuple<Long, Long>> sent = new ArrayList<>();
+        while (!queue.isEmpty() && !queue.peek().getDue().isAfter(now)) {
+            Reminder reminder = queue.poll();
+            if (reminder.day.equals(today)) {
+                due.add(reminder);
+                sent.add(new Tuple<>(reminder.event.getId(), reminder.user));
+            }
+        }
+        if (!sent.isEmpty())
+            eventService.saveNotificationDates(sent, now);
+        return due;
+    }
+
+    /**
+     * Queues the reminders not sent yet of the events starting in the next week
+     */
+    private void load(LocalDate today) {
+        queue.clear();
+        loadedFor = today;
+        if (users.isEmpty())
+            return;
+        LocalDate last = today.plusDays(NotificationType.AWeekBefore.getDaysBefore());
+        for (EventSubscription subscription : eventService.getSubscriptions(users, today.atStartOfDay(), last.plusDays(1).atStartOfDay())) {
+            LocalDate start = subscription.getEvent().getStart().toLocalDate();
+            LocalDateTime notified = subscription.getLastNotificationDate();
+            for (NotificationType type : NotificationType.values()) {
+                LocalDate day = start.minusDays(type.getDaysBefore());
+                boolean sent = notified != null && !notified.toLocalDate().isBefore(day);
+                if (!day.isBefore(today) && !sent)
+                    queue.add(new Reminder(subscription.getEvent(), subscription.getUser(), type, day));
+            }
+        }
+    }
+}
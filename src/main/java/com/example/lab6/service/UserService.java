@@ -4,11 +4,16 @@ import com.example.lab6.model.Friendship;
 import com.example.lab6.model.FriendshipDTO;
 import com.example.lab6.model.Tuple;
 import com.example.lab6.model.User;
+import com.example.lab6.model.UserDTO;
 import com.example.lab6.model.validators.UserValidator;
 import com.example.lab6.model.validators.ValidationException;
-import com.example.lab6.repository.Repository;
+import com.example.lab6.repository.FriendshipRepository;
 import com.example.lab6.repository.UserRepository;
+import com.example.lab6.utils.UserSearchIndex;
+import com.example.lab6.utils.events.ChangeEventType;
+import com.example.lab6.utils.events.FriendshipChangeEvent;
 import com.example.lab6.utils.events.UserChangeEvent;
+import com.example.lab6.utils.observer.EventBus;
 import com.example.lab6.utils.observer.Observable;
 import com.example.lab6.utils.observer.Observer;
 
@@ -17,23 +22,27 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 
-public class UserService implements Observable<UserChangeEvent> {
+public class UserService implements Observable<UserChangeEvent>, Observer<FriendshipChangeEvent> {
 
    // UserRepository<Long, User> repoUser;
     UserRepository<Long, User> repoUser;
-    Repository<Tuple<Long, Long>, Friendship> repoFriendship;
+    FriendshipRepository<Tuple<Long, Long>, Friendship> repoFriendship;
     UserValidator userValidator;
+    private UserSearchIndex searchIndex;
+    private final DtoHydrator hydrator;
 
-    public UserService(UserRepository<Long, User> repoUser, Repository<Tuple<Long, Long>, Friendship> repoFriendship, UserValidator userValidator) {
+    public UserService(UserRepository<Long, User> repoUser, FriendshipRepository<Tuple<Long, Long>, Friendship> repoFriendship, UserValidator userValidator) {
         this.repoUser = repoUser;
         this.repoFriendship = repoFriendship;
         this.userValidator = userValidator;
+        this.hydrator = new DtoHydrator(repoUser);
         //setFriendships();
     }
 
@@ -47,7 +56,12 @@ public class UserService implements Observable<UserChangeEvent> {
             userValidator.validateEmail(entity.getEmail());
             if (repoUser.findOneByEmail(entity.getEmail()) != null)
                 throw new ValidationException("Email already exists");
-            return repoUser.save(entity);
+            User result = repoUser.save(entity);
+            UserSearchIndex index = builtSearchIndex();
+            User saved = index == null ? null : repoUser.findOneByEmail(entity.getEmail());
+            if (saved != null)
+                index.put(saved);
+            return result;
         } catch (ValidationException ex) {
             throw new ValidationException(ex.getMessage());
         }
@@ -62,15 +76,15 @@ public class UserService implements Observable<UserChangeEvent> {
         if (repoUser.findOne(id) == null)
             throw new ValidationException("Does not exist!");
         removeallFriendships(repoUser.findOne(id));
+        UserSearchIndex index = builtSearchIndex();
+        if (index != null)
+            index.remove(id);
         return repoUser.remove(repoUser.findOne(id));
     }
 
     public void removeallFriendships(User user) {
-        for (Friendship friendship : repoFriendship.findAll()) {
-            if (friendship.getE1() == user.getId() || friendship.getE2() == user.getId()) {
-                repoFriendship.remove(friendship);
-            }
-        }
+        for (Friendship friendship : repoFriendship.friendsOf(user.getId()))
+            repoFriendship.remove(friendship);
     }
 
     public List<User> getUsers() {
@@ -83,94 +97,99 @@ public class UserService implements Observable<UserChangeEvent> {
     }
 
 
+    /**
+     * The search index is changed only if the repository updated the user
+     * @return null if the user is updated, otherwise the user
+     */
     public User update(User user) {
-        repoUser.update(user);
-        return user;
+        User result = repoUser.update(user);
+        if (result != null)
+            return result;
+        UserSearchIndex index = builtSearchIndex();
+        if (index != null)
+            index.put(user);
+        return null;
     }
 
     public User exists(String email) {
         return repoUser.findOneByEmail(email);
     }
 
-    public List<User> filter1(Long id, String str) {
-
-        Iterable<User> userIterable = repoUser.findAll();
-        List<User> usersList = new ArrayList<>();
-        userIterable.forEach(usersList::add);
-
-        Predicate<User> firstName = x -> x.getFirstName().toLowerCase(Locale.ROOT).startsWith(str.toLowerCase(Locale.ROOT));
-        Predicate<User> lastName = x -> x.getLastName().toLowerCase(Locale.ROOT).startsWith(str.toLowerCase(Locale.ROOT));
-        Predicate<User> friends = x -> !x.getFriendsList().contains(repoUser.findOne(id));
-        Predicate<User> user = x -> !x.getId().equals(id);
-
-
+    /**
+     * @return the search index of the users, built on the first call from all the users and friendships
+     * and kept up to date by add, update, remove and the friendship changes
+     */
+    public synchronized UserSearchIndex getSearchIndex() {
+        if (searchIndex == null) {
+            UserSearchIndex index = new UserSearchIndex();
+            repoUser.findAllLazy().forEach(index::put);
+            repoFriendship.forEachFriendship(index::addFriendship);
+            searchIndex = index;
+        }
+        return searchIndex;
+    }
 
-        Predicate<User> userPredicate = firstName.or(lastName);
+    private synchronized UserSearchIndex builtSearchIndex() {
+        return searchIndex;
+    }
 
-        List<User> users = usersList.stream().filter(userPredicate.and(friends).and(user)).collect(Collectors.toList());
-        return users;
+    /**
+     * Keeps the search index up to date with the friendships
+     */
+    @Override
+    public void update(FriendshipChangeEvent event) {
+        UserSearchIndex index = builtSearchIndex();
+        if (index == null)
+            return;
+        if (event.getType() == ChangeEventType.ADD)
+            index.addFriendship(event.getData().getE1(), event.getData().getE2());
+        else if (event.getType() == ChangeEventType.DELETE)
+            index.removeFriendship(event.getData().getE1(), event.getData().getE2());
+    }
 
-        //notifyObservers(new UserChangeEvent(ChangeEventType.UPDATE, ));
+    /**
+     * @return the users whose first name, last name or full name starts with str, ignoring case and diacritics,
+     * without the user and its friends; the friends of friends come first
+     */
+    public List<User> filter1(Long id, String str) {
+        return getSearchIndex().search(id, str, 0, Integer.MAX_VALUE);
+    }
 
+    public int countSearch(Long id, String str) {
+        return getSearchIndex().count(id, str);
     }
 
+    /**
+     * @return the friends of the user whose name starts with str, by name
+     */
     public List<User> friends(Long id, String str) {
+        return getSearchIndex().searchFriends(id, str, 0, Integer.MAX_VALUE);
+    }
 
-        Iterable<Friendship> friendships = repoFriendship.findAll();
-        List<Friendship> friendshipsList = new ArrayList<>();
-        friendships.forEach(friendshipsList::add);
-
-        Predicate<Friendship> id1 = x->x.getE1().equals(id);
-        Predicate<Friendship> id2 = x->x.getE2().equals(id);
-        Predicate<Friendship> friendshipPredicate = id1.or(id2);
-
-        List<Friendship> friends = friendshipsList.stream().filter(friendshipPredicate).collect(Collectors.toList());
-
-
-        List<User> usersList = new ArrayList<>();
-        friends.forEach(x->{
-            if(x.getE1().equals(id))
-                usersList.add(repoUser.findOne(x.getE2()));
-            else
-                usersList.add(repoUser.findOne(x.getE1()));
-        });
-
-        Predicate<User> firstName = x -> x.getFirstName().toLowerCase(Locale.ROOT).startsWith(str.toLowerCase(Locale.ROOT));
-        Predicate<User> lastName = x -> x.getLastName().toLowerCase(Locale.ROOT).startsWith(str.toLowerCase(Locale.ROOT));
-        //Predicate<User> friends = x -> x.getFriendsList().contains(repoUser.findOne(id));
-
-        Predicate<User> userPredicate = firstName.or(lastName);
-
-        List<User> users = usersList.stream().filter(userPredicate).collect(Collectors.toList());
-        return users;
-
-        //notifyObservers(new UserChangeEvent(ChangeEventType.UPDATE, ));
-
+    public int countFriends(Long id, String str) {
+        return getSearchIndex().countFriends(id, str);
     }
 
     public List<User> searchingFriends(int leftLimit, int rightLimit, Long id, String string){
-        List<User> users = friends(id, string);
-        return users.stream().skip(leftLimit)
-                .limit(rightLimit)
-                .collect(Collectors.toList());
+        return getSearchIndex().searchFriends(id, string, leftLimit, rightLimit);
     }
 
-    private List<Observer<UserChangeEvent>> observers = new ArrayList<>();
+    private final EventBus<UserChangeEvent> observers = new EventBus<>("users");
 
 
     @Override
     public void addObserver(Observer<UserChangeEvent> e) {
-        observers.add(e);
+        observers.addObserver(e);
     }
 
     @Override
     public void removeObserver(Observer<UserChangeEvent> e) {
-
+        observers.removeObserver(e);
     }
 
     @Override
     public void notifyObservers(UserChangeEvent t) {
-        observers.stream().forEach(x -> x.update(t));
+        observers.notifyObservers(t);
     }
 
     public static String getSecurePassword(String password) {
@@ -209,19 +228,24 @@ public class UserService implements Observable<UserChangeEvent> {
         return repoUser.findPhoto(email);
     }
 
+    /**
+     * @param emails the emails of the users
+     * @return the profile picture url of every user that has one, by email
+     */
+    public Map<String, String> findPhotos(Collection<String> emails) {
+        return repoUser.findPhotos(emails);
+    }
+
+    /**
+     * @param defaultPhoto the url used for the users without a profile picture
+     * @return the users with their profile pictures, loaded with one batched lookup
+     */
+    public List<UserDTO> toUserDTOs(List<User> users, String defaultPhoto) {
+        return hydrator.userDTOs(users, defaultPhoto);
+    }
+
     public List<FriendshipDTO> getFriendshipsByDate(LocalDateTime startDate, LocalDateTime endDate, Long loggedUser) {
-        Iterable<Friendship> friendships = repoFriendship.findAll();
-        List<FriendshipDTO> friendshipDTOS = new ArrayList<>();
-
-        friendships.forEach(x -> {
-            if (x.getE1().equals(loggedUser)) {
-                FriendshipDTO friendshipDTO = new FriendshipDTO(repoUser.findOne(x.getE2()), x.getDate());
-                friendshipDTOS.add(friendshipDTO);
-            } else if(x.getE2().equals(loggedUser)) {
-                FriendshipDTO friendshipDTO = new FriendshipDTO(repoUser.findOne(x.getE1()), x.getDate());
-                friendshipDTOS.add(friendshipDTO);
-            }
-        });
+        List<FriendshipDTO> friendshipDTOS = hydrator.friendships(repoFriendship.friendsOf(loggedUser));
 
         Predicate<FriendshipDTO> isAfter = x -> x.getDate().isAfter(startDate);
         Predicate<FriendshipDTO> isBefore = x -> x.getDate().isBefore(endDate);
@@ -237,12 +261,16 @@ public class UserService implements Observable<UserChangeEvent> {
         return repoUser.findOne(userID);
     }
 
+    /**
+     * @return the users that exist, by id, loaded with one lookup
+     */
+    public Map<Long, User> getUsersByID(Collection<Long> ids) {
+        return repoUser.findByIds(ids);
+    }
+
 
     public List<User> getSearchOnPage(int leftLimit,int rightLimit, Long id, String string) {
-        List<User> users = filter1(id, string);
-        return users.stream().skip(leftLimit)
-                .limit(rightLimit)
-                .collect(Collectors.toList());
+        return getSearchIndex().search(id, string, leftLimit, rightLimit);
     }
 
 }
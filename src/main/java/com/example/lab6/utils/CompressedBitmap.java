@@ -0,0 +1,201 @@
+package com.example.lab6.utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non negative int values, in the style of Roaring bitmaps.
+ * The values are split by their high 16 bits into chunks of 65536; a chunk with
+ * few values keeps them in a sorted char array, a dense chunk in a bitmap of 1024 longs.
+ * Used to keep the ids of the subscribers of an event.
+ */
+public class CompressedBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+
+    private char[] keys = new char[2];
+    private Chunk[] chunks = new Chunk[2];
+    private int size;
+
+    private abstract static class Chunk {
+        int cardinality;
+
+        abstract boolean contains(char low);
+
+        /**
+         * @return the chunk holding the value, this one or a new one if it had to change its kind
+         */
+        abstract Chunk add(char low);
+
+        abstract Chunk remove(char low);
+
+        abstract void forEach(int high, IntConsumer consumer);
+    }
+
+    private static final class ArrayChunk extends Chunk {
+        char[] values = new char[4];
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        @Override
+        Chunk add(char low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0)
+                return this;
+            if (cardinality == ARRAY_LIMIT) {
+                BitmapChunk bitmap = new BitmapChunk();
+                for (int i = 0; i < cardinality; i++)
+                    bitmap.add(values[i]);
+                return bitmap.add(low);
+            }
+            index = -index - 1;
+            if (cardinality == values.length)
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, cardinality * 2));
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = low;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Chunk remove(char low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (int i = 0; i < cardinality; i++)
+                consumer.accept(high << 16 | values[i]);
+        }
+    }
+
+    private static final class BitmapChunk extends Chunk {
+        final long[] words = new long[1024];
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        Chunk add(char low) {
+            long before = words[low >>> 6];
+            words[low >>> 6] = before | (1L << low);
+            if (before != words[low >>> 6])
+                cardinality++;
+            return this;
+        }
+
+        @Override
+        Chunk remove(char low) {
+            long before = words[low >>> 6];
+            words[low >>> 6] = before & ~(1L << low);
+            if (before == words[low >>> 6])
+                return this;
+            cardinality--;
+            if (cardinality > ARRAY_LIMIT)
+                return this;
+            ArrayChunk array = new ArrayChunk();
+            array.values = new char[ARRAY_LIMIT];
+            forEach(0, value -> array.values[array.cardinality++] = (char) value);
+            return array;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    consumer.accept(high << 16 | i << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    private int find(char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+
+    private static void check(int value) {
+        if (value < 0)
+            throw new IllegalArgumentException("Value must not be negative!");
+    }
+
+    /**
+     * @return true if the value was not in the set
+     */
+    public boolean add(int value) {
+        check(value);
+        char high = (char) (value >>> 16);
+        int index = find(high);
+        if (index < 0) {
+            index = -index - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                chunks = Arrays.copyOf(chunks, size * 2);
+            }
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(chunks, index, chunks, index + 1, size - index);
+            keys[index] = high;
+            chunks[index] = new ArrayChunk();
+            size++;
+        }
+        int before = chunks[index].cardinality;
+        chunks[index] = chunks[index].add((char) value);
+        return chunks[index].cardinality != before;
+    }
+
+    /**
+     * @return true if the value was in the set
+     */
+    public boolean remove(int value) {
+        if (value < 0)
+            return false;
+        int index = find((char) (value >>> 16));
+        if (index < 0)
+            return false;
+        int before = chunks[index].cardinality;
+        chunks[index] = chunks[index].remove((char) value);
+        if (chunks[index].cardinality == 0) {
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(chunks, index + 1, chunks, index, size - index - 1);
+            chunks[--size] = null;
+            return true;
+        }
+        return chunks[index].cardinality != before;
+    }
+
+    public boolean contains(int value) {
+        if (value < 0)
+            return false;
+        int index = find((char) (value >>> 16));
+        return index >= 0 && chunks[index].contains((char) value);
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++)
+            cardinality += chunks[i].cardinality;
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gives the values to the consumer in increasing order
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < size; i++)
+            chunks[i].forEach(keys[i], consumer);
+    }
+}
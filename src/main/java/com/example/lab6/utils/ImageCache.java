@@ -0,0 +1,146 @@
+package com.example.lab6.utils;
+
+import javafx.scene.image.Image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decoded images shared by all the controllers, bounded by the memory their pixels take.
+ * Thumbnails are decoded at the size they are displayed at and in the background,
+ * so a row can be shown before its picture is ready; the least recently used
+ * images are dropped first when the budget is exceeded.
+ */
+public class ImageCache {
+    private static final String DEFAULT_PROFILE_PHOTO = "/images/profile.png";
+
+    private static final ImageCache instance = new ImageCache(64L * 1024 * 1024);
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, CachedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxBytes the memory the decoded pixels may take, 4 bytes per pixel
+     */
+    public ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static ImageCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param url the url or the resource path of the image
+     * @return the image at its own size, decoded once; meant for the small icons
+     */
+    public synchronized Image get(String url) {
+        String key = url + "|0x0";
+        CachedImage cached = images.get(key);
+        if (cached != null) {
+            hits++;
+            return cached.image;
+        }
+        misses++;
+        Image image = new Image(url);
+        if (!image.isError())
+            put(key, image, (long) (image.getWidth() * image.getHeight() * 4));
+        return image;
+    }
+
+    /**
+     * @param url    the url or the resource path of the image
+     * @param width  the width the image is displayed at
+     * @param height the height the image is displayed at
+     * @return the image scaled to the given size, loaded in the background the first time
+     */
+    public synchronized Image get(String url, double width, double height) {
+        String key = url + "|" + width + "x" + height;
+        CachedImage cached = images.get(key);
+        if (cached != null) {
+            hits++;
+            return cached.image;
+        }
+        misses++;
+        Image image = new Image(url, width, height, true, true, true);
+        put(key, image, (long) (width * height * 4));
+        image.errorProperty().addListener((observable, oldValue, error) -> {
+            if (error)
+                remove(key, image);
+        });
+        return image;
+    }
+
+    /**
+     * @param url  the profile picture url, or null if the user has none
+     * @param size the side of the square the picture is displayed in
+     * @return the picture of the user or the default one
+     */
+    public Image getProfilePhoto(String url, double size) {
+        return get(url == null ? DEFAULT_PROFILE_PHOTO : url, size, size);
+    }
+
+    private void put(String key, Image image, long weight) {
+        CachedImage previous = images.put(key, new CachedImage(image, weight));
+        if (previous != null)
+            bytes -= previous.weight;
+        bytes += weight;
+
+        Iterator<Map.Entry<String, CachedImage>> iterator = images.entrySet().iterator();
+        while (bytes > maxBytes && images.size() > 1 && iterator.hasNext()) {
+            Map.Entry<String, CachedImage> eldest = iterator.next();
+            if (eldest.getKey().equals(key))
+                continue;
+            bytes -= eldest.getValue().weight;
+            iterator.remove();
+        }
+    }
+
+    private synchronized void remove(String key, Image image) {
+        CachedImage cached = images.get(key);
+        if (cached != null && cached.image == image) {
+            images.remove(key);
+            bytes -= cached.weight;
+        }
+    }
+
+    /**
+     * Drops every size of the image, e.g. after the file behind the url changed
+     */
+    public synchronized void invalidate(String url) {
+        Iterator<Map.Entry<String, CachedImage>> iterator = images.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, CachedImage> entry = iterator.next();
+            if (entry.getKey().startsWith(url + "|")) {
+                bytes -= entry.getValue().weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    private static class CachedImage {
+        private final Image image;
+        private final long weight;
+
+        CachedImage(Image image, long weight) {
+            this.image = image;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.lab6.utils;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Open addressing hash set of long values, without boxing.
+ * Used to keep the ids of the friends of a user.
+ */
+public class LongHashSet extends LongHashTable {
+
+    /**
+     * @param expectedSize number of values the set holds without resizing
+     */
+    public LongHashSet(int expectedSize) {
+        super(expectedSize);
+    }
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public boolean contains(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return true if the value was not in the set
+     */
+    public boolean add(long key) {
+        if (key == FREE)
+            throw new IllegalArgumentException("Value not supported!");
+        int i = slot(key);
+        if (keys[i] != FREE)
+            return false;
+        insertAt(i, key);
+        return true;
+    }
+
+    /**
+     * @return true if the value was in the set
+     */
+    public boolean remove(long key) {
+        int i = indexOf(key);
+        if (i < 0)
+            return false;
+        removeAt(i);
+        return true;
+    }
+
+    public void forEach(LongConsumer consumer) {
+        for (long key : keys)
+            if (key != FREE)
+                consumer.accept(key);
+    }
+}
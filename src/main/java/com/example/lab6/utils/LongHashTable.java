@@ -0,0 +1,127 @@
+package com.example.lab6.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table of long keys with linear probing, the part shared by
+ * LongHashSet, LongIntMap and LongObjectMap: hashing, probing, growing and removing.
+ * A map keeps its values in an array parallel to the keys and moves them in the hooks.
+ * Long.MIN_VALUE marks a free slot, so it cannot be a key.
+ */
+abstract class LongHashTable {
+    static final long FREE = Long.MIN_VALUE;
+
+    long[] keys;
+    int size;
+    int mask;
+
+    /**
+     * @param expectedSize number of keys the table holds without resizing
+     */
+    LongHashTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(keys, FREE);
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * @return the slot of the key, or the free slot where it would be added
+     */
+    final int slot(long key) {
+        int i = hash(key) & mask;
+        while (keys[i] != FREE && keys[i] != key)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    /**
+     * @return the slot of the key, -1 if the key is not in the table
+     */
+    final int indexOf(long key) {
+        if (key == FREE)
+            return -1;
+        int i = slot(key);
+        return keys[i] == FREE ? -1 : i;
+    }
+
+    /**
+     * Puts the key in the free slot i, which slot returned for it, and grows the table
+     * when it is half full; the value must be put in slot i before
+     */
+    final void insertAt(int i, long key) {
+        keys[i] = key;
+        if (++size * 2 > keys.length)
+            resize();
+    }
+
+    /**
+     * Frees the slot i and moves back the keys of the same cluster,
+     * so that lookups do not stop at the hole
+     */
+    final void removeAt(int i) {
+        keys[i] = FREE;
+        clearValue(i);
+        size--;
+        int j = (i + 1) & mask;
+        while (keys[j] != FREE) {
+            long key = keys[j];
+            keys[j] = FREE;
+            int k = slot(key);
+            keys[k] = key;
+            if (k != j)
+                moveValue(j, k);
+            j = (j + 1) & mask;
+        }
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        keys = new long[oldKeys.length * 2];
+        mask = keys.length - 1;
+        Arrays.fill(keys, FREE);
+        int[] moved = new int[oldKeys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == FREE) {
+                moved[i] = -1;
+            } else {
+                moved[i] = slot(oldKeys[i]);
+                keys[moved[i]] = oldKeys[i];
+            }
+        }
+        resized(moved, keys.length);
+    }
+
+    /**
+     * Moves the values to a table of the given capacity: the value of the old slot i
+     * goes to the slot moved[i], -1 for the free slots
+     */
+    void resized(int[] moved, int capacity) {
+    }
+
+    /**
+     * Moves the value of the slot from to the slot to, leaving from empty
+     */
+    void moveValue(int from, int to) {
+    }
+
+    /**
+     * Drops the value of the slot i, which was freed
+     */
+    void clearValue(int i) {
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.lab6.utils;
+
+/**
+ * Open addressing hash map from long keys to int values, without boxing.
+ * Used to remap the user ids to dense indexes.
+ */
+public class LongIntMap extends LongHashTable {
+    private int[] values;
+    private final int missingValue;
+
+    /**
+     * @param expectedSize number of keys the map holds without resizing
+     * @param missingValue value returned by get for the keys that are not in the map
+     */
+    public LongIntMap(int expectedSize, int missingValue) {
+        super(expectedSize);
+        this.values = new int[keys.length];
+        this.missingValue = missingValue;
+    }
+
+    public LongIntMap() {
+        this(16, -1);
+    }
+
+    public int get(long key) {
+        if (key == FREE)
+            throw new IllegalArgumentException("Key not supported!");
+        int i = slot(key);
+        return keys[i] == FREE ? missingValue : values[i];
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return the previous value of the key or the missing value
+     */
+    public int put(long key, int value) {
+        if (key == FREE)
+            throw new IllegalArgumentException("Key not supported!");
+        int i = slot(key);
+        if (keys[i] != FREE) {
+            int previous = values[i];
+            values[i] = value;
+            return previous;
+        }
+        values[i] = value;
+        insertAt(i, key);
+        return missingValue;
+    }
+
+    /**
+     * @return the removed value or the missing value
+     */
+    public int remove(long key) {
+        int i = indexOf(key);
+        if (i < 0)
+            return missingValue;
+        int removed = values[i];
+        removeAt(i);
+        return removed;
+    }
+
+    @Override
+    void resized(int[] moved, int capacity) {
+        int[] oldValues = values;
+        values = new int[capacity];
+        for (int i = 0; i < moved.length; i++)
+            if (moved[i] >= 0)
+                values[moved[i]] = oldValues[i];
+    }
+
+    @Override
+    void moveValue(int from, int to) {
+        values[to] = values[from];
+    }
+}
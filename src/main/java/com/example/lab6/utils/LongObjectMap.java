@@ -0,0 +1,96 @@
+package com.example.lab6.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long keys to objects, without boxing the keys.
+ * Used to index the messages of a page by id.
+ * @param <V> type of the values
+ */
+public class LongObjectMap<V> extends LongHashTable {
+    private Object[] values;
+
+    /**
+     * @param expectedSize number of keys the map holds without resizing
+     */
+    public LongObjectMap(int expectedSize) {
+        super(expectedSize);
+        this.values = new Object[keys.length];
+    }
+
+    public LongObjectMap() {
+        this(16);
+    }
+
+    /**
+     * @return the value of the key or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == FREE)
+            throw new IllegalArgumentException("Key not supported!");
+        int i = slot(key);
+        return keys[i] == FREE ? null : (V) values[i];
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return the previous value of the key or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key == FREE)
+            throw new IllegalArgumentException("Key not supported!");
+        int i = slot(key);
+        if (keys[i] != FREE) {
+            V previous = (V) values[i];
+            values[i] = value;
+            return previous;
+        }
+        values[i] = value;
+        insertAt(i, key);
+        return null;
+    }
+
+    /**
+     * @return the removed value or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = indexOf(key);
+        if (i < 0)
+            return null;
+        V removed = (V) values[i];
+        removeAt(i);
+        return removed;
+    }
+
+    @Override
+    void resized(int[] moved, int capacity) {
+        Object[] oldValues = values;
+        values = new Object[capacity];
+        for (int i = 0; i < moved.length; i++)
+            if (moved[i] >= 0)
+                values[moved[i]] = oldValues[i];
+    }
+
+    @Override
+    void moveValue(int from, int to) {
+        values[to] = values[from];
+        values[from] = null;
+    }
+
+    @Override
+    void clearValue(int i) {
+        values[i] = null;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        Arrays.fill(values, null);
+    }
+}
@@ -1,7 +1,30 @@
 package com.example.lab6.utils;
 
 public enum NotificationType {
-    AWeekBefore,
-    ADayBefore,
-    Today
+    AWeekBefore(7),
+    ADayBefore(1),
+    Today(0);
+
+    private final int daysBefore;
+
+    NotificationType(int daysBefore) {
+        this.daysBefore = daysBefore;
+    }
+
+    /**
+     * @return the number of days between the reminder and the start of the event
+     */
+    public int getDaysBefore() {
+        return daysBefore;
+    }
+
+    /**
+     * @return the reminder given the number of days before the start of an event, null if there is none
+     */
+    public static NotificationType daysBefore(long days) {
+        for (NotificationType type : values())
+            if (type.daysBefore == days)
+                return type;
+        return null;
+    }
 }
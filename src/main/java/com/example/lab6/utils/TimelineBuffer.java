@@ -0,0 +1,124 @@
+package com.example.lab6.utils;
+
+import com.example.lab6.model.Post;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The newest posts of a home timeline, newest first, in a ring buffer of fixed capacity.
+ * A new post takes the place of the oldest one once the buffer is full.
+ */
+public class TimelineBuffer {
+    private final Post[] posts;
+    private int head;
+    private int size;
+    private boolean complete;
+
+    /**
+     * @param capacity maximum number of posts kept
+     * @param newest   the newest posts of the timeline, newest first
+     * @param complete true if newest is the whole timeline
+     */
+    public TimelineBuffer(int capacity, List<Post> newest, boolean complete) {
+        this.posts = new Post[capacity];
+        this.size = Math.min(capacity, newest.size());
+        for (int i = 0; i < size; i++)
+            posts[i] = newest.get(i);
+        this.complete = complete && newest.size() <= capacity;
+    }
+
+    private static boolean newer(Post a, Post b) {
+        int compare = a.getDate().compareTo(b.getDate());
+        return compare > 0 || (compare == 0 && a.getId() > b.getId());
+    }
+
+    private int slot(int index) {
+        return (head + index) % posts.length;
+    }
+
+    /**
+     * Adds a post in date order; usually it is the newest one and goes in front.
+     * A post older than all the posts of a partial buffer is left out, the posts
+     * between them are not known.
+     */
+    public synchronized void push(Post post) {
+        int index = 0;
+        while (index < size && newer(posts[slot(index)], post))
+            index++;
+        if (index < size && posts[slot(index)].getId().equals(post.getId()))
+            return;
+        if (index == size && !complete)
+            return;
+        if (size == posts.length) {
+            complete = false;
+            if (index == size)
+                return;
+            size--;
+        }
+        if (index == 0) {
+            head = (head + posts.length - 1) % posts.length;
+        } else {
+            for (int i = size; i > index; i--)
+                posts[slot(i)] = posts[slot(i - 1)];
+        }
+        posts[slot(index)] = post;
+        size++;
+    }
+
+    /**
+     * Removes the post with the given id, if it is in the buffer
+     */
+    public synchronized void remove(Long post) {
+        int kept = 0;
+        for (int i = 0; i < size; i++)
+            if (!posts[slot(i)].getId().equals(post))
+                posts[slot(kept++)] = posts[slot(i)];
+        clear(kept);
+    }
+
+    /**
+     * Removes the posts of the given author
+     */
+    public synchronized void removeAuthor(Long author) {
+        int kept = 0;
+        for (int i = 0; i < size; i++)
+            if (!posts[slot(i)].getAdmin().equals(author))
+                posts[slot(kept++)] = posts[slot(i)];
+        clear(kept);
+    }
+
+    private void clear(int kept) {
+        for (int i = kept; i < size; i++)
+            posts[slot(i)] = null;
+        size = kept;
+    }
+
+    /**
+     * @return true if the posts from offset to offset + limit are all in the buffer
+     */
+    public synchronized boolean covers(int offset, int limit) {
+        return complete || offset + limit <= size;
+    }
+
+    /**
+     * @return true if the buffer holds the whole timeline
+     */
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return at most limit posts, skipping the newest offset posts
+     */
+    public synchronized List<Post> page(int offset, int limit) {
+        List<Post> page = new ArrayList<>(Math.max(0, Math.min(limit, size - offset)));
+        for (int i = Math.max(0, offset); i < size && i < offset + limit; i++)
+            page.add(posts[slot(i)]);
+        return page;
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.lab6.utils;
+
+import com.example.lab6.model.User;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index of the users by name, for the search as you type.
+ * Every user gets a slot; the names are normalized (lower case, without diacritics)
+ * and kept in a sorted term dictionary mapping every first name, last name, word
+ * of a name and full name to the slots of its users, so the users whose name
+ * starts with a text are one range of the dictionary. The index also keeps the
+ * friends of every user, to leave out the user and the friends with a bitset
+ * and to rank the friends of friends first, by number of mutual friends.
+ * Pages are the top offset + limit matches, the other matches are only counted.
+ */
+public class UserSearchIndex {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final LongIntMap slots = new LongIntMap(16, -1);
+    private final List<User> users = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final BitSet live = new BitSet();
+    private final Map<Long, LongHashSet> friends = new HashMap<>();
+
+    /**
+     * The slots of the users of a term, in insertion order
+     */
+    private static final class Postings {
+        private int[] slots = new int[2];
+        private int size;
+
+        void add(int slot) {
+            if (size == slots.length)
+                slots = Arrays.copyOf(slots, size * 2);
+            slots[size++] = slot;
+        }
+
+        void remove(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    slots[i] = slots[--size];
+                    return;
+                }
+            }
+        }
+
+        void addTo(BitSet bitSet) {
+            for (int i = 0; i < size; i++)
+                bitSet.set(slots[i]);
+        }
+    }
+
+    /**
+     * @return the text in lower case, without diacritics and with single spaces;
+     * the letters that do not decompose (l, d and o with stroke, sharp s) are replaced by hand
+     */
+    public static String normalize(String text) {
+        if (text == null)
+            return "";
+        String decomposed = Normalizer.normalize(text.trim(), Normalizer.Form.NFD);
+        String plain = MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT)
+                .replace('\u0142', 'l').replace('\u0111', 'd').replace('\u00f8', 'o').replace("\u00df", "ss");
+        return SPACES.matcher(plain).replaceAll(" ");
+    }
+
+    private static Set<String> termsOf(User user) {
+        String first = normalize(user.getFirstName());
+        String last = normalize(user.getLastName());
+        Set<String> result = new LinkedHashSet<>();
+        result.add(first);
+        result.add(last);
+        result.add(first + " " + last);
+        Collections.addAll(result, first.split(" "));
+        Collections.addAll(result, last.split(" "));
+        result.remove("");
+        return result;
+    }
+
+    private static User copy(User user) {
+        User copy = new User(user.getFirstName(), user.getLastName(), user.getEmail(), user.getPassword());
+        copy.setId(user.getId());
+        return copy;
+    }
+
+    /**
+     * Adds the user, or updates its names if it is already in the index
+     */
+    public synchronized void put(User user) {
+        int slot = slots.get(user.getId());
+        if (slot >= 0) {
+            removeTerms(slot);
+            users.set(slot, copy(user));
+        } else {
+            slot = users.size();
+            slots.put(user.getId(), slot);
+            users.add(copy(user));
+            names.add(null);
+            live.set(slot);
+        }
+        names.set(slot, normalize(user.getFirstName() + " " + user.getLastName()));
+        for (String term : termsOf(user))
+            terms.computeIfAbsent(term, x -> new Postings()).add(slot);
+    }
+
+    /**
+     * Removes the user and its friendships
+     */
+    public synchronized void remove(Long id) {
+        int slot = slots.get(id);
+        if (slot >= 0) {
+            removeTerms(slot);
+            slots.remove(id);
+            users.set(slot, null);
+            live.clear(slot);
+        }
+        LongHashSet removed = friends.remove(id);
+        if (removed != null)
+            removed.forEach(friend -> {
+                LongHashSet others = friends.get(friend);
+                if (others != null)
+                    others.remove(id);
+            });
+    }
+
+    private void removeTerms(int slot) {
+        for (String term : termsOf(users.get(slot))) {
+            Postings postings = terms.get(term);
+            postings.remove(slot);
+            if (postings.size == 0)
+                terms.remove(term);
+        }
+    }
+
+    public synchronized void addFriendship(long first, long second) {
+        friends.computeIfAbsent(first, x -> new LongHashSet()).add(second);
+        friends.computeIfAbsent(second, x -> new LongHashSet()).add(first);
+    }
+
+    public synchronized void removeFriendship(long first, long second) {
+        LongHashSet firstFriends = friends.get(first);
+        if (firstFriends != null)
+            firstFriends.remove(second);
+        LongHashSet secondFriends = friends.get(second);
+        if (secondFriends != null)
+            secondFriends.remove(first);
+    }
+
+    /**
+     * @return the slots of the users with a name starting with the text
+     */
+    private BitSet matches(String text) {
+        String prefix = normalize(text);
+        if (prefix.isEmpty())
+            return (BitSet) live.clone();
+        BitSet result = new BitSet(users.size());
+        for (Postings postings : terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values())
+            postings.addTo(result);
+        return result;
+    }
+
+    /**
+     * @return the slots of the friends of the user
+     */
+    private BitSet friendSlots(Long user) {
+        BitSet result = new BitSet(users.size());
+        LongHashSet ids = friends.get(user);
+        if (ids != null)
+            ids.forEach(friend -> {
+                int slot = slots.get(friend);
+                if (slot >= 0)
+                    result.set(slot);
+            });
+        return result;
+    }
+
+    /**
+     * @return the users who are not friends of the user, with a name starting with the text
+     */
+    private BitSet strangers(Long user, String text) {
+        BitSet result = matches(text);
+        result.andNot(friendSlots(user));
+        int self = slots.get(user);
+        if (self >= 0)
+            result.clear(self);
+        return result;
+    }
+
+    /**
+     * @return the number of mutual friends of the user and every friend of a friend
+     */
+    private LongIntMap mutualFriends(Long user) {
+        LongIntMap mutual = new LongIntMap(16, 0);
+        LongHashSet ids = friends.get(user);
+        if (ids != null)
+            ids.forEach(friend -> {
+                LongHashSet friendsOfFriend = friends.get(friend);
+                if (friendsOfFriend != null)
+                    friendsOfFriend.forEach(other -> mutual.put(other, mutual.get(other) + 1));
+            });
+        return mutual;
+    }
+
+    private Comparator<Integer> byName() {
+        return Comparator.<Integer, String>comparing(names::get).thenComparing(x -> users.get(x).getId());
+    }
+
+    /**
+     * @return the users on positions offset to offset + limit of the matches in the given order,
+     * found with a bounded heap instead of sorting all the matches
+     */
+    private List<User> top(BitSet matches, Comparator<Integer> order, int offset, int limit) {
+        int count = matches.cardinality();
+        int k = (int) Math.min(count, (long) offset + limit);
+        if (offset >= k)
+            return new ArrayList<>();
+        PriorityQueue<Integer> heap = new PriorityQueue<>(k, order.reversed());
+        for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+            if (heap.size() < k)
+                heap.add(slot);
+            else if (order.compare(slot, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(slot);
+            }
+        }
+        Integer[] best = heap.toArray(new Integer[0]);
+        Arrays.sort(best, order);
+        List<User> page = new ArrayList<>(k - offset);
+        for (int i = offset; i < best.length; i++)
+            page.add(copy(users.get(best[i])));
+        return page;
+    }
+
+    /**
+     * @return the number of users who are not the user or its friends, with a name starting with the text
+     */
+    public synchronized int count(Long user, String text) {
+        return strangers(user, text).cardinality();
+    }
+
+    /**
+     * @param user the user who searches, left out of the results together with its friends
+     * @return a page of the users with a name starting with the text: first the friends
+     * of friends, by number of mutual friends, then the others, by name
+     */
+    public synchronized List<User> search(Long user, String text, int offset, int limit) {
+        LongIntMap mutual = mutualFriends(user);
+        Comparator<Integer> order = Comparator.<Integer>comparingInt(x -> -mutual.get(users.get(x).getId()))
+                .thenComparing(byName());
+        return top(strangers(user, text), order, offset, limit);
+    }
+
+    /**
+     * @return the number of friends of the user with a name starting with the text
+     */
+    public synchronized int countFriends(Long user, String text) {
+        BitSet result = matches(text);
+        result.and(friendSlots(user));
+        return result.cardinality();
+    }
+
+    /**
+     * @return a page of the friends of the user with a name starting with the text, by name
+     */
+    public synchronized List<User> searchFriends(Long user, String text, int offset, int limit) {
+        BitSet result = matches(text);
+        result.and(friendSlots(user));
+        return top(result, byName(), offset, limit);
+    }
+}
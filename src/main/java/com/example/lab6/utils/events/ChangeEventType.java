@@ -1,6 +1,5 @@
 package com.example.lab6.utils.events;
 
 public enum ChangeEventType {
-    ADD,UPDATE,DELETE;
+    ADD,UPDATE,DELETE,REMINDER;
 }
-
@@ -1,11 +1,14 @@
 package com.example.lab6.utils.events;
 
 import com.example.lab6.model.Event;
+import com.example.lab6.utils.NotificationType;
 
 public class EventChangeEvent implements EventObs {
 
     ChangeEventType type;
     Event olddata, data;
+    Long user;
+    NotificationType notificationType;
 
     public EventChangeEvent(ChangeEventType type, Event olddata, Event data) {
         this.type =type;
@@ -18,6 +21,27 @@ public class EventChangeEvent implements EventObs {
         this.data = data;
     }
 
+    /**
+     * @param user the user the change is about: the subscriber, or the user to remind
+     */
+    public EventChangeEvent(ChangeEventType type, Event data, Long user) {
+        this.type = type;
+        this.data = data;
+        this.user = user;
+    }
+
+    /**
+     * A reminder of the event for the user
+     */
+    public EventChangeEvent(Event data, Long user, NotificationType notificationType) {
+        this(ChangeEventType.REMINDER, data, user);
+        this.notificationType = notificationType;
+    }
+
+    public ChangeEventType getType() {
+        return type;
+    }
+
     public Event getOlddata() {
         return olddata;
     }
@@ -25,4 +49,15 @@ public class EventChangeEvent implements EventObs {
     public Event getData() {
         return data;
     }
+
+    public Long getUser() {
+        return user;
+    }
+
+    /**
+     * @return the kind of reminder, null if the event is not a reminder
+     */
+    public NotificationType getNotificationType() {
+        return notificationType;
+    }
 }
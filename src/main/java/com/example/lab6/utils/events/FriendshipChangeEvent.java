@@ -0,0 +1,21 @@
+package com.example.lab6.utils.events;
+
+import com.example.lab6.model.Friendship;
+
+public class FriendshipChangeEvent implements EventObs {
+    private ChangeEventType type;
+    private Friendship data;
+
+    public FriendshipChangeEvent(ChangeEventType type, Friendship data) {
+        this.type = type;
+        this.data = data;
+    }
+
+    public ChangeEventType getType() {
+        return type;
+    }
+
+    public Friendship getData() {
+        return data;
+    }
+}
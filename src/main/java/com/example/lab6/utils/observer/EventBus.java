@@ -0,0 +1,265 @@
+package com.example.lab6.utils.observer;
+
+import com.example.lab6.utils.events.EventObs;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The observers of a service. The observers added with addObserver are called on the
+ * thread that publishes, as before; the ones subscribed with subscribe or subscribeWeak
+ * get the events through their own bounded queue, drained on the executor they choose
+ * (Platform::runLater for the controllers), so a slow observer does not hold the publisher.
+ * A coalescing subscription keeps only the latest pending event: a burst of changes
+ * becomes one update. A weak subscription does not keep its observer alive and goes away
+ * with it. Every subscription keeps metrics on its queue and on the delivery latency.
+ */
+public class EventBus<E extends EventObs> implements Observable<E> {
+    private final String name;
+    private final List<Observer<E>> observers = new CopyOnWriteArrayList<>();
+    private final List<Subscription<E>> subscriptions = new CopyOnWriteArrayList<>();
+
+    public EventBus(String name) {
+        this.name = name;
+    }
+
+    private static final class Envelope<E> {
+        private final E event;
+        private final long published;
+
+        Envelope(E event, long published) {
+            this.event = event;
+            this.published = published;
+        }
+    }
+
+    /**
+     * An observer with its queue of pending events and its metrics
+     */
+    public static final class Subscription<E extends EventObs> {
+        private final EventBus<E> bus;
+        private final Observer<E> strong;
+        private final WeakReference<Observer<E>> weak;
+        private final Executor executor;
+        private final int capacity;
+        private final boolean coalesce;
+        private final ArrayDeque<Envelope<E>> queue = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean closed;
+        private int maxQueueDepth;
+
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+        private final AtomicLong totalLatency = new AtomicLong();
+        private final AtomicLong maxLatency = new AtomicLong();
+
+        private Subscription(EventBus<E> bus, Observer<E> observer, boolean weak, Executor executor, int capacity, boolean coalesce) {
+            if (capacity < 1)
+                throw new IllegalArgumentException("Capacity must be positive!");
+            this.bus = bus;
+            this.strong = weak ? null : observer;
+            this.weak = weak ? new WeakReference<>(observer) : null;
+            this.executor = executor;
+            this.capacity = capacity;
+            this.coalesce = coalesce;
+        }
+
+        private Observer<E> observer() {
+            return strong != null ? strong : weak.get();
+        }
+
+        private void offer(E event) {
+            boolean schedule;
+            synchronized (this) {
+                if (closed)
+                    return;
+                long published = System.nanoTime();
+                if (coalesce && !queue.isEmpty()) {
+                    published = queue.pollLast().published;
+                    coalesced.incrementAndGet();
+                } else if (queue.size() == capacity) {
+                    queue.pollFirst();
+                    dropped.incrementAndGet();
+                }
+                queue.addLast(new Envelope<>(event, published));
+                maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            if (schedule) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    synchronized (this) {
+                        scheduled = false;
+                    }
+                }
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                Envelope<E> envelope;
+                synchronized (this) {
+                    envelope = closed ? null : queue.pollFirst();
+                    if (envelope == null) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                Observer<E> observer = observer();
+                if (observer == null) {
+                    unsubscribe();
+                    return;
+                }
+                long latency = System.nanoTime() - envelope.published;
+                totalLatency.addAndGet(latency);
+                maxLatency.accumulateAndGet(latency, Math::max);
+                delivered.incrementAndGet();
+                try {
+                    observer.update(envelope.event);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * Stops the deliveries; the pending events are dropped
+         */
+        public void unsubscribe() {
+            synchronized (this) {
+                closed = true;
+                queue.clear();
+            }
+            bus.subscriptions.remove(this);
+        }
+
+        public synchronized int getQueueDepth() {
+            return queue.size();
+        }
+
+        public synchronized int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public long getDelivered() {
+            return delivered.get();
+        }
+
+        /**
+         * @return the number of events dropped because the queue was full
+         */
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        /**
+         * @return the number of events replaced by a later one before being delivered
+         */
+        public long getCoalesced() {
+            return coalesced.get();
+        }
+
+        /**
+         * @return the average time between publishing an event and delivering it, in nanoseconds
+         */
+        public long getAverageLatencyNanos() {
+            long count = delivered.get();
+            return count == 0 ? 0 : totalLatency.get() / count;
+        }
+
+        public long getMaxLatencyNanos() {
+            return maxLatency.get();
+        }
+
+        @Override
+        public String toString() {
+            return "queue " + getQueueDepth() + " (max " + getMaxQueueDepth() + "), delivered " + getDelivered() +
+                    ", dropped " + getDropped() + ", coalesced " + getCoalesced() +
+                    ", latency avg " + getAverageLatencyNanos() / 1000 + " us, max " + getMaxLatencyNanos() / 1000 + " us";
+        }
+    }
+
+    /**
+     * The observer is called on the thread that publishes, before the subscriptions get the event
+     */
+    @Override
+    public void addObserver(Observer<E> e) {
+        observers.add(e);
+    }
+
+    /**
+     * Removes the observer, whether it was added or subscribed
+     */
+    @Override
+    public void removeObserver(Observer<E> e) {
+        observers.remove(e);
+        for (Subscription<E> subscription : subscriptions)
+            if (subscription.observer() == e)
+                subscription.unsubscribe();
+    }
+
+    @Override
+    public void notifyObservers(E t) {
+        observers.forEach(x -> x.update(t));
+        for (Subscription<E> subscription : subscriptions) {
+            if (subscription.observer() == null)
+                subscription.unsubscribe();
+            else
+                subscription.offer(t);
+        }
+    }
+
+    /**
+     * @param executor runs the deliveries, one at a time for this subscription
+     * @param capacity maximum number of pending events; the oldest one is dropped to make room
+     * @param coalesce true to keep only the latest pending event
+     */
+    public Subscription<E> subscribe(Observer<E> observer, Executor executor, int capacity, boolean coalesce) {
+        return add(new Subscription<>(this, observer, false, executor, capacity, coalesce));
+    }
+
+    /**
+     * Like subscribe, but the bus keeps only a weak reference to the observer, so the
+     * subscription ends when nothing else references the observer
+     */
+    public Subscription<E> subscribeWeak(Observer<E> observer, Executor executor, int capacity, boolean coalesce) {
+        return add(new Subscription<>(this, observer, true, executor, capacity, coalesce));
+    }
+
+    private Subscription<E> add(Subscription<E> subscription) {
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * @return the subscriptions whose observer is still alive
+     */
+    public List<Subscription<E>> getSubscriptions() {
+        List<Subscription<E>> alive = new ArrayList<>();
+        for (Subscription<E> subscription : subscriptions) {
+            if (subscription.observer() == null)
+                subscription.unsubscribe();
+            else
+                alive.add(subscription);
+        }
+        return alive;
+    }
+
+    /**
+     * @return one line per subscription with its metrics
+     */
+    public String metrics() {
+        StringBuilder builder = new StringBuilder(name).append(": ").append(observers.size()).append(" observers");
+        getSubscriptions().forEach(x -> builder.append("\n  ").append(x));
+        return builder.toString();
+    }
+}
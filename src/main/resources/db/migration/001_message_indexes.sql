@@ -0,0 +1,5 @@
+-- conversation queries of MessageDbRepository
+CREATE INDEX IF NOT EXISTS messages_from_date_idx ON messages ("from", date);
+CREATE INDEX IF NOT EXISTS messages_date_idx ON messages (date);
+CREATE INDEX IF NOT EXISTS message_recipients_message_idx ON message_recipients (message, recipient);
+CREATE INDEX IF NOT EXISTS message_recipients_recipient_idx ON message_recipients (recipient, message);
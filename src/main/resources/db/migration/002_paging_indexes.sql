@@ -0,0 +1,4 @@
+-- keyset pagination of the PagingRepository implementations
+CREATE INDEX IF NOT EXISTS posts_date_id_idx ON posts (date, id);
+CREATE INDEX IF NOT EXISTS friendships_date_idx ON friendships (date, first_friend, second_friend);
+CREATE INDEX IF NOT EXISTS messages_date_id_idx ON messages (date, id);
@@ -0,0 +1,24 @@
+-- materialized home timelines of PostService, one row per post and reader
+CREATE TABLE IF NOT EXISTS feed_entries (
+    owner bigint NOT NULL,
+    post bigint NOT NULL,
+    author bigint NOT NULL,
+    date timestamp NOT NULL,
+    PRIMARY KEY (owner, post)
+);
+CREATE INDEX IF NOT EXISTS feed_entries_owner_date_idx ON feed_entries (owner, date DESC, post DESC);
+CREATE INDEX IF NOT EXISTS feed_entries_post_idx ON feed_entries (post);
+CREATE INDEX IF NOT EXISTS feed_entries_owner_author_idx ON feed_entries (owner, author);
+-- fills the timelines from the existing posts, only while the table is still empty
+INSERT INTO feed_entries (owner, post, author, date)
+SELECT f.second_friend, p.id, p."user", p.date FROM posts p JOIN friendships f ON f.first_friend = p."user"
+WHERE NOT EXISTS (SELECT 1 FROM feed_entries)
+UNION ALL
+SELECT f.first_friend, p.id, p."user", p.date FROM posts p JOIN friendships f ON f.second_friend = p."user"
+WHERE NOT EXISTS (SELECT 1 FROM feed_entries)
+ON CONFLICT DO NOTHING;
+-- authors with too many friends for fan-out, their posts are read from posts
+CREATE TABLE IF NOT EXISTS feed_pull_authors (
+    author bigint PRIMARY KEY
+);
+CREATE INDEX IF NOT EXISTS posts_user_date_idx ON posts ("user", date DESC, id DESC);
@@ -0,0 +1,3 @@
+-- friendship checks of UserDbRepository.findFriendStatus by second_friend;
+-- the lookups by first_friend use the unique index of 005
+CREATE INDEX IF NOT EXISTS friendships_second_first_idx ON friendships (second_friend, first_friend);
@@ -0,0 +1,10 @@
+-- a friendship is stored once, with the smaller id in first_friend;
+-- of the rows of a pair, in either order, only the oldest one is kept
+DELETE FROM friendships a USING friendships b
+WHERE LEAST(a.first_friend, a.second_friend) = LEAST(b.first_friend, b.second_friend)
+  AND GREATEST(a.first_friend, a.second_friend) = GREATEST(b.first_friend, b.second_friend)
+  AND (a.date > b.date OR (a.date = b.date AND a.ctid > b.ctid));
+UPDATE friendships SET first_friend = second_friend, second_friend = first_friend WHERE first_friend > second_friend;
+CREATE UNIQUE INDEX IF NOT EXISTS friendships_pair_idx ON friendships (first_friend, second_friend);
+-- the unique index covers the lookups by first_friend
+DROP INDEX IF EXISTS friendships_first_second_idx;
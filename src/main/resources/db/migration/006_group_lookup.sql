@@ -0,0 +1,4 @@
+-- groups of a member and paged group messages of GroupDbRepository
+CREATE INDEX IF NOT EXISTS groups_users_user_group_idx ON groups_users ("user", "group");
+CREATE INDEX IF NOT EXISTS groups_users_group_idx ON groups_users ("group");
+CREATE INDEX IF NOT EXISTS messages_groups_group_date_idx ON messages_groups (recipient_group, date DESC, id DESC);
@@ -0,0 +1,5 @@
+-- events by subscriber and by admin, by start date, for EventDbRepository
+CREATE INDEX IF NOT EXISTS events_subscribers_user_event_idx ON events_subscribers ("userID", "eventID");
+CREATE INDEX IF NOT EXISTS events_subscribers_event_user_idx ON events_subscribers ("eventID", "userID");
+CREATE INDEX IF NOT EXISTS events_start_idx ON events (start_date, id);
+CREATE INDEX IF NOT EXISTS events_admin_start_idx ON events (admin, start_date, id);
@@ -0,0 +1,3 @@
+-- inbox and outbox of the friend requests by status, newest first, for FriendRequestDbRepository
+CREATE INDEX IF NOT EXISTS friend_requests_to_status_date_idx ON friend_requests ("to", status, last_update_date DESC);
+CREATE INDEX IF NOT EXISTS friend_requests_from_status_date_idx ON friend_requests ("from", status, last_update_date DESC);
@@ -0,0 +1,69 @@
+package com.example.lab6.repository.cache;
+
+import com.example.lab6.model.MessageDTO;
+import com.example.lab6.repository.file.MessageLog;
+import com.example.lab6.repository.memory.InMemoryMessageRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CachingMessageRepositoryTest {
+    private static final int SEGMENT_SIZE = 256 * 1024;
+    private static final LocalDateTime START = LocalDateTime.of(2022, 1, 10, 12, 0);
+
+    @TempDir
+    Path directory;
+
+    private static MessageDTO message(long from, long to, String text, int second) {
+        return new MessageDTO(from, List.of(to), text, START.plusSeconds(second), null);
+    }
+
+    @Test
+    void readsAgainAConversationThatLostRecordsInACrash() throws IOException {
+        InMemoryMessageRepository messages = new InMemoryMessageRepository();
+        try (MessageLog log = MessageLog.open(directory, SEGMENT_SIZE, false)) {
+            CachingMessageRepository repository = new CachingMessageRepository(messages, log);
+            assertEquals(0, repository.countConversation(1L, 2L));
+            repository.save(message(1, 2, "first", 1));
+            repository.save(message(2, 1, "second", 2));
+        }
+        Path segment = directory.resolve(MessageLog.pair(1, 2)).resolve(String.format("%012d.seg", 0));
+        byte[] bytes = Files.readAllBytes(segment);
+        int first = ByteBuffer.wrap(bytes).getInt(0);
+        bytes[first + 20] ^= 1;
+        Files.write(segment, bytes);
+
+        try (MessageLog log = MessageLog.open(directory, SEGMENT_SIZE, false)) {
+            CachingMessageRepository repository = new CachingMessageRepository(messages, log);
+            assertEquals(2, repository.countConversation(1L, 2L));
+            assertEquals(2, repository.findConversation(1L, 2L, 0, 10).size());
+        }
+    }
+
+    @Test
+    void readsAgainAConversationChangedWithoutTheDecorator() throws IOException {
+        InMemoryMessageRepository messages = new InMemoryMessageRepository();
+        try (MessageLog log = MessageLog.open(directory, SEGMENT_SIZE, false)) {
+            CachingMessageRepository repository = new CachingMessageRepository(messages, log);
+            repository.save(message(1, 2, "first", 1));
+            assertEquals(1, repository.countConversation(1L, 2L));
+        }
+        messages.save(message(2, 1, "second", 2));
+
+        try (MessageLog log = MessageLog.open(directory, SEGMENT_SIZE, false)) {
+            CachingMessageRepository repository = new CachingMessageRepository(messages, log);
+            assertEquals(List.of("second", "first"),
+                    repository.findConversation(1L, 2L, 0, 10).stream().map(MessageDTO::getMessage).toList());
+            repository.save(message(1, 2, "third", 3));
+            assertEquals(3, repository.countConversation(1L, 2L));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.lab6.repository.file;
+
+import com.example.lab6.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A crash is a storage that is never closed: the next open must recover from the files it left
+ */
+class FileStorageTest {
+    @TempDir
+    Path directory;
+
+    private static void saveUsers(FileStorage storage, int first, int count) {
+        for (int i = first; i < first + count; i++)
+            storage.getUserRepository().save(new User("First" + i, "Last" + i, "user" + i + "@mail.com", "password"));
+    }
+
+    private static int countUsers(FileStorage storage) {
+        int count = 0;
+        for (User ignored : storage.getUserRepository().findAll())
+            count++;
+        return count;
+    }
+
+    @Test
+    void replaysTheLogAfterACrash() throws IOException {
+        saveUsers(FileStorage.open(directory, 1000, false), 1, 3);
+
+        try (FileStorage storage = FileStorage.open(directory, 1000, false)) {
+            assertEquals(3, countUsers(storage));
+            assertEquals("First2", storage.getUserRepository().findOneByEmail("user2@mail.com").getFirstName());
+        }
+    }
+
+    @Test
+    void readsTheSnapshotAndTheChangesLoggedAfterIt() throws IOException {
+        saveUsers(FileStorage.open(directory, 2, false), 1, 5);
+        assertTrue(Files.exists(directory.resolve("storage.snapshot")));
+
+        try (FileStorage storage = FileStorage.open(directory, 2, false)) {
+            assertEquals(5, countUsers(storage));
+        }
+    }
+
+    @Test
+    void dropsARecordCutByACrash() throws IOException {
+        saveUsers(FileStorage.open(directory, 1000, false), 1, 2);
+        Path log = directory.resolve("storage.log");
+        long whole = Files.size(log);
+        Files.write(log, new byte[]{0, 0, 1, 0, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (FileStorage storage = FileStorage.open(directory, 1000, false)) {
+            assertEquals(2, countUsers(storage));
+            assertEquals(whole, Files.size(log));
+            saveUsers(storage, 3, 1);
+        }
+        try (FileStorage storage = FileStorage.open(directory, 1000, false)) {
+            assertEquals(3, countUsers(storage));
+        }
+    }
+
+    @Test
+    void dropsADamagedRecordAndTheRecordsAfterIt() throws IOException {
+        FileStorage crashed = FileStorage.open(directory, 1000, false);
+        saveUsers(crashed, 1, 1);
+        Path log = directory.resolve("storage.log");
+        long first = Files.size(log);
+        saveUsers(crashed, 2, 2);
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[(int) first + 20] ^= 1;
+        Files.write(log, bytes);
+
+        try (FileStorage storage = FileStorage.open(directory, 1000, false)) {
+            assertEquals(1, countUsers(storage));
+            assertNull(storage.getUserRepository().findOneByEmail("user3@mail.com"));
+        }
+    }
+}
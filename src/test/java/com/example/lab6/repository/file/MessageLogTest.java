@@ -0,0 +1,125 @@
+package com.example.lab6.repository.file;
+
+import com.example.lab6.model.MessageDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageLogTest {
+    private static final int SEGMENT_SIZE = 256 * 1024;
+    private static final LocalDateTime START = LocalDateTime.of(2022, 1, 10, 12, 0);
+    private static final String CONVERSATION = MessageLog.pair(1, 2);
+
+    @TempDir
+    Path directory;
+
+    private static MessageDTO message(long id, long from, long to, String text) {
+        MessageDTO message = new MessageDTO(from, List.of(to), text, START.plusSeconds(id), null);
+        message.setId(id);
+        return message;
+    }
+
+    private static List<Long> ids(List<MessageDTO> messages) {
+        return messages.stream().map(MessageDTO::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    void readsTheMessagesAfterReopening() throws IOException {
+        try (MessageLog log = MessageLog.open(directory, SEGMENT_SIZE, false)) {
+            for (long id = 1; id <= 3000; id++)
+                log.append(CONVERSATION, message(id, id % 2 + 1, 2 - id % 2, "message " + id));
+            log.setLoaded(CONVERSATION);
+        }
+
+        try (MessageLog log = MessageLog.open(directory, SEGMENT_SIZE, false)) {
+            assertEquals(Set.of(CONVERSATION), log.getConversations());
+            assertTrue(log.isLoaded(CONVERSATION));
+            assertEquals(3000, log.count(CONVERSATION));
+            assertEquals(List.of(3000L, 2999L), ids(log.findPage(CONVERSATION, true, 0, 2)));
+            assertEquals(List.of(1001L, 1002L), ids(log.findPage(CONVERSATION, false, 1000, 2)));
+            MessageDTO read = log.read(CONVERSATION, 1499);
+            assertEquals("message 1500", read.getMessage());
+            assertEquals(START.plusSeconds(1500), read.getDate());
+            assertEquals(List.of(2L), read.getTo());
+            int[] between = new int[1];
+            log.forEachBetween(CONVERSATION, START.plusSeconds(100), START.plusSeconds(200), x -> between[0]++);
+            assertEquals(100, between[0]);
+        }
+    }
+
+    @Test
+    void dropsADamagedRecordAndAppendsAfterTheLastWholeOne() throws IOException {
+        try (MessageLog log = MessageLog.open(directory, SEGMENT_SIZE, false)) {
+            log.append(CONVERSATION, message(1, 1, 2, "first"));
+            log.append(CONVERSATION, message(2, 2, 1, "second"));
+            log.setLoaded(CONVERSATION);
+        }
+        Path segment = directory.resolve(CONVERSATION).resolve(String.format("%012d.seg", 0));
+        byte[] bytes = Files.readAllBytes(segment);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int first = buffer.getInt(0);
+        int second = buffer.getInt(first);
+        bytes[first + second - 1] ^= 1;
+        Files.write(segment, bytes);
+
+        try (MessageLog log = MessageLog.open(directory, SEGMENT_SIZE, false)) {
+            assertFalse(log.isLoaded(CONVERSATION));
+            assertEquals(1, log.count(CONVERSATION));
+            assertEquals("first", log.read(CONVERSATION, 0).getMessage());
+            log.append(CONVERSATION, message(3, 1, 2, "third"));
+        }
+        try (MessageLog log = MessageLog.open(directory, SEGMENT_SIZE, false)) {
+            assertEquals(List.of(1L, 3L), ids(log.findPage(CONVERSATION, false, 0, 10)));
+        }
+    }
+
+    @Test
+    void clearsAConversationWithItsFiles() throws IOException {
+        try (MessageLog log = MessageLog.open(directory, SEGMENT_SIZE, false)) {
+            log.append(CONVERSATION, message(1, 1, 2, "first"));
+            log.setLoaded(CONVERSATION);
+            log.clear(CONVERSATION);
+            assertFalse(log.isLoaded(CONVERSATION));
+            assertEquals(0, log.count(CONVERSATION));
+        }
+        assertFalse(Files.exists(directory.resolve(CONVERSATION)));
+        try (MessageLog log = MessageLog.open(directory, SEGMENT_SIZE, false)) {
+            assertTrue(log.getConversations().isEmpty());
+        }
+    }
+
+    @Test
+    void rebuildsTheRepositoryIndexesAfterReopening() throws IOException {
+        try (MessageLog log = MessageLog.open(directory, SEGMENT_SIZE, false)) {
+            MessageLogRepository repository = new MessageLogRepository(log);
+            repository.save(new MessageDTO(1L, List.of(2L, 3L), "to the group", START, null));
+            repository.save(new MessageDTO(3L, List.of(1L), "reply", START.plusSeconds(1), 1L));
+        }
+
+        try (MessageLog log = MessageLog.open(directory, SEGMENT_SIZE, false)) {
+            MessageLogRepository repository = new MessageLogRepository(log);
+            assertEquals("to the group", repository.findOne(1L).getMessage());
+            assertEquals(List.of(2L, 1L), ids(repository.findThread(2L, 10)));
+            assertEquals(Set.of(2L, 3L), repository.findConversationPartners(1L));
+            assertNull(repository.findOne(3L));
+
+            MessageDTO next = new MessageDTO(2L, List.of(1L), "next", null, null);
+            repository.save(next);
+            assertEquals(3L, next.getId());
+            assertEquals(2, repository.countConversation(1L, 2L));
+        }
+    }
+}
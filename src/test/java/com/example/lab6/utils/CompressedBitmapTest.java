@@ -0,0 +1,82 @@
+package com.example.lab6.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedBitmapTest {
+
+    private static List<Integer> values(CompressedBitmap bitmap) {
+        List<Integer> values = new ArrayList<>();
+        bitmap.forEach(values::add);
+        return values;
+    }
+
+    @Test
+    void addsAndRemovesValuesOfSeveralChunks() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        assertTrue(bitmap.add(70000));
+        assertTrue(bitmap.add(3));
+        assertTrue(bitmap.add(Integer.MAX_VALUE));
+        assertFalse(bitmap.add(3));
+        assertEquals(List.of(3, 70000, Integer.MAX_VALUE), values(bitmap));
+        assertEquals(3, bitmap.cardinality());
+
+        assertTrue(bitmap.remove(70000));
+        assertFalse(bitmap.remove(70000));
+        assertFalse(bitmap.contains(70000));
+        assertTrue(bitmap.contains(3));
+        assertTrue(bitmap.remove(3));
+        assertTrue(bitmap.remove(Integer.MAX_VALUE));
+        assertTrue(bitmap.isEmpty());
+    }
+
+    @Test
+    void keepsTheValuesWhenAChunkTurnsIntoABitmapAndBack() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int i = 0; i < 10000; i++)
+            assertTrue(bitmap.add(65536 + 2 * i));
+        assertEquals(10000, bitmap.cardinality());
+        assertTrue(bitmap.contains(65536 + 19998));
+        assertFalse(bitmap.contains(65536 + 19999));
+
+        for (int i = 0; i < 9990; i++)
+            assertTrue(bitmap.remove(65536 + 2 * i));
+        assertEquals(10, bitmap.cardinality());
+        for (int i = 9990; i < 10000; i++)
+            assertTrue(bitmap.contains(65536 + 2 * i));
+        assertFalse(bitmap.contains(65536));
+    }
+
+    @Test
+    void matchesATreeSet() {
+        Random random = new Random(7);
+        CompressedBitmap bitmap = new CompressedBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 200000; i++) {
+            int value = random.nextInt(3 * 65536);
+            if (random.nextInt(3) == 0)
+                assertEquals(expected.remove(value), bitmap.remove(value));
+            else
+                assertEquals(expected.add(value), bitmap.add(value));
+        }
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertEquals(new ArrayList<>(expected), values(bitmap));
+    }
+
+    @Test
+    void rejectsNegativeValues() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(-1));
+        assertFalse(bitmap.contains(-1));
+        assertFalse(bitmap.remove(-1));
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.lab6.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongHashTableTest {
+    private static final int KEYS = 8;
+
+    /**
+     * Fills a table to its limit, so the keys form clusters, removes one and checks that the others are still found
+     */
+    @Test
+    void findsTheRestOfTheClusterAfterARemove() {
+        for (long removed = 0; removed < KEYS; removed++) {
+            LongHashSet set = new LongHashSet(KEYS);
+            LongIntMap ints = new LongIntMap(KEYS, -1);
+            LongObjectMap<String> objects = new LongObjectMap<>(KEYS);
+            for (long key = 0; key < KEYS; key++) {
+                set.add(key * 16);
+                ints.put(key * 16, (int) key);
+                objects.put(key * 16, "v" + key);
+            }
+
+            assertTrue(set.remove(removed * 16));
+            assertEquals((int) removed, ints.remove(removed * 16));
+            assertEquals("v" + removed, objects.remove(removed * 16));
+            for (long key = 0; key < KEYS; key++) {
+                boolean present = key != removed;
+                assertEquals(present, set.contains(key * 16));
+                assertEquals(present ? (int) key : -1, ints.get(key * 16));
+                assertEquals(present ? "v" + key : null, objects.get(key * 16));
+            }
+            assertEquals(KEYS - 1, set.size());
+            assertEquals(KEYS - 1, ints.size());
+            assertEquals(KEYS - 1, objects.size());
+        }
+    }
+
+    @Test
+    void removesMissingKeys() {
+        LongHashSet set = new LongHashSet();
+        LongIntMap ints = new LongIntMap(4, 0);
+        LongObjectMap<String> objects = new LongObjectMap<>();
+        assertFalse(set.remove(1));
+        assertFalse(set.remove(Long.MIN_VALUE));
+        assertEquals(0, ints.remove(1));
+        assertNull(objects.remove(1));
+        assertThrows(IllegalArgumentException.class, () -> set.add(Long.MIN_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> ints.put(Long.MIN_VALUE, 1));
+        assertThrows(IllegalArgumentException.class, () -> objects.put(Long.MIN_VALUE, "x"));
+    }
+
+    @Test
+    void matchesAHashMapThroughResizesAndRemoves() {
+        Random random = new Random(11);
+        LongHashSet set = new LongHashSet(2);
+        LongIntMap ints = new LongIntMap(2, -1);
+        LongObjectMap<Integer> objects = new LongObjectMap<>(2);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            long key = random.nextInt(1000) - 500;
+            if (random.nextInt(3) == 0) {
+                Integer removed = expected.remove(key);
+                assertEquals(removed != null, set.remove(key));
+                assertEquals(removed == null ? -1 : removed, ints.remove(key));
+                assertEquals(removed, objects.remove(key));
+            } else {
+                int value = random.nextInt(1000);
+                Integer previous = expected.put(key, value);
+                assertEquals(previous == null, set.add(key));
+                assertEquals(previous == null ? -1 : previous, ints.put(key, value));
+                assertEquals(previous, objects.put(key, value));
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        assertEquals(expected.size(), ints.size());
+        assertEquals(expected.size(), objects.size());
+        for (long key = -500; key < 500; key++) {
+            assertEquals(expected.containsKey(key), set.contains(key));
+            assertEquals((int) expected.getOrDefault(key, -1), ints.get(key));
+            assertEquals(expected.get(key), objects.get(key));
+        }
+        Set<Long> keys = new HashSet<>();
+        set.forEach(keys::add);
+        assertEquals(expected.keySet(), keys);
+    }
+
+    @Test
+    void clearsTheValues() {
+        LongObjectMap<String> objects = new LongObjectMap<>();
+        objects.put(1, "a");
+        objects.clear();
+        assertEquals(0, objects.size());
+        assertNull(objects.get(1));
+        assertFalse(objects.containsKey(1));
+    }
+}